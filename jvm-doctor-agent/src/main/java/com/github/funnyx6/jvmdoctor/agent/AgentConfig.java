@@ -15,12 +15,58 @@ import java.util.Properties;
  */
 public class AgentConfig {
     
+    private static final String SYSTEM_PROPERTY_PREFIX = "jvm-doctor.";
+    
     private String serverUrl = "http://localhost:8080";
     private int reportInterval = 30;  // 秒
+    private int metricsSampleInterval = 1000; // 指标采集间隔（毫秒），采集结果在本地缓冲，按上报间隔成批发送（0 表示每次上报采集一次）
+    private int metricsBufferSize = 300;      // 本地缓冲的最大样本数，满后丢弃最旧的样本
+    private int metricsQueueSize = 120;       // 采集线程到发送线程的队列容量（样本数），满后丢弃最旧的样本
     private String appName = "";
     private String appHost = "";
     private int appPort = 0;
     private int threadServerPort = 0; // 线程服务器端口
+    private int threadSampleInterval = 1000; // 线程 CPU 采样间隔（毫秒）
+    private int threadSampleHistory = 300;   // 每个线程保留的采样数（默认覆盖 5 分钟）
+    private int threadProcThreshold = 2000;  // 线程数达到该值时从 /proc/self/task 读取线程 CPU（0 关闭）
+    private double memoryUsageThreshold = 0.9;      // 内存池当前使用量阈值（占最大容量比例，0 关闭）
+    private double memoryCollectionThreshold = 0.8; // 内存池 GC 后使用量阈值（占最大容量比例，0 关闭）
+    private int profilerInterval = 20;        // 采样剖析间隔（毫秒）
+    private int profilerMaxDepth = 128;       // 采样剖析栈深度上限
+    private int profilerMaxNodes = 100_000;   // 调用树节点上限
+    private double profilerMaxOverhead = 0.05; // 采样耗时占比上限，超过时降低频率
+    private int profilerMaxSeconds = 300;     // 单次剖析时长上限（秒）
+    private boolean contentionEnabled = false; // 启动时开启锁竞争监控
+    private int contentionInterval = 1000;     // 锁竞争采样间隔（毫秒）
+    private int contentionMaxMonitors = 128;   // 热点锁表容量
+    private int deadlockMinInterval = 10_000;  // 完整死锁检测的最小间隔（毫秒）
+    private double overheadBudget = 0.005;     // Agent CPU 开销预算（单核的比例，0 关闭限流）
+    private int overheadWindow = 10;           // 开销结算窗口（秒）
+    private String methodTimers = "";          // 方法计时规则，分号分隔，如 com.example.Foo#bar;com.example.dao.*#find*
+    private int methodTimersMax = 128;         // 计时器数量上限（每个"类.方法"一个）
+    private boolean histogramEnabled = false;  // 启动时开启类直方图趋势跟踪（每次采集会触发 Full GC）
+    private int histogramInterval = 600;       // 类直方图采集间隔（秒，不低于 60）
+    private int histogramHistory = 6;          // 保留的直方图数（泄漏判断窗口）
+    private int histogramMaxClasses = 20_000;  // 跟踪的类名上限
+    private boolean histogramAll = false;      // 统计全部对象（JDK 9+，不触发 Full GC，含未回收对象）
+    private boolean heapDumpEnabled = false;   // 是否允许远程触发堆转储（会 Full GC 并写出与堆等大的文件）
+    private String heapDumpDir = "";           // 堆转储的本地目录（空表示系统临时目录）
+    private int heapDumpChunkSize = 4 * 1024 * 1024; // 堆转储上传的分块大小（原始字节）
+    private long heapDumpMaxRate = 4 * 1024 * 1024;  // 堆转储上传速率上限（压缩后字节/秒，0 不限速）
+    private boolean heapDumpKeepFile = false;  // 上传完成后保留本地堆转储文件
+    private boolean nmtEnabled = true;         // 目标 JVM 开启了 NativeMemoryTracking 时采集 NMT 汇总
+    private int nmtInterval = 60;              // NMT 汇总采集间隔（秒，不低于 5）
+    private boolean spoolEnabled = true;       // Server 不可达时把上报暂存到本地文件，恢复后回放
+    private String spoolDir = "";              // 暂存文件目录（空表示系统临时目录）
+    private long spoolMaxBytes = 64L * 1024 * 1024; // 暂存文件大小上限（字节），写满后丢弃最旧的样本
+    private int spoolMaxAge = 86400;           // 暂存样本最长保留时间（秒，0 不限）
+    private int spoolBatchSize = 50;           // 回放时每个批量请求的样本数
+    private String transport = "url";          // 到 Server 的传输：url（HttpURLConnection）、pooled（连接池）或实现类名
+    private int transportGzipMin = 1024;       // 请求体不小于该字节数时 gzip 压缩（0 不压缩）
+    private int transportRetries = 2;          // 连接失败或 Server 返回 502/503/504 时的重试次数
+    private long transportBackoffMax = 2000;   // 重试间隔上限（毫秒，从 100ms 起翻倍）
+    private int transportIdleTimeout = 50;     // pooled 空闲连接保留时间（秒，应小于 Server 的 keep-alive 超时，0 不复用）
+    private String reportFormat = "bin";       // 指标上报格式：bin（二进制差分帧，Server 不支持时回退）或 json（调试用）
     
     public AgentConfig() {
     }
@@ -32,11 +78,7 @@ public class AgentConfig {
         AgentConfig config = new AgentConfig();
         
         // 1. 从系统属性读取（最高优先级）
-        config.serverUrl = getSystemProperty("jvm-doctor.server.url", config.serverUrl);
-        config.reportInterval = Integer.parseInt(
-                getSystemProperty("jvm-doctor.report.interval", String.valueOf(config.reportInterval)));
-        config.appName = getSystemProperty("jvm-doctor.app.name", config.appName);
-        config.appHost = getSystemProperty("jvm-doctor.app.host", config.appHost);
+        config.loadFromSystemProperties();
         
         // 2. 从配置文件读取
         config.loadFromPropertiesFile();
@@ -61,23 +103,20 @@ public class AgentConfig {
         for (String pair : pairs) {
             String[] kv = pair.split("=", 2);
             if (kv.length == 2) {
-                String key = kv[0].trim();
-                String value = kv[1].trim();
-                switch (key.toLowerCase()) {
-                    case "server.url":
-                    case "server":
-                        this.serverUrl = value;
-                        break;
-                    case "interval":
-                    case "report.interval":
-                        this.reportInterval = Integer.parseInt(value);
-                        break;
-                    case "app.name":
-                        this.appName = value;
-                        break;
-                    case "app.host":
-                        this.appHost = value;
-                        break;
+                apply(kv[0].trim(), kv[1].trim());
+            }
+        }
+    }
+    
+    /**
+     * 从系统属性加载配置（-Djvm-doctor.xxx=value）
+     */
+    private void loadFromSystemProperties() {
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(SYSTEM_PROPERTY_PREFIX)) {
+                String value = System.getProperty(name);
+                if (value != null && !value.isEmpty()) {
+                    apply(name.substring(SYSTEM_PROPERTY_PREFIX.length()), value);
                 }
             }
         }
@@ -94,17 +133,196 @@ public class AgentConfig {
             props.load(fis);
             fis.close();
             
-            this.serverUrl = props.getProperty("server.url", this.serverUrl);
-            this.reportInterval = Integer.parseInt(
-                    props.getProperty("report.interval", String.valueOf(this.reportInterval)));
-            this.appName = props.getProperty("app.name", this.appName);
-            this.appHost = props.getProperty("app.host", this.appHost);
+            for (String name : props.stringPropertyNames()) {
+                apply(name, props.getProperty(name).trim());
+            }
             
         } catch (Exception e) {
             // 配置文件不存在或读取失败，使用默认值
         }
     }
     
+    /**
+     * 应用单个配置项（系统属性、配置文件、命令行参数共用）
+     */
+    private void apply(String key, String value) {
+        switch (key.toLowerCase()) {
+            case "server.url":
+            case "server":
+                this.serverUrl = value;
+                break;
+            case "interval":
+            case "report.interval":
+                this.reportInterval = parseInt(key, value, this.reportInterval);
+                break;
+            case "metrics.sample.interval":
+                this.metricsSampleInterval = parseInt(key, value, this.metricsSampleInterval);
+                break;
+            case "metrics.buffer.size":
+                this.metricsBufferSize = parseInt(key, value, this.metricsBufferSize);
+                break;
+            case "metrics.queue.size":
+                this.metricsQueueSize = parseInt(key, value, this.metricsQueueSize);
+                break;
+            case "app.name":
+                this.appName = value;
+                break;
+            case "app.host":
+                this.appHost = value;
+                break;
+            case "thread.sample.interval":
+                this.threadSampleInterval = parseInt(key, value, this.threadSampleInterval);
+                break;
+            case "thread.sample.history":
+                this.threadSampleHistory = parseInt(key, value, this.threadSampleHistory);
+                break;
+            case "thread.proc.threshold":
+                this.threadProcThreshold = parseInt(key, value, this.threadProcThreshold);
+                break;
+            case "memory.threshold.usage":
+                this.memoryUsageThreshold = parseDouble(key, value, this.memoryUsageThreshold);
+                break;
+            case "memory.threshold.collection":
+                this.memoryCollectionThreshold = parseDouble(key, value, this.memoryCollectionThreshold);
+                break;
+            case "profiler.interval":
+                this.profilerInterval = parseInt(key, value, this.profilerInterval);
+                break;
+            case "profiler.max.depth":
+                this.profilerMaxDepth = parseInt(key, value, this.profilerMaxDepth);
+                break;
+            case "profiler.max.nodes":
+                this.profilerMaxNodes = parseInt(key, value, this.profilerMaxNodes);
+                break;
+            case "profiler.max.overhead":
+                this.profilerMaxOverhead = parseDouble(key, value, this.profilerMaxOverhead);
+                break;
+            case "profiler.max.seconds":
+                this.profilerMaxSeconds = parseInt(key, value, this.profilerMaxSeconds);
+                break;
+            case "contention.enabled":
+                this.contentionEnabled = Boolean.parseBoolean(value);
+                break;
+            case "contention.interval":
+                this.contentionInterval = parseInt(key, value, this.contentionInterval);
+                break;
+            case "contention.max.monitors":
+                this.contentionMaxMonitors = parseInt(key, value, this.contentionMaxMonitors);
+                break;
+            case "deadlock.min.interval":
+                this.deadlockMinInterval = parseInt(key, value, this.deadlockMinInterval);
+                break;
+            case "overhead.budget":
+                this.overheadBudget = parseDouble(key, value, this.overheadBudget);
+                break;
+            case "overhead.window":
+                this.overheadWindow = parseInt(key, value, this.overheadWindow);
+                break;
+            case "method.timers":
+                this.methodTimers = value;
+                break;
+            case "method.timers.max":
+                this.methodTimersMax = parseInt(key, value, this.methodTimersMax);
+                break;
+            case "histogram.enabled":
+                this.histogramEnabled = Boolean.parseBoolean(value);
+                break;
+            case "histogram.interval":
+                this.histogramInterval = parseInt(key, value, this.histogramInterval);
+                break;
+            case "histogram.history":
+                this.histogramHistory = parseInt(key, value, this.histogramHistory);
+                break;
+            case "histogram.max.classes":
+                this.histogramMaxClasses = parseInt(key, value, this.histogramMaxClasses);
+                break;
+            case "histogram.all":
+                this.histogramAll = Boolean.parseBoolean(value);
+                break;
+            case "heapdump.enabled":
+                this.heapDumpEnabled = Boolean.parseBoolean(value);
+                break;
+            case "heapdump.dir":
+                this.heapDumpDir = value;
+                break;
+            case "heapdump.chunk.size":
+                this.heapDumpChunkSize = parseInt(key, value, this.heapDumpChunkSize);
+                break;
+            case "heapdump.max.rate":
+                this.heapDumpMaxRate = parseLong(key, value, this.heapDumpMaxRate);
+                break;
+            case "heapdump.keep.file":
+                this.heapDumpKeepFile = Boolean.parseBoolean(value);
+                break;
+            case "nmt.enabled":
+                this.nmtEnabled = Boolean.parseBoolean(value);
+                break;
+            case "nmt.interval":
+                this.nmtInterval = parseInt(key, value, this.nmtInterval);
+                break;
+            case "spool.enabled":
+                this.spoolEnabled = Boolean.parseBoolean(value);
+                break;
+            case "spool.dir":
+                this.spoolDir = value;
+                break;
+            case "spool.max.bytes":
+                this.spoolMaxBytes = parseLong(key, value, this.spoolMaxBytes);
+                break;
+            case "spool.max.age":
+                this.spoolMaxAge = parseInt(key, value, this.spoolMaxAge);
+                break;
+            case "spool.batch.size":
+                this.spoolBatchSize = parseInt(key, value, this.spoolBatchSize);
+                break;
+            case "transport":
+                this.transport = value;
+                break;
+            case "transport.gzip.min":
+                this.transportGzipMin = parseInt(key, value, this.transportGzipMin);
+                break;
+            case "transport.retries":
+                this.transportRetries = parseInt(key, value, this.transportRetries);
+                break;
+            case "transport.backoff.max":
+                this.transportBackoffMax = parseLong(key, value, this.transportBackoffMax);
+                break;
+            case "transport.idle.timeout":
+                this.transportIdleTimeout = parseInt(key, value, this.transportIdleTimeout);
+                break;
+            case "report.format":
+                this.reportFormat = value.trim().toLowerCase();
+                break;
+        }
+    }
+    
+    private static int parseInt(String key, String value, int defaultValue) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("[AgentConfig] Invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+    
+    private static long parseLong(String key, String value, long defaultValue) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.err.println("[AgentConfig] Invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+    
+    private static double parseDouble(String key, String value, double defaultValue) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            System.err.println("[AgentConfig] Invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+    
     /**
      * 自动检测配置
      */
@@ -153,11 +371,6 @@ public class AgentConfig {
         }
     }
     
-    private static String getSystemProperty(String key, String defaultValue) {
-        String value = System.getProperty(key);
-        return (value != null && !value.isEmpty()) ? value : defaultValue;
-    }
-    
     /**
      * 获取当前进程 ID（JDK 8 兼容方式）
      */
@@ -179,21 +392,78 @@ public class AgentConfig {
     // Getters
     public String getServerUrl() { return serverUrl; }
     public int getReportInterval() { return reportInterval; }
+    public int getMetricsSampleInterval() { return metricsSampleInterval; }
+    public int getMetricsBufferSize() { return metricsBufferSize; }
+    public int getMetricsQueueSize() { return metricsQueueSize; }
     public String getAppName() { return appName; }
     public String getAppHost() { return appHost; }
     public int getAppPort() { return appPort; }
     public int getThreadServerPort() { return threadServerPort; }
     public void setThreadServerPort(int port) { this.threadServerPort = port; }
+    public int getThreadSampleInterval() { return threadSampleInterval; }
+    public int getThreadSampleHistory() { return threadSampleHistory; }
+    public int getThreadProcThreshold() { return threadProcThreshold; }
+    public double getMemoryUsageThreshold() { return memoryUsageThreshold; }
+    public double getMemoryCollectionThreshold() { return memoryCollectionThreshold; }
+    public int getProfilerInterval() { return profilerInterval; }
+    public int getProfilerMaxDepth() { return profilerMaxDepth; }
+    public int getProfilerMaxNodes() { return profilerMaxNodes; }
+    public double getProfilerMaxOverhead() { return profilerMaxOverhead; }
+    public int getProfilerMaxSeconds() { return profilerMaxSeconds; }
+    public boolean isContentionEnabled() { return contentionEnabled; }
+    public int getContentionInterval() { return contentionInterval; }
+    public int getContentionMaxMonitors() { return contentionMaxMonitors; }
+    public int getDeadlockMinInterval() { return deadlockMinInterval; }
+    public double getOverheadBudget() { return overheadBudget; }
+    public int getOverheadWindow() { return overheadWindow; }
+    public String getMethodTimers() { return methodTimers; }
+    public int getMethodTimersMax() { return methodTimersMax; }
+    public boolean isHistogramEnabled() { return histogramEnabled; }
+    public int getHistogramInterval() { return histogramInterval; }
+    public int getHistogramHistory() { return histogramHistory; }
+    public int getHistogramMaxClasses() { return histogramMaxClasses; }
+    public boolean isHistogramAll() { return histogramAll; }
+    public boolean isHeapDumpEnabled() { return heapDumpEnabled; }
+    public String getHeapDumpDir() { return heapDumpDir; }
+    public int getHeapDumpChunkSize() { return heapDumpChunkSize; }
+    public long getHeapDumpMaxRate() { return heapDumpMaxRate; }
+    public boolean isHeapDumpKeepFile() { return heapDumpKeepFile; }
+    public boolean isNmtEnabled() { return nmtEnabled; }
+    public int getNmtInterval() { return nmtInterval; }
+    public boolean isSpoolEnabled() { return spoolEnabled; }
+    public String getSpoolDir() { return spoolDir; }
+    public long getSpoolMaxBytes() { return spoolMaxBytes; }
+    public int getSpoolMaxAge() { return spoolMaxAge; }
+    public int getSpoolBatchSize() { return spoolBatchSize; }
+    public String getTransport() { return transport; }
+    public int getTransportGzipMin() { return transportGzipMin; }
+    public int getTransportRetries() { return transportRetries; }
+    public long getTransportBackoffMax() { return transportBackoffMax; }
+    public int getTransportIdleTimeout() { return transportIdleTimeout; }
+    public String getReportFormat() { return reportFormat; }
     
     @Override
     public String toString() {
         return "AgentConfig{" +
                 "serverUrl='" + serverUrl + '\'' +
                 ", reportInterval=" + reportInterval +
+                ", metricsSampleInterval=" + metricsSampleInterval +
                 ", appName='" + appName + '\'' +
                 ", appHost='" + appHost + '\'' +
                 ", appPort=" + appPort +
                 ", threadServerPort=" + threadServerPort +
+                ", threadSampleInterval=" + threadSampleInterval +
+                ", threadSampleHistory=" + threadSampleHistory +
+                ", threadProcThreshold=" + threadProcThreshold +
+                ", memoryUsageThreshold=" + memoryUsageThreshold +
+                ", memoryCollectionThreshold=" + memoryCollectionThreshold +
+                ", profilerInterval=" + profilerInterval +
+                ", profilerMaxNodes=" + profilerMaxNodes +
+                ", contentionEnabled=" + contentionEnabled +
+                ", overheadBudget=" + overheadBudget +
+                ", spoolEnabled=" + spoolEnabled +
+                ", transport='" + transport + '\'' +
+                ", reportFormat='" + reportFormat + '\'' +
                 '}';
     }
 }
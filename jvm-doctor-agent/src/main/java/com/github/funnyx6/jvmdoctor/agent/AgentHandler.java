@@ -0,0 +1,18 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+/**
+ * Agent 自监控 HTTP Handler
+ * 
+ * GET /api/agent  上报次数 / 失败 / 重试 / 字节数、Agent 线程的 CPU 和分配，以及各组件的累计耗时分布
+ */
+public class AgentHandler extends ApiHandler {
+    
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        send(exchange, 200, toJson(AgentTelemetry.getShared().getState()));
+    }
+}
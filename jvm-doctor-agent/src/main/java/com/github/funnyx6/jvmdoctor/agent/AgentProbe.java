@@ -0,0 +1,144 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.github.funnyx6.jvmdoctor.core.LogLinearHistogram;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Agent 自监控探针
+ *
+ * 每个上报区间输出 agent.* 指标：
+ * <ul>
+ *   <li>agent.&lt;组件&gt;.duration.count / p50 / p99 / max：区间内组件每次执行的耗时分布（微秒），
+ *       如 agent.probe.gc.duration.p99（探针采集）、agent.encoder.duration.*（序列化）、
+ *       agent.report.duration.*（HTTP 往返，含重试），仅输出区间内执行过的组件</li>
+ *   <li>agent.payload.bytes：上一次上报的请求体字节数</li>
+ *   <li>agent.report.failed / agent.report.retried：区间内上报失败 / 重试次数</li>
+ *   <li>agent.transport.connects / agent.transport.bytes：区间内新建的连接数（握手次数）/ 发出的请求体字节数（压缩后）</li>
+ *   <li>agent.cpu.usage：区间内 Agent 线程的 CPU 使用率（单核的比例）</li>
+ *   <li>agent.alloc.rate：区间内 Agent 线程的分配速率（字节/秒）</li>
+ *   <li>agent.threads：存活的 Agent 线程数</li>
+ * </ul>
+ * 线程统计按存活线程求和，已退出线程的消耗不计入区间增量。
+ */
+public class AgentProbe implements MetricsProbe {
+
+    private final AgentTelemetry telemetry;
+    private final MetricRegistry registry;
+    private final LogLinearHistogram.Snapshot scratch = new LogLinearHistogram.Snapshot();
+
+    private final int payloadBytesId;
+    private final int failedId;
+    private final int retriedId;
+    private final int connectsId;
+    private final int sentBytesId;
+    private final int cpuUsageId;
+    private final int allocRateId;
+    private final int threadsId;
+
+    // 按账户的耗时分布，随新账户注册而扩充
+    private OverheadGovernor.Account[] accounts = new OverheadGovernor.Account[0];
+    private GcProbe.HistogramIds[] accountIds = new GcProbe.HistogramIds[0];
+    private int knownAccounts = -1;
+
+    private long lastFailures;
+    private long lastRetries;
+    private long lastConnects;
+    private long lastSentBytes;
+    private long lastCpuNanos = -1;
+    private long lastAllocBytes = -1;
+    private long lastNanos;
+
+    public AgentProbe(AgentTelemetry telemetry, MetricRegistry registry) {
+        this.telemetry = telemetry;
+        this.registry = registry;
+        this.payloadBytesId = registry.registerLong("agent.payload.bytes");
+        this.failedId = registry.registerLong("agent.report.failed");
+        this.retriedId = registry.registerLong("agent.report.retried");
+        this.connectsId = registry.registerLong("agent.transport.connects");
+        this.sentBytesId = registry.registerLong("agent.transport.bytes");
+        this.cpuUsageId = registry.registerDouble("agent.cpu.usage");
+        this.allocRateId = registry.registerDouble("agent.alloc.rate");
+        this.threadsId = registry.registerLong("agent.threads");
+        this.lastFailures = telemetry.getFailures();
+        this.lastRetries = telemetry.getRetries();
+        this.lastConnects = telemetry.getConnects();
+        this.lastSentBytes = telemetry.getSentBytes();
+        refreshAccounts();
+    }
+
+    @Override
+    public void collect(MetricsSnapshot snapshot) {
+        if (OverheadGovernor.accounts().size() != knownAccounts) {
+            refreshAccounts();
+            snapshot.ensureCapacity();
+        }
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i].getDurationMicros().intervalSnapshot(scratch);
+            long count = scratch.getCount();
+            if (count == 0) {
+                continue;
+            }
+            GcProbe.HistogramIds ids = accountIds[i];
+            snapshot.setLong(ids.count, count);
+            snapshot.setLong(ids.p50, scratch.getValueAtQuantile(0.5));
+            snapshot.setLong(ids.p99, scratch.getValueAtQuantile(0.99));
+            snapshot.setLong(ids.max, scratch.getMax());
+        }
+
+        long failures = telemetry.getFailures();
+        long retries = telemetry.getRetries();
+        snapshot.setLong(payloadBytesId, telemetry.getLastPayloadBytes());
+        snapshot.setLong(failedId, failures - lastFailures);
+        snapshot.setLong(retriedId, retries - lastRetries);
+        lastFailures = failures;
+        lastRetries = retries;
+        long connects = telemetry.getConnects();
+        long sentBytes = telemetry.getSentBytes();
+        snapshot.setLong(connectsId, connects - lastConnects);
+        snapshot.setLong(sentBytesId, sentBytes - lastSentBytes);
+        lastConnects = connects;
+        lastSentBytes = sentBytes;
+
+        AgentTelemetry.ThreadUsage usage = telemetry.threadUsage();
+        long now = System.nanoTime();
+        double seconds = (now - lastNanos) / 1e9;
+        if (lastNanos != 0 && seconds > 0) {
+            if (usage.getCpuNanos() >= 0 && lastCpuNanos >= 0) {
+                snapshot.setDouble(cpuUsageId, Math.max(usage.getCpuNanos() - lastCpuNanos, 0) / 1e9 / seconds);
+            }
+            if (usage.getAllocBytes() >= 0 && lastAllocBytes >= 0) {
+                snapshot.setDouble(allocRateId, Math.max(usage.getAllocBytes() - lastAllocBytes, 0) / seconds);
+            }
+        }
+        snapshot.setLong(threadsId, usage.getThreadCount());
+        lastCpuNanos = usage.getCpuNanos();
+        lastAllocBytes = usage.getAllocBytes();
+        lastNanos = now;
+    }
+
+    /**
+     * 为新注册的账户注册耗时指标（新账户首个区间包含其注册以来的全部记录）
+     */
+    private void refreshAccounts() {
+        Collection<OverheadGovernor.Account> all = OverheadGovernor.accounts();
+        knownAccounts = all.size();
+        for (OverheadGovernor.Account account : all) {
+            addAccount(account);
+        }
+    }
+
+    private void addAccount(OverheadGovernor.Account account) {
+        for (OverheadGovernor.Account known : accounts) {
+            if (known == account) {
+                return;
+            }
+        }
+        int n = accounts.length;
+        accounts = Arrays.copyOf(accounts, n + 1);
+        accountIds = Arrays.copyOf(accountIds, n + 1);
+        accounts[n] = account;
+        accountIds[n] = new GcProbe.HistogramIds(registry, "agent." + account.getName() + ".duration");
+    }
+}
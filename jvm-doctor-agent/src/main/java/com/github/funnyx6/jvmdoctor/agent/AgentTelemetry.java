@@ -0,0 +1,233 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.github.funnyx6.jvmdoctor.core.LogLinearHistogram;
+
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Agent 自监控
+ *
+ * 汇总 Agent 自身的开销，便于判断诊断工具本身是否成为问题：
+ * <ul>
+ *   <li>各组件每次执行的耗时分布（来自 {@link OverheadGovernor} 的账户：探针采集、JSON 编码、上报往返、线程接口等）</li>
+ *   <li>上报次数、失败次数、重试次数和请求体字节数</li>
+ *   <li>传输层建立的连接数（TCP / TLS 握手）和实际发出的请求体字节数（压缩后）</li>
+ *   <li>Agent 自身线程（名称以 {@value #THREAD_PREFIX} 开头）的 CPU 时间和分配字节数</li>
+ * </ul>
+ * 计数只做原子累加；线程统计按需批量读取，不在热路径上。
+ */
+public class AgentTelemetry {
+
+    /** Agent 线程的名称前缀 */
+    public static final String THREAD_PREFIX = "jvm-doctor";
+
+    private final ThreadSampler sampler;
+
+    private final AtomicLong reports = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong payloadBytes = new AtomicLong();
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private volatile long lastPayloadBytes;
+
+    public AgentTelemetry(ThreadSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    /**
+     * 记录一次上报
+     *
+     * @param bytes 请求体字节数
+     * @param success 是否成功
+     */
+    public void recordReport(long bytes, boolean success) {
+        reports.incrementAndGet();
+        payloadBytes.addAndGet(bytes);
+        lastPayloadBytes = bytes;
+        if (!success) {
+            failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * 记录一次发送重试
+     */
+    public void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    /**
+     * 记录传输层新建一条连接
+     */
+    public void recordConnect() {
+        connects.incrementAndGet();
+    }
+
+    /**
+     * 记录传输层发出的请求体字节数（压缩后）
+     */
+    public void recordSent(long bytes) {
+        sentBytes.addAndGet(bytes);
+    }
+
+    public long getReports() {
+        return reports.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * 累计发送的请求体字节数
+     */
+    public long getPayloadBytes() {
+        return payloadBytes.get();
+    }
+
+    public long getConnects() {
+        return connects.get();
+    }
+
+    /**
+     * 累计由传输层发出的请求体字节数（压缩后，含重试和回放）
+     */
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    /**
+     * 最近一次上报的请求体字节数
+     */
+    public long getLastPayloadBytes() {
+        return lastPayloadBytes;
+    }
+
+    /**
+     * 统计当前存活的 Agent 线程
+     */
+    public ThreadUsage threadUsage() {
+        long[] threadIds = sampler.threadIds();
+        ThreadInfo[] infos = sampler.threadInfos(threadIds, 0);
+        int count = 0;
+        long[] agentIds = new long[threadIds.length];
+        for (int i = 0; i < infos.length; i++) {
+            if (infos[i] != null && infos[i].getThreadName().startsWith(THREAD_PREFIX)) {
+                agentIds[count++] = threadIds[i];
+            }
+        }
+        agentIds = Arrays.copyOf(agentIds, count);
+
+        long[] cpuTimes = sampler.cpuTimes(agentIds);
+        long[] allocated = sampler.allocatedBytes(agentIds);
+        long cpu = sum(cpuTimes);
+        long alloc = sum(allocated);
+        return new ThreadUsage(count, cpu, alloc);
+    }
+
+    private static long sum(long[] values) {
+        long total = 0;
+        boolean any = false;
+        for (long value : values) {
+            if (value >= 0) {
+                total += value;
+                any = true;
+            }
+        }
+        return any || values.length == 0 ? total : -1;
+    }
+
+    /**
+     * 累计视图（自 Agent 启动），供 /api/agent 使用
+     */
+    public Map<String, Object> getState() {
+        Map<String, Object> state = new HashMap<>();
+        Map<String, Object> report = new HashMap<>();
+        report.put("reports", getReports());
+        report.put("failures", getFailures());
+        report.put("retries", getRetries());
+        report.put("payloadBytes", getPayloadBytes());
+        report.put("lastPayloadBytes", getLastPayloadBytes());
+        report.put("connects", getConnects());
+        report.put("sentBytes", getSentBytes());
+        state.put("report", report);
+
+        ThreadUsage usage = threadUsage();
+        Map<String, Object> threads = new HashMap<>();
+        threads.put("count", usage.getThreadCount());
+        threads.put("cpuNanos", usage.getCpuNanos());
+        threads.put("allocBytes", usage.getAllocBytes());
+        state.put("threads", threads);
+
+        List<Map<String, Object>> components = new ArrayList<>();
+        for (OverheadGovernor.Account account : OverheadGovernor.accounts()) {
+            LogLinearHistogram.Snapshot duration = account.getDurationMicros().snapshot();
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("name", account.getName());
+            entry.put("calls", account.getCalls());
+            entry.put("skipped", account.getSkipped());
+            entry.put("cpuNanos", account.getCpuNanos());
+            entry.put("allocBytes", account.getAllocBytes());
+            entry.put("durationP50Micros", duration.getValueAtQuantile(0.5));
+            entry.put("durationP99Micros", duration.getValueAtQuantile(0.99));
+            entry.put("durationMaxMicros", duration.getMax());
+            components.add(entry);
+        }
+        components.sort((a, b) -> Long.compare((Long) b.get("cpuNanos"), (Long) a.get("cpuNanos")));
+        state.put("components", components);
+        return state;
+    }
+
+    /**
+     * Agent 线程的资源使用
+     */
+    public static final class ThreadUsage {
+        private final int threadCount;
+        private final long cpuNanos;
+        private final long allocBytes;
+
+        ThreadUsage(int threadCount, long cpuNanos, long allocBytes) {
+            this.threadCount = threadCount;
+            this.cpuNanos = cpuNanos;
+            this.allocBytes = allocBytes;
+        }
+
+        public int getThreadCount() { return threadCount; }
+        /** 存活 Agent 线程的累计 CPU 时间（纳秒），不可用时为 -1 */
+        public long getCpuNanos() { return cpuNanos; }
+        /** 存活 Agent 线程的累计分配字节数，不可用时为 -1 */
+        public long getAllocBytes() { return allocBytes; }
+    }
+
+    // ========== 进程内共享实例 ==========
+
+    private static volatile AgentTelemetry shared;
+
+    /**
+     * 进程内共享的实例，上报模块写入、线程服务器读取
+     */
+    public static AgentTelemetry getShared() {
+        AgentTelemetry telemetry = shared;
+        if (telemetry == null) {
+            synchronized (AgentTelemetry.class) {
+                telemetry = shared;
+                if (telemetry == null) {
+                    telemetry = new AgentTelemetry(new ThreadSampler());
+                    shared = telemetry;
+                }
+            }
+        }
+        return telemetry;
+    }
+}
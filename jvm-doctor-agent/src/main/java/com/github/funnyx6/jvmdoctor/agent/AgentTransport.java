@@ -0,0 +1,92 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Agent 到 Server 的 HTTP 传输（SPI）
+ *
+ * 注册、上报、告警推送等请求都经由同一个传输实例发送，由 {@link #create(AgentConfig)} 按 transport 配置创建：
+ * <ul>
+ *   <li>url（默认）：{@link UrlConnectionTransport}，基于 HttpURLConnection，沿用 JDK 的代理设置（http.proxyHost 等），
+ *       持久连接按 Server 声明的 Keep-Alive 超时跨上报周期复用</li>
+ *   <li>pooled：{@link PooledHttpTransport}，自带连接池的 HTTP/1.1 客户端，用于 Server 不声明 Keep-Alive 超时的部署</li>
+ *   <li>其他值视为实现类的全限定名，需有 (AgentConfig) 构造方法</li>
+ * </ul>
+ * 实现必须线程安全。
+ */
+public interface AgentTransport {
+
+    /**
+     * 请求头：发送时的 Agent 时钟（epoch 毫秒），Server 据此估算时钟偏差并校正样本的采集时间。
+     * 实现应在每次发送（含重试）时写入当前时间
+     */
+    String CLOCK_HEADER = "X-Agent-Time";
+
+    /**
+     * 发送 POST 请求
+     *
+     * @param path 接口路径（如 /api/metrics），拼接在 Server 地址之后
+     * @param contentType 请求体类型
+     * @param body 请求体
+     * @param length 有效长度
+     * @return Server 的响应（含非 200 的状态）
+     * @throws IOException 连接或读写失败（已按实现的策略重试）
+     */
+    Response post(String path, String contentType, byte[] body, int length) throws IOException;
+
+    /**
+     * 关闭空闲连接，释放资源
+     */
+    void close();
+
+    /**
+     * 按配置创建传输，实现类无法创建时退回默认实现
+     */
+    static AgentTransport create(AgentConfig config) {
+        String name = config.getTransport();
+        if (name.isEmpty() || "url".equals(name)) {
+            return new UrlConnectionTransport(config);
+        }
+        if ("pooled".equals(name)) {
+            return new PooledHttpTransport(config);
+        }
+        try {
+            Class<?> type = Class.forName(name, true, AgentTransport.class.getClassLoader());
+            return (AgentTransport) type.getConstructor(AgentConfig.class).newInstance(config);
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            System.err.println("[AgentTransport] Cannot create transport " + name + ": " + e + ", using url");
+            return new UrlConnectionTransport(config);
+        }
+    }
+
+    /**
+     * HTTP 响应
+     */
+    final class Response {
+
+        private final int status;
+        private final byte[] body;
+
+        public Response(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public boolean isOk() {
+            return status == 200;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String bodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+}
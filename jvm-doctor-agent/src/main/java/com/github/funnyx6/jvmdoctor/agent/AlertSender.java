@@ -0,0 +1,186 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.github.funnyx6.jvmdoctor.core.MemoryPoolMonitor;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 告警推送
+ *
+ * 告警由独立的 jvm-doctor-alerts 线程发送，不排在指标发送（含重试和暂存回放）之后。
+ * Server 不可达或返回 5xx 时告警留在内存队列中按产生顺序重发，间隔从 1 秒起翻倍，不超过上报间隔；
+ * 队列最多 {@value #MAX_PENDING} 条，满时丢弃最旧的。4xx 说明告警本身无效，不再重发。
+ * Server 对同一来源 5 分钟内的重复告警去重，重发不会产生重复记录。
+ */
+public class AlertSender {
+
+    private static final String PATH = "/api/alerts";
+    private static final String JSON = "application/json";
+    static final int MAX_PENDING = 64;
+    private static final long INITIAL_RETRY_MILLIS = 1000;
+
+    private final AgentTransport transport;
+    private final Supplier<Long> appId;
+    private final long maxRetryMillis;
+    private final ScheduledThreadPoolExecutor executor;
+    // 以下字段仅告警线程访问
+    private final MetricsJsonEncoder encoder = new MetricsJsonEncoder();
+    private final ArrayDeque<MemoryPoolMonitor.ThresholdEvent> pending = new ArrayDeque<>();
+    private long retryMillis;
+    private boolean retryScheduled;
+
+    private volatile int pendingCount;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param transport 与指标上报共用的传输
+     * @param appId 注册得到的应用 ID
+     * @param maxRetryMillis 重发间隔上限（一般为上报间隔）
+     */
+    public AlertSender(AgentTransport transport, Supplier<Long> appId, long maxRetryMillis) {
+        this.transport = transport;
+        this.appId = appId;
+        this.maxRetryMillis = Math.max(1, maxRetryMillis);
+        this.retryMillis = Math.min(INITIAL_RETRY_MILLIS, this.maxRetryMillis);
+        this.executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "jvm-doctor-alerts");
+            t.setDaemon(true);
+            return t;
+        });
+        // 停止时不再等待尚未到期的重发
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * 提交告警（任意线程调用，不阻塞）
+     */
+    public void send(MemoryPoolMonitor.ThresholdEvent event) {
+        try {
+            executor.execute(() -> {
+                if (pending.size() >= MAX_PENDING) {
+                    pending.pollFirst();
+                    dropped.incrementAndGet();
+                    System.err.println("[AlertSender] Alert queue full, dropped oldest alert");
+                }
+                pending.addLast(event);
+                pendingCount = pending.size();
+                // 正在等待重发时按顺序排队，不插队
+                if (!retryScheduled) {
+                    flush();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 已停止
+        }
+    }
+
+    /**
+     * 按顺序发送待发告警，遇到可重试的失败时停下并安排重发
+     */
+    private void flush() {
+        while (!pending.isEmpty()) {
+            MemoryPoolMonitor.ThresholdEvent event = pending.peekFirst();
+            int status = post(event);
+            if (status < 0 || status >= 500) {
+                scheduleRetry();
+                return;
+            }
+            pending.pollFirst();
+            pendingCount = pending.size();
+            if (status == 200) {
+                sent.incrementAndGet();
+            } else {
+                dropped.incrementAndGet();
+                System.err.println("[AlertSender] Alert rejected, status: " + status);
+            }
+        }
+        retryMillis = Math.min(INITIAL_RETRY_MILLIS, maxRetryMillis);
+    }
+
+    private void scheduleRetry() {
+        retryScheduled = true;
+        long delay = retryMillis;
+        retryMillis = Math.min(retryMillis * 2, maxRetryMillis);
+        try {
+            executor.schedule(() -> {
+                retryScheduled = false;
+                flush();
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 已停止
+        }
+    }
+
+    /**
+     * 发送一条告警
+     *
+     * @return HTTP 状态码，网络错误或尚未注册时返回 -1
+     */
+    private int post(MemoryPoolMonitor.ThresholdEvent event) {
+        Long id = appId.get();
+        if (id == null) {
+            return -1;
+        }
+        boolean collection = event.getType() == MemoryPoolMonitor.ThresholdType.COLLECTION;
+        encoder.encodeAlert(id,
+                collection ? "memory_gc_threshold" : "memory_threshold",
+                collection ? "critical" : "warning",
+                event.getPoolName(), event.toString(), event.getTimestamp());
+        try {
+            int status = transport.post(PATH, JSON, encoder.buffer(), encoder.length()).getStatus();
+            if (status != 200) {
+                System.err.println("[AlertSender] Failed to push alert, status: " + status);
+            }
+            return status;
+        } catch (IOException e) {
+            System.err.println("[AlertSender] Alert send error: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * 等待发送的告警数
+     */
+    public int getPending() {
+        return pendingCount;
+    }
+
+    /**
+     * 已送达的告警数
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * 因队列满或 Server 拒绝而丢弃的告警数
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * 停止告警线程，未送达的告警随之丢弃
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (pendingCount > 0) {
+            System.err.println("[AlertSender] " + pendingCount + " alerts not delivered");
+        }
+    }
+}
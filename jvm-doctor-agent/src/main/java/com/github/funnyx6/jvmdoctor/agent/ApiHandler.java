@@ -0,0 +1,160 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Agent HTTP API 的公共基类
+ * 提供查询参数解析、JSON 序列化和响应输出
+ */
+public abstract class ApiHandler implements HttpHandler {
+    
+    /**
+     * 输出 JSON 响应（附带 CORS 头）
+     */
+    protected static void send(HttpExchange exchange, int statusCode, String json) throws IOException {
+        send(exchange, statusCode, "application/json; charset=utf-8", json);
+    }
+    
+    /**
+     * 输出指定类型的响应（附带 CORS 头）
+     */
+    protected static void send(HttpExchange exchange, int statusCode, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+    
+    /**
+     * 有副作用的操作只接受 POST（线程服务器没有认证，避免被一个 GET 链接触发），否则返回 405
+     * 
+     * @return 是否为 POST 请求
+     */
+    protected static boolean requirePost(HttpExchange exchange) throws IOException {
+        if ("POST".equals(exchange.getRequestMethod())) {
+            return true;
+        }
+        exchange.getResponseHeaders().add("Allow", "POST");
+        send(exchange, 405, "{\"error\":\"Method not allowed, use POST\"}");
+        return false;
+    }
+    
+    /**
+     * 读取查询参数
+     */
+    protected static String queryParam(String query, String name) {
+        if (query == null || query.isEmpty()) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            if (key.equals(name)) {
+                return eq >= 0 ? pair.substring(eq + 1) : "";
+            }
+        }
+        return null;
+    }
+    
+    protected static int intParam(String query, String name, int defaultValue) {
+        String value = queryParam(query, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * 解析时长：500ms、5s、5m、1h，纯数字按秒
+     */
+    protected static long parseDurationMillis(String value, long defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            String v = value.trim().toLowerCase();
+            if (v.endsWith("ms")) {
+                return Long.parseLong(v.substring(0, v.length() - 2));
+            } else if (v.endsWith("s")) {
+                return Long.parseLong(v.substring(0, v.length() - 1)) * 1000;
+            } else if (v.endsWith("m")) {
+                return Long.parseLong(v.substring(0, v.length() - 1)) * 60_000;
+            } else if (v.endsWith("h")) {
+                return Long.parseLong(v.substring(0, v.length() - 1)) * 3_600_000;
+            }
+            return Long.parseLong(v) * 1000;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
+    protected static String toJson(Map<String, Object> map) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        int i = 0;
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (i > 0) sb.append(",");
+            sb.append("\"").append(entry.getKey()).append("\":");
+            Object value = entry.getValue();
+            if (value == null) {
+                sb.append("null");
+            } else if (value instanceof Map) {
+                sb.append(toJson((Map<String, Object>) value));
+            } else if (value instanceof List) {
+                sb.append(toJson((List<?>) value));
+            } else if (value instanceof String) {
+                sb.append("\"").append(escapeJson((String) value)).append("\"");
+            } else if (value instanceof Number) {
+                sb.append(value);
+            } else if (value instanceof Boolean) {
+                sb.append(value);
+            } else {
+                sb.append("\"").append(escapeJson(value.toString())).append("\"");
+            }
+            i++;
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+    
+    protected static String toJson(List<?> list) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        for (int i = 0; i < list.size(); i++) {
+            if (i > 0) sb.append(",");
+            Object value = list.get(i);
+            if (value instanceof Map) {
+                sb.append(toJson((Map<String, Object>) value));
+            } else if (value instanceof String) {
+                sb.append("\"").append(escapeJson((String) value)).append("\"");
+            } else {
+                sb.append(value);
+            }
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+    
+    protected static String escapeJson(String s) {
+        if (s == null) return "";
+        return s.replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n")
+                .replace("\r", "\\r")
+                .replace("\t", "\\t");
+    }
+}
@@ -1,8 +1,5 @@
 package com.github.funnyx6.jvmdoctor.agent;
 
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
@@ -13,11 +10,18 @@ import java.util.Map;
  */
 public class AppRegister {
     
+    private static final String JSON = "application/json";
+    private static final byte[] EMPTY = new byte[0];
+    
     private final AgentConfig config;
+    private final AgentTransport transport;
     private Long appId;
+    // Server 支持的二进制上报协议版本（0 表示只支持 JSON）
+    private int binaryProtocol;
     
-    public AppRegister(AgentConfig config) {
+    public AppRegister(AgentConfig config, AgentTransport transport) {
         this.config = config;
+        this.transport = transport;
     }
     
     /**
@@ -27,8 +31,6 @@ public class AppRegister {
      */
     public Long register() {
         try {
-            String registerUrl = config.getServerUrl() + "/api/apps/register";
-            
             // 构建请求体
             Map<String, Object> requestBody = new HashMap<>();
             requestBody.put("appName", config.getAppName());
@@ -39,30 +41,21 @@ public class AppRegister {
             requestBody.put("startTime", System.currentTimeMillis());
             requestBody.put("threadServerPort", config.getThreadServerPort());
             
-            String json = toJson(requestBody);
+            byte[] json = toJson(requestBody).getBytes(StandardCharsets.UTF_8);
             
             // 发送 POST 请求
-            HttpURLConnection conn = (HttpURLConnection) new URL(registerUrl).openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-            conn.setConnectTimeout(5000);
-            conn.setReadTimeout(5000);
-            
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(json.getBytes(StandardCharsets.UTF_8));
-            }
-            
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
-                String response = readResponse(conn);
-                this.appId = extractAppId(response);
-                System.out.println("[AppRegister] Registered successfully, appId: " + appId);
+            AgentTransport.Response response = transport.post("/api/apps/register", JSON, json, json.length);
+            if (response.isOk()) {
+                String body = response.bodyAsString();
+                this.appId = extractLong(body, "appId");
+                Long protocol = extractLong(body, "binaryProtocol");
+                this.binaryProtocol = protocol != null ? protocol.intValue() : 0;
+                System.out.println("[AppRegister] Registered successfully, appId: " + appId
+                        + ", binaryProtocol: " + binaryProtocol);
                 return appId;
             } else {
-                System.err.println("[AppRegister] Failed to register, response code: " + responseCode);
-                String error = readResponse(conn);
-                System.err.println("[AppRegister] Error: " + error);
+                System.err.println("[AppRegister] Failed to register, response code: " + response.getStatus());
+                System.err.println("[AppRegister] Error: " + response.bodyAsString());
                 return null;
             }
             
@@ -83,18 +76,11 @@ public class AppRegister {
         }
         
         try {
-            String heartbeatUrl = config.getServerUrl() + "/api/apps/" + appId + "/heartbeat";
-            
-            HttpURLConnection conn = (HttpURLConnection) new URL(heartbeatUrl).openConnection();
-            conn.setRequestMethod("POST");
-            conn.setConnectTimeout(3000);
-            conn.setReadTimeout(3000);
-            
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
+            AgentTransport.Response response = transport.post("/api/apps/" + appId + "/heartbeat", JSON, EMPTY, 0);
+            if (response.isOk()) {
                 return true;
             } else {
-                System.err.println("[AppRegister] Heartbeat failed, response code: " + responseCode);
+                System.err.println("[AppRegister] Heartbeat failed, response code: " + response.getStatus());
                 return false;
             }
             
@@ -113,19 +99,12 @@ public class AppRegister {
         }
         
         try {
-            String offlineUrl = config.getServerUrl() + "/api/apps/" + appId + "/offline";
-            
-            HttpURLConnection conn = (HttpURLConnection) new URL(offlineUrl).openConnection();
-            conn.setRequestMethod("POST");
-            conn.setConnectTimeout(3000);
-            conn.setReadTimeout(3000);
-            
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
+            AgentTransport.Response response = transport.post("/api/apps/" + appId + "/offline", JSON, EMPTY, 0);
+            if (response.isOk()) {
                 System.out.println("[AppRegister] Sent offline notification");
                 return true;
             } else {
-                System.err.println("[AppRegister] Offline notification failed: " + responseCode);
+                System.err.println("[AppRegister] Offline notification failed: " + response.getStatus());
                 return false;
             }
             
@@ -139,6 +118,13 @@ public class AppRegister {
         return appId;
     }
     
+    /**
+     * Server 在注册响应中声明的二进制上报协议版本，旧版 Server 为 0
+     */
+    public int getBinaryProtocol() {
+        return binaryProtocol;
+    }
+    
     private String toJson(Map<String, Object> map) {
         StringBuilder sb = new StringBuilder();
         sb.append("{");
@@ -158,28 +144,13 @@ public class AppRegister {
         return sb.toString();
     }
     
-    private String readResponse(HttpURLConnection conn) {
-        try {
-            java.io.InputStream is = conn.getInputStream();
-            java.io.BufferedReader reader = new java.io.BufferedReader(
-                    new java.io.InputStreamReader(is, StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
-            }
-            return sb.toString();
-        } catch (Exception e) {
-            return "";
-        }
-    }
-    
-    private Long extractAppId(String json) {
+    private Long extractLong(String json, String key) {
         // 简单解析 {"appId": 1, ...}
         try {
-            int start = json.indexOf("\"appId\":");
+            String prefix = "\"" + key + "\":";
+            int start = json.indexOf(prefix);
             if (start >= 0) {
-                start += 8;
+                start += prefix.length();
                 int end = json.indexOf(",", start);
                 if (end < 0) end = json.indexOf("}", start);
                 String idStr = json.substring(start, end).trim();
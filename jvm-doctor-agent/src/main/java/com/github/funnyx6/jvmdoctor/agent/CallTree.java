@@ -0,0 +1,124 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.util.Arrays;
+
+/**
+ * 紧凑调用树
+ *
+ * 节点以原始类型数组保存（父节点、帧 ID、自身样本数），
+ * 子节点查找用 (父节点, 帧 ID) 组合成 long 键的 {@link LongIntMap}，不创建节点对象。
+ * 节点数有硬上限：达到上限后样本记在已存在的最深节点上，并计入截断数。非线程安全。
+ */
+public class CallTree {
+
+    private static final int ROOT = 0;
+
+    private final FrameTable frames;
+    private final int maxNodes;
+    private final LongIntMap children = new LongIntMap(1024);
+
+    private int[] parents = new int[1024];
+    private int[] frameIds = new int[1024];
+    private long[] selfSamples = new long[1024];
+    private int size = 1; // 0 号节点为虚拟根
+
+    private long totalSamples;
+    private long truncatedSamples;
+
+    public CallTree(FrameTable frames, int maxNodes) {
+        this.frames = frames;
+        this.maxNodes = Math.max(maxNodes, 2);
+        parents[ROOT] = -1;
+        frameIds[ROOT] = -1;
+    }
+
+    /**
+     * 记录一条堆栈样本
+     *
+     * @param stack 堆栈，下标 0 为栈顶（与 Thread.getStackTrace 一致）
+     */
+    public void addSample(StackTraceElement[] stack) {
+        int node = ROOT;
+        boolean truncated = false;
+        for (int i = stack.length - 1; i >= 0; i--) {
+            int frame = frames.intern(stack[i]);
+            if (frame < 0) {
+                truncated = true;
+                break;
+            }
+            int child = child(node, frame);
+            if (child < 0) {
+                truncated = true;
+                break;
+            }
+            node = child;
+        }
+        selfSamples[node]++;
+        totalSamples++;
+        if (truncated) {
+            truncatedSamples++;
+        }
+    }
+
+    public int nodeCount() {
+        return size;
+    }
+
+    public long getTotalSamples() {
+        return totalSamples;
+    }
+
+    public long getTruncatedSamples() {
+        return truncatedSamples;
+    }
+
+    /**
+     * 输出折叠堆栈格式（flame graph 输入）：每行 "帧1;帧2;...;帧N 样本数"
+     */
+    public String toCollapsed() {
+        StringBuilder sb = new StringBuilder();
+        int[] path = new int[64];
+        for (int node = 1; node < size; node++) {
+            if (selfSamples[node] == 0) {
+                continue;
+            }
+            int depth = 0;
+            for (int n = node; n != ROOT; n = parents[n]) {
+                if (depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                }
+                path[depth++] = frameIds[n];
+            }
+            for (int i = depth - 1; i >= 0; i--) {
+                sb.append(frames.frameName(path[i]));
+                if (i > 0) {
+                    sb.append(';');
+                }
+            }
+            sb.append(' ').append(selfSamples[node]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private int child(int parent, int frame) {
+        long key = ((long) parent << 32) | (frame & 0xFFFFFFFFL);
+        int child = children.get(key);
+        if (child >= 0) {
+            return child;
+        }
+        if (size >= maxNodes) {
+            return -1;
+        }
+        if (size == parents.length) {
+            int capacity = Math.min(size * 2, maxNodes);
+            parents = Arrays.copyOf(parents, capacity);
+            frameIds = Arrays.copyOf(frameIds, capacity);
+            selfSamples = Arrays.copyOf(selfSamples, capacity);
+        }
+        child = size++;
+        parents[child] = parent;
+        frameIds[child] = frame;
+        children.put(key, child);
+        return child;
+    }
+}
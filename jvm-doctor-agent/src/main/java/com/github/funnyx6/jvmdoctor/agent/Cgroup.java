@@ -0,0 +1,357 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 当前进程所在 cgroup 的 CPU 和内存控制文件（Linux）
+ *
+ * 启动时根据 /proc/self/cgroup 和 /proc/self/mountinfo 定位一次控制器目录，之后每次读取只打开对应的小文件：
+ * <ul>
+ *   <li>cgroup v2：cpu.max、cpu.stat、memory.max、memory.current、cpu.pressure、memory.pressure</li>
+ *   <li>cgroup v1：cpu.cfs_quota_us / cpu.cfs_period_us、cpu.stat、cpuacct.usage、
+ *       memory.limit_in_bytes、memory.usage_in_bytes（v1 没有按 cgroup 的 PSI）</li>
+ * </ul>
+ * 容器内 cgroup 命名空间未隔离时，/proc/self/cgroup 中的路径在挂载点下不存在，此时退回挂载点本身。
+ * 读取复用 {@link ProcFileReader} 的缓冲区，非线程安全。
+ */
+public class Cgroup {
+
+    /** cpu.stat 输出下标：周期数、被限流周期数、累计限流时间（纳秒）、累计 CPU 时间（纳秒） */
+    public static final int NR_PERIODS = 0;
+    public static final int NR_THROTTLED = 1;
+    public static final int THROTTLED_NANOS = 2;
+    public static final int USAGE_NANOS = 3;
+
+    // v1 的 memory.limit_in_bytes 以接近 Long.MAX_VALUE 的页对齐值表示不限制
+    private static final long V1_UNLIMITED = Long.MAX_VALUE / 2;
+
+    private final int version;
+    private final Path cpuQuota;
+    private final Path cpuPeriod;
+    private final Path cpuStat;
+    private final Path cpuUsage;
+    private final Path memoryLimit;
+    private final Path memoryUsage;
+    private final Path cpuPressure;
+    private final Path memoryPressure;
+
+    // v2 cpu.stat：usage_usec、nr_periods、nr_throttled、throttled_usec；v1 cpu.stat：nr_periods、nr_throttled、throttled_time
+    private final ProcFileReader statReader = new ProcFileReader(
+            "nr_periods", "nr_throttled", "throttled_usec", "throttled_time", "usage_usec");
+    private final ProcFileReader valueReader = new ProcFileReader();
+    private final long[] stat = new long[5];
+    private final long[] values = new long[2];
+
+    /**
+     * @param version 1 或 2
+     * @param cpuDir cpu 控制器目录，没有时为 null
+     * @param cpuacctDir cpuacct 控制器目录（v2 与 cpuDir 相同），没有时为 null
+     * @param memoryDir memory 控制器目录，没有时为 null
+     */
+    Cgroup(int version, Path cpuDir, Path cpuacctDir, Path memoryDir) {
+        this.version = version;
+        if (version == 2) {
+            this.cpuQuota = resolve(cpuDir, "cpu.max");
+            this.cpuPeriod = null;
+            this.cpuUsage = null;
+            this.memoryLimit = resolve(memoryDir, "memory.max");
+            this.memoryUsage = resolve(memoryDir, "memory.current");
+            this.cpuPressure = resolve(cpuDir, "cpu.pressure");
+            this.memoryPressure = resolve(memoryDir, "memory.pressure");
+        } else {
+            this.cpuQuota = resolve(cpuDir, "cpu.cfs_quota_us");
+            this.cpuPeriod = resolve(cpuDir, "cpu.cfs_period_us");
+            this.cpuUsage = resolve(cpuacctDir, "cpuacct.usage");
+            this.memoryLimit = resolve(memoryDir, "memory.limit_in_bytes");
+            this.memoryUsage = resolve(memoryDir, "memory.usage_in_bytes");
+            this.cpuPressure = null;
+            this.memoryPressure = null;
+        }
+        this.cpuStat = resolve(cpuDir, "cpu.stat");
+    }
+
+    private static Path resolve(Path dir, String file) {
+        return dir != null ? dir.resolve(file) : null;
+    }
+
+    /**
+     * 定位当前进程的 cgroup
+     *
+     * @return 非 Linux 或没有挂载 cpu / memory 控制器时返回 null
+     */
+    public static Cgroup detect() {
+        try {
+            Path procCgroup = Paths.get("/proc/self/cgroup");
+            Path mountinfo = Paths.get("/proc/self/mountinfo");
+            if (!Files.isReadable(procCgroup) || !Files.isReadable(mountinfo)) {
+                return null;
+            }
+            return detect(Files.readAllLines(procCgroup, StandardCharsets.UTF_8),
+                    Files.readAllLines(mountinfo, StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 根据 /proc/self/cgroup 和 /proc/self/mountinfo 的内容定位控制器目录
+     *
+     * v1 与 v2 混合挂载（systemd hybrid）时，cpu 或 memory 控制器挂在 v1 上则按 v1 读取，
+     * 否则按 v2 读取（v2 的统一层级包含全部控制器）。
+     */
+    static Cgroup detect(List<String> cgroupLines, List<String> mountinfoLines) {
+        String v2Path = null;
+        String cpuPath = null;
+        String cpuacctPath = null;
+        String memoryPath = null;
+        for (String line : cgroupLines) {
+            // hierarchy-ID:controller-list:cgroup-path
+            int first = line.indexOf(':');
+            int second = first >= 0 ? line.indexOf(':', first + 1) : -1;
+            if (second < 0) {
+                continue;
+            }
+            String controllers = line.substring(first + 1, second);
+            String path = line.substring(second + 1);
+            if (controllers.isEmpty()) {
+                if (line.startsWith("0:")) {
+                    v2Path = path;
+                }
+                continue;
+            }
+            for (String controller : controllers.split(",")) {
+                if ("cpu".equals(controller)) {
+                    cpuPath = path;
+                } else if ("cpuacct".equals(controller)) {
+                    cpuacctPath = path;
+                } else if ("memory".equals(controller)) {
+                    memoryPath = path;
+                }
+            }
+        }
+
+        Path cpuDir = null;
+        Path cpuacctDir = null;
+        Path memoryDir = null;
+        Path v2Dir = null;
+        for (String line : mountinfoLines) {
+            // ID 父ID 主:次 根 挂载点 挂载选项 [可选字段...] - 文件系统类型 来源 超级块选项
+            int separator = line.indexOf(" - ");
+            if (separator < 0) {
+                continue;
+            }
+            String[] fields = line.substring(0, separator).split(" ");
+            String[] tail = line.substring(separator + 3).split(" ");
+            if (fields.length < 5 || tail.length < 1) {
+                continue;
+            }
+            String root = fields[3];
+            String mountPoint = unescape(fields[4]);
+            if ("cgroup2".equals(tail[0])) {
+                if (v2Path != null && v2Dir == null) {
+                    v2Dir = controllerDir(root, mountPoint, v2Path);
+                }
+            } else if ("cgroup".equals(tail[0]) && tail.length >= 3) {
+                List<String> options = Arrays.asList(tail[2].split(","));
+                if (options.contains("cpu") && cpuPath != null && cpuDir == null) {
+                    cpuDir = controllerDir(root, mountPoint, cpuPath);
+                }
+                if (options.contains("cpuacct") && cpuacctPath != null && cpuacctDir == null) {
+                    cpuacctDir = controllerDir(root, mountPoint, cpuacctPath);
+                }
+                if (options.contains("memory") && memoryPath != null && memoryDir == null) {
+                    memoryDir = controllerDir(root, mountPoint, memoryPath);
+                }
+            }
+        }
+
+        if (cpuDir != null || memoryDir != null) {
+            return new Cgroup(1, cpuDir, cpuacctDir, memoryDir);
+        }
+        if (v2Dir != null) {
+            return new Cgroup(2, v2Dir, v2Dir, v2Dir);
+        }
+        return null;
+    }
+
+    /**
+     * 挂载点 + cgroup 路径相对于挂载根的部分；不存在时（cgroup 命名空间未隔离的容器）退回挂载点
+     */
+    private static Path controllerDir(String root, String mountPoint, String cgroupPath) {
+        String relative = cgroupPath;
+        if (!"/".equals(root)) {
+            if (cgroupPath.equals(root)) {
+                relative = "/";
+            } else if (cgroupPath.startsWith(root + "/")) {
+                relative = cgroupPath.substring(root.length());
+            }
+        }
+        Path mount = Paths.get(mountPoint);
+        Path dir = "/".equals(relative) ? mount : Paths.get(mountPoint + relative);
+        return Files.isDirectory(dir) ? dir : mount;
+    }
+
+    /**
+     * mountinfo 中空格等字符以 \040 形式转义
+     */
+    private static String unescape(String field) {
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder sb = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 3 < field.length()) {
+                sb.append((char) Integer.parseInt(field.substring(i + 1, i + 4), 8));
+                i += 3;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * CPU 配额折算的核数（quota / period，可为小数）
+     *
+     * @return 不限制或无法读取时返回 -1
+     */
+    public double cpuLimit() {
+        if (cpuQuota == null) {
+            return -1;
+        }
+        try {
+            long quota;
+            long period;
+            if (version == 2) {
+                // "max 100000" 或 "50000 100000"
+                if (valueReader.readValues(cpuQuota, values) < 2) {
+                    return -1;
+                }
+                quota = values[0];
+                period = values[1];
+            } else {
+                if (valueReader.readValues(cpuQuota, values) < 1) {
+                    return -1;
+                }
+                quota = values[0];
+                if (valueReader.readValues(cpuPeriod, values) < 1) {
+                    return -1;
+                }
+                period = values[0];
+            }
+            if (quota <= 0 || quota == Long.MAX_VALUE || period <= 0) {
+                return -1;
+            }
+            return (double) quota / period;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 读取 CPU 限流统计和累计 CPU 时间
+     *
+     * @param out 至少 4 个元素，按 {@link #NR_PERIODS} 等下标输出，不可用的项为 -1
+     * @return cpu.stat 不可读时返回 false
+     */
+    public boolean readCpuStat(long[] out) {
+        if (cpuStat == null) {
+            return false;
+        }
+        try {
+            statReader.read(cpuStat, stat);
+        } catch (IOException e) {
+            return false;
+        }
+        out[NR_PERIODS] = stat[0];
+        out[NR_THROTTLED] = stat[1];
+        if (version == 2) {
+            out[THROTTLED_NANOS] = stat[2] >= 0 ? stat[2] * 1000 : -1;
+            out[USAGE_NANOS] = stat[4] >= 0 ? stat[4] * 1000 : -1;
+        } else {
+            out[THROTTLED_NANOS] = stat[3];
+            out[USAGE_NANOS] = readLong(cpuUsage);
+        }
+        return true;
+    }
+
+    /**
+     * 内存上限（字节）
+     *
+     * @return 不限制或无法读取时返回 -1
+     */
+    public long memoryLimit() {
+        long limit = readLong(memoryLimit);
+        return limit <= 0 || limit >= V1_UNLIMITED ? -1 : limit;
+    }
+
+    /**
+     * 当前内存用量（字节，包含页缓存）
+     *
+     * @return 无法读取时返回 -1
+     */
+    public long memoryUsage() {
+        return readLong(memoryUsage);
+    }
+
+    /**
+     * 读取 CPU 压力（PSI，仅 cgroup v2 且内核开启 PSI）
+     *
+     * @param out 至少 8 个元素，格式同 {@link ProcFileReader#readPressure}
+     * @return 不可用时返回 false
+     */
+    public boolean readCpuPressure(double[] out) {
+        return readPressure(cpuPressure, out);
+    }
+
+    /**
+     * 读取内存压力（PSI，仅 cgroup v2 且内核开启 PSI）
+     *
+     * @param out 至少 8 个元素，格式同 {@link ProcFileReader#readPressure}
+     * @return 不可用时返回 false
+     */
+    public boolean readMemoryPressure(double[] out) {
+        return readPressure(memoryPressure, out);
+    }
+
+    private boolean readPressure(Path path, double[] out) {
+        if (path == null) {
+            return false;
+        }
+        try {
+            valueReader.readPressure(path, out);
+            return true;
+        } catch (IOException e) {
+            // 内核未开启 PSI 时文件存在但读取报 EOPNOTSUPP
+            return false;
+        }
+    }
+
+    private long readLong(Path path) {
+        if (path == null) {
+            return -1;
+        }
+        try {
+            return valueReader.readValues(path, values) >= 1 ? values[0] : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "cgroup v" + version + " (cpu: " + (cpuStat != null ? cpuStat.getParent() : null)
+                + ", memory: " + (memoryLimit != null ? memoryLimit.getParent() : null) + ")";
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+/**
+ * 容器（cgroup）资源探针
+ *
+ * 输出当前进程所在 cgroup 的配额和用量，用于区分"CPU 不够用"和"被配额限流"：
+ * <ul>
+ *   <li>container.cpu.limit：CPU 配额折算的核数（quota / period），不限制时不输出</li>
+ *   <li>container.cpu.usage：两次采集间整个 cgroup 的 CPU 使用率，按配额（不限制时按可用核数）归一化</li>
+ *   <li>container.cpu.periods / container.cpu.throttled.periods：两次采集间的调度周期数 / 被限流的周期数</li>
+ *   <li>container.cpu.throttled.ratio：被限流周期占比，持续不为 0 说明配额不足，延迟毛刺多来自于此</li>
+ *   <li>container.cpu.throttled.time：两次采集间被限流的时间（毫秒）</li>
+ *   <li>container.memory.limit / container.memory.usage：内存上限 / 当前用量（含页缓存）</li>
+ *   <li>container.memory.usage.ratio：用量占上限的比例，接近 1 时有被 OOM killer 杀掉的风险</li>
+ *   <li>container.cpu.pressure / container.memory.pressure / container.memory.pressure.full：
+ *       PSI 最近 10 秒内有任务（some）/ 全部任务（full）因资源不足而等待的时间百分比，仅 cgroup v2</li>
+ * </ul>
+ * 累计量按相邻两次采集的差值输出，首次采集只记录基准。每次采集只有打开几个小文件的开销。
+ */
+public class CgroupProbe implements MetricsProbe {
+
+    private final Cgroup cgroup;
+    private final int cores;
+
+    private final long[] stat = new long[4];
+    private final long[] lastStat = {-1, -1, -1, -1};
+    private long lastNanos;
+    private final double[] pressure = new double[8];
+
+    private final int cpuLimitId;
+    private final int cpuUsageId;
+    private final int periodsId;
+    private final int throttledPeriodsId;
+    private final int throttledRatioId;
+    private final int throttledTimeId;
+    private final int memoryLimitId;
+    private final int memoryUsageId;
+    private final int memoryRatioId;
+    private final int cpuPressureId;
+    private final int memoryPressureId;
+    private final int memoryPressureFullId;
+
+    public CgroupProbe(Cgroup cgroup, MetricRegistry registry) {
+        this.cgroup = cgroup;
+        this.cores = Runtime.getRuntime().availableProcessors();
+        this.cpuLimitId = registry.registerDouble("container.cpu.limit");
+        this.cpuUsageId = registry.registerDouble("container.cpu.usage");
+        this.periodsId = registry.registerLong("container.cpu.periods");
+        this.throttledPeriodsId = registry.registerLong("container.cpu.throttled.periods");
+        this.throttledRatioId = registry.registerDouble("container.cpu.throttled.ratio");
+        this.throttledTimeId = registry.registerLong("container.cpu.throttled.time");
+        this.memoryLimitId = registry.registerLong("container.memory.limit");
+        this.memoryUsageId = registry.registerLong("container.memory.usage");
+        this.memoryRatioId = registry.registerDouble("container.memory.usage.ratio");
+        this.cpuPressureId = registry.registerDouble("container.cpu.pressure");
+        this.memoryPressureId = registry.registerDouble("container.memory.pressure");
+        this.memoryPressureFullId = registry.registerDouble("container.memory.pressure.full");
+    }
+
+    @Override
+    public void collect(MetricsSnapshot snapshot) {
+        double cpuLimit = cgroup.cpuLimit();
+        if (cpuLimit > 0) {
+            snapshot.setDouble(cpuLimitId, cpuLimit);
+        }
+        collectCpu(snapshot, cpuLimit > 0 ? cpuLimit : cores, System.nanoTime());
+
+        long memoryLimit = cgroup.memoryLimit();
+        long memoryUsage = cgroup.memoryUsage();
+        if (memoryLimit > 0) {
+            snapshot.setLong(memoryLimitId, memoryLimit);
+        }
+        if (memoryUsage >= 0) {
+            snapshot.setLong(memoryUsageId, memoryUsage);
+            if (memoryLimit > 0) {
+                snapshot.setDouble(memoryRatioId, (double) memoryUsage / memoryLimit);
+            }
+        }
+
+        if (cgroup.readCpuPressure(pressure) && pressure[0] >= 0) {
+            snapshot.setDouble(cpuPressureId, pressure[0]);
+        }
+        if (cgroup.readMemoryPressure(pressure)) {
+            if (pressure[0] >= 0) {
+                snapshot.setDouble(memoryPressureId, pressure[0]);
+            }
+            if (pressure[4] >= 0) {
+                snapshot.setDouble(memoryPressureFullId, pressure[4]);
+            }
+        }
+    }
+
+    private void collectCpu(MetricsSnapshot snapshot, double cpus, long now) {
+        if (!cgroup.readCpuStat(stat)) {
+            return;
+        }
+        if (lastNanos > 0 && now > lastNanos) {
+            long periods = delta(Cgroup.NR_PERIODS);
+            long throttled = delta(Cgroup.NR_THROTTLED);
+            if (periods >= 0 && throttled >= 0) {
+                snapshot.setLong(periodsId, periods);
+                snapshot.setLong(throttledPeriodsId, throttled);
+                snapshot.setDouble(throttledRatioId, periods > 0 ? (double) throttled / periods : 0.0);
+            }
+            long throttledNanos = delta(Cgroup.THROTTLED_NANOS);
+            if (throttledNanos >= 0) {
+                snapshot.setLong(throttledTimeId, throttledNanos / 1_000_000);
+            }
+            long usageNanos = delta(Cgroup.USAGE_NANOS);
+            if (usageNanos >= 0) {
+                double usage = (double) usageNanos / (now - lastNanos) / cpus;
+                snapshot.setDouble(cpuUsageId, Math.max(0.0, Math.min(1.0, usage)));
+            }
+        }
+        System.arraycopy(stat, 0, lastStat, 0, stat.length);
+        lastNanos = now;
+    }
+
+    /**
+     * 累计量的差值，任一次不可用或计数回绕（cgroup 被重建）时返回 -1
+     */
+    private long delta(int index) {
+        if (stat[index] < 0 || lastStat[index] < 0 || stat[index] < lastStat[index]) {
+            return -1;
+        }
+        return stat[index] - lastStat[index];
+    }
+}
@@ -0,0 +1,206 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.util.Arrays;
+
+/**
+ * 一次类直方图（GC.class_histogram / jmap -histo）的结果
+ *
+ * 按 {@link ClassNameTable} 的类名 ID 存放实例数和字节数（原始类型数组，下标即 ID），可通过 {@link #parse} 反复复用。
+ * 同名类（不同类加载器加载）的计数合并；类名表已满后出现的新类只计入总量。
+ */
+public class ClassHistogram {
+
+    private long timestamp;
+    private long[] instances = new long[256];
+    private long[] bytes = new long[256];
+    private int entries;
+    private long totalInstances;
+    private long totalBytes;
+    private long untrackedInstances;
+    private long untrackedBytes;
+
+    /**
+     * 流式解析直方图文本，覆盖当前内容
+     *
+     * 支持 JDK 8 和 JDK 9+ 的格式（后者类名后带模块信息）：
+     * <pre>
+     *  num     #instances         #bytes  class name (module)
+     * -------------------------------------------------------
+     *    1:         12345         678900  [B (java.base@17)
+     * Total        123456        7890123
+     * </pre>
+     * 逐字符扫描，不拆分行、不使用正则，只为首次出现的类名分配字符串。
+     *
+     * @param text 直方图文本
+     * @param names 类名驻留表
+     * @param timestamp 采集时间（epoch 毫秒）
+     * @return 解析出的条目数
+     */
+    public int parse(CharSequence text, ClassNameTable names, long timestamp) {
+        clear(timestamp);
+        int length = text.length();
+        int pos = 0;
+        boolean sawTotal = false;
+        while (pos < length) {
+            int lineEnd = pos;
+            while (lineEnd < length && text.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int end = lineEnd;
+            if (end > pos && text.charAt(end - 1) == '\r') {
+                end--;
+            }
+            int p = skipSpaces(text, pos, end);
+            if (p < end && isDigit(text.charAt(p))) {
+                // 序号后必须紧跟冒号，否则不是条目行
+                int q = p;
+                while (q < end && isDigit(text.charAt(q))) {
+                    q++;
+                }
+                if (q < end && text.charAt(q) == ':') {
+                    parseEntry(text, q + 1, end, names);
+                }
+            } else if (startsWith(text, p, end, "Total")) {
+                p = skipSpaces(text, p + 5, end);
+                int q = skipDigits(text, p, end);
+                if (q > p) {
+                    totalInstances = parseLong(text, p, q);
+                    p = skipSpaces(text, q, end);
+                    q = skipDigits(text, p, end);
+                    totalBytes = q > p ? parseLong(text, p, q) : totalBytes;
+                    sawTotal = true;
+                }
+            }
+            pos = lineEnd + 1;
+        }
+        if (!sawTotal) {
+            // 没有汇总行时以条目之和为准
+            totalInstances = untrackedInstances;
+            totalBytes = untrackedBytes;
+            for (int id = 0; id < instances.length; id++) {
+                totalInstances += instances[id];
+                totalBytes += bytes[id];
+            }
+        }
+        return entries;
+    }
+
+    private void parseEntry(CharSequence text, int pos, int end, ClassNameTable names) {
+        int p = skipSpaces(text, pos, end);
+        int q = skipDigits(text, p, end);
+        if (q == p) {
+            return;
+        }
+        long count = parseLong(text, p, q);
+        p = skipSpaces(text, q, end);
+        q = skipDigits(text, p, end);
+        if (q == p) {
+            return;
+        }
+        long size = parseLong(text, p, q);
+        p = skipSpaces(text, q, end);
+        q = p;
+        while (q < end && text.charAt(q) != ' ') {
+            q++;
+        }
+        if (q == p) {
+            return;
+        }
+        entries++;
+        int id = names.intern(text, p, q);
+        if (id < 0) {
+            untrackedInstances += count;
+            untrackedBytes += size;
+            return;
+        }
+        if (id >= instances.length) {
+            int capacity = Math.max(id + 1, instances.length * 2);
+            instances = Arrays.copyOf(instances, capacity);
+            bytes = Arrays.copyOf(bytes, capacity);
+        }
+        instances[id] += count;
+        bytes[id] += size;
+    }
+
+    private void clear(long timestamp) {
+        this.timestamp = timestamp;
+        Arrays.fill(instances, 0);
+        Arrays.fill(bytes, 0);
+        entries = 0;
+        totalInstances = 0;
+        totalBytes = 0;
+        untrackedInstances = 0;
+        untrackedBytes = 0;
+    }
+
+    private static int skipSpaces(CharSequence text, int pos, int end) {
+        while (pos < end && (text.charAt(pos) == ' ' || text.charAt(pos) == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipDigits(CharSequence text, int pos, int end) {
+        while (pos < end && isDigit(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static long parseLong(CharSequence text, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static boolean startsWith(CharSequence text, int pos, int end, String prefix) {
+        if (end - pos < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(pos + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * 类的实例数（未出现时为 0）
+     */
+    public long instances(int id) {
+        return id < instances.length ? instances[id] : 0;
+    }
+
+    /**
+     * 类的字节数（未出现时为 0）
+     */
+    public long bytes(int id) {
+        return id < bytes.length ? bytes[id] : 0;
+    }
+
+    /**
+     * 直方图条目数（同名类分别计数）
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    public long getTotalInstances() {
+        return totalInstances;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+/**
+ * 类直方图探针
+ *
+ * 类直方图跟踪运行且已至少采集一次时（{@link ClassHistogramTracker#getInstance()} 非空），每个上报区间输出最近一次采集的结果：
+ * <ul>
+ *   <li>histo.instances / histo.bytes：堆中对象总数 / 总字节数</li>
+ *   <li>histo.classes：直方图条目数</li>
+ *   <li>histo.suspects：泄漏嫌疑类的数量</li>
+ *   <li>histo.suspect.bytes.rate：嫌疑类在窗口内的字节增长速率之和（字节/秒）</li>
+ *   <li>histo.duration：最近一次采集的耗时（毫秒，含触发的 Full GC）</li>
+ * </ul>
+ * 跟踪未开启时不输出。
+ */
+public class ClassHistogramProbe implements MetricsProbe {
+
+    private final int instancesId;
+    private final int bytesId;
+    private final int classesId;
+    private final int suspectsId;
+    private final int suspectBytesRateId;
+    private final int durationId;
+
+    public ClassHistogramProbe(MetricRegistry registry) {
+        this.instancesId = registry.registerLong("histo.instances");
+        this.bytesId = registry.registerLong("histo.bytes");
+        this.classesId = registry.registerLong("histo.classes");
+        this.suspectsId = registry.registerLong("histo.suspects");
+        this.suspectBytesRateId = registry.registerDouble("histo.suspect.bytes.rate");
+        this.durationId = registry.registerLong("histo.duration");
+    }
+
+    @Override
+    public void collect(MetricsSnapshot snapshot) {
+        ClassHistogramTracker tracker = ClassHistogramTracker.getInstance();
+        if (tracker == null) {
+            return;
+        }
+        ClassHistogram latest = tracker.getLatest();
+        if (latest == null) {
+            return;
+        }
+        snapshot.setLong(instancesId, latest.getTotalInstances());
+        snapshot.setLong(bytesId, latest.getTotalBytes());
+        snapshot.setLong(classesId, latest.getEntries());
+        snapshot.setLong(suspectsId, tracker.getSuspectCount());
+        snapshot.setDouble(suspectBytesRateId, tracker.getSuspectBytesRate());
+        snapshot.setLong(durationId, tracker.getLastDurationMillis());
+    }
+}
@@ -0,0 +1,370 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 类直方图趋势跟踪（泄漏嫌疑类）
+ *
+ * 按固定间隔调用 DiagnosticCommand MBean 的 gcClassHistogram（即 jcmd GC.class_histogram），
+ * 流式解析到按类名 ID 存放的原始类型数组中，保留最近 K 次直方图。在这个窗口内实例数或字节数净增长、
+ * 且大多数相邻两次之间都在增长的类即为泄漏嫌疑类。
+ *
+ * 每次调用默认会触发一次 Full GC（只统计存活对象），因此间隔不低于 {@value #MIN_INTERVAL_SECONDS} 秒，
+ * 手动触发的采集也受同一下限约束。histogram.all=true 时改为统计全部对象（JDK 9+，不触发 GC，但含未回收的垃圾）。
+ */
+public class ClassHistogramTracker {
+
+    /** 两次采集的最小间隔（秒） */
+    public static final int MIN_INTERVAL_SECONDS = 60;
+    private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+    private static final double MIN_GROWTH_RATIO = 0.75;
+
+    private final int intervalSeconds;
+    private final boolean allObjects;
+    private final ClassNameTable names;
+    private final ClassHistogram[] history;
+    private final ScheduledExecutorService scheduler;
+    private final OverheadGovernor.Account account =
+            OverheadGovernor.account("histogram", OverheadGovernor.MAX_LEVEL);
+
+    private int head = -1;
+    private int count = 0;
+    private long lastCollectNanos;
+    private boolean collected = false;
+
+    // 最近一次采集后的汇总，供指标探针读取
+    private volatile long lastDurationMillis;
+    private volatile int suspectCount;
+    private volatile double suspectBytesRate;
+    private volatile long collections;
+
+    /**
+     * @param intervalSeconds 采集间隔（秒），不低于 {@value #MIN_INTERVAL_SECONDS}
+     * @param historySize 保留的直方图数 K（至少 2）
+     * @param maxClasses 跟踪的类名上限
+     * @param allObjects 统计全部对象而不是存活对象（不触发 Full GC）
+     */
+    public ClassHistogramTracker(int intervalSeconds, int historySize, int maxClasses, boolean allObjects) {
+        this.intervalSeconds = Math.max(intervalSeconds, MIN_INTERVAL_SECONDS);
+        this.allObjects = allObjects;
+        this.names = new ClassNameTable(maxClasses);
+        this.history = new ClassHistogram[Math.max(historySize, 2)];
+        for (int i = 0; i < history.length; i++) {
+            history[i] = new ClassHistogram();
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jvm-doctor-histogram");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * DiagnosticCommand MBean 是否可用
+     */
+    public static boolean isSupported() {
+        try {
+            return ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(DIAGNOSTIC_COMMAND));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 启动后台采集（首次采集在一个间隔之后，避免启动时触发 Full GC）
+     */
+    public void startTracking() {
+        scheduler.scheduleAtFixedRate(() -> {
+            // 超出开销预算时拉长采集间隔
+            if (!account.shouldRun()) {
+                return;
+            }
+            // 大部分耗时在 VM 线程（GC 和堆遍历）中，这里只计入本线程的等待、解析和分配
+            long cpuStart = OverheadGovernor.threadCpuTime();
+            long allocStart = OverheadGovernor.threadAllocatedBytes();
+            long startNanos = System.nanoTime();
+            try {
+                collect();
+            } catch (Exception e) {
+                System.err.println("[ClassHistogramTracker] Collect error: " + e.getMessage());
+            }
+            account.record(startNanos, cpuStart, allocStart);
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void stopTracking() {
+        scheduler.shutdownNow();
+    }
+
+    public int getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    /**
+     * 采集一次直方图
+     *
+     * @return 距上次采集不足 {@value #MIN_INTERVAL_SECONDS} 秒时不采集，返回 false
+     */
+    public boolean collect() throws Exception {
+        synchronized (this) {
+            if (collected && System.nanoTime() - lastCollectNanos < TimeUnit.SECONDS.toNanos(MIN_INTERVAL_SECONDS)) {
+                return false;
+            }
+            collected = true;
+            lastCollectNanos = System.nanoTime();
+        }
+        long startNanos = System.nanoTime();
+        String text;
+        try {
+            text = invokeHistogram();
+        } finally {
+            lastDurationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+        record(text, System.currentTimeMillis());
+        return true;
+    }
+
+    private String invokeHistogram() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Object[] params = {allObjects ? new String[]{"-all"} : new String[0]};
+        String[] signature = {String[].class.getName()};
+        return (String) server.invoke(new ObjectName(DIAGNOSTIC_COMMAND), "gcClassHistogram", params, signature);
+    }
+
+    /**
+     * 解析一次直方图文本并放入历史
+     */
+    synchronized void record(CharSequence text, long timestamp) {
+        head = (head + 1) % history.length;
+        history[head].parse(text, names, timestamp);
+        count = Math.min(count + 1, history.length);
+        collections++;
+        summarize();
+    }
+
+    private ClassHistogram oldest() {
+        return history[(head - count + 1 + history.length) % history.length];
+    }
+
+    private ClassHistogram at(int i) {
+        return history[(head - count + 1 + i + history.length) % history.length];
+    }
+
+    /**
+     * 类在窗口内是否持续增长（净增长，且至少 {@value #MIN_GROWTH_RATIO} 的相邻区间在增长）
+     */
+    private boolean isGrowing(int id, boolean byBytes) {
+        ClassHistogram first = oldest();
+        ClassHistogram last = history[head];
+        long delta = byBytes ? last.bytes(id) - first.bytes(id) : last.instances(id) - first.instances(id);
+        if (delta <= 0) {
+            return false;
+        }
+        int increases = 0;
+        for (int i = 1; i < count; i++) {
+            long previous = byBytes ? at(i - 1).bytes(id) : at(i - 1).instances(id);
+            long current = byBytes ? at(i).bytes(id) : at(i).instances(id);
+            if (current > previous) {
+                increases++;
+            }
+        }
+        return increases >= (count - 1) * MIN_GROWTH_RATIO;
+    }
+
+    private void summarize() {
+        if (count < 2) {
+            suspectCount = 0;
+            suspectBytesRate = 0;
+            return;
+        }
+        ClassHistogram first = oldest();
+        ClassHistogram last = history[head];
+        double seconds = Math.max(last.getTimestamp() - first.getTimestamp(), 1) / 1000.0;
+        int suspects = 0;
+        long growthBytes = 0;
+        for (int id = 0; id < names.size(); id++) {
+            boolean bytesGrowing = isGrowing(id, true);
+            if (bytesGrowing || isGrowing(id, false)) {
+                suspects++;
+            }
+            if (bytesGrowing) {
+                growthBytes += last.bytes(id) - first.bytes(id);
+            }
+        }
+        suspectCount = suspects;
+        suspectBytesRate = growthBytes / seconds;
+    }
+
+    /**
+     * 获取增长最快的泄漏嫌疑类
+     *
+     * @param topN 返回数量
+     * @param byBytes true 按字节数增长排序，false 按实例数增长排序
+     */
+    public synchronized List<Map<String, Object>> getSuspects(int topN, boolean byBytes) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (count < 2) {
+            return result;
+        }
+        ClassHistogram first = oldest();
+        ClassHistogram last = history[head];
+        TopNHeap heap = new TopNHeap(topN);
+        for (int id = 0; id < names.size(); id++) {
+            if (isGrowing(id, byBytes)) {
+                long delta = byBytes ? last.bytes(id) - first.bytes(id) : last.instances(id) - first.instances(id);
+                heap.offer(delta, id);
+            }
+        }
+        heap.sortDescending();
+
+        double minutes = Math.max(last.getTimestamp() - first.getTimestamp(), 1) / 60_000.0;
+        for (int i = 0; i < heap.size(); i++) {
+            int id = heap.index(i);
+            long instancesDelta = last.instances(id) - first.instances(id);
+            long bytesDelta = last.bytes(id) - first.bytes(id);
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("class", names.name(id));
+            entry.put("instances", last.instances(id));
+            entry.put("bytes", last.bytes(id));
+            entry.put("instancesDelta", instancesDelta);
+            entry.put("bytesDelta", bytesDelta);
+            entry.put("instancesPerMinute", Math.round(instancesDelta / minutes));
+            entry.put("bytesPerMinute", Math.round(bytesDelta / minutes));
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * 最近一次直方图中占用最多的类（即 jmap -histo 的前 N 行）
+     *
+     * @param topN 返回数量
+     */
+    public synchronized List<Map<String, Object>> getTopClasses(int topN) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (count == 0) {
+            return result;
+        }
+        ClassHistogram last = history[head];
+        TopNHeap heap = new TopNHeap(topN);
+        for (int id = 0; id < names.size(); id++) {
+            if (last.bytes(id) > 0) {
+                heap.offer(last.bytes(id), id);
+            }
+        }
+        heap.sortDescending();
+        for (int i = 0; i < heap.size(); i++) {
+            int id = heap.index(i);
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("class", names.name(id));
+            entry.put("instances", last.instances(id));
+            entry.put("bytes", last.bytes(id));
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * 清空历史（重新开始累积窗口）
+     */
+    public synchronized void reset() {
+        head = -1;
+        count = 0;
+        summarize();
+    }
+
+    /**
+     * 最近一次直方图，尚未采集时返回 null
+     */
+    public synchronized ClassHistogram getLatest() {
+        return count > 0 ? history[head] : null;
+    }
+
+    /**
+     * 窗口内的直方图数
+     */
+    public synchronized int getHistoryCount() {
+        return count;
+    }
+
+    public int getHistorySize() {
+        return history.length;
+    }
+
+    /**
+     * 窗口起止时间（epoch 毫秒），尚未采集时为 0
+     */
+    public synchronized long getWindowStart() {
+        return count > 0 ? oldest().getTimestamp() : 0;
+    }
+
+    public synchronized long getWindowEnd() {
+        return count > 0 ? history[head].getTimestamp() : 0;
+    }
+
+    /**
+     * 最近一次采集的耗时（毫秒，含触发的 Full GC）
+     */
+    public long getLastDurationMillis() {
+        return lastDurationMillis;
+    }
+
+    public int getSuspectCount() {
+        return suspectCount;
+    }
+
+    /**
+     * 嫌疑类在窗口内的字节增长速率之和（字节/秒）
+     */
+    public double getSuspectBytesRate() {
+        return suspectBytesRate;
+    }
+
+    /**
+     * 累计采集次数
+     */
+    public long getCollections() {
+        return collections;
+    }
+
+    // ========== 静态工厂方法 ==========
+
+    private static volatile ClassHistogramTracker instance;
+
+    public static synchronized ClassHistogramTracker start(AgentConfig config) {
+        if (instance == null) {
+            if (!isSupported()) {
+                System.err.println("[ClassHistogramTracker] DiagnosticCommand MBean not available");
+                return null;
+            }
+            ClassHistogramTracker tracker = new ClassHistogramTracker(config.getHistogramInterval(),
+                    config.getHistogramHistory(), config.getHistogramMaxClasses(), config.isHistogramAll());
+            tracker.startTracking();
+            instance = tracker;
+            System.out.println("[ClassHistogramTracker] Started, interval: " + tracker.intervalSeconds
+                    + "s, history: " + tracker.history.length + (tracker.allObjects ? ", all objects" : ""));
+        }
+        return instance;
+    }
+
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.stopTracking();
+            instance = null;
+            System.out.println("[ClassHistogramTracker] Stopped");
+        }
+    }
+
+    public static ClassHistogramTracker getInstance() {
+        return instance;
+    }
+}
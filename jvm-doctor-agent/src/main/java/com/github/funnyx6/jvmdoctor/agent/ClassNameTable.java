@@ -0,0 +1,110 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.util.Arrays;
+
+/**
+ * 类名驻留表
+ *
+ * 把类名映射为稠密的整数 ID，直方图只按 ID 保存计数。
+ * 查找直接在原文本的字符区间上计算哈希并逐字符比较，已出现过的类名查找不截取子串、不分配对象。
+ * 超过容量后不再驻留新类名，返回 -1 由调用方处理。非线程安全。
+ */
+public class ClassNameTable {
+
+    private final int maxNames;
+    private String[] names = new String[256];
+    private int[] hashes = new int[256];
+    private int size = 0;
+
+    // 开放寻址表：槽位存放 ID + 1，0 表示空
+    private int[] table = new int[512];
+    private int mask = 511;
+
+    public ClassNameTable(int maxNames) {
+        this.maxNames = Math.max(maxNames, 1);
+    }
+
+    /**
+     * 查找或驻留文本中 [start, end) 区间的类名
+     *
+     * @return 类名 ID，超出容量时返回 -1
+     */
+    public int intern(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int length = end - start;
+        int i = hash & mask;
+        while (true) {
+            int entry = table[i];
+            if (entry == 0) {
+                break;
+            }
+            int id = entry - 1;
+            if (hashes[id] == hash && names[id].length() == length && regionEquals(names[id], text, start)) {
+                return id;
+            }
+            i = (i + 1) & mask;
+        }
+        if (size >= maxNames) {
+            return -1;
+        }
+
+        int id = size++;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        names[id] = text.subSequence(start, end).toString();
+        hashes[id] = hash;
+        table[i] = id + 1;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * 查找或驻留类名
+     *
+     * @return 类名 ID，超出容量时返回 -1
+     */
+    public int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    private static boolean regionEquals(String name, CharSequence text, int start) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hashes[id] & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = id + 1;
+        }
+    }
+}
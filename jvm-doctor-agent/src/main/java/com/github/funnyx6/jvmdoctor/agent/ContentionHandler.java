@@ -0,0 +1,69 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 锁竞争 HTTP Handler
+ * 
+ * GET  /api/contention?n=10    热点锁（按累计阻塞时间排序），含持有者栈顶帧分布
+ * POST /api/contention/start   开启锁竞争监控
+ * POST /api/contention/stop    关闭锁竞争监控
+ * POST /api/contention/reset   清空热点锁表
+ */
+public class ContentionHandler extends ApiHandler {
+    
+    private final AgentConfig config;
+    
+    public ContentionHandler(AgentConfig config) {
+        this.config = config;
+    }
+    
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String query = exchange.getRequestURI().getRawQuery();
+        
+        boolean action = path.endsWith("/start") || path.endsWith("/stop") || path.endsWith("/reset");
+        if (action && !requirePost(exchange)) {
+            return;
+        }
+        
+        if (path.endsWith("/start")) {
+            if (ContentionMonitor.start(config) == null) {
+                send(exchange, 501, "{\"error\":\"Thread contention monitoring not supported\"}");
+                return;
+            }
+        } else if (path.endsWith("/stop")) {
+            ContentionMonitor.shutdown();
+        } else if (path.endsWith("/reset")) {
+            ContentionMonitor monitor = ContentionMonitor.getInstance();
+            if (monitor != null) {
+                monitor.reset();
+            }
+        } else if (!path.endsWith("/contention")) {
+            send(exchange, 404, "{\"error\":\"Not found\"}");
+            return;
+        }
+        
+        int topN = intParam(query, "n", intParam(query, "limit", 10));
+        send(exchange, 200, getStatus(Math.max(topN, 1)));
+    }
+    
+    private String getStatus(int topN) {
+        ContentionMonitor monitor = ContentionMonitor.getInstance();
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", monitor != null);
+        if (monitor != null) {
+            result.put("intervalMillis", monitor.getIntervalMillis());
+            result.put("totalBlockedMillis", monitor.getTotalBlockedMillis());
+            result.put("totalBlockedCount", monitor.getTotalBlockedCount());
+            result.put("blockedThreads", monitor.getBlockedThreads());
+            result.put("monitors", monitor.getHottestMonitors(topN));
+        }
+        return toJson(result);
+    }
+}
@@ -0,0 +1,409 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 锁竞争监控
+ *
+ * 开启 ThreadMXBean 的线程竞争监控后，按固定间隔批量读取所有线程的 blockedTime / blockedCount，
+ * 把每个线程的阻塞时间增量归到其等待的锁（按锁的身份 "类名@identityHash"）和锁持有者的栈顶帧上，
+ * 保存在有界的热点锁表中：表满时淘汰累计阻塞时间最少的锁。
+ *
+ * 每个线程的上次读数按槽位保存在原始类型数组中（与 {@link ThreadActivityTracker} 相同的布局）。
+ */
+public class ContentionMonitor {
+
+    private static final int MAX_OWNER_FRAMES = 8;
+    private static final String UNKNOWN_FRAME = "<unknown>";
+
+    private final ThreadSampler sampler;
+    private final ThreadMXBean threadMXBean;
+    private final int intervalMillis;
+    private final int maxMonitors;
+    private final boolean previouslyEnabled;
+    private final ScheduledExecutorService scheduler;
+    private final OverheadGovernor.Account account =
+            OverheadGovernor.account("contention", OverheadGovernor.MAX_LEVEL);
+
+    // 线程 ID → 槽位
+    private final LongIntMap slotsByThread = new LongIntMap(256);
+    private int slotCount = 0;
+    private int[] freeSlots = new int[64];
+    private int freeCount = 0;
+    private long tick = 0;
+
+    private long[] slotThreadIds = new long[0];
+    private long[] slotSeenTick = new long[0];
+    private long[] lastBlockedTime = new long[0];
+    private long[] lastBlockedCount = new long[0];
+    private String[] lastLockName = new String[0];
+
+    // 本次采样的线程 ID → 下标，用于查找锁持有者
+    private final LongIntMap sampleIndex = new LongIntMap(256);
+
+    // 热点锁表
+    private final Map<String, MonitorStats> monitors = new HashMap<>();
+
+    // 累计值，供指标探针计算区间增量
+    private volatile long totalBlockedMillis;
+    private volatile long totalBlockedCount;
+    private volatile int blockedThreads;
+
+    public ContentionMonitor(ThreadSampler sampler, int intervalMillis, int maxMonitors) {
+        this.sampler = sampler;
+        this.threadMXBean = sampler.getThreadMXBean();
+        this.intervalMillis = Math.max(intervalMillis, 100);
+        this.maxMonitors = Math.max(maxMonitors, 1);
+        this.previouslyEnabled = threadMXBean.isThreadContentionMonitoringSupported()
+                && threadMXBean.isThreadContentionMonitoringEnabled();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jvm-doctor-contention");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 开启竞争监控并启动后台采样
+     *
+     * @return JVM 不支持竞争监控时返回 false
+     */
+    public boolean startMonitoring() {
+        if (!threadMXBean.isThreadContentionMonitoringSupported()) {
+            return false;
+        }
+        threadMXBean.setThreadContentionMonitoringEnabled(true);
+        scheduler.scheduleAtFixedRate(() -> {
+            // 超出开销预算时拉长采样间隔（阻塞时间按累计值求增量，不会丢失）
+            if (!account.shouldRun()) {
+                return;
+            }
+            long cpuStart = OverheadGovernor.threadCpuTime();
+            long allocStart = OverheadGovernor.threadAllocatedBytes();
+            long startNanos = System.nanoTime();
+            try {
+                sample();
+            } catch (Exception e) {
+                System.err.println("[ContentionMonitor] Sample error: " + e.getMessage());
+            }
+            account.record(startNanos, cpuStart, allocStart);
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * 停止采样，并恢复竞争监控原来的开关状态
+     */
+    public void stopMonitoring() {
+        scheduler.shutdownNow();
+        if (!previouslyEnabled && threadMXBean.isThreadContentionMonitoringSupported()) {
+            threadMXBean.setThreadContentionMonitoringEnabled(false);
+        }
+    }
+
+    public int getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * 执行一次采样
+     */
+    public void sample() {
+        // 线程快照也在锁内读取，避免并发的采样以过期快照回收仍存活线程的槽位
+        synchronized (this) {
+            long[] threadIds = sampler.threadIds();
+            // 深度 1：只需要锁持有者的栈顶帧
+            ThreadInfo[] infos = sampler.threadInfos(threadIds, 1);
+
+            tick++;
+            sampleIndex.clear();
+            for (int i = 0; i < infos.length; i++) {
+                if (infos[i] != null) {
+                    sampleIndex.put(threadIds[i], i);
+                }
+            }
+
+            long blockedMillis = 0;
+            long blockedCount = 0;
+            int blockedNow = 0;
+            for (int i = 0; i < infos.length; i++) {
+                ThreadInfo info = infos[i];
+                if (info == null) {
+                    continue;
+                }
+                long blockedTime = info.getBlockedTime();
+                long count = info.getBlockedCount();
+                boolean blocked = info.getThreadState() == Thread.State.BLOCKED;
+                if (blocked) {
+                    blockedNow++;
+                }
+
+                int slot = slotsByThread.get(threadIds[i]);
+                if (slot < 0) {
+                    slot = allocateSlot(threadIds[i]);
+                    lastBlockedTime[slot] = blockedTime;
+                    lastBlockedCount[slot] = count;
+                }
+                slotSeenTick[slot] = tick;
+
+                String lockName = blocked ? info.getLockName() : null;
+                if (lockName != null) {
+                    lastLockName[slot] = lockName;
+                } else {
+                    // 采样间隙中阻塞又恢复的线程，归到它最后一次被观察到等待的锁
+                    lockName = lastLockName[slot];
+                }
+
+                // blockedTime 包含仍在进行中的阻塞，增量即本区间的阻塞时间
+                long timeDelta = blockedTime >= 0 && lastBlockedTime[slot] >= 0 ? blockedTime - lastBlockedTime[slot] : 0;
+                long countDelta = count - lastBlockedCount[slot];
+                lastBlockedTime[slot] = blockedTime;
+                lastBlockedCount[slot] = count;
+                if (timeDelta <= 0 && countDelta <= 0 && !blocked) {
+                    continue;
+                }
+                blockedMillis += Math.max(timeDelta, 0);
+                blockedCount += Math.max(countDelta, 0);
+
+                if (lockName != null) {
+                    String ownerFrame = blocked ? ownerTopFrame(info, infos) : null;
+                    record(lockName, Math.max(timeDelta, 0), Math.max(countDelta, 0), blocked, ownerFrame);
+                }
+            }
+
+            // 回收已退出线程的槽位
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (slotThreadIds[slot] != 0 && slotSeenTick[slot] != tick) {
+                    releaseSlot(slot);
+                }
+            }
+            for (MonitorStats stats : monitors.values()) {
+                stats.waitingNow = stats.waitingTick == tick ? stats.waitingNow : 0;
+            }
+
+            totalBlockedMillis += blockedMillis;
+            totalBlockedCount += blockedCount;
+            blockedThreads = blockedNow;
+        }
+    }
+
+    private String ownerTopFrame(ThreadInfo info, ThreadInfo[] infos) {
+        long ownerId = info.getLockOwnerId();
+        if (ownerId < 0) {
+            return UNKNOWN_FRAME;
+        }
+        int index = sampleIndex.get(ownerId);
+        if (index < 0) {
+            return UNKNOWN_FRAME;
+        }
+        StackTraceElement[] stack = infos[index].getStackTrace();
+        if (stack.length == 0) {
+            return UNKNOWN_FRAME;
+        }
+        return stack[0].getClassName() + "." + stack[0].getMethodName();
+    }
+
+    private void record(String lockName, long blockedMillis, long blockedCount, boolean waitingNow, String ownerFrame) {
+        MonitorStats stats = monitors.get(lockName);
+        if (stats == null) {
+            if (monitors.size() >= maxMonitors) {
+                evictColdest(monitors);
+            }
+            stats = new MonitorStats(lockName);
+            monitors.put(lockName, stats);
+        }
+        stats.blockedMillis += blockedMillis;
+        stats.blockedCount += blockedCount;
+        stats.lastSeen = System.currentTimeMillis();
+        if (waitingNow) {
+            if (stats.waitingTick != tick) {
+                stats.waitingTick = tick;
+                stats.waitingNow = 0;
+            }
+            stats.waitingNow++;
+            stats.peakWaiting = Math.max(stats.peakWaiting, stats.waitingNow);
+        }
+        if (ownerFrame != null) {
+            // 本次增量（至少计 1 个采样）归到持有者栈顶帧
+            long weight = Math.max(blockedMillis, 1);
+            Long current = stats.ownerFrames.get(ownerFrame);
+            if (current == null && stats.ownerFrames.size() >= MAX_OWNER_FRAMES) {
+                evictColdest(stats.ownerFrames);
+            }
+            stats.ownerFrames.put(ownerFrame, (current != null ? current : 0L) + weight);
+        }
+    }
+
+    private static <T> void evictColdest(Map<String, T> table) {
+        String coldest = null;
+        long min = Long.MAX_VALUE;
+        for (Map.Entry<String, T> entry : table.entrySet()) {
+            Object value = entry.getValue();
+            long score = value instanceof MonitorStats ? ((MonitorStats) value).blockedMillis : (Long) value;
+            if (score < min) {
+                min = score;
+                coldest = entry.getKey();
+            }
+        }
+        if (coldest != null) {
+            table.remove(coldest);
+        }
+    }
+
+    /**
+     * 获取累计阻塞时间最多的锁
+     *
+     * @param topN 返回数量
+     */
+    public synchronized List<Map<String, Object>> getHottestMonitors(int topN) {
+        List<MonitorStats> all = new ArrayList<>(monitors.values());
+        all.sort((a, b) -> Long.compare(b.blockedMillis, a.blockedMillis));
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int i = 0; i < Math.min(topN, all.size()); i++) {
+            MonitorStats stats = all.get(i);
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("lock", stats.lockName);
+            int at = stats.lockName.lastIndexOf('@');
+            entry.put("lockClass", at > 0 ? stats.lockName.substring(0, at) : stats.lockName);
+            entry.put("blockedMillis", stats.blockedMillis);
+            entry.put("blockedCount", stats.blockedCount);
+            entry.put("waitingThreads", stats.waitingNow);
+            entry.put("peakWaitingThreads", stats.peakWaiting);
+            entry.put("lastSeen", stats.lastSeen);
+
+            List<Map<String, Object>> owners = new ArrayList<>();
+            List<Map.Entry<String, Long>> frames = new ArrayList<>(stats.ownerFrames.entrySet());
+            frames.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+            for (Map.Entry<String, Long> frame : frames) {
+                Map<String, Object> owner = new HashMap<>();
+                owner.put("frame", frame.getKey());
+                owner.put("blockedMillis", frame.getValue());
+                owners.add(owner);
+            }
+            entry.put("ownerFrames", owners);
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * 清空热点锁表
+     */
+    public synchronized void reset() {
+        monitors.clear();
+    }
+
+    /**
+     * 所有线程累计的阻塞时间（毫秒，自监控开始）
+     */
+    public long getTotalBlockedMillis() {
+        return totalBlockedMillis;
+    }
+
+    /**
+     * 所有线程累计的阻塞次数（自监控开始）
+     */
+    public long getTotalBlockedCount() {
+        return totalBlockedCount;
+    }
+
+    /**
+     * 最近一次采样时处于 BLOCKED 状态的线程数
+     */
+    public int getBlockedThreads() {
+        return blockedThreads;
+    }
+
+    private int allocateSlot(long threadId) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = slotCount++;
+            if (slot >= slotThreadIds.length) {
+                growSlots(Math.max(64, slotThreadIds.length * 2));
+            }
+        }
+        slotThreadIds[slot] = threadId;
+        lastLockName[slot] = null;
+        slotsByThread.put(threadId, slot);
+        return slot;
+    }
+
+    private void releaseSlot(int slot) {
+        slotsByThread.remove(slotThreadIds[slot]);
+        slotThreadIds[slot] = 0;
+        lastLockName[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void growSlots(int capacity) {
+        slotThreadIds = Arrays.copyOf(slotThreadIds, capacity);
+        slotSeenTick = Arrays.copyOf(slotSeenTick, capacity);
+        lastBlockedTime = Arrays.copyOf(lastBlockedTime, capacity);
+        lastBlockedCount = Arrays.copyOf(lastBlockedCount, capacity);
+        lastLockName = Arrays.copyOf(lastLockName, capacity);
+    }
+
+    /**
+     * 单个锁的竞争统计
+     */
+    private static final class MonitorStats {
+        final String lockName;
+        final Map<String, Long> ownerFrames = new HashMap<>();
+        long blockedMillis;
+        long blockedCount;
+        int waitingNow;
+        long waitingTick;
+        int peakWaiting;
+        long lastSeen;
+
+        MonitorStats(String lockName) {
+            this.lockName = lockName;
+        }
+    }
+
+    // ========== 静态工厂方法 ==========
+
+    private static volatile ContentionMonitor instance;
+
+    public static synchronized ContentionMonitor start(AgentConfig config) {
+        if (instance == null) {
+            ContentionMonitor monitor = new ContentionMonitor(new ThreadSampler(),
+                    config.getContentionInterval(), config.getContentionMaxMonitors());
+            if (!monitor.startMonitoring()) {
+                System.err.println("[ContentionMonitor] Thread contention monitoring not supported");
+                return null;
+            }
+            instance = monitor;
+            System.out.println("[ContentionMonitor] Started, interval: " + monitor.intervalMillis
+                    + "ms, max monitors: " + monitor.maxMonitors);
+        }
+        return instance;
+    }
+
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.stopMonitoring();
+            instance = null;
+            System.out.println("[ContentionMonitor] Stopped");
+        }
+    }
+
+    public static ContentionMonitor getInstance() {
+        return instance;
+    }
+}
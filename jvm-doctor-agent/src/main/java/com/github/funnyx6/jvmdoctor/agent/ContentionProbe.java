@@ -0,0 +1,51 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+/**
+ * 锁竞争探针
+ *
+ * 锁竞争监控运行时（{@link ContentionMonitor#getInstance()} 非空），每个上报区间输出：
+ * <ul>
+ *   <li>contention.blocked.time：区间内所有线程累计的阻塞时间（毫秒）</li>
+ *   <li>contention.blocked.count：区间内进入阻塞的次数</li>
+ *   <li>contention.blocked.threads：最近一次采样时处于 BLOCKED 状态的线程数</li>
+ * </ul>
+ * 监控未开启时不输出。
+ */
+public class ContentionProbe implements MetricsProbe {
+
+    private final int blockedTimeId;
+    private final int blockedCountId;
+    private final int blockedThreadsId;
+
+    private ContentionMonitor lastMonitor;
+    private long lastBlockedMillis;
+    private long lastBlockedCount;
+
+    public ContentionProbe(MetricRegistry registry) {
+        this.blockedTimeId = registry.registerLong("contention.blocked.time");
+        this.blockedCountId = registry.registerLong("contention.blocked.count");
+        this.blockedThreadsId = registry.registerLong("contention.blocked.threads");
+    }
+
+    @Override
+    public void collect(MetricsSnapshot snapshot) {
+        ContentionMonitor monitor = ContentionMonitor.getInstance();
+        if (monitor == null) {
+            lastMonitor = null;
+            return;
+        }
+        long blockedMillis = monitor.getTotalBlockedMillis();
+        long blockedCount = monitor.getTotalBlockedCount();
+        if (monitor != lastMonitor) {
+            // 监控刚开启（或重新开启），新实例的累计值从 0 开始
+            lastMonitor = monitor;
+            lastBlockedMillis = 0;
+            lastBlockedCount = 0;
+        }
+        snapshot.setLong(blockedTimeId, blockedMillis - lastBlockedMillis);
+        snapshot.setLong(blockedCountId, blockedCount - lastBlockedCount);
+        snapshot.setLong(blockedThreadsId, monitor.getBlockedThreads());
+        lastBlockedMillis = blockedMillis;
+        lastBlockedCount = blockedCount;
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.util.Arrays;
+
+/**
+ * 栈帧驻留表
+ *
+ * 把栈帧（类名 + 方法名）映射为稠密的整数 ID，调用树和堆栈聚合只保存 ID。
+ * 查找直接比较 StackTraceElement 中的字符串，不拼接 key，已出现过的帧查找不分配对象。
+ * 超过容量后不再驻留新帧，返回 -1 由调用方处理。非线程安全。
+ */
+public class FrameTable {
+
+    private final int maxFrames;
+    private String[] classNames = new String[256];
+    private String[] methodNames = new String[256];
+    private int size = 0;
+
+    // 开放寻址表：槽位存放 ID + 1，0 表示空
+    private int[] table = new int[512];
+    private int mask = 511;
+
+    public FrameTable(int maxFrames) {
+        this.maxFrames = Math.max(maxFrames, 1);
+    }
+
+    /**
+     * 查找或驻留栈帧
+     *
+     * @return 帧 ID，超出容量时返回 -1
+     */
+    public int intern(StackTraceElement element) {
+        return intern(element.getClassName(), element.getMethodName());
+    }
+
+    /**
+     * 查找或驻留栈帧
+     *
+     * @return 帧 ID，超出容量时返回 -1
+     */
+    public int intern(String className, String methodName) {
+        int i = hash(className, methodName) & mask;
+        while (true) {
+            int entry = table[i];
+            if (entry == 0) {
+                break;
+            }
+            int id = entry - 1;
+            if (classNames[id].equals(className) && methodNames[id].equals(methodName)) {
+                return id;
+            }
+            i = (i + 1) & mask;
+        }
+        if (size >= maxFrames) {
+            return -1;
+        }
+
+        int id = size++;
+        if (id == classNames.length) {
+            classNames = Arrays.copyOf(classNames, id * 2);
+            methodNames = Arrays.copyOf(methodNames, id * 2);
+        }
+        classNames[id] = className;
+        methodNames[id] = methodName;
+        table[i] = id + 1;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String className(int id) {
+        return classNames[id];
+    }
+
+    public String methodName(int id) {
+        return methodNames[id];
+    }
+
+    /**
+     * 帧的显示名：类名.方法名
+     */
+    public String frameName(int id) {
+        return classNames[id] + "." + methodNames[id];
+    }
+
+    private static int hash(String className, String methodName) {
+        int h = className.hashCode() * 31 + methodName.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hash(classNames[id], methodNames[id]) & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = id + 1;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.github.funnyx6.jvmdoctor.core.GcTelemetry;
+import com.github.funnyx6.jvmdoctor.core.LogLinearHistogram;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * GC 遥测探针
+ *
+ * 基于 {@link GcTelemetry} 的 GC 通知，每个上报区间输出：
+ * <ul>
+ *   <li>gc.pause.count / p50 / p99 / max：区间内所有停顿的耗时分布（毫秒）</li>
+ *   <li>gc.&lt;收集器&gt;.pause.*：按收集器的停顿耗时分布</li>
+ *   <li>gc.cause.&lt;原因&gt;.*：按 GC 原因的停顿耗时分布（仅输出区间内出现过的原因）</li>
+ *   <li>gc.cycle.* / gc.&lt;收集器&gt;.cycle.*：并发收集器的周期时长分布（仅在有并发收集器时输出）</li>
+ *   <li>gc.alloc.rate / gc.promotion.rate：区间内的分配速率和晋升速率（字节/秒）</li>
+ * </ul>
+ * 稳态下不分配对象，只有首次出现的收集器或原因需要注册指标。
+ */
+public class GcProbe implements MetricsProbe {
+
+    private final GcTelemetry telemetry;
+    private final MetricRegistry registry;
+    private final LogLinearHistogram.Snapshot scratch = new LogLinearHistogram.Snapshot();
+
+    private final HistogramIds total;
+    private final HistogramIds cycleTotal;
+    private final int allocRateId;
+    private final int promotionRateId;
+    private final int allocBytesId;
+    private final int promotedBytesId;
+
+    // 按收集器/原因的直方图，随新名称出现而扩充
+    private LogLinearHistogram[] histograms = new LogLinearHistogram[0];
+    private HistogramIds[] histogramIds = new HistogramIds[0];
+    private boolean[] onlyWhenActive = new boolean[0];
+    private int knownCollectors = -1;
+    private int knownCycleCollectors = -1;
+    private int knownCauses = -1;
+
+    private long lastAllocated;
+    private long lastPromoted;
+    private long lastNanos;
+
+    public GcProbe(GcTelemetry telemetry, MetricRegistry registry) {
+        this.telemetry = telemetry;
+        this.registry = registry;
+        this.total = new HistogramIds(registry, "gc.pause");
+        this.cycleTotal = telemetry.getCollectorCycleHistograms().isEmpty()
+                ? null : new HistogramIds(registry, "gc.cycle");
+        this.allocRateId = registry.registerDouble("gc.alloc.rate");
+        this.promotionRateId = registry.registerDouble("gc.promotion.rate");
+        this.allocBytesId = registry.registerLong("gc.alloc.bytes");
+        this.promotedBytesId = registry.registerLong("gc.promoted.bytes");
+
+        this.lastAllocated = telemetry.getAllocatedBytes();
+        this.lastPromoted = telemetry.getPromotedBytes();
+        this.lastNanos = System.nanoTime();
+        refreshHistograms();
+    }
+
+    @Override
+    public void collect(MetricsSnapshot snapshot) {
+        writeHistogram(snapshot, telemetry.getPauseHistogram(), total, false);
+        if (cycleTotal != null) {
+            writeHistogram(snapshot, telemetry.getCycleHistogram(), cycleTotal, false);
+        }
+
+        if (telemetry.getCollectorHistograms().size() != knownCollectors
+                || telemetry.getCollectorCycleHistograms().size() != knownCycleCollectors
+                || telemetry.getCauseHistograms().size() != knownCauses) {
+            refreshHistograms();
+            snapshot.ensureCapacity();
+        }
+        for (int i = 0; i < histograms.length; i++) {
+            writeHistogram(snapshot, histograms[i], histogramIds[i], onlyWhenActive[i]);
+        }
+
+        long now = System.nanoTime();
+        long allocated = telemetry.getAllocatedBytes();
+        long promoted = telemetry.getPromotedBytes();
+        double seconds = (now - lastNanos) / 1e9;
+        if (seconds > 0) {
+            snapshot.setDouble(allocRateId, (allocated - lastAllocated) / seconds);
+            snapshot.setDouble(promotionRateId, (promoted - lastPromoted) / seconds);
+        }
+        snapshot.setLong(allocBytesId, allocated);
+        snapshot.setLong(promotedBytesId, promoted);
+        lastAllocated = allocated;
+        lastPromoted = promoted;
+        lastNanos = now;
+    }
+
+    /**
+     * 取消 GC 通知订阅
+     */
+    @Override
+    public void close() {
+        telemetry.close();
+    }
+
+    private void writeHistogram(MetricsSnapshot snapshot, LogLinearHistogram histogram,
+                                HistogramIds ids, boolean onlyWhenActive) {
+        histogram.intervalSnapshot(scratch);
+        long count = scratch.getCount();
+        if (count == 0 && onlyWhenActive) {
+            return;
+        }
+        snapshot.setLong(ids.count, count);
+        if (count > 0) {
+            snapshot.setLong(ids.p50, scratch.getValueAtQuantile(0.5));
+            snapshot.setLong(ids.p99, scratch.getValueAtQuantile(0.99));
+            snapshot.setLong(ids.max, scratch.getMax());
+        }
+    }
+
+    /**
+     * 为新出现的收集器和原因注册指标（新直方图首个区间包含其创建以来的全部记录）
+     */
+    private void refreshHistograms() {
+        Map<String, LogLinearHistogram> collectors = telemetry.getCollectorHistograms();
+        Map<String, LogLinearHistogram> cycleCollectors = telemetry.getCollectorCycleHistograms();
+        Map<String, LogLinearHistogram> causes = telemetry.getCauseHistograms();
+        knownCollectors = collectors.size();
+        knownCycleCollectors = cycleCollectors.size();
+        knownCauses = causes.size();
+
+        for (Map.Entry<String, LogLinearHistogram> entry : collectors.entrySet()) {
+            addHistogram(entry.getValue(), "gc." + GcTelemetry.metricName(entry.getKey()) + ".pause", false);
+        }
+        for (Map.Entry<String, LogLinearHistogram> entry : cycleCollectors.entrySet()) {
+            addHistogram(entry.getValue(), "gc." + GcTelemetry.metricName(entry.getKey()) + ".cycle", false);
+        }
+        for (Map.Entry<String, LogLinearHistogram> entry : causes.entrySet()) {
+            addHistogram(entry.getValue(), "gc.cause." + GcTelemetry.metricName(entry.getKey()), true);
+        }
+    }
+
+    private void addHistogram(LogLinearHistogram histogram, String prefix, boolean onlyActive) {
+        for (LogLinearHistogram known : histograms) {
+            if (known == histogram) {
+                return;
+            }
+        }
+        int n = histograms.length;
+        histograms = Arrays.copyOf(histograms, n + 1);
+        histogramIds = Arrays.copyOf(histogramIds, n + 1);
+        onlyWhenActive = Arrays.copyOf(onlyWhenActive, n + 1);
+        histograms[n] = histogram;
+        histogramIds[n] = new HistogramIds(registry, prefix);
+        onlyWhenActive[n] = onlyActive;
+    }
+
+    /**
+     * 一组分布指标的 ID
+     */
+    static final class HistogramIds {
+        final int count;
+        final int p50;
+        final int p99;
+        final int max;
+
+        HistogramIds(MetricRegistry registry, String prefix) {
+            this.count = registry.registerLong(prefix + ".count");
+            this.p50 = registry.registerLong(prefix + ".p50");
+            this.p99 = registry.registerLong(prefix + ".p99");
+            this.max = registry.registerLong(prefix + ".max");
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 开销预算控制 HTTP Handler
+ * 
+ * GET /api/governor  预算、最近窗口的开销，以及各组件的开销和限流级别
+ */
+public class GovernorHandler extends ApiHandler {
+    
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        OverheadGovernor governor = OverheadGovernor.getInstance();
+        if (governor == null) {
+            send(exchange, 200, "{\"enabled\":false}");
+            return;
+        }
+        Map<String, Object> state = governor.getState();
+        state.put("enabled", true);
+        send(exchange, 200, toJson(state));
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 请求体的 gzip 编码（RFC 1952）
+ *
+ * 复用 Deflater 和输出缓冲区，稳态下不分配对象。指标 JSON 的键高度重复，最快压缩级别即可压到原来的 1/5 左右。
+ * 非线程安全，由 {@link HttpTransport} 池化复用。
+ */
+final class GzipBody {
+
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final CRC32 crc = new CRC32();
+    private byte[] buffer = new byte[8192];
+    private int length;
+
+    /**
+     * 压缩请求体，结果见 {@link #buffer()} / {@link #length()}
+     */
+    void encode(byte[] body, int bodyLength) {
+        deflater.reset();
+        crc.reset();
+        crc.update(body, 0, bodyLength);
+        System.arraycopy(HEADER, 0, buffer, 0, HEADER.length);
+        length = HEADER.length;
+        deflater.setInput(body, 0, bodyLength);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        if (length + 8 > buffer.length) {
+            buffer = Arrays.copyOf(buffer, length + 8);
+        }
+        writeIntLE(crc.getValue());
+        writeIntLE(bodyLength);
+    }
+
+    private void writeIntLE(long value) {
+        buffer[length++] = (byte) value;
+        buffer[length++] = (byte) (value >>> 8);
+        buffer[length++] = (byte) (value >>> 16);
+        buffer[length++] = (byte) (value >>> 24);
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int length() {
+        return length;
+    }
+
+    void end() {
+        deflater.end();
+    }
+}
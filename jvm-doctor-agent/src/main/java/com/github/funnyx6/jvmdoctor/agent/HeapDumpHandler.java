@@ -0,0 +1,60 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+/**
+ * 堆转储 HTTP Handler（由 Server 调用）
+ * 
+ * GET  /api/heapdump                              当前转储和上传进度
+ * POST /api/heapdump/start?id=xxx&live=true       转储堆并分块上传到 Server 的 /api/heapdumps/{id}
+ * POST /api/heapdump/cancel                       取消正在进行的上传
+ * 
+ * 转储需要 heapdump.enabled=true，未开启时 start 返回 403。
+ */
+public class HeapDumpHandler extends ApiHandler {
+    
+    private final AgentConfig config;
+    
+    public HeapDumpHandler(AgentConfig config) {
+        this.config = config;
+    }
+    
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String query = exchange.getRequestURI().getRawQuery();
+        HeapDumpUploader uploader = HeapDumpUploader.getInstance(config);
+        
+        if (path.endsWith("/start")) {
+            if (!requirePost(exchange)) {
+                return;
+            }
+            if (!config.isHeapDumpEnabled()) {
+                send(exchange, 403, "{\"error\":\"Heap dump disabled (heapdump.enabled=false)\"}");
+                return;
+            }
+            String id = queryParam(query, "id");
+            if (!HeapDumpUploader.isValidId(id)) {
+                send(exchange, 400, "{\"error\":\"Invalid dump id\"}");
+                return;
+            }
+            boolean live = !"false".equals(queryParam(query, "live"));
+            if (!uploader.start(id, live)) {
+                send(exchange, 409, "{\"error\":\"Heap dump already in progress\"}");
+                return;
+            }
+        } else if (path.endsWith("/cancel")) {
+            if (!requirePost(exchange)) {
+                return;
+            }
+            uploader.cancel();
+        } else if (!path.endsWith("/heapdump")) {
+            send(exchange, 404, "{\"error\":\"Not found\"}");
+            return;
+        }
+        
+        send(exchange, 200, toJson(uploader.getStatus()));
+    }
+}
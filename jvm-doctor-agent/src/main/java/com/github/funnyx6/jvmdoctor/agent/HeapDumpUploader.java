@@ -0,0 +1,416 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 按需堆转储与分块上传
+ *
+ * Server 下发转储请求（带转储 ID）后，后台线程调用 HotSpotDiagnosticMXBean.dumpHeap 写入本地临时文件，
+ * 再按固定大小分块读取、压缩（zlib，最快级别）并逐块 POST 到 Server：
+ * <ul>
+ *   <li>内存有界：只持有一个原始块缓冲和一个压缩缓冲，与转储大小无关</li>
+ *   <li>可续传：上传前和每次失败后向 Server 查询已接收的字节数，从该偏移继续；Server 以偏移校验每一块</li>
+ *   <li>限速：按压缩后的字节数限制上传速率（heapdump.max.rate），线程以最低优先级运行</li>
+ * </ul>
+ * 同一时间只允许一个转储。上传完成后删除本地文件（heapdump.keep.file=true 时保留）。
+ */
+public class HeapDumpUploader {
+
+    public enum State { IDLE, DUMPING, UPLOADING, DONE, FAILED, CANCELLED }
+
+    private static final int MAX_RETRIES = 5;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private final String serverUrl;
+    private final File dir;
+    private final int chunkSize;
+    private final long maxBytesPerSecond;
+    private final boolean keepFile;
+    private final OverheadGovernor.Account account = OverheadGovernor.account("heapdump", 0);
+
+    private volatile State state = State.IDLE;
+    private volatile String dumpId;
+    private volatile File file;
+    private volatile boolean live;
+    private volatile long fileSize;
+    private volatile long uploadedBytes;
+    private volatile long sentBytes;
+    private volatile int retries;
+    private volatile long startTime;
+    private volatile long endTime;
+    private volatile String error;
+    private volatile boolean cancelled;
+    private volatile Thread worker;
+
+    /**
+     * @param serverUrl Server 地址
+     * @param dir 本地转储目录
+     * @param chunkSize 每块的原始字节数
+     * @param maxBytesPerSecond 上传速率上限（压缩后的字节/秒，0 不限速）
+     * @param keepFile 上传完成后保留本地文件
+     */
+    public HeapDumpUploader(String serverUrl, File dir, int chunkSize, long maxBytesPerSecond, boolean keepFile) {
+        this.serverUrl = serverUrl;
+        this.dir = dir;
+        this.chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(chunkSize, MAX_CHUNK_SIZE));
+        this.maxBytesPerSecond = Math.max(maxBytesPerSecond, 0);
+        this.keepFile = keepFile;
+    }
+
+    /**
+     * 转储 ID 只允许字母、数字、点、下划线和连字符（Server 以它作为文件名）
+     */
+    public static boolean isValidId(String id) {
+        if (id == null || id.isEmpty() || id.length() > 64 || id.startsWith(".")) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                    || c == '.' || c == '_' || c == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 开始一次转储并上传
+     *
+     * @param id Server 分配的转储 ID
+     * @param live 只转储存活对象（会先触发 Full GC）
+     * @return 已有转储在进行时返回 false
+     */
+    public synchronized boolean start(String id, boolean live) {
+        if (state == State.DUMPING || state == State.UPLOADING) {
+            return false;
+        }
+        this.dumpId = id;
+        this.live = live;
+        this.file = new File(dir, "jvm-doctor-" + id + ".hprof");
+        this.fileSize = 0;
+        this.uploadedBytes = 0;
+        this.sentBytes = 0;
+        this.retries = 0;
+        this.startTime = System.currentTimeMillis();
+        this.endTime = 0;
+        this.error = null;
+        this.cancelled = false;
+        this.state = State.DUMPING;
+
+        Thread thread = new Thread(this::run, AgentTelemetry.THREAD_PREFIX + "-heapdump");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        worker = thread;
+        thread.start();
+        return true;
+    }
+
+    /**
+     * 取消正在进行的上传（转储本身无法中断，会在转储完成后停止）
+     */
+    public synchronized void cancel() {
+        Thread thread = worker;
+        if (thread != null && (state == State.DUMPING || state == State.UPLOADING)) {
+            cancelled = true;
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        File target = file;
+        try {
+            dump(target, live);
+            if (cancelled) {
+                throw new InterruptedException();
+            }
+            state = State.UPLOADING;
+            upload(dumpId, target);
+            state = State.DONE;
+            System.out.println("[HeapDumpUploader] Uploaded " + dumpId + ": " + fileSize + " bytes ("
+                    + sentBytes + " compressed) in " + (System.currentTimeMillis() - startTime) + "ms");
+        } catch (Exception e) {
+            if (cancelled) {
+                state = State.CANCELLED;
+                System.out.println("[HeapDumpUploader] Heap dump " + dumpId + " cancelled");
+            } else {
+                error = e.getMessage();
+                state = State.FAILED;
+                System.err.println("[HeapDumpUploader] Heap dump " + dumpId + " failed: " + e.getMessage());
+            }
+        } finally {
+            endTime = System.currentTimeMillis();
+            worker = null;
+            if (!keepFile || state != State.DONE) {
+                // 失败或取消时不保留半成品，避免占满磁盘
+                if (target.exists() && !target.delete()) {
+                    System.err.println("[HeapDumpUploader] Failed to delete " + target);
+                }
+            }
+        }
+    }
+
+    private void dump(File target, boolean live) throws IOException {
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Cannot replace " + target);
+        }
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        long usable = dir.getUsableSpace();
+        if (usable < heapUsed) {
+            throw new IOException("Not enough disk space in " + dir + ": " + usable + " bytes usable, heap uses "
+                    + heapUsed);
+        }
+        System.out.println("[HeapDumpUploader] Dumping heap to " + target + (live ? " (live objects)" : ""));
+        HotSpotDiagnosticMXBean diagnostic = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        diagnostic.dumpHeap(target.getAbsolutePath(), live);
+        fileSize = target.length();
+    }
+
+    /**
+     * 分块上传文件，从 Server 已接收的偏移继续
+     */
+    void upload(String id, File source) throws IOException, InterruptedException {
+        fileSize = source.length();
+        ByteBuffer raw = ByteBuffer.allocate(chunkSize);
+        byte[] compressed = new byte[chunkSize + chunkSize / 1000 + 64];
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            long offset = queryReceived(id);
+            long paceStart = System.nanoTime();
+            long pacedBytes = 0;
+            int failures = 0;
+            while (offset < fileSize) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                long cpuStart = OverheadGovernor.threadCpuTime();
+                long allocStart = OverheadGovernor.threadAllocatedBytes();
+                long startNanos = System.nanoTime();
+
+                // 经 Buffer 调用，Java 8 上没有 ByteBuffer 协变返回的 clear/limit
+                ((Buffer) raw).clear();
+                ((Buffer) raw).limit((int) Math.min(chunkSize, fileSize - offset));
+                while (raw.hasRemaining()) {
+                    if (channel.read(raw, offset + raw.position()) < 0) {
+                        throw new IOException("Dump file truncated at " + (offset + raw.position()));
+                    }
+                }
+                int rawLength = raw.position();
+                crc.reset();
+                crc.update(raw.array(), 0, rawLength);
+
+                deflater.reset();
+                deflater.setInput(raw.array(), 0, rawLength);
+                deflater.finish();
+                int compressedLength = 0;
+                while (!deflater.finished()) {
+                    if (compressedLength == compressed.length) {
+                        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    }
+                    compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+                }
+
+                long received;
+                try {
+                    received = sendChunk(id, offset, rawLength, crc.getValue(), compressed, compressedLength);
+                    failures = 0;
+                } catch (IOException e) {
+                    if (++failures > MAX_RETRIES) {
+                        throw e;
+                    }
+                    retries++;
+                    long backoff = Math.min(1000L << (failures - 1), MAX_BACKOFF_MILLIS);
+                    System.err.println("[HeapDumpUploader] Chunk at " + offset + " failed, retrying in "
+                            + backoff + "ms: " + e.getMessage());
+                    Thread.sleep(backoff);
+                    try {
+                        received = queryReceived(id);
+                    } catch (IOException queryError) {
+                        received = offset;
+                    }
+                }
+                account.record(startNanos, cpuStart, allocStart);
+
+                if (received > offset) {
+                    sentBytes += compressedLength;
+                    pacedBytes += compressedLength;
+                }
+                offset = received;
+                uploadedBytes = offset;
+                pace(paceStart, pacedBytes);
+            }
+        } finally {
+            deflater.end();
+        }
+        complete(id, fileSize);
+    }
+
+    /**
+     * 超过速率上限时休眠，使平均速率不超过 heapdump.max.rate
+     */
+    private void pace(long startNanos, long bytes) throws InterruptedException {
+        if (maxBytesPerSecond <= 0) {
+            return;
+        }
+        long expectedNanos = (long) (bytes * 1e9 / maxBytesPerSecond);
+        long aheadNanos = expectedNanos - (System.nanoTime() - startNanos);
+        if (aheadNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(aheadNanos);
+        }
+    }
+
+    /**
+     * 查询 Server 已接收的字节数
+     */
+    private long queryReceived(String id) throws IOException {
+        HttpURLConnection conn = open("/api/heapdumps/" + id, "GET");
+        int code = conn.getResponseCode();
+        if (code == 404) {
+            return 0;
+        }
+        if (code != 200) {
+            throw new IOException("Status query failed: " + code);
+        }
+        return receivedBytes(readBody(conn.getInputStream()));
+    }
+
+    /**
+     * 上传一块
+     *
+     * @return Server 确认后的已接收字节数（偏移不一致时为 Server 的当前偏移）
+     */
+    private long sendChunk(String id, long offset, int rawLength, long crc, byte[] body, int length)
+            throws IOException {
+        HttpURLConnection conn = open("/api/heapdumps/" + id + "/chunks?offset=" + offset + "&length=" + rawLength
+                + "&crc=" + crc + "&total=" + fileSize, "POST");
+        conn.setRequestProperty("Content-Type", "application/octet-stream");
+        conn.setRequestProperty("Content-Encoding", "deflate");
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(length);
+        try (OutputStream os = conn.getOutputStream()) {
+            os.write(body, 0, length);
+        }
+        int code = conn.getResponseCode();
+        if (code == 200) {
+            return receivedBytes(readBody(conn.getInputStream()));
+        }
+        if (code == 409) {
+            // 偏移不一致（如上次的确认丢失），以 Server 为准
+            InputStream errorStream = conn.getErrorStream();
+            if (errorStream != null) {
+                long received = receivedBytes(readBody(errorStream));
+                if (received >= 0) {
+                    return received;
+                }
+            }
+        }
+        throw new IOException("Chunk upload failed: " + code);
+    }
+
+    private void complete(String id, long size) throws IOException {
+        HttpURLConnection conn = open("/api/heapdumps/" + id + "/complete?size=" + size, "POST");
+        int code = conn.getResponseCode();
+        if (code != 200) {
+            throw new IOException("Completing upload failed: " + code);
+        }
+    }
+
+    private HttpURLConnection open(String path, String method) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(serverUrl + path).openConnection();
+        conn.setRequestMethod(method);
+        conn.setConnectTimeout(5000);
+        conn.setReadTimeout(60_000);
+        return conn;
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        try (InputStream is = in) {
+            byte[] buffer = new byte[1024];
+            StringBuilder sb = new StringBuilder();
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                sb.append(new String(buffer, 0, n, StandardCharsets.UTF_8));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * 简单解析 {"receivedBytes": 123, ...}
+     */
+    static long receivedBytes(String json) {
+        int start = json.indexOf("\"receivedBytes\":");
+        if (start < 0) {
+            return -1;
+        }
+        start += 16;
+        while (start < json.length() && json.charAt(start) == ' ') {
+            start++;
+        }
+        int end = start;
+        while (end < json.length() && Character.isDigit(json.charAt(end))) {
+            end++;
+        }
+        return end > start ? Long.parseLong(json.substring(start, end)) : -1;
+    }
+
+    /**
+     * 当前状态（供 /api/heapdump 查询）
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("state", state.name().toLowerCase());
+        status.put("id", dumpId);
+        status.put("live", live);
+        status.put("fileSize", fileSize);
+        status.put("uploadedBytes", uploadedBytes);
+        status.put("compressedBytes", sentBytes);
+        status.put("retries", retries);
+        status.put("startTime", startTime);
+        status.put("endTime", endTime);
+        status.put("maxBytesPerSecond", maxBytesPerSecond);
+        if (error != null) {
+            status.put("error", error);
+        }
+        return status;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // ========== 静态工厂方法 ==========
+
+    private static volatile HeapDumpUploader instance;
+
+    public static synchronized HeapDumpUploader getInstance(AgentConfig config) {
+        if (instance == null) {
+            String dir = config.getHeapDumpDir().isEmpty() ? System.getProperty("java.io.tmpdir") : config.getHeapDumpDir();
+            instance = new HeapDumpUploader(config.getServerUrl(), new File(dir), config.getHeapDumpChunkSize(),
+                    config.getHeapDumpMaxRate(), config.isHeapDumpKeepFile());
+        }
+        return instance;
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 类直方图 HTTP Handler
+ * 
+ * GET  /api/histogram?n=20&sort=bytes   泄漏嫌疑类（sort=bytes 按字节增长，sort=instances 按实例增长）及最近一次的 Top 类
+ * POST /api/histogram/collect           立即采集一次（会触发 Full GC，距上次不足 60 秒时返回 429）
+ * POST /api/histogram/start             开启类直方图跟踪
+ * POST /api/histogram/stop              关闭类直方图跟踪
+ * POST /api/histogram/reset             清空历史窗口
+ */
+public class HistogramHandler extends ApiHandler {
+    
+    private final AgentConfig config;
+    
+    public HistogramHandler(AgentConfig config) {
+        this.config = config;
+    }
+    
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String query = exchange.getRequestURI().getRawQuery();
+        
+        boolean action = path.endsWith("/start") || path.endsWith("/stop") || path.endsWith("/reset")
+                || path.endsWith("/collect");
+        if (action && !requirePost(exchange)) {
+            return;
+        }
+        
+        if (path.endsWith("/start")) {
+            if (ClassHistogramTracker.start(config) == null) {
+                send(exchange, 501, "{\"error\":\"DiagnosticCommand MBean not available\"}");
+                return;
+            }
+        } else if (path.endsWith("/stop")) {
+            ClassHistogramTracker.shutdown();
+        } else if (path.endsWith("/reset")) {
+            ClassHistogramTracker tracker = ClassHistogramTracker.getInstance();
+            if (tracker != null) {
+                tracker.reset();
+            }
+        } else if (path.endsWith("/collect")) {
+            ClassHistogramTracker tracker = ClassHistogramTracker.getInstance();
+            if (tracker == null) {
+                send(exchange, 409, "{\"error\":\"Class histogram tracking not started\"}");
+                return;
+            }
+            try {
+                if (!tracker.collect()) {
+                    send(exchange, 429, "{\"error\":\"Collected less than "
+                            + ClassHistogramTracker.MIN_INTERVAL_SECONDS + "s ago\"}");
+                    return;
+                }
+            } catch (Exception e) {
+                send(exchange, 500, "{\"error\":\"" + escapeJson(String.valueOf(e.getMessage())) + "\"}");
+                return;
+            }
+        } else if (!path.endsWith("/histogram")) {
+            send(exchange, 404, "{\"error\":\"Not found\"}");
+            return;
+        }
+        
+        int topN = Math.max(intParam(query, "n", intParam(query, "limit", 20)), 1);
+        boolean byBytes = !"instances".equals(queryParam(query, "sort"));
+        send(exchange, 200, getStatus(topN, byBytes));
+    }
+    
+    private String getStatus(int topN, boolean byBytes) {
+        ClassHistogramTracker tracker = ClassHistogramTracker.getInstance();
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", tracker != null);
+        if (tracker != null) {
+            result.put("intervalSeconds", tracker.getIntervalSeconds());
+            result.put("historySize", tracker.getHistorySize());
+            result.put("histories", tracker.getHistoryCount());
+            result.put("windowStart", tracker.getWindowStart());
+            result.put("windowEnd", tracker.getWindowEnd());
+            result.put("lastDurationMillis", tracker.getLastDurationMillis());
+            ClassHistogram latest = tracker.getLatest();
+            if (latest != null) {
+                result.put("totalInstances", latest.getTotalInstances());
+                result.put("totalBytes", latest.getTotalBytes());
+            }
+            result.put("sort", byBytes ? "bytes" : "instances");
+            result.put("suspects", tracker.getSuspects(topN, byBytes));
+            result.put("top", tracker.getTopClasses(topN));
+        }
+        return toJson(result);
+    }
+}
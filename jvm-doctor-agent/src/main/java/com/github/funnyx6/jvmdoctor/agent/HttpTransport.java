@@ -0,0 +1,119 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+
+/**
+ * {@link AgentTransport} 的公共部分：请求体压缩和重试
+ * <ul>
+ *   <li>不小于 transport.gzip.min 字节的请求体按 gzip 压缩（Content-Encoding: gzip），压缩后不变小时原样发送</li>
+ *   <li>连接或读写失败、Server 返回 502 / 503 / 504 时重试 transport.retries 次，
+ *       间隔从 {@value #BACKOFF_BASE_MILLIS}ms 起翻倍，不超过 transport.backoff.max</li>
+ * </ul>
+ * 上报已按 (appId, seq) 幂等、注册按应用名和地址幂等，重试不会产生重复数据。
+ * 子类只负责一次请求 / 响应的交换（{@link #exchange}）。
+ */
+public abstract class HttpTransport implements AgentTransport {
+
+    private static final long BACKOFF_BASE_MILLIS = 100;
+
+    protected final String serverUrl;
+    private final int gzipMinBytes;
+    private final int retries;
+    private final long maxBackoffMillis;
+    private final AgentTelemetry telemetry = AgentTelemetry.getShared();
+    private final ArrayDeque<GzipBody> compressors = new ArrayDeque<>();
+
+    protected HttpTransport(AgentConfig config) {
+        this.serverUrl = config.getServerUrl();
+        this.gzipMinBytes = config.getTransportGzipMin();
+        this.retries = Math.max(0, config.getTransportRetries());
+        this.maxBackoffMillis = Math.max(0, config.getTransportBackoffMax());
+    }
+
+    /**
+     * 发送一次请求并读完响应
+     *
+     * @param encoding 请求体的 Content-Encoding，未压缩时为 null
+     */
+    protected abstract Response exchange(String method, String path, String contentType, String encoding,
+                                         byte[] body, int length) throws IOException;
+
+    @Override
+    public Response post(String path, String contentType, byte[] body, int length) throws IOException {
+        GzipBody gzip = null;
+        byte[] payload = body;
+        int payloadLength = length;
+        String encoding = null;
+        if (gzipMinBytes > 0 && length >= gzipMinBytes) {
+            gzip = takeCompressor();
+            gzip.encode(body, length);
+            if (gzip.length() < length) {
+                payload = gzip.buffer();
+                payloadLength = gzip.length();
+                encoding = "gzip";
+            }
+        }
+        try {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    Response response = exchange("POST", path, contentType, encoding, payload, payloadLength);
+                    telemetry.recordSent(payloadLength);
+                    if (attempt >= retries || !isTransient(response.getStatus())) {
+                        return response;
+                    }
+                    backoff(attempt, path + " returned " + response.getStatus());
+                } catch (IOException e) {
+                    if (attempt >= retries) {
+                        throw e;
+                    }
+                    backoff(attempt, path + " failed: " + e.getMessage());
+                }
+            }
+        } finally {
+            if (gzip != null) {
+                releaseCompressor(gzip);
+            }
+        }
+    }
+
+    private static boolean isTransient(int status) {
+        return status == 502 || status == 503 || status == 504;
+    }
+
+    private void backoff(int attempt, String reason) throws IOException {
+        telemetry.recordRetry();
+        long millis = Math.min(maxBackoffMillis, BACKOFF_BASE_MILLIS << Math.min(attempt, 20));
+        System.err.println("[" + getClass().getSimpleName() + "] " + reason + ", retrying in " + millis + "ms");
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while retrying " + reason);
+        }
+    }
+
+    private GzipBody takeCompressor() {
+        synchronized (compressors) {
+            GzipBody gzip = compressors.pollFirst();
+            return gzip != null ? gzip : new GzipBody();
+        }
+    }
+
+    private void releaseCompressor(GzipBody gzip) {
+        synchronized (compressors) {
+            compressors.addFirst(gzip);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (compressors) {
+            for (GzipBody gzip : compressors) {
+                gzip.end();
+            }
+            compressors.clear();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.github.funnyx6.jvmdoctor.agent;
 
+import com.github.funnyx6.jvmdoctor.core.DeadlockDetector;
+
 import java.lang.instrument.Instrumentation;
 
 /**
@@ -18,7 +20,7 @@ public class JvmDoctorAgent {
      */
     public static void premain(String args, Instrumentation inst) {
         System.out.println("[JvmDoctorAgent] premain called with args: " + args);
-        startAgent(args);
+        startAgent(args, inst);
     }
     
     /**
@@ -26,13 +28,13 @@ public class JvmDoctorAgent {
      */
     public static void agentmain(String args, Instrumentation inst) {
         System.out.println("[JvmDoctorAgent] agentmain called with args: " + args);
-        startAgent(args);
+        startAgent(args, inst);
     }
     
     /**
      * 启动 Agent 主逻辑
      */
-    private static void startAgent(String args) {
+    private static void startAgent(String args, Instrumentation inst) {
         try {
             // 解析配置
             AgentConfig config = AgentConfig.parse(args);
@@ -40,11 +42,38 @@ public class JvmDoctorAgent {
             System.out.println("[JvmDoctorAgent] Server URL: " + config.getServerUrl());
             System.out.println("[JvmDoctorAgent] Report Interval: " + config.getReportInterval() + "s");
             
+            // 方法计时：尽早注册类转换器，之后加载的匹配类都会被织入
+            MethodTimers.install(inst, config);
+            
+            // 开销预算控制（各组件的开销在启动前后都会计量）
+            OverheadGovernor.start(config);
+            
+            // 死锁检测的最大频率（检测器在指标采集和 /api/deadlock 之间共享）
+            DeadlockDetector.getShared().setMinCheckIntervalMillis(config.getDeadlockMinInterval());
+            
             // 启动线程信息 HTTP 服务器
-            int threadPort = ThreadServer.start(0);
+            int threadPort = ThreadServer.start(0, config);
             System.out.println("[JvmDoctorAgent] Thread server started on port " + threadPort);
             config.setThreadServerPort(threadPort);
             
+            // 启动线程 CPU 跟踪（供窗口 Top N 查询）
+            ThreadActivityTracker.start(config);
+            
+            // 锁竞争监控（默认关闭，也可通过 /api/contention/start 临时开启）
+            if (config.isContentionEnabled()) {
+                ContentionMonitor.start(config);
+            }
+            
+            // 类直方图趋势跟踪（默认关闭，也可通过 /api/histogram/start 临时开启）
+            if (config.isHistogramEnabled()) {
+                ClassHistogramTracker.start(config);
+            }
+            
+            // NMT 汇总采集（仅目标 JVM 以 -XX:NativeMemoryTracking=summary 启动时生效）
+            if (config.isNmtEnabled() && !"off".equals(NativeMemoryTracker.trackingMode())) {
+                NativeMemoryTracker.start(config);
+            }
+            
             // 启动指标上报
             MetricsReporter.start(config);
             
@@ -0,0 +1,72 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.github.funnyx6.jvmdoctor.core.MemoryPoolMonitor;
+
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+
+/**
+ * 内存池探针
+ *
+ * 按池输出 mem.pool.&lt;池名&gt;.used / committed / max，
+ * 支持 CollectionUsage 的池额外输出 mem.pool.&lt;池名&gt;.gc.used（最近一次 GC 后的使用量）。
+ * MemoryPoolMXBean 在 native 层构造 MemoryUsage，每个池每次采集会分配一个小对象。
+ */
+public class MemoryPoolProbe implements MetricsProbe {
+
+    private final MemoryPoolMonitor monitor;
+    private final MemoryPoolMXBean[] pools;
+    private final int[] usedIds;
+    private final int[] committedIds;
+    private final int[] maxIds;
+    private final int[] gcUsedIds;
+
+    public MemoryPoolProbe(MemoryPoolMonitor monitor, MetricRegistry registry) {
+        this.monitor = monitor;
+        List<MemoryPoolMXBean> poolList = monitor.getPools();
+        this.pools = poolList.toArray(new MemoryPoolMXBean[0]);
+        this.usedIds = new int[pools.length];
+        this.committedIds = new int[pools.length];
+        this.maxIds = new int[pools.length];
+        this.gcUsedIds = new int[pools.length];
+        for (int i = 0; i < pools.length; i++) {
+            String prefix = "mem.pool." + MemoryPoolMonitor.metricName(pools[i].getName());
+            usedIds[i] = registry.registerLong(prefix + ".used");
+            committedIds[i] = registry.registerLong(prefix + ".committed");
+            maxIds[i] = registry.registerLong(prefix + ".max");
+            gcUsedIds[i] = pools[i].isCollectionUsageThresholdSupported()
+                    ? registry.registerLong(prefix + ".gc.used") : -1;
+        }
+    }
+
+    @Override
+    public void collect(MetricsSnapshot snapshot) {
+        for (int i = 0; i < pools.length; i++) {
+            MemoryPoolMXBean pool = pools[i];
+            if (!pool.isValid()) {
+                continue;
+            }
+            MemoryUsage usage = pool.getUsage();
+            snapshot.setLong(usedIds[i], usage.getUsed());
+            snapshot.setLong(committedIds[i], usage.getCommitted());
+            if (usage.getMax() >= 0) {
+                snapshot.setLong(maxIds[i], usage.getMax());
+            }
+            if (gcUsedIds[i] >= 0) {
+                MemoryUsage collectionUsage = pool.getCollectionUsage();
+                if (collectionUsage != null) {
+                    snapshot.setLong(gcUsedIds[i], collectionUsage.getUsed());
+                }
+            }
+        }
+    }
+
+    /**
+     * 取消阈值通知订阅
+     */
+    @Override
+    public void close() {
+        monitor.close();
+    }
+}
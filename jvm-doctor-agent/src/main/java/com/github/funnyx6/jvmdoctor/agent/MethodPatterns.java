@@ -0,0 +1,123 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 方法计时的匹配规则
+ *
+ * 规则以分号分隔，每条为 类名[#方法名]，两部分都支持 * 通配（匹配任意字符，包括包分隔符），
+ * 省略方法名表示类中的所有方法：
+ * <pre>
+ *   com.example.OrderService#placeOrder;com.example.dao.*Dao#find*;com.example.Checkout
+ * </pre>
+ * 类加载时先按每条规则的字面前缀快速排除，不匹配的类不做任何解析。
+ */
+public class MethodPatterns {
+
+    private final String[] classPatterns;
+    private final String[] classPrefixes;
+    private final String[] methodPatterns;
+
+    private MethodPatterns(List<String> classes, List<String> methods) {
+        this.classPatterns = classes.toArray(new String[0]);
+        this.methodPatterns = methods.toArray(new String[0]);
+        this.classPrefixes = new String[classPatterns.length];
+        for (int i = 0; i < classPatterns.length; i++) {
+            int star = classPatterns[i].indexOf('*');
+            classPrefixes[i] = star >= 0 ? classPatterns[i].substring(0, star) : classPatterns[i];
+        }
+    }
+
+    /**
+     * 解析规则（类名转换为 JVM 内部形式，如 com/example/Foo）
+     */
+    public static MethodPatterns parse(String spec) {
+        List<String> classes = new ArrayList<>();
+        List<String> methods = new ArrayList<>();
+        if (spec != null) {
+            for (String rule : spec.split(";")) {
+                rule = rule.trim();
+                if (rule.isEmpty()) {
+                    continue;
+                }
+                int hash = rule.indexOf('#');
+                String classPart = hash >= 0 ? rule.substring(0, hash).trim() : rule;
+                String methodPart = hash >= 0 ? rule.substring(hash + 1).trim() : "*";
+                if (classPart.isEmpty() || methodPart.isEmpty()) {
+                    System.err.println("[MethodPatterns] Ignoring invalid rule: " + rule);
+                    continue;
+                }
+                classes.add(classPart.replace('.', '/'));
+                methods.add(methodPart);
+            }
+        }
+        return new MethodPatterns(classes, methods);
+    }
+
+    public boolean isEmpty() {
+        return classPatterns.length == 0;
+    }
+
+    public int size() {
+        return classPatterns.length;
+    }
+
+    /**
+     * 类是否可能包含匹配的方法
+     *
+     * @param internalName JVM 内部类名，如 com/example/Foo
+     */
+    public boolean matchesClass(String internalName) {
+        for (int i = 0; i < classPatterns.length; i++) {
+            if (internalName.startsWith(classPrefixes[i]) && glob(classPatterns[i], internalName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 方法是否匹配
+     *
+     * @param internalName JVM 内部类名
+     * @param methodName 方法名
+     */
+    public boolean matchesMethod(String internalName, String methodName) {
+        for (int i = 0; i < classPatterns.length; i++) {
+            if (internalName.startsWith(classPrefixes[i]) && glob(classPatterns[i], internalName)
+                    && glob(methodPatterns[i], methodName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 通配匹配，* 匹配任意字符序列（不分配对象）
+     */
+    static boolean glob(String pattern, String text) {
+        int p = 0;
+        int t = 0;
+        int starP = -1;
+        int starT = 0;
+        while (t < text.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == text.charAt(t)) {
+                p++;
+                t++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                starP = p++;
+                starT = t;
+            } else if (starP >= 0) {
+                p = starP + 1;
+                t = ++starT;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+}
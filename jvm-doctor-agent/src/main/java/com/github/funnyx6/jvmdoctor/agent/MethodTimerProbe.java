@@ -0,0 +1,45 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.github.funnyx6.jvmdoctor.core.LogLinearHistogram;
+
+import java.util.Arrays;
+
+/**
+ * 方法计时探针
+ *
+ * 每个上报区间为每个计时的方法输出 method.&lt;类&gt;.&lt;方法&gt;.count / p50 / p99 / max，
+ * 如 method.com.example.OrderService.placeOrder.p99（微秒）。计时器随类加载动态出现，首次出现时注册指标。
+ */
+public class MethodTimerProbe implements MetricsProbe {
+
+    private final MetricRegistry registry;
+    private final LogLinearHistogram.Snapshot scratch = new LogLinearHistogram.Snapshot();
+    private GcProbe.HistogramIds[] ids = new GcProbe.HistogramIds[0];
+
+    public MethodTimerProbe(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void collect(MetricsSnapshot snapshot) {
+        int size = MethodTimers.size();
+        if (size != ids.length) {
+            int known = ids.length;
+            ids = Arrays.copyOf(ids, size);
+            for (int i = known; i < size; i++) {
+                ids[i] = new GcProbe.HistogramIds(registry, "method." + MethodTimers.name(i));
+            }
+            snapshot.ensureCapacity();
+        }
+        for (int i = 0; i < ids.length; i++) {
+            MethodTimers.timer(i).intervalSnapshot(scratch);
+            long count = scratch.getCount();
+            snapshot.setLong(ids[i].count, count);
+            if (count > 0) {
+                snapshot.setLong(ids[i].p50, scratch.getValueAtQuantile(0.5) / 1000);
+                snapshot.setLong(ids[i].p99, scratch.getValueAtQuantile(0.99) / 1000);
+                snapshot.setLong(ids[i].max, scratch.getMax() / 1000);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 方法计时的类转换器
+ *
+ * 只在类首次定义时织入（注册为不可重转换的转换器，其他 Agent 重转换时沿用织入后的字节码）。
+ * 不匹配的类只做规则前缀比较即返回；织入失败时原样加载，不影响应用。
+ */
+public class MethodTimerTransformer implements ClassFileTransformer {
+
+    private static final String AGENT_PACKAGE = "com/github/funnyx6/jvmdoctor/";
+
+    private final MethodPatterns patterns;
+    // 类加载器是否能看到 MethodTimers（看不到时织入的代码会抛 NoClassDefFoundError）
+    private final Map<ClassLoader, Boolean> visibleLoaders = Collections.synchronizedMap(new WeakHashMap<>());
+    private final AtomicInteger wovenClasses = new AtomicInteger();
+
+    public MethodTimerTransformer(MethodPatterns patterns) {
+        this.patterns = patterns;
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (className == null || loader == null || classBeingRedefined != null
+                || className.startsWith(AGENT_PACKAGE) || !patterns.matchesClass(className)) {
+            return null;
+        }
+        if (!canSeeTimers(loader)) {
+            return null;
+        }
+        try {
+            byte[] woven = MethodWeaver.weave(classfileBuffer, patterns, MethodTimers::register);
+            if (woven != null) {
+                wovenClasses.incrementAndGet();
+                System.out.println("[MethodTimers] Timing " + className.replace('/', '.'));
+            }
+            return woven;
+        } catch (Throwable e) {
+            System.err.println("[MethodTimers] Failed to weave " + className + ": " + e);
+            return null;
+        }
+    }
+
+    private boolean canSeeTimers(ClassLoader loader) {
+        Boolean visible = visibleLoaders.get(loader);
+        if (visible == null) {
+            try {
+                visible = Class.forName(MethodTimers.class.getName(), false, loader) == MethodTimers.class;
+            } catch (ClassNotFoundException e) {
+                visible = false;
+            } catch (Throwable e) {
+                // 加载器此刻无法回答（如正在初始化、类加载冲突），本次跳过，下次再判断
+                return false;
+            }
+            if (!visible) {
+                System.err.println("[MethodTimers] Class loader " + loader + " cannot see the agent, skipping its classes");
+            }
+            visibleLoaders.put(loader, visible);
+        }
+        return visible;
+    }
+
+    /**
+     * 已织入的类数
+     */
+    public int getWovenClasses() {
+        return wovenClasses.get();
+    }
+}
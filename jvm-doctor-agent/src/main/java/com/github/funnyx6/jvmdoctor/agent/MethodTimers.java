@@ -0,0 +1,124 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.github.funnyx6.jvmdoctor.core.StripedHistogram;
+
+import java.lang.instrument.Instrumentation;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 方法计时器
+ *
+ * 按 jvm-doctor-agent.properties 中的 method.timers 规则（见 {@link MethodPatterns}），
+ * 在类定义时由 {@link MethodTimerTransformer} 织入计时代码，每个"类.方法"（重载共用）对应一个分片直方图。
+ * 织入的代码只调用 System.nanoTime() 和 {@link #exit(int, long)}，热路径上不分配对象、不加锁。
+ *
+ * 只有织入后才加载的类会被计时：premain 方式覆盖几乎所有应用类，动态挂载时已加载的类不会被计时。
+ */
+public final class MethodTimers {
+
+    private static final Object LOCK = new Object();
+    private static final Map<String, Integer> IDS = new HashMap<>();
+
+    // 写时复制，织入的代码通过 ID 直接索引
+    private static volatile StripedHistogram[] timers = new StripedHistogram[0];
+    private static volatile String[] names = new String[0];
+    private static volatile int maxTimers = 128;
+
+    private static MethodTimerTransformer transformer;
+
+    private MethodTimers() {
+    }
+
+    /**
+     * 织入代码在方法返回或抛出异常时调用
+     *
+     * @param id 计时器 ID
+     * @param startNanos 方法开始时的 System.nanoTime()
+     */
+    public static void exit(int id, long startNanos) {
+        timers[id].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 获取（首次时注册）方法的计时器 ID
+     *
+     * @return 超出 method.timers.max 时返回 -1，方法不织入
+     */
+    static int register(String className, String methodName) {
+        String name = className + "." + methodName;
+        synchronized (LOCK) {
+            Integer id = IDS.get(name);
+            if (id != null) {
+                return id;
+            }
+            int n = timers.length;
+            if (n >= maxTimers) {
+                System.err.println("[MethodTimers] Timer limit " + maxTimers + " reached, not timing " + name);
+                return -1;
+            }
+            StripedHistogram[] grownTimers = Arrays.copyOf(timers, n + 1);
+            String[] grownNames = Arrays.copyOf(names, n + 1);
+            grownTimers[n] = new StripedHistogram();
+            grownNames[n] = name;
+            names = grownNames;
+            timers = grownTimers;
+            IDS.put(name, n);
+            return n;
+        }
+    }
+
+    /**
+     * 已注册的计时器数
+     */
+    public static int size() {
+        return timers.length;
+    }
+
+    /**
+     * 计时器对应的"类.方法"
+     */
+    public static String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * 计时器的耗时分布（纳秒）
+     */
+    public static StripedHistogram timer(int id) {
+        return timers[id];
+    }
+
+    /**
+     * 按配置注册类转换器
+     *
+     * @param inst premain / agentmain 传入的 Instrumentation
+     * @return 未配置规则时返回 null
+     */
+    public static synchronized MethodTimerTransformer install(Instrumentation inst, AgentConfig config) {
+        if (transformer != null || inst == null) {
+            return transformer;
+        }
+        MethodPatterns patterns = MethodPatterns.parse(config.getMethodTimers());
+        if (patterns.isEmpty()) {
+            return null;
+        }
+        maxTimers = Math.max(1, Math.min(config.getMethodTimersMax(), Short.MAX_VALUE));
+        transformer = new MethodTimerTransformer(patterns);
+        inst.addTransformer(transformer);
+
+        int alreadyLoaded = 0;
+        for (Class<?> loaded : inst.getAllLoadedClasses()) {
+            if (patterns.matchesClass(loaded.getName().replace('.', '/'))) {
+                alreadyLoaded++;
+            }
+        }
+        if (alreadyLoaded > 0) {
+            System.err.println("[MethodTimers] " + alreadyLoaded
+                    + " matching classes were loaded before the agent and will not be timed");
+        }
+        System.out.println("[MethodTimers] Installed " + patterns.size() + " rules, max timers: " + maxTimers);
+        return transformer;
+    }
+}
@@ -0,0 +1,576 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 方法计时织入
+ *
+ * 不依赖字节码库，采用"改名 + 包装"的方式织入：匹配的方法改名为 name$timed（私有、synthetic，字节码原样保留），
+ * 再以原名、原描述符、原注解生成一个包装方法：
+ * <pre>
+ *   long start = System.nanoTime();
+ *   try { return name$timed(args); } finally { MethodTimers.exit(id, start); }
+ * </pre>
+ * 原方法的字节码不移动，因此无需改写跳转偏移、异常表和栈映射帧；只需为包装方法生成一个异常处理帧。
+ * 常量池只追加不修改，已有的引用保持有效。
+ *
+ * 只能在类首次定义时织入（重转换不允许增加方法）；接口、构造器、抽象、本地、桥接和合成方法不织入。
+ */
+public class MethodWeaver {
+
+    static final String TIMED_SUFFIX = "$timed";
+    static final String TIMERS_CLASS = "com/github/funnyx6/jvmdoctor/agent/MethodTimers";
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_SYNCHRONIZED = 0x0020;
+    private static final int ACC_BRIDGE = 0x0040;
+    private static final int ACC_VARARGS = 0x0080;
+    private static final int ACC_NATIVE = 0x0100;
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    /**
+     * 为方法分配计时器
+     */
+    public interface TimerAllocator {
+        /**
+         * @param className 类名（点分隔）
+         * @param methodName 方法名
+         * @return 计时器 ID，小于 0 表示不织入该方法
+         */
+        int allocate(String className, String methodName);
+    }
+
+    /**
+     * 织入匹配的方法
+     *
+     * @param classfile 原始类文件
+     * @param patterns 方法匹配规则
+     * @param allocator 计时器分配
+     * @return 织入后的类文件，没有可织入的方法时返回 null
+     */
+    public static byte[] weave(byte[] classfile, MethodPatterns patterns, TimerAllocator allocator) throws IOException {
+        ClassFile cf = ClassFile.parse(classfile);
+        if ((cf.access & ACC_INTERFACE) != 0) {
+            return null;
+        }
+        String className = cf.utf8(cf.classNameIndex(cf.thisClass));
+        String dotted = className.replace('/', '.');
+
+        List<MethodInfo> targets = new ArrayList<>();
+        for (MethodInfo method : cf.methods) {
+            String name = cf.utf8(method.nameIndex);
+            if (name.endsWith(TIMED_SUFFIX)) {
+                // 已织入过（或恰好同名），整个类跳过
+                return null;
+            }
+            if (name.charAt(0) == '<'
+                    || (method.access & (ACC_ABSTRACT | ACC_NATIVE | ACC_BRIDGE | ACC_SYNTHETIC)) != 0
+                    || method.code == null
+                    || !patterns.matchesMethod(className, name)) {
+                continue;
+            }
+            targets.add(method);
+        }
+        if (targets.isEmpty()) {
+            return null;
+        }
+
+        ConstantPoolBuilder pool = new ConstantPoolBuilder(cf.constantPoolCount);
+        int codeName = pool.utf8("Code");
+        int stackMapName = pool.utf8("StackMapTable");
+        int nanoTime = pool.methodRef("java/lang/System", "nanoTime", "()J");
+        int exit = pool.methodRef(TIMERS_CLASS, "exit", "(IJ)V");
+        int throwable = pool.classRef("java/lang/Throwable");
+
+        Map<MethodInfo, Integer> timerIds = new HashMap<>();
+        Map<MethodInfo, Integer> renamedIndex = new HashMap<>();
+        Map<MethodInfo, byte[]> wrappers = new HashMap<>();
+        for (MethodInfo method : targets) {
+            String name = cf.utf8(method.nameIndex);
+            int id = allocator.allocate(dotted, name);
+            if (id < 0 || id > Short.MAX_VALUE) {
+                continue;
+            }
+            String descriptor = cf.utf8(method.descriptorIndex);
+            String renamed = name + TIMED_SUFFIX;
+            int renamedName = pool.utf8(renamed);
+            int target = pool.methodRef(className, renamed, descriptor);
+            timerIds.put(method, id);
+            renamedIndex.put(method, renamedName);
+            wrappers.put(method, wrapperCode(cf, pool, method, descriptor, id, target,
+                    nanoTime, exit, throwable, codeName, stackMapName));
+        }
+        if (timerIds.isEmpty()) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(classfile.length + 256 * timerIds.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(classfile, 0, 8);
+        out.writeShort(pool.size());
+        out.write(classfile, 10, cf.constantPoolEnd - 10);
+        pool.writeTo(out);
+        out.write(classfile, cf.constantPoolEnd, cf.methodsStart - cf.constantPoolEnd);
+
+        out.writeShort(cf.methods.size() + timerIds.size());
+        for (MethodInfo method : cf.methods) {
+            Integer renamedName = renamedIndex.get(method);
+            if (renamedName == null) {
+                out.write(classfile, method.start, method.end - method.start);
+                continue;
+            }
+            // 改名后的原方法：私有、synthetic，只保留 Code 属性
+            int access = (method.access & ~(ACC_PUBLIC | ACC_PROTECTED | ACC_VARARGS)) | ACC_PRIVATE | ACC_SYNTHETIC;
+            out.writeShort(access);
+            out.writeShort(renamedName);
+            out.writeShort(method.descriptorIndex);
+            out.writeShort(1);
+            out.write(classfile, method.code.start, method.code.end - method.code.start);
+
+            // 包装方法：原名、原访问标志（同步由原方法负责）、原有的非 Code 属性
+            out.writeShort(method.access & ~ACC_SYNCHRONIZED);
+            out.writeShort(method.nameIndex);
+            out.writeShort(method.descriptorIndex);
+            out.writeShort(method.attributes.size());
+            for (Attribute attribute : method.attributes) {
+                if (attribute == method.code) {
+                    out.write(wrappers.get(method));
+                } else {
+                    out.write(classfile, attribute.start, attribute.end - attribute.start);
+                }
+            }
+        }
+        out.write(classfile, cf.methodsEnd, classfile.length - cf.methodsEnd);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 生成包装方法的 Code 属性
+     */
+    private static byte[] wrapperCode(ClassFile cf, ConstantPoolBuilder pool, MethodInfo method, String descriptor,
+                                      int id, int target, int nanoTime, int exit,
+                                      int throwable, int codeName, int stackMapName) throws IOException {
+        boolean isStatic = (method.access & ACC_STATIC) != 0;
+        List<String> params = parameterTypes(descriptor);
+        char returnType = descriptor.charAt(descriptor.indexOf(')') + 1);
+
+        int argSlots = isStatic ? 0 : 1;
+        for (String param : params) {
+            argSlots += slots(param.charAt(0));
+        }
+        int startLocal = argSlots;
+
+        ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(codeBytes);
+        code.writeByte(0xb8); // invokestatic System.nanoTime
+        code.writeShort(nanoTime);
+        writeLocal(code, 0x37, startLocal); // lstore start
+
+        int tryStart = code.size();
+        int local = 0;
+        if (!isStatic) {
+            code.writeByte(0x19); // aload 0
+            code.writeByte(0);
+            local = 1;
+        }
+        for (String param : params) {
+            writeLocal(code, loadOpcode(param.charAt(0)), local);
+            local += slots(param.charAt(0));
+        }
+        code.writeByte(isStatic ? 0xb8 : 0xb7); // invokestatic / invokespecial
+        code.writeShort(target);
+        int tryEnd = code.size();
+
+        writeExit(code, id, startLocal, exit);
+        code.writeByte(returnOpcode(returnType));
+
+        int handler = code.size();
+        writeExit(code, id, startLocal, exit);
+        code.writeByte(0xbf); // athrow
+        code.flush();
+
+        int maxStack = Math.max(Math.max(argSlots, slots(returnType) + 3), 4);
+        int maxLocals = argSlots + 2;
+
+        byte[] stackMap = null;
+        if (cf.majorVersion >= 50) {
+            // 异常处理入口的完整帧：locals = [this] + 参数 + long，stack = [Throwable]
+            ByteArrayOutputStream frameBytes = new ByteArrayOutputStream();
+            DataOutputStream frame = new DataOutputStream(frameBytes);
+            frame.writeShort(1); // number_of_entries
+            frame.writeByte(255); // full_frame
+            frame.writeShort(handler);
+            frame.writeShort((isStatic ? 0 : 1) + params.size() + 1);
+            if (!isStatic) {
+                frame.writeByte(7);
+                frame.writeShort(cf.thisClass);
+            }
+            for (String param : params) {
+                writeVerificationType(frame, pool, param);
+            }
+            frame.writeByte(4); // Long
+            frame.writeShort(1);
+            frame.writeByte(7);
+            frame.writeShort(throwable);
+            frame.flush();
+            stackMap = frameBytes.toByteArray();
+        }
+
+        byte[] codeArray = codeBytes.toByteArray();
+        ByteArrayOutputStream attrBytes = new ByteArrayOutputStream();
+        DataOutputStream attr = new DataOutputStream(attrBytes);
+        int length = 2 + 2 + 4 + codeArray.length + 2 + 8 + 2 + (stackMap != null ? 6 + stackMap.length : 0);
+        attr.writeShort(codeName);
+        attr.writeInt(length);
+        attr.writeShort(maxStack);
+        attr.writeShort(maxLocals);
+        attr.writeInt(codeArray.length);
+        attr.write(codeArray);
+        attr.writeShort(1);
+        attr.writeShort(tryStart);
+        attr.writeShort(tryEnd);
+        attr.writeShort(handler);
+        attr.writeShort(0); // catch any
+        if (stackMap != null) {
+            attr.writeShort(1);
+            attr.writeShort(stackMapName);
+            attr.writeInt(stackMap.length);
+            attr.write(stackMap);
+        } else {
+            attr.writeShort(0);
+        }
+        attr.flush();
+        return attrBytes.toByteArray();
+    }
+
+    private static void writeExit(DataOutputStream code, int id, int startLocal, int exit) throws IOException {
+        code.writeByte(0x11); // sipush id
+        code.writeShort(id);
+        writeLocal(code, 0x16, startLocal); // lload start
+        code.writeByte(0xb8); // invokestatic MethodTimers.exit
+        code.writeShort(exit);
+    }
+
+    /**
+     * 写出带局部变量下标的 load / store 指令，下标超过 255 时加 wide 前缀
+     */
+    static void writeLocal(DataOutputStream code, int opcode, int index) throws IOException {
+        if (index > 255) {
+            code.writeByte(0xc4); // wide
+            code.writeByte(opcode);
+            code.writeShort(index);
+        } else {
+            code.writeByte(opcode);
+            code.writeByte(index);
+        }
+    }
+
+    private static void writeVerificationType(DataOutputStream frame, ConstantPoolBuilder pool, String type)
+            throws IOException {
+        switch (type.charAt(0)) {
+            case 'Z': case 'B': case 'C': case 'S': case 'I':
+                frame.writeByte(1);
+                break;
+            case 'F':
+                frame.writeByte(2);
+                break;
+            case 'D':
+                frame.writeByte(3);
+                break;
+            case 'J':
+                frame.writeByte(4);
+                break;
+            case 'L':
+                frame.writeByte(7);
+                frame.writeShort(pool.classRef(type.substring(1, type.length() - 1)));
+                break;
+            default: // 数组
+                frame.writeByte(7);
+                frame.writeShort(pool.classRef(type));
+                break;
+        }
+    }
+
+    static List<String> parameterTypes(String descriptor) {
+        List<String> types = new ArrayList<>();
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            int start = i;
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+            if (descriptor.charAt(i) == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            i++;
+            types.add(descriptor.substring(start, i));
+        }
+        return types;
+    }
+
+    private static int slots(char type) {
+        return type == 'J' || type == 'D' ? 2 : type == 'V' ? 0 : 1;
+    }
+
+    private static int loadOpcode(char type) {
+        switch (type) {
+            case 'J': return 0x16; // lload
+            case 'F': return 0x17; // fload
+            case 'D': return 0x18; // dload
+            case 'L': case '[': return 0x19; // aload
+            default: return 0x15; // iload
+        }
+    }
+
+    private static int returnOpcode(char type) {
+        switch (type) {
+            case 'V': return 0xb1;
+            case 'J': return 0xad;
+            case 'F': return 0xae;
+            case 'D': return 0xaf;
+            case 'L': case '[': return 0xb0;
+            default: return 0xac;
+        }
+    }
+
+    // ========== 类文件解析 ==========
+
+    private static final class Attribute {
+        final int start;
+        final int end;
+
+        Attribute(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static final class MethodInfo {
+        int start;
+        int end;
+        int access;
+        int nameIndex;
+        int descriptorIndex;
+        final List<Attribute> attributes = new ArrayList<>();
+        Attribute code;
+    }
+
+    /**
+     * 只解析织入需要的结构，其余部分按偏移原样复制
+     */
+    private static final class ClassFile {
+        final byte[] bytes;
+        int majorVersion;
+        int constantPoolCount;
+        int[] cpOffsets;
+        String[] utf8Cache;
+        int constantPoolEnd;
+        int access;
+        int thisClass;
+        int methodsStart;
+        int methodsEnd;
+        final List<MethodInfo> methods = new ArrayList<>();
+
+        private ClassFile(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        static ClassFile parse(byte[] bytes) throws IOException {
+            ClassFile cf = new ClassFile(bytes);
+            Reader in = new Reader(bytes);
+            if (in.u4() != 0xCAFEBABE) {
+                throw new IOException("Not a class file");
+            }
+            in.u2();
+            cf.majorVersion = in.u2();
+            cf.constantPoolCount = in.u2();
+            cf.cpOffsets = new int[cf.constantPoolCount];
+            cf.utf8Cache = new String[cf.constantPoolCount];
+            for (int i = 1; i < cf.constantPoolCount; i++) {
+                cf.cpOffsets[i] = in.pos;
+                int tag = in.u1();
+                switch (tag) {
+                    case 1: in.skip(in.u2()); break;
+                    case 3: case 4: in.skip(4); break;
+                    case 5: case 6: in.skip(8); i++; break;
+                    case 7: case 8: case 16: case 19: case 20: in.skip(2); break;
+                    case 9: case 10: case 11: case 12: case 17: case 18: in.skip(4); break;
+                    case 15: in.skip(3); break;
+                    default: throw new IOException("Unknown constant pool tag " + tag);
+                }
+            }
+            cf.constantPoolEnd = in.pos;
+            cf.access = in.u2();
+            cf.thisClass = in.u2();
+            in.u2(); // super
+            in.skip(2 * in.u2()); // interfaces
+            int fields = in.u2();
+            for (int i = 0; i < fields; i++) {
+                in.skip(6);
+                skipAttributes(in);
+            }
+            cf.methodsStart = in.pos;
+            int methods = in.u2();
+            for (int i = 0; i < methods; i++) {
+                MethodInfo method = new MethodInfo();
+                method.start = in.pos;
+                method.access = in.u2();
+                method.nameIndex = in.u2();
+                method.descriptorIndex = in.u2();
+                int attributes = in.u2();
+                for (int a = 0; a < attributes; a++) {
+                    int start = in.pos;
+                    int name = in.u2();
+                    in.skip(in.u4());
+                    Attribute attribute = new Attribute(start, in.pos);
+                    method.attributes.add(attribute);
+                    if ("Code".equals(cf.utf8(name))) {
+                        method.code = attribute;
+                    }
+                }
+                method.end = in.pos;
+                cf.methods.add(method);
+            }
+            cf.methodsEnd = in.pos;
+            return cf;
+        }
+
+        private static void skipAttributes(Reader in) {
+            int count = in.u2();
+            for (int i = 0; i < count; i++) {
+                in.u2();
+                in.skip(in.u4());
+            }
+        }
+
+        String utf8(int index) throws IOException {
+            String cached = utf8Cache[index];
+            if (cached == null) {
+                int offset = cpOffsets[index];
+                if (bytes[offset] != 1) {
+                    throw new IOException("Constant " + index + " is not Utf8");
+                }
+                cached = new DataInputStream(new ByteArrayInputStream(bytes, offset + 1, bytes.length - offset - 1))
+                        .readUTF();
+                utf8Cache[index] = cached;
+            }
+            return cached;
+        }
+
+        int classNameIndex(int classIndex) {
+            int offset = cpOffsets[classIndex];
+            return ((bytes[offset + 1] & 0xff) << 8) | (bytes[offset + 2] & 0xff);
+        }
+    }
+
+    private static final class Reader {
+        final byte[] bytes;
+        int pos;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int u1() {
+            return bytes[pos++] & 0xff;
+        }
+
+        int u2() {
+            return (u1() << 8) | u1();
+        }
+
+        int u4() {
+            return (u2() << 16) | u2();
+        }
+
+        void skip(int n) {
+            pos += n;
+        }
+    }
+
+    /**
+     * 追加到原常量池末尾的新常量（同值去重）
+     */
+    private static final class ConstantPoolBuilder {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private int next;
+
+        ConstantPoolBuilder(int originalCount) {
+            this.next = originalCount;
+        }
+
+        int utf8(String value) throws IOException {
+            Integer index = indexes.get("U" + value);
+            if (index == null) {
+                out.writeByte(1);
+                out.writeUTF(value);
+                index = add("U" + value);
+            }
+            return index;
+        }
+
+        int classRef(String internalName) throws IOException {
+            Integer index = indexes.get("C" + internalName);
+            if (index == null) {
+                int name = utf8(internalName);
+                out.writeByte(7);
+                out.writeShort(name);
+                index = add("C" + internalName);
+            }
+            return index;
+        }
+
+        int methodRef(String owner, String name, String descriptor) throws IOException {
+            String key = "M" + owner + "." + name + descriptor;
+            Integer index = indexes.get(key);
+            if (index == null) {
+                int ownerIndex = classRef(owner);
+                int nameIndex = utf8(name);
+                int descriptorIndex = utf8(descriptor);
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+                int nameAndType = add("N" + name + descriptor);
+                out.writeByte(10);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+                index = add(key);
+            }
+            return index;
+        }
+
+        private int add(String key) throws IOException {
+            if (next >= 0xffff) {
+                throw new IOException("Constant pool overflow");
+            }
+            int index = next++;
+            indexes.put(key, index);
+            return index;
+        }
+
+        int size() {
+            return next;
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            out.flush();
+            bytes.writeTo(target);
+        }
+    }
+}
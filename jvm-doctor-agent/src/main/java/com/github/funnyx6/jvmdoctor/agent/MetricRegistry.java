@@ -0,0 +1,99 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 指标 ID 表
+ *
+ * 指标在启动时注册，获得一个稠密的整数 ID，
+ * 采集路径只按 ID 读写 {@link MetricsSnapshot} 中的原始类型数组，不再构造 Map 和装箱对象。
+ * 注册可以在任意时刻进行（例如首次出现的 GC cause），但不应出现在稳态采集路径上。
+ */
+public class MetricRegistry {
+
+    /**
+     * 指标值类型
+     */
+    public enum Type {
+        LONG,
+        DOUBLE
+    }
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private volatile String[] names = new String[64];
+    private volatile Type[] types = new Type[64];
+    private volatile byte[][] jsonKeys = new byte[64][];
+    private volatile int size = 0;
+
+    /**
+     * 注册指标，重复注册同名指标返回已有 ID
+     *
+     * @param name 指标名
+     * @param type 值类型
+     * @return 指标 ID
+     */
+    public synchronized int register(String name, Type type) {
+        Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+
+        int id = size;
+        if (id == names.length) {
+            int newLength = names.length * 2;
+            names = Arrays.copyOf(names, newLength);
+            types = Arrays.copyOf(types, newLength);
+            jsonKeys = Arrays.copyOf(jsonKeys, newLength);
+        }
+        names[id] = name;
+        types[id] = type;
+        jsonKeys[id] = ("\"" + name + "\":").getBytes(StandardCharsets.UTF_8);
+        ids.put(name, id);
+        size = id + 1;
+        return id;
+    }
+
+    public int registerLong(String name) {
+        return register(name, Type.LONG);
+    }
+
+    public int registerDouble(String name) {
+        return register(name, Type.DOUBLE);
+    }
+
+    /**
+     * 按名称查找指标 ID
+     *
+     * @return 指标 ID，未注册时返回 -1
+     */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * 已注册的指标数量
+     */
+    public int size() {
+        return size;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public Type type(int id) {
+        return types[id];
+    }
+
+    /**
+     * 预编码的 JSON key（形如 "heap.used":），供编码器直接拷贝
+     */
+    public byte[] jsonKey(int id) {
+        return jsonKeys[id];
+    }
+}
@@ -0,0 +1,223 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.github.funnyx6.jvmdoctor.core.MetricsFrame;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 指标二进制帧编码器（格式见 {@link MetricsFrame}）
+ *
+ * 指标 ID 即 {@link MetricRegistry} 分配的 ID，字典条目只在首次上报（或重新同步）时发送。
+ * 差分基准是 Server 已确认（{@link #commit()}）的最近一帧：发送失败的帧不会成为基准，
+ * 下一帧仍相对已确认的帧编码；Server 无法衔接时（如重启）返回 409，调用 {@link #reset()} 后改发关键帧。
+ * 一次请求可以携带多帧（{@link #begin()} 后逐个 {@link #append}），批内每帧以前一帧为基准，
+ * 确认后以最后一帧为基准。
+ * 稳态下不分配对象。非线程安全，每个上报线程持有一个实例。
+ */
+public class MetricsBinaryEncoder {
+
+    private final MetricsFrame.Writer writer = new MetricsFrame.Writer(1024);
+
+    // Server 已确认的帧：序号（-1 表示下一帧为关键帧）、字典大小、各 ID 的值（double 为位模式）
+    private long ackedSeq = -1;
+    private int ackedDictSize;
+    private long[] ackedBits = new long[64];
+
+    // 当前批次中最后编码、等待确认的帧
+    private long pendingSeq = -1;
+    private int pendingDictSize;
+    private long[] pendingBits = new long[64];
+    private int pendingFrames;
+
+    /**
+     * 编码只含一帧的请求体
+     *
+     * @param appId 应用 ID
+     * @param seq 上报序号
+     * @param snapshot 指标快照
+     * @param extra 额外指标（如自定义采集器），可为 null；只编码数值和布尔值
+     */
+    public void encode(long appId, long seq, MetricsSnapshot snapshot, Map<String, Object> extra) {
+        begin();
+        append(appId, seq, snapshot, extra);
+    }
+
+    /**
+     * 开始一个新的请求体，丢弃上一批未确认的帧
+     */
+    public void begin() {
+        writer.reset();
+        pendingFrames = 0;
+    }
+
+    /**
+     * 向请求体追加一帧，以批内前一帧（批内首帧以已确认的帧）为差分基准
+     */
+    public void append(long appId, long seq, MetricsSnapshot snapshot, Map<String, Object> extra) {
+        MetricRegistry registry = snapshot.getRegistry();
+        int dictSize = registry.size();
+        int n = Math.min(dictSize, snapshot.capacity());
+        boolean chained = pendingFrames > 0;
+        long baseSeq = chained ? pendingSeq : ackedSeq;
+        boolean keyframe = baseSeq < 0;
+        int dictBase = keyframe ? 0 : (chained ? pendingDictSize : ackedDictSize);
+
+        ensureCapacity(dictSize);
+        if (!chained) {
+            System.arraycopy(ackedBits, 0, pendingBits, 0, dictBase);
+        }
+        // 新字典条目的基准为 0（与解码端一致）
+        Arrays.fill(pendingBits, dictBase, dictSize, 0L);
+
+        writer.writeByte(MetricsFrame.MAGIC_0);
+        writer.writeByte(MetricsFrame.MAGIC_1);
+        writer.writeByte(MetricsFrame.VERSION);
+        writer.writeByte(keyframe ? MetricsFrame.FLAG_KEYFRAME : 0);
+        writer.writeVarint(appId);
+        writer.writeVarint(seq);
+        if (!keyframe) {
+            writer.writeVarint(baseSeq);
+        }
+        writer.writeVarint(snapshot.getTimestamp());
+
+        // 新增的字典条目
+        writer.writeVarint(dictBase);
+        writer.writeVarint(dictSize - dictBase);
+        for (int id = dictBase; id < dictSize; id++) {
+            writer.writeByte(registry.type(id) == MetricRegistry.Type.DOUBLE
+                    ? MetricsFrame.TYPE_DOUBLE : MetricsFrame.TYPE_LONG);
+            writer.writeString(registry.name(id));
+        }
+
+        // 值：先计数，再按 ID 升序写差分
+        int count = 0;
+        for (int id = 0; id < n; id++) {
+            if (isEncodable(snapshot, registry, id)) {
+                count++;
+            }
+        }
+        writer.writeVarint(count);
+        int previous = -1;
+        for (int id = 0; id < n; id++) {
+            if (!isEncodable(snapshot, registry, id)) {
+                continue;
+            }
+            writer.writeVarint(id - previous - 1);
+            previous = id;
+            if (registry.type(id) == MetricRegistry.Type.DOUBLE) {
+                long bits = Double.doubleToRawLongBits(snapshot.getDouble(id));
+                writer.writeVarint(bits ^ pendingBits[id]);
+                pendingBits[id] = bits;
+            } else {
+                long value = snapshot.getLong(id);
+                writer.writeZigZag(value - pendingBits[id]);
+                pendingBits[id] = value;
+            }
+        }
+
+        writeExtra(extra);
+
+        pendingSeq = seq;
+        pendingDictSize = dictSize;
+        pendingFrames++;
+    }
+
+    /**
+     * 当前请求体中的帧数
+     */
+    public int frames() {
+        return pendingFrames;
+    }
+
+    /**
+     * Server 已接收当前请求体，后续帧以其中最后一帧为差分基准
+     */
+    public void commit() {
+        if (pendingFrames == 0) {
+            return;
+        }
+        long[] swap = ackedBits;
+        ackedBits = pendingBits;
+        pendingBits = swap;
+        ackedSeq = pendingSeq;
+        ackedDictSize = pendingDictSize;
+        pendingFrames = 0;
+    }
+
+    /**
+     * Server 要求重新同步，下一帧编码为关键帧
+     */
+    public void reset() {
+        ackedSeq = -1;
+        ackedDictSize = 0;
+        pendingFrames = 0;
+    }
+
+    /**
+     * 下一帧是否为关键帧
+     */
+    public boolean isKeyframePending() {
+        return ackedSeq < 0;
+    }
+
+    /**
+     * 编码后的字节（有效长度见 {@link #length()}）
+     */
+    public byte[] buffer() {
+        return writer.buffer();
+    }
+
+    public int length() {
+        return writer.length();
+    }
+
+    private static boolean isEncodable(MetricsSnapshot snapshot, MetricRegistry registry, int id) {
+        if (!snapshot.isPresent(id)) {
+            return false;
+        }
+        if (registry.type(id) == MetricRegistry.Type.DOUBLE) {
+            double value = snapshot.getDouble(id);
+            return !Double.isNaN(value) && !Double.isInfinite(value);
+        }
+        return true;
+    }
+
+    private void writeExtra(Map<String, Object> extra) {
+        if (extra == null) {
+            writer.writeVarint(0);
+            return;
+        }
+        int count = 0;
+        for (Object value : extra.values()) {
+            if (value instanceof Number || value instanceof Boolean) {
+                count++;
+            }
+        }
+        writer.writeVarint(count);
+        for (Map.Entry<String, Object> entry : extra.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Double || value instanceof Float) {
+                writer.writeString(entry.getKey());
+                writer.writeByte(MetricsFrame.TYPE_DOUBLE);
+                writer.writeFixed64(Double.doubleToRawLongBits(((Number) value).doubleValue()));
+            } else if (value instanceof Number) {
+                writer.writeString(entry.getKey());
+                writer.writeByte(MetricsFrame.TYPE_LONG);
+                writer.writeZigZag(((Number) value).longValue());
+            } else if (value instanceof Boolean) {
+                writer.writeString(entry.getKey());
+                writer.writeByte(MetricsFrame.TYPE_LONG);
+                writer.writeZigZag((Boolean) value ? 1 : 0);
+            }
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > pendingBits.length) {
+            int capacity = Math.max(required, pendingBits.length * 2);
+            pendingBits = Arrays.copyOf(pendingBits, capacity);
+            ackedBits = Arrays.copyOf(ackedBits, capacity);
+        }
+    }
+}
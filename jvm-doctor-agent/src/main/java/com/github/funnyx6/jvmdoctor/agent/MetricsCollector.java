@@ -1,5 +1,7 @@
 package com.github.funnyx6.jvmdoctor.agent;
 
+import com.github.funnyx6.jvmdoctor.core.DeadlockDetector;
+
 import java.lang.management.*;
 import java.util.*;
 
@@ -14,39 +16,162 @@ public class MetricsCollector {
     private final OperatingSystemMXBean osMXBean;
     private final RuntimeMXBean runtimeMXBean;
     private final GarbageCollectorMXBean[] gcMXBeans;
+    private final Runtime runtime;
+    private final ThreadSampler threadSampler;
+    private final DeadlockDetector deadlockDetector;
+    // 所在 cgroup，非 Linux 或未挂载控制器时为 null
+    private final Cgroup cgroup;
+    
+    private final MetricRegistry registry;
+    
+    // 附加探针及其开销账户（下标一一对应），采集路径上按下标遍历，避免迭代器分配
+    private volatile MetricsProbe[] probes = new MetricsProbe[0];
+    private volatile OverheadGovernor.Account[] probeAccounts = new OverheadGovernor.Account[0];
+    private final OverheadGovernor.Account account = OverheadGovernor.account("collector", 0);
+    
+    // 预注册的指标 ID
+    private final int heapUsedId;
+    private final int heapMaxId;
+    private final int heapCommittedId;
+    private final int heapUsageId;
+    private final int nonHeapUsedId;
+    private final int nonHeapCommittedId;
+    private final int gcCountId;
+    private final int gcTimeId;
+    private final int threadCountId;
+    private final int threadDaemonId;
+    private final int threadPeakId;
+    private final int threadTotalStartedId;
+    private final int threadBlockedId;
+    private final int threadDeadlockId;
+    private final int cpuCoresId;
+    private final int cpuLoadId;
+    private final int systemLoadId;
+    private final int uptimeId;
+    
+    // 进程 CPU 使用率按相邻两次采集的 CPU 时间差计算
+    private long lastProcessCpuTime = -1;
+    private long lastCpuSampleNanos;
+    // cgroup CPU 配额（核数，-1 表示不限制），读文件会分配对象，按固定间隔刷新
+    private static final long CPU_LIMIT_REFRESH_NANOS = 60_000_000_000L;
+    private double cpuLimit = -1;
+    private long cpuLimitReadNanos;
     
     public MetricsCollector() {
+        this(new MetricRegistry());
+    }
+    
+    public MetricsCollector(MetricRegistry registry) {
+        this(registry, DeadlockDetector.getShared());
+    }
+    
+    /**
+     * @param deadlockDetector 死锁检测器（默认为进程内共享实例）
+     */
+    MetricsCollector(MetricRegistry registry, DeadlockDetector deadlockDetector) {
         this.memoryMXBean = ManagementFactory.getMemoryMXBean();
         this.threadMXBean = ManagementFactory.getThreadMXBean();
         this.osMXBean = ManagementFactory.getOperatingSystemMXBean();
         this.runtimeMXBean = ManagementFactory.getRuntimeMXBean();
         this.gcMXBeans = ManagementFactory.getGarbageCollectorMXBeans().toArray(new GarbageCollectorMXBean[0]);
+        this.runtime = Runtime.getRuntime();
+        this.threadSampler = new ThreadSampler(threadMXBean);
+        this.deadlockDetector = deadlockDetector;
+        this.cgroup = Cgroup.detect();
+        
+        this.registry = registry;
+        this.heapUsedId = registry.registerLong("heap.used");
+        this.heapMaxId = registry.registerLong("heap.max");
+        this.heapCommittedId = registry.registerLong("heap.committed");
+        this.heapUsageId = registry.registerDouble("heap.usage");
+        this.nonHeapUsedId = registry.registerLong("nonheap.used");
+        this.nonHeapCommittedId = registry.registerLong("nonheap.committed");
+        this.gcCountId = registry.registerLong("gc.count");
+        this.gcTimeId = registry.registerLong("gc.time");
+        this.threadCountId = registry.registerLong("thread.count");
+        this.threadDaemonId = registry.registerLong("thread.daemon");
+        this.threadPeakId = registry.registerLong("thread.peak");
+        this.threadTotalStartedId = registry.registerLong("thread.totalStarted");
+        this.threadBlockedId = registry.registerLong("thread.blocked");
+        this.threadDeadlockId = registry.registerLong("thread.deadlock");
+        this.cpuCoresId = registry.registerLong("cpu.cores");
+        this.cpuLoadId = registry.registerDouble("cpu.load");
+        this.systemLoadId = registry.registerDouble("system.load");
+        this.uptimeId = registry.registerLong("uptime");
+    }
+    
+    public MetricRegistry getRegistry() {
+        return registry;
     }
     
     /**
-     * 采集当前所有指标
+     * 当前进程所在 cgroup（只能在采集线程上读取），不可用时返回 null
+     */
+    public Cgroup getCgroup() {
+        return cgroup;
+    }
+    
+    /**
+     * 添加附加探针，探针在内置指标之后被调用
+     */
+    public void addProbe(MetricsProbe probe) {
+        addProbe(probe.getClass().getSimpleName(), probe);
+    }
+    
+    /**
+     * 添加附加探针
      * 
-     * @param includeCustom 是否包含自定义指标
-     * @return 指标 Map
+     * @param name 探针名，开销账户为 probe.&lt;name&gt;，超出开销预算时可被降频或停用
+     * @param probe 探针
      */
-    public Map<String, Object> collect(boolean includeCustom) {
-        Map<String, Object> metrics = new HashMap<>();
+    public synchronized void addProbe(String name, MetricsProbe probe) {
+        MetricsProbe[] current = probes;
+        MetricsProbe[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = probe;
+        OverheadGovernor.Account[] accounts = Arrays.copyOf(probeAccounts, current.length + 1);
+        accounts[current.length] = OverheadGovernor.account("probe." + name, OverheadGovernor.MAX_LEVEL);
+        probeAccounts = accounts;
+        // 先发布账户再发布探针，采集时先读探针，保证账户数组不短于探针数组
+        probes = updated;
+    }
+    
+    /**
+     * 关闭并移除所有附加探针
+     */
+    public synchronized void closeProbes() {
+        for (MetricsProbe probe : probes) {
+            probe.close();
+        }
+        probes = new MetricsProbe[0];
+    }
+    
+    /**
+     * 采集当前所有内置指标到快照中
+     * 
+     * 稳态下不分配对象：堆内存取自 Runtime，其余均为返回原始类型的 MXBean 调用。
+     * 例外是非堆内存（MemoryMXBean 在 native 层构造 MemoryUsage），
+     * 以及死锁检测的阻塞线程普查（每秒至多一次，无需安全点），见 {@link DeadlockDetector}。
+     * 
+     * @param snapshot 目标快照（会先被清空）
+     */
+    public void collect(MetricsSnapshot snapshot) {
+        long cpuStart = OverheadGovernor.threadCpuTime();
+        long allocStart = OverheadGovernor.threadAllocatedBytes();
+        long startNanos = System.nanoTime();
+        snapshot.reset(System.currentTimeMillis());
         
         // 内存指标
-        MemoryUsage heapUsage = memoryMXBean.getHeapMemoryUsage();
-        MemoryUsage nonHeapUsage = memoryMXBean.getNonHeapMemoryUsage();
+        long heapCommitted = runtime.totalMemory();
+        long heapUsed = heapCommitted - runtime.freeMemory();
+        long heapMax = runtime.maxMemory();
+        snapshot.setLong(heapUsedId, heapUsed);
+        snapshot.setLong(heapMaxId, heapMax);
+        snapshot.setLong(heapCommittedId, heapCommitted);
+        snapshot.setDouble(heapUsageId, heapMax > 0 ? (double) heapUsed / heapMax : 0.0);
         
-        metrics.put("heap.used", heapUsage.getUsed());
-        metrics.put("heap.max", heapUsage.getMax());
-        metrics.put("heap.committed", heapUsage.getCommitted());
-        if (heapUsage.getMax() > 0) {
-            metrics.put("heap.usage", (double) heapUsage.getUsed() / heapUsage.getMax());
-        } else {
-            metrics.put("heap.usage", 0.0);
-        }
-        
-        metrics.put("nonheap.used", nonHeapUsage.getUsed());
-        metrics.put("nonheap.committed", nonHeapUsage.getCommitted());
+        MemoryUsage nonHeapUsage = memoryMXBean.getNonHeapMemoryUsage();
+        snapshot.setLong(nonHeapUsedId, nonHeapUsage.getUsed());
+        snapshot.setLong(nonHeapCommittedId, nonHeapUsage.getCommitted());
         
         // GC 指标
         long totalGcCount = 0;
@@ -55,26 +180,67 @@ public class MetricsCollector {
             totalGcCount += gcBean.getCollectionCount();
             totalGcTime += gcBean.getCollectionTime();
         }
-        metrics.put("gc.count", totalGcCount);
-        metrics.put("gc.time", totalGcTime);
+        snapshot.setLong(gcCountId, totalGcCount);
+        snapshot.setLong(gcTimeId, totalGcTime);
         
         // 线程指标
-        metrics.put("thread.count", threadMXBean.getThreadCount());
-        metrics.put("thread.daemon", threadMXBean.getDaemonThreadCount());
-        metrics.put("thread.peak", threadMXBean.getPeakThreadCount());
-        metrics.put("thread.totalStarted", threadMXBean.getTotalStartedThreadCount());
+        snapshot.setLong(threadCountId, threadMXBean.getThreadCount());
+        snapshot.setLong(threadDaemonId, threadMXBean.getDaemonThreadCount());
+        snapshot.setLong(threadPeakId, threadMXBean.getPeakThreadCount());
+        snapshot.setLong(threadTotalStartedId, threadMXBean.getTotalStartedThreadCount());
         
-        // 检测死锁
-        long[] deadlockedThreads = threadMXBean.findDeadlockedThreads();
-        metrics.put("thread.deadlock", deadlockedThreads != null ? deadlockedThreads.length : 0);
+        // 检测死锁（先普查阻塞线程，必要时才做需要安全点的完整检测）
+        DeadlockDetector.Result deadlocks = deadlockDetector.check();
+        snapshot.setLong(threadBlockedId, deadlocks.getBlockedThreads());
+        snapshot.setLong(threadDeadlockId, deadlocks.getDeadlockedCount());
         
         // 系统指标
-        metrics.put("cpu.cores", osMXBean.getAvailableProcessors());
-        metrics.put("cpu.load", getCpuLoad());
-        metrics.put("system.load", getSystemLoad());
+        int cores = osMXBean.getAvailableProcessors();
+        snapshot.setLong(cpuCoresId, cores);
+        double cpuLoad = getCpuLoad(cores);
+        if (cpuLoad >= 0) {
+            snapshot.setDouble(cpuLoadId, cpuLoad);
+        }
+        double systemLoad = osMXBean.getSystemLoadAverage();
+        if (systemLoad >= 0) {
+            snapshot.setDouble(systemLoadId, systemLoad);
+        }
         
         // 运行时信息
-        metrics.put("uptime", runtimeMXBean.getUptime());
+        snapshot.setLong(uptimeId, runtimeMXBean.getUptime());
+        
+        account.record(startNanos, cpuStart, allocStart);
+        
+        // 附加探针（各自计量，超出开销预算时按限流级别跳过）
+        MetricsProbe[] current = probes;
+        OverheadGovernor.Account[] accounts = probeAccounts;
+        for (int i = 0; i < current.length; i++) {
+            OverheadGovernor.Account probeAccount = accounts[i];
+            if (!probeAccount.shouldRun()) {
+                continue;
+            }
+            cpuStart = OverheadGovernor.threadCpuTime();
+            allocStart = OverheadGovernor.threadAllocatedBytes();
+            startNanos = System.nanoTime();
+            try {
+                current[i].collect(snapshot);
+            } catch (RuntimeException e) {
+                System.err.println("[MetricsCollector] Probe error: " + e.getMessage());
+            }
+            probeAccount.record(startNanos, cpuStart, allocStart);
+        }
+    }
+    
+    /**
+     * 采集当前所有指标
+     * 
+     * @param includeCustom 是否包含自定义指标
+     * @return 指标 Map
+     */
+    public Map<String, Object> collect(boolean includeCustom) {
+        MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+        collect(snapshot);
+        Map<String, Object> metrics = snapshot.toMap();
         
         // 自定义指标
         if (includeCustom) {
@@ -93,64 +259,89 @@ public class MetricsCollector {
     }
     
     /**
-     * 获取所有线程信息
+     * 获取所有线程信息（不含堆栈）
      * 
      * @return 线程信息列表
      */
     public List<Map<String, Object>> collectThreadInfo() {
-        List<Map<String, Object>> threads = new ArrayList<>();
-        
-        // 获取所有线程 ID
-        long[] threadIds = threadMXBean.getAllThreadIds();
-        
-        // 获取线程 CPU 时间
-        Map<Long, Long> threadCpuTimes = getThreadCpuTimes();
+        return collectThreadInfo(0);
+    }
+    
+    /**
+     * 获取所有线程信息
+     * 
+     * 所有线程只做一次批量 getThreadInfo 和一次批量 CPU 时间调用，
+     * 仅在调用方需要堆栈时才付出抓取堆栈的代价。
+     * 
+     * @param stackDepth 每个线程的堆栈深度，0 表示不抓堆栈
+     * @return 线程信息列表
+     */
+    public List<Map<String, Object>> collectThreadInfo(int stackDepth) {
+        long[] threadIds = threadSampler.threadIds();
+        ThreadInfo[] threadInfos = threadSampler.threadInfos(threadIds, stackDepth);
+        long[] cpuTimes = threadSampler.cpuTimes(threadIds);
+        long[] userTimes = threadSampler.userTimes(threadIds);
         
-        for (long threadId : threadIds) {
-            try {
-                // JDK 8: dumpAllThreads 返回 ThreadInfo[]
-                ThreadInfo threadInfo = threadMXBean.getThreadInfo(threadId, 50);
-                if (threadInfo == null || threadInfo.getThreadName() == null) {
-                    continue;
-                }
-                
-                Map<String, Object> thread = new HashMap<>();
-                thread.put("threadId", threadId);
-                thread.put("name", threadInfo.getThreadName());
-                thread.put("state", threadInfo.getThreadState().name());
-                // JDK 8 ThreadInfo 没有 getPriority 方法，跳过
-                // thread.put("priority", threadInfo.getPriority());
-                thread.put("cpuTime", threadCpuTimes.getOrDefault(threadId, 0L));
-                thread.put("cpuTimeMillis", threadCpuTimes.getOrDefault(threadId, 0L) / 1_000_000);
-                thread.put("userTime", threadMXBean.getThreadUserTime(threadId));
-                
-                // 守护线程（JDK 8 ThreadInfo 没有 isDaemon 方法）
-                // 需要通过 Thread 对象获取
-                thread.put("daemon", Thread.currentThread().isDaemon());
-                
-                // 阻塞计数
-                thread.put("blockedCount", threadInfo.getBlockedCount());
-                thread.put("waitedCount", threadInfo.getWaitedCount());
-                
-                // 锁信息
-                String lockName = threadInfo.getLockName();
-                if (lockName != null) {
-                    thread.put("lockName", lockName);
-                    thread.put("lockOwnerId", threadInfo.getLockOwnerId());
-                    thread.put("lockOwnerName", threadInfo.getLockOwnerName());
-                }
-                
-                threads.add(thread);
-            } catch (Exception e) {
-                // 忽略单个线程采集异常
+        List<Map<String, Object>> threads = new ArrayList<>(threadIds.length);
+        for (int i = 0; i < threadIds.length; i++) {
+            ThreadInfo threadInfo = threadInfos[i];
+            if (threadInfo == null || threadInfo.getThreadName() == null) {
+                // 线程已退出
+                continue;
+            }
+            
+            long cpuTime = Math.max(cpuTimes[i], 0L);
+            
+            Map<String, Object> thread = new HashMap<>();
+            thread.put("threadId", threadIds[i]);
+            thread.put("name", threadInfo.getThreadName());
+            thread.put("state", threadInfo.getThreadState().name());
+            thread.put("cpuTime", cpuTime);
+            thread.put("cpuTimeMillis", cpuTime / 1_000_000);
+            thread.put("userTime", userTimes[i]);
+            
+            // 守护线程（JDK 8 ThreadInfo 没有 isDaemon 方法，此时不输出）
+            Boolean daemon = threadSampler.isDaemon(threadInfo);
+            if (daemon != null) {
+                thread.put("daemon", daemon);
             }
+            
+            // 阻塞计数
+            thread.put("blockedCount", threadInfo.getBlockedCount());
+            thread.put("waitedCount", threadInfo.getWaitedCount());
+            
+            // 锁信息
+            String lockName = threadInfo.getLockName();
+            if (lockName != null) {
+                thread.put("lockName", lockName);
+                thread.put("lockOwnerId", threadInfo.getLockOwnerId());
+                thread.put("lockOwnerName", threadInfo.getLockOwnerName());
+            }
+            
+            if (stackDepth > 0) {
+                thread.put("stackTrace", toFrames(threadInfo.getStackTrace(), true));
+            }
+            
+            threads.add(thread);
         }
         
         return threads;
     }
     
     /**
-     * 获取 CPU 占用 Top 线程
+     * 批量抓取所有线程的堆栈（一次 getThreadInfo 调用）
+     * 
+     * @param stackDepth 每个线程的堆栈深度
+     * @return 线程信息，已退出的线程为 null
+     */
+    public ThreadInfo[] dumpThreads(int stackDepth) {
+        return threadSampler.threadInfos(threadSampler.threadIds(), stackDepth);
+    }
+    
+    /**
+     * 获取 CPU 占用 Top 线程（按线程启动以来的累计 CPU 时间）
+     * 
+     * 窗口内的实时排序见 {@link ThreadActivityTracker}
      * 
      * @param topN Top N
      * @return 线程信息列表
@@ -169,6 +360,47 @@ public class MetricsCollector {
         return threads.size() > topN ? threads.subList(0, topN) : threads;
     }
     
+    /**
+     * 获取累计分配字节数最多的线程（跟踪器未运行时的退化实现）
+     * 
+     * @param topN 返回数量
+     * @return 按累计分配字节数降序的线程信息
+     */
+    public List<Map<String, Object>> getTopAllocatingThreads(int topN) {
+        List<Map<String, Object>> threads = new ArrayList<>();
+        if (!threadSampler.isAllocatedMemorySupported()) {
+            return threads;
+        }
+        long[] threadIds = threadSampler.threadIds();
+        long[] allocated = threadSampler.allocatedBytes(threadIds);
+        
+        TopNHeap heap = new TopNHeap(topN);
+        for (int i = 0; i < threadIds.length; i++) {
+            if (allocated[i] >= 0) {
+                heap.offer(allocated[i], i);
+            }
+        }
+        heap.sortDescending();
+        
+        long[] topIds = new long[heap.size()];
+        for (int i = 0; i < topIds.length; i++) {
+            topIds[i] = threadIds[heap.index(i)];
+        }
+        ThreadInfo[] infos = threadSampler.threadInfos(topIds, 0);
+        for (int i = 0; i < topIds.length; i++) {
+            if (infos[i] == null) {
+                continue;
+            }
+            Map<String, Object> thread = new HashMap<>();
+            thread.put("threadId", topIds[i]);
+            thread.put("name", infos[i].getThreadName());
+            thread.put("state", infos[i].getThreadState().name());
+            thread.put("allocatedBytes", allocated[heap.index(i)]);
+            threads.add(thread);
+        }
+        return threads;
+    }
+    
     /**
      * 获取指定线程的堆栈信息
      * 
@@ -190,11 +422,13 @@ public class MetricsCollector {
             result.put("state", threadInfo.getThreadState().name());
             // JDK 8 ThreadInfo 没有 getPriority 方法，跳过
             // result.put("priority", threadInfo.getPriority());
-            result.put("daemon", Thread.currentThread().isDaemon());
+            Boolean daemon = threadSampler.isDaemon(threadInfo);
+            if (daemon != null) {
+                result.put("daemon", daemon);
+            }
             
-            // CPU 时间
-            Map<Long, Long> threadCpuTimes = getThreadCpuTimes();
-            result.put("cpuTimeMillis", threadCpuTimes.getOrDefault(threadId, 0L) / 1_000_000);
+            // CPU 时间（只查询目标线程）
+            result.put("cpuTimeMillis", Math.max(threadSampler.cpuTime(threadId), 0L) / 1_000_000);
             
             // 锁信息
             String lockName = threadInfo.getLockName();
@@ -205,18 +439,7 @@ public class MetricsCollector {
             }
             
             // 堆栈信息
-            StackTraceElement[] stackTrace = threadInfo.getStackTrace();
-            List<Map<String, String>> stack = new ArrayList<>();
-            for (StackTraceElement element : stackTrace) {
-                Map<String, String> frame = new HashMap<>();
-                frame.put("className", element.getClassName());
-                frame.put("methodName", element.getMethodName());
-                frame.put("fileName", element.getFileName());
-                frame.put("lineNumber", String.valueOf(element.getLineNumber()));
-                frame.put("nativeMethod", String.valueOf(element.isNativeMethod()));
-                stack.add(frame);
-            }
-            result.put("stackTrace", stack);
+            result.put("stackTrace", toFrames(threadInfo.getStackTrace(), true));
             
         } catch (Exception e) {
             result.put("error", e.getMessage());
@@ -225,22 +448,25 @@ public class MetricsCollector {
         return result;
     }
     
+    /**
+     * 获取死锁检测结果（与指标采集共享缓存）
+     * 
+     * @param force 存在阻塞线程时强制完整检测（仍受最大检测频率限制）
+     */
+    public DeadlockDetector.Result checkDeadlocks(boolean force) {
+        return deadlockDetector.check(force);
+    }
+    
     /**
      * 获取死锁线程列表
      * 
+     * @param result 死锁检测结果
      * @return 死锁线程信息
      */
-    public List<Map<String, Object>> getDeadlockedThreads() {
+    public List<Map<String, Object>> getDeadlockedThreads(DeadlockDetector.Result result) {
         List<Map<String, Object>> deadlocks = new ArrayList<>();
         
-        long[] deadlockedThreadIds = threadMXBean.findDeadlockedThreads();
-        if (deadlockedThreadIds == null || deadlockedThreadIds.length == 0) {
-            return deadlocks;
-        }
-        
-        ThreadInfo[] threadInfos = threadMXBean.getThreadInfo(deadlockedThreadIds, true, true);
-        
-        for (ThreadInfo threadInfo : threadInfos) {
+        for (ThreadInfo threadInfo : result.getThreadInfos()) {
             if (threadInfo == null) {
                 continue;
             }
@@ -253,17 +479,7 @@ public class MetricsCollector {
             thread.put("lockOwnerName", threadInfo.getLockOwnerName());
             
             // 堆栈
-            StackTraceElement[] stackTrace = threadInfo.getStackTrace();
-            List<Map<String, String>> stack = new ArrayList<>();
-            for (StackTraceElement element : stackTrace) {
-                Map<String, String> frame = new HashMap<>();
-                frame.put("className", element.getClassName());
-                frame.put("methodName", element.getMethodName());
-                frame.put("fileName", element.getFileName());
-                frame.put("lineNumber", String.valueOf(element.getLineNumber()));
-                stack.add(frame);
-            }
-            thread.put("stackTrace", stack);
+            thread.put("stackTrace", toFrames(threadInfo.getStackTrace(), false));
             
             deadlocks.add(thread);
         }
@@ -272,55 +488,60 @@ public class MetricsCollector {
     }
     
     /**
-     * 获取所有线程的 CPU 时间
+     * 将堆栈转换为帧列表
      */
-    private Map<Long, Long> getThreadCpuTimes() {
-        Map<Long, Long> cpuTimes = new HashMap<>();
-        try {
-            long[] threadIds = threadMXBean.getAllThreadIds();
-            for (long threadId : threadIds) {
-                long cpuTime = threadMXBean.getThreadCpuTime(threadId);
-                if (cpuTime >= 0) {
-                    cpuTimes.put(threadId, cpuTime);
-                }
+    private List<Map<String, String>> toFrames(StackTraceElement[] stackTrace, boolean includeNative) {
+        List<Map<String, String>> stack = new ArrayList<>(stackTrace.length);
+        for (StackTraceElement element : stackTrace) {
+            Map<String, String> frame = new HashMap<>();
+            frame.put("className", element.getClassName());
+            frame.put("methodName", element.getMethodName());
+            frame.put("fileName", element.getFileName());
+            frame.put("lineNumber", String.valueOf(element.getLineNumber()));
+            if (includeNative) {
+                frame.put("nativeMethod", String.valueOf(element.isNativeMethod()));
             }
-        } catch (Exception e) {
-            // 忽略
+            stack.add(frame);
         }
-        return cpuTimes;
+        return stack;
     }
     
     /**
-     * 获取 CPU 使用率
+     * 获取进程 CPU 使用率（0~1，按有效 CPU 数归一化）
+     * 
+     * 基于相邻两次调用之间 getProcessCpuTime 的差值计算，JDK 8 可用且不分配对象。
+     * 有效 CPU 数取可用核数与 cgroup CPU 配额（quota / period）中的较小者：
+     * 较早的 JDK 不感知容器配额，较新的 JDK 把 1.5 核这样的小数配额向上取整，两者都会低估使用率。
+     * 
+     * @return 使用率，首次调用或不支持时返回 -1
      */
-    private Double getCpuLoad() {
-        try {
-            Class<?> sunOsClass = Class.forName("com.sun.management.OperatingSystemMXBean");
-            if (sunOsClass.isInstance(osMXBean)) {
-                java.lang.reflect.Method method = sunOsClass.getMethod("getCpuLoad");
-                Object result = method.invoke(osMXBean);
-                if (result instanceof Double) {
-                    return (Double) result;
-                }
-            }
-        } catch (Exception e) {
-            // 忽略
+    private double getCpuLoad(int cores) {
+        if (!(osMXBean instanceof com.sun.management.OperatingSystemMXBean)) {
+            return -1;
         }
-        return null;
-    }
-    
-    /**
-     * 获取系统负载
-     */
-    private Double getSystemLoad() {
-        try {
-            double load = osMXBean.getSystemLoadAverage();
-            if (load >= 0) {
-                return load;
+        long cpuTime = ((com.sun.management.OperatingSystemMXBean) osMXBean).getProcessCpuTime();
+        long now = System.nanoTime();
+        if (cpuTime < 0) {
+            return -1;
+        }
+        
+        double cpus = cores;
+        if (cgroup != null) {
+            if (cpuLimitReadNanos == 0 || now - cpuLimitReadNanos > CPU_LIMIT_REFRESH_NANOS) {
+                cpuLimit = cgroup.cpuLimit();
+                cpuLimitReadNanos = now;
             }
-        } catch (Exception e) {
-            // 忽略
+            if (cpuLimit > 0 && cpuLimit < cpus) {
+                cpus = cpuLimit;
+            }
+        }
+        double load = -1;
+        if (lastProcessCpuTime >= 0 && now > lastCpuSampleNanos && cpus > 0) {
+            load = (double) (cpuTime - lastProcessCpuTime) / (now - lastCpuSampleNanos) / cpus;
+            load = Math.max(0.0, Math.min(1.0, load));
         }
-        return null;
+        lastProcessCpuTime = cpuTime;
+        lastCpuSampleNanos = now;
+        return load;
     }
 }
@@ -0,0 +1,260 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 指标 JSON 编码器
+ *
+ * 直接把 {@link MetricsSnapshot} 编码到可复用的字节缓冲区：
+ * key 使用注册表中预编码的字节，long 手工转十进制，double 借助复用的 StringBuilder。
+ * 稳态下不分配对象（例外：JDK 的 double 转十进制对少数取值会分配临时大数对象）。
+ * 非线程安全，每个上报线程持有一个实例。
+ */
+public class MetricsJsonEncoder {
+
+    private static final byte[] APP_ID_PREFIX = "{\"appId\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] METRICS_PREFIX = ",\"metrics\":{".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEQ_PREFIX = ",\"seq\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TIMESTAMP_PREFIX = ",\"timestamp\":".getBytes(StandardCharsets.UTF_8);
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private byte[] buffer = new byte[4096];
+    private int length;
+
+    private final StringBuilder scratch = new StringBuilder(32);
+    private final byte[] digits = new byte[20];
+
+    /**
+     * 编码上报请求体 {"appId":1,"metrics":{...}}
+     *
+     * @param appId 应用 ID
+     * @param snapshot 指标快照
+     * @param extra 额外指标（如自定义采集器），可为 null
+     */
+    public void encode(long appId, MetricsSnapshot snapshot, Map<String, Object> extra) {
+        encode(appId, -1, snapshot, extra);
+    }
+
+    /**
+     * 编码带上报序号和采集时间的请求体 {"appId":1,"seq":N,"timestamp":T,"metrics":{...}}，
+     * Server 按 (appId, seq) 去重，暂存后回放的样本按采集时间入库
+     *
+     * @param seq 上报序号，小于 0 时不输出序号和时间
+     */
+    public void encode(long appId, long seq, MetricsSnapshot snapshot, Map<String, Object> extra) {
+        length = 0;
+        writeRequest(appId, seq, snapshot, extra);
+    }
+
+    /**
+     * 开始编码批量上报请求体 [{...},{...}]，之后逐个 {@link #append}，最后 {@link #endBatch()}
+     */
+    public void beginBatch() {
+        length = 0;
+        writeByte((byte) '[');
+    }
+
+    /**
+     * 向批量请求体追加一个样本，格式同 {@link #encode(long, long, MetricsSnapshot, Map)}
+     */
+    public void append(long appId, long seq, MetricsSnapshot snapshot, Map<String, Object> extra) {
+        if (length > 1) {
+            writeByte((byte) ',');
+        }
+        writeRequest(appId, seq, snapshot, extra);
+    }
+
+    public void endBatch() {
+        writeByte((byte) ']');
+    }
+
+    /**
+     * 编码告警请求体 {"appId":1,"alertType":"...","alertLevel":"...","source":"...","alertMsg":"...","timestamp":T}
+     *
+     * @param source 告警来源（如内存池名），可为 null
+     * @param timestamp 告警产生时间
+     */
+    public void encodeAlert(long appId, String alertType, String alertLevel, String source,
+                            String message, long timestamp) {
+        length = 0;
+        writeBytes(APP_ID_PREFIX);
+        writeLong(appId);
+        writeField("alertType", alertType);
+        writeField("alertLevel", alertLevel);
+        writeField("source", source);
+        writeField("alertMsg", message);
+        writeBytes(TIMESTAMP_PREFIX);
+        writeLong(timestamp);
+        writeByte((byte) '}');
+    }
+
+    private void writeField(String name, String value) {
+        writeByte((byte) ',');
+        writeString(name);
+        writeByte((byte) ':');
+        if (value == null) {
+            writeAscii("null");
+        } else {
+            writeString(value);
+        }
+    }
+
+    private void writeRequest(long appId, long seq, MetricsSnapshot snapshot, Map<String, Object> extra) {
+        writeBytes(APP_ID_PREFIX);
+        writeLong(appId);
+        if (seq >= 0) {
+            writeBytes(SEQ_PREFIX);
+            writeLong(seq);
+            writeBytes(TIMESTAMP_PREFIX);
+            writeLong(snapshot.getTimestamp());
+        }
+        writeBytes(METRICS_PREFIX);
+        int count = writeSnapshot(snapshot, 0);
+        if (extra != null) {
+            writeExtra(extra, count);
+        }
+        writeByte((byte) '}');
+        writeByte((byte) '}');
+    }
+
+    /**
+     * 编码后的字节（有效长度见 {@link #length()}）
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * 编码结果的字符串形式（调试用）
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private int writeSnapshot(MetricsSnapshot snapshot, int count) {
+        MetricRegistry registry = snapshot.getRegistry();
+        int n = Math.min(registry.size(), snapshot.capacity());
+        for (int id = 0; id < n; id++) {
+            if (!snapshot.isPresent(id)) {
+                continue;
+            }
+            if (registry.type(id) == MetricRegistry.Type.DOUBLE) {
+                double value = snapshot.getDouble(id);
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    continue;
+                }
+                if (count++ > 0) writeByte((byte) ',');
+                writeBytes(registry.jsonKey(id));
+                writeDouble(value);
+            } else {
+                if (count++ > 0) writeByte((byte) ',');
+                writeBytes(registry.jsonKey(id));
+                writeLong(snapshot.getLong(id));
+            }
+        }
+        return count;
+    }
+
+    private void writeExtra(Map<String, Object> extra, int count) {
+        for (Map.Entry<String, Object> entry : extra.entrySet()) {
+            if (count++ > 0) writeByte((byte) ',');
+            writeString(entry.getKey());
+            writeByte((byte) ':');
+            Object value = entry.getValue();
+            if (value == null) {
+                writeAscii("null");
+            } else if (value instanceof Number || value instanceof Boolean) {
+                writeAscii(value.toString());
+            } else {
+                writeString(value.toString());
+            }
+        }
+    }
+
+    /**
+     * 输出 JSON 字符串，按 RFC 8259 转义引号、反斜杠和全部控制字符（U+0000 ~ U+001F）
+     */
+    private void writeString(String s) {
+        scratch.setLength(0);
+        scratch.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': scratch.append("\\\""); break;
+                case '\\': scratch.append("\\\\"); break;
+                case '\n': scratch.append("\\n"); break;
+                case '\r': scratch.append("\\r"); break;
+                case '\t': scratch.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        scratch.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        scratch.append(c);
+                    }
+            }
+        }
+        scratch.append('"');
+        writeBytes(scratch.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        if (value < 0) {
+            writeByte((byte) '-');
+            value = -value;
+        }
+        int pos = digits.length;
+        do {
+            digits[--pos] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        ensureCapacity(digits.length - pos);
+        System.arraycopy(digits, pos, buffer, length, digits.length - pos);
+        length += digits.length - pos;
+    }
+
+    private void writeDouble(double value) {
+        scratch.setLength(0);
+        scratch.append(value);
+        int n = scratch.length();
+        ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            buffer[length++] = (byte) scratch.charAt(i);
+        }
+    }
+
+    private void writeAscii(String s) {
+        int n = s.length();
+        ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            buffer[length++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void writeByte(byte b) {
+        ensureCapacity(1);
+        buffer[length++] = b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
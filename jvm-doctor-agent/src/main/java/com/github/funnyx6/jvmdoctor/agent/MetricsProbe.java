@@ -0,0 +1,24 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+/**
+ * 附加指标探针
+ *
+ * 探针在构造时向 {@link MetricRegistry} 注册指标，
+ * 每次采集时由 {@link MetricsCollector} 在上报线程上调用，按 ID 写入快照。
+ * 采集过程中新注册的指标需先调用 {@link MetricsSnapshot#ensureCapacity()} 再写入。
+ */
+public interface MetricsProbe {
+
+    /**
+     * 采集指标到快照
+     *
+     * @param snapshot 当前快照（已被 MetricsCollector 清空并写入内置指标）
+     */
+    void collect(MetricsSnapshot snapshot);
+
+    /**
+     * 释放探针持有的资源
+     */
+    default void close() {
+    }
+}
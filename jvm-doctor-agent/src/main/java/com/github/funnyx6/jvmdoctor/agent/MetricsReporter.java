@@ -1,37 +1,259 @@
 package com.github.funnyx6.jvmdoctor.agent;
 
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import com.github.funnyx6.jvmdoctor.core.GcTelemetry;
+import com.github.funnyx6.jvmdoctor.core.MemoryPoolMonitor;
+import com.github.funnyx6.jvmdoctor.core.MetricsFrame;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 指标上报模块
  * 负责定时采集并上报指标到 Server
+ * 
+ * 采集与发送分属两个线程：jvm-doctor-metrics 只按采集间隔采样，样本经有界无锁队列（{@link SampleQueue}）
+ * 交给 jvm-doctor-metrics-sender 编码和发送，Server 响应慢或不可达不会推迟或跳过采集。
+ * 队列满时丢弃最旧的样本，积压和丢弃数见 agent.queue.* 指标。
  */
 public class MetricsReporter {
     
+    private static final String JSON = "application/json";
+    // 每个上报周期最多回放的批次数，避免积压很多时长时间占用上报线程
+    private static final int MAX_REPLAY_BATCHES = 10;
+    // Server 无法衔接差分帧时返回的状态码
+    private static final int RESYNC = 409;
+    
     private final AgentConfig config;
     private final AppRegister appRegister;
+    private final AgentTransport transport;
     private final MetricsCollector collector;
+    private final SnapshotBuffer snapshots;
+    // 采集线程交给发送线程的样本
+    private final SampleQueue queue;
+    // 发送线程已取出、等待发送的样本（按上报间隔成批发送，失败且未启用暂存时保留）
+    private final SampleRing pending;
+    private final MetricsJsonEncoder encoder;
+    // 二进制帧编码器，Server 不支持或配置为 json 时为 null
+    private final MetricsBinaryEncoder binaryEncoder;
     private final ScheduledExecutorService scheduler;
+    private final ScheduledExecutorService sender;
+    // 告警单独发送和重发，不排在指标发送之后
+    private final AlertSender alerts;
+    private final AgentTelemetry telemetry = AgentTelemetry.getShared();
+    private final MetricsSpool spool;
+    // 未启用暂存时的上报序号（从当前时间的微秒数开始，跨重启单调），仅采集线程访问
+    private long sequence = System.currentTimeMillis() * 1000;
+    
+    // 开销账户：编码不限流；上报（含发送）超出预算时可拉长间隔，但不停用
+    private final OverheadGovernor.Account encoderAccount = OverheadGovernor.account("encoder", 0);
+    private final OverheadGovernor.Account reportAccount =
+            OverheadGovernor.account("report", OverheadGovernor.MAX_LEVEL - 1);
     
     private volatile boolean running = false;
     
-    public MetricsReporter(AgentConfig config, AppRegister appRegister) {
+    public MetricsReporter(AgentConfig config, AppRegister appRegister, AgentTransport transport) {
         this.config = config;
         this.appRegister = appRegister;
+        this.transport = transport;
         this.collector = new MetricsCollector();
+        this.queue = new SampleQueue(collector.getRegistry(), queueCapacity());
+        this.pending = new SampleRing(collector.getRegistry(), config.getMetricsBufferSize());
+        this.spool = openSpool();
+        attachGcProbe();
+        attachMemoryPoolProbe();
+        attachAllocationProbe();
+        collector.addProbe("contention", new ContentionProbe(collector.getRegistry()));
+        collector.addProbe("histogram", new ClassHistogramProbe(collector.getRegistry()));
+        collector.addProbe("nmt", new NativeMemoryProbe(collector.getRegistry()));
+        if (ProcessMemoryProbe.isSupported()) {
+            collector.addProbe("process.memory", new ProcessMemoryProbe(collector.getRegistry()));
+        }
+        if (collector.getCgroup() != null) {
+            collector.addProbe("cgroup", new CgroupProbe(collector.getCgroup(), collector.getRegistry()));
+            System.out.println("[MetricsReporter] Container metrics from " + collector.getCgroup());
+        }
+        collector.addProbe("method.timers", new MethodTimerProbe(collector.getRegistry()));
+        attachGovernorProbe();
+        attachSpoolProbe();
+        attachQueueProbe();
+        attachBufferProbe();
+        collector.addProbe("agent", new AgentProbe(telemetry, collector.getRegistry()));
+        this.snapshots = new SnapshotBuffer(collector.getRegistry());
+        this.encoder = new MetricsJsonEncoder();
+        this.binaryEncoder = createBinaryEncoder();
         this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
             Thread t = new Thread(r, "jvm-doctor-metrics");
             t.setDaemon(true);
             return t;
         });
+        this.sender = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jvm-doctor-metrics-sender");
+            t.setDaemon(true);
+            return t;
+        });
+        this.alerts = new AlertSender(transport, appRegister::getAppId, config.getReportInterval() * 1000L);
+    }
+    
+    /**
+     * 默认以二进制帧上报；配置为 json 或 Server 未声明支持（旧版本）时使用 JSON
+     */
+    private MetricsBinaryEncoder createBinaryEncoder() {
+        if ("json".equals(config.getReportFormat())) {
+            return null;
+        }
+        if (appRegister.getBinaryProtocol() < MetricsFrame.VERSION) {
+            System.out.println("[MetricsReporter] Server does not support binary metrics, reporting JSON");
+            return null;
+        }
+        return new MetricsBinaryEncoder();
+    }
+    
+    /**
+     * 订阅 GC 通知，按区间上报 GC 耗时分布和分配/晋升速率
+     */
+    private void attachGcProbe() {
+        GcTelemetry telemetry = new GcTelemetry();
+        if (!telemetry.start()) {
+            System.err.println("[MetricsReporter] GC notifications not supported, GC telemetry disabled");
+            return;
+        }
+        collector.addProbe("gc", new GcProbe(telemetry, collector.getRegistry()));
+    }
+    
+    /**
+     * 上报进程级分配速率（由线程跟踪器按采集间隔窗口计算）
+     */
+    private void attachAllocationProbe() {
+        int allocRateId = collector.getRegistry().registerDouble("alloc.rate");
+        long windowMillis = sampleIntervalMillis();
+        collector.addProbe("alloc", snapshot -> {
+            ThreadActivityTracker tracker = ThreadActivityTracker.getInstance();
+            if (tracker != null) {
+                double rate = tracker.getAllocationRate(windowMillis);
+                if (rate >= 0) {
+                    snapshot.setDouble(allocRateId, rate);
+                }
+            }
+        });
+    }
+    
+    /**
+     * 上报开销预算控制的状态，便于在看板上看到采集精度何时被降低
+     */
+    private void attachGovernorProbe() {
+        int overheadId = collector.getRegistry().registerDouble("agent.governor.overhead");
+        int throttledId = collector.getRegistry().registerLong("agent.governor.throttled");
+        collector.addProbe("governor", snapshot -> {
+            OverheadGovernor governor = OverheadGovernor.getInstance();
+            if (governor != null) {
+                snapshot.setDouble(overheadId, governor.getOverhead());
+                snapshot.setLong(throttledId, governor.getThrottledCount());
+            }
+        });
+    }
+    
+    /**
+     * 打开本地暂存文件（每个应用一个），失败时不暂存
+     */
+    private MetricsSpool openSpool() {
+        Long appId = appRegister.getAppId();
+        if (!config.isSpoolEnabled() || appId == null) {
+            return null;
+        }
+        String dir = config.getSpoolDir().isEmpty() ? System.getProperty("java.io.tmpdir") : config.getSpoolDir();
+        File file = new File(dir, "jvm-doctor-spool-" + appId + ".dat");
+        try {
+            MetricsSpool spool = new MetricsSpool(file, config.getSpoolMaxBytes(), config.getSpoolMaxAge() * 1000L);
+            System.out.println("[MetricsReporter] Spool " + file + " (" + spool.size() + " samples pending)");
+            return spool;
+        } catch (IOException e) {
+            System.err.println("[MetricsReporter] Spool disabled, cannot open " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 上报暂存文件的积压情况
+     */
+    private void attachSpoolProbe() {
+        if (spool == null) {
+            return;
+        }
+        int recordsId = collector.getRegistry().registerLong("agent.spool.records");
+        int bytesId = collector.getRegistry().registerLong("agent.spool.bytes");
+        int droppedId = collector.getRegistry().registerLong("agent.spool.dropped");
+        collector.addProbe("spool", snapshot -> {
+            snapshot.setLong(recordsId, spool.size());
+            snapshot.setLong(bytesId, spool.usedBytes());
+            snapshot.setLong(droppedId, spool.getDropped());
+        });
+    }
+    
+    /**
+     * 上报采集线程到发送线程的队列积压和丢弃情况
+     */
+    private void attachQueueProbe() {
+        int depthId = collector.getRegistry().registerLong("agent.queue.depth");
+        int droppedId = collector.getRegistry().registerLong("agent.queue.dropped");
+        collector.addProbe("queue", snapshot -> {
+            snapshot.setLong(depthId, queue.size());
+            snapshot.setLong(droppedId, queue.getDropped());
+        });
+    }
+    
+    /**
+     * 队列容量：至少容纳两个上报间隔的样本，发送线程慢一个周期不会丢样本
+     */
+    private int queueCapacity() {
+        long perReport = config.getReportInterval() * 1000L / sampleIntervalMillis();
+        return (int) Math.min(Math.max(config.getMetricsQueueSize(), perReport * 2), Integer.MAX_VALUE);
+    }
+    
+    /**
+     * 上报本地样本缓冲区的积压和丢弃情况
+     */
+    private void attachBufferProbe() {
+        int samplesId = collector.getRegistry().registerLong("agent.buffer.samples");
+        int droppedId = collector.getRegistry().registerLong("agent.buffer.dropped");
+        collector.addProbe("buffer", snapshot -> {
+            snapshot.setLong(samplesId, pending.size());
+            snapshot.setLong(droppedId, pending.getDropped());
+        });
+    }
+    
+    /**
+     * 实际的采集间隔（毫秒）：未配置或不小于上报间隔时每次上报采集一次
+     */
+    private long sampleIntervalMillis() {
+        long reportMillis = config.getReportInterval() * 1000L;
+        int sampleMillis = config.getMetricsSampleInterval();
+        return sampleMillis > 0 && sampleMillis < reportMillis ? sampleMillis : reportMillis;
+    }
+    
+    /**
+     * 上报各内存池指标，并布置使用量阈值，越过时立即推送告警
+     */
+    private void attachMemoryPoolProbe() {
+        MemoryPoolMonitor monitor = new MemoryPoolMonitor();
+        int armed = monitor.armThresholds(config.getMemoryUsageThreshold(), config.getMemoryCollectionThreshold());
+        monitor.addListener(this::onThresholdExceeded);
+        collector.addProbe("memory.pool", new MemoryPoolProbe(monitor, collector.getRegistry()));
+        System.out.println("[MetricsReporter] Memory pool thresholds armed on " + armed + " pools");
+    }
+    
+    /**
+     * 内存池阈值越过（JVM 通知线程），交给告警线程立即推送，不阻塞通知线程
+     */
+    private void onThresholdExceeded(MemoryPoolMonitor.ThresholdEvent event) {
+        System.err.println("[MetricsReporter] Memory threshold exceeded: " + event);
+        if (!running) return;
+        alerts.send(event);
     }
     
     /**
@@ -45,56 +267,141 @@ public class MetricsReporter {
         
         running = true;
         int interval = config.getReportInterval();
+        long sampleMillis = sampleIntervalMillis();
         
-        System.out.println("[MetricsReporter] Starting with interval: " + interval + "s");
+        System.out.println("[MetricsReporter] Starting with interval: " + interval + "s, sampling every "
+                + sampleMillis + "ms");
         
         // 立即执行一次采集上报
         reportOnce();
         
-        // 定时上报
-        scheduler.scheduleAtFixedRate(this::reportOnce, interval, interval, TimeUnit.SECONDS);
+        // 采集线程定时采集；发送线程定时成批发送（采集间隔等于上报间隔时每次采集后发送）
+        if (sampleMillis < interval * 1000L) {
+            scheduler.scheduleAtFixedRate(this::sampleOnce, sampleMillis, sampleMillis, TimeUnit.MILLISECONDS);
+            sender.scheduleAtFixedRate(this::shipOnce, interval, interval, TimeUnit.SECONDS);
+        } else {
+            scheduler.scheduleAtFixedRate(this::reportOnce, interval, interval, TimeUnit.SECONDS);
+        }
     }
+    
     /**
      * 停止指标上报
      */
     public void stop() {
         running = false;
-        scheduler.shutdown();
+        awaitShutdown(scheduler);
+        awaitShutdown(sender);
+        alerts.close();
+        collector.closeProbes();
+        if (spool != null) {
+            spool.close();
+        }
+        transport.close();
+        System.out.println("[MetricsReporter] Stopped");
+    }
+    
+    private static void awaitShutdown(ExecutorService executor) {
+        executor.shutdown();
         try {
-            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                scheduler.shutdownNow();
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
             }
         } catch (InterruptedException e) {
-            scheduler.shutdownNow();
+            executor.shutdownNow();
             Thread.currentThread().interrupt();
         }
-        System.out.println("[MetricsReporter] Stopped");
     }
     
     /**
-     * 执行一次指标采集和上报
+     * 采集一个样本并通知发送线程上报
      */
     private void reportOnce() {
+        sampleOnce();
+        if (!running) return;
+        try {
+            sender.execute(this::shipOnce);
+        } catch (RejectedExecutionException e) {
+            // 已停止
+        }
+    }
+    
+    /**
+     * 采集一个样本放入发送队列，样本时间为 Agent 的采集时间（仅限采集线程调用，不做网络 I/O）
+     */
+    private void sampleOnce() {
         if (!running) return;
         
+        try {
+            // 采集指标到后台缓冲区，完成后发布
+            collector.collect(snapshots.back());
+            MetricsSnapshot snapshot = snapshots.publish();
+            
+            // 自定义指标（未注册采集器时不分配）
+            Map<String, Object> customMetrics = GlobalCollectors.getCollectors().isEmpty()
+                    ? null : GlobalCollectors.collectAll();
+            
+            long seq = spool != null ? spool.nextSequence() : sequence++;
+            queue.offer(seq, snapshot, customMetrics);
+        } catch (Exception e) {
+            System.err.println("[MetricsReporter] Sampling error: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 取出队列中的样本，与缓冲区中未发送的样本一起成批发送到 Server（仅限发送线程调用）
+     * 
+     * 发送失败时，启用暂存则移入暂存文件，否则留在缓冲区随下一批发送（缓冲区满后丢弃最旧的样本）。
+     */
+    private void shipOnce() {
+        if (!running) return;
+        queue.drainTo(pending);
+        if (pending.isEmpty()) return;
+        if (!reportAccount.shouldRun()) return;
+        
         try {
             Long appId = appRegister.getAppId();
             if (appId == null) {
                 System.err.println("[MetricsReporter] App not registered, cannot report");
                 return;
             }
+            int count = pending.size();
             
-            // 采集指标
-            Map<String, Object> metrics = collector.collect();
+            // 编码并发送到 Server
+            long cpuStart = OverheadGovernor.threadCpuTime();
+            long allocStart = OverheadGovernor.threadAllocatedBytes();
+            long startNanos = System.nanoTime();
+            encodePending(appId, count);
+            encoderAccount.record(startNanos, cpuStart, allocStart);
             
-            // 发送到 Server
-            boolean success = sendMetrics(appId, metrics);
+            cpuStart = OverheadGovernor.threadCpuTime();
+            allocStart = OverheadGovernor.threadAllocatedBytes();
+            startNanos = System.nanoTime();
+            boolean success;
+            int bytes;
+            if (binaryEncoder != null) {
+                success = sendFrames(appId, count);
+                bytes = binaryEncoder.length();
+            } else {
+                success = sendMetrics(count == 1 ? "/api/metrics" : "/api/metrics/batch",
+                        encoder.buffer(), encoder.length());
+                bytes = encoder.length();
+            }
+            telemetry.recordReport(bytes, success);
             
             if (success) {
-                System.out.println("[MetricsReporter] Metrics reported successfully");
+                pending.remove(count);
+                System.out.println("[MetricsReporter] Metrics reported successfully (" + count + " samples, "
+                        + bytes + " bytes, " + (System.nanoTime() - startNanos) / 1_000_000 + "ms)");
+                replaySpool();
+            } else if (spool != null) {
+                spoolPending(appId, count);
+                System.err.println("[MetricsReporter] Failed to report metrics, spooled ("
+                        + spool.size() + " samples pending)");
             } else {
-                System.err.println("[MetricsReporter] Failed to report metrics");
+                System.err.println("[MetricsReporter] Failed to report metrics (" + pending.size()
+                        + " samples buffered)");
             }
+            reportAccount.record(startNanos, cpuStart, allocStart);
             
         } catch (Exception e) {
             System.err.println("[MetricsReporter] Error: " + e.getMessage());
@@ -102,57 +409,118 @@ public class MetricsReporter {
     }
     
     /**
-     * 发送指标到 Server
+     * 编码缓冲区中最旧的 count 个样本：二进制为连续的差分帧，JSON 为单个对象或数组
+     */
+    private void encodePending(long appId, int count) {
+        if (binaryEncoder != null) {
+            binaryEncoder.begin();
+            for (int i = 0; i < count; i++) {
+                binaryEncoder.append(appId, pending.sequence(i), pending.snapshot(i), pending.extra(i));
+            }
+        } else if (count == 1) {
+            encoder.encode(appId, pending.sequence(0), pending.snapshot(0), pending.extra(0));
+        } else {
+            encoder.beginBatch();
+            for (int i = 0; i < count; i++) {
+                encoder.append(appId, pending.sequence(i), pending.snapshot(i), pending.extra(i));
+            }
+            encoder.endBatch();
+        }
+    }
+    
+    /**
+     * 发送失败的样本逐个以 JSON 移入暂存文件：回放的样本不在差分链上，按 (appId, seq) 独立去重入库
+     */
+    private void spoolPending(long appId, int count) {
+        for (int i = 0; i < count; i++) {
+            MetricsSnapshot snapshot = pending.snapshot(i);
+            encoder.encode(appId, pending.sequence(i), snapshot, pending.extra(i));
+            spool.append(pending.sequence(i), snapshot.getTimestamp(), encoder.buffer(), encoder.length());
+        }
+        pending.remove(count);
+    }
+    
+    /**
+     * 回放暂存的样本（本次上报成功，说明 Server 已恢复）
+     * 
+     * 按批发送到批量接口，收到 200 后才从暂存文件移除；发送失败则留待下个周期。
+     * Server 按 (appId, seq) 去重，已入库但响应丢失的批次重发不会产生重复数据。
+     */
+    private void replaySpool() {
+        if (spool == null) {
+            return;
+        }
+        int expired = spool.expire(System.currentTimeMillis());
+        if (expired > 0) {
+            System.err.println("[MetricsReporter] Dropped " + expired + " spooled samples older than "
+                    + config.getSpoolMaxAge() + "s");
+        }
+        int replayed = 0;
+        for (int i = 0; i < MAX_REPLAY_BATCHES && !spool.isEmpty(); i++) {
+            int records = spool.peekBatch(Math.max(1, config.getSpoolBatchSize()));
+            if (!sendMetrics("/api/metrics/batch", spool.batchBuffer(), spool.batchLength())) {
+                break;
+            }
+            spool.remove(records);
+            replayed += records;
+        }
+        if (replayed > 0) {
+            System.out.println("[MetricsReporter] Replayed " + replayed + " spooled samples ("
+                    + spool.size() + " pending)");
+        }
+    }
+    
+    /**
+     * 发送已编码的二进制帧；Server 返回 409（重启或丢失了差分基准）时以关键帧开头重新编码，重试一次
      */
-    private boolean sendMetrics(Long appId, Map<String, Object> metrics) {
+    private boolean sendFrames(long appId, int count) {
         try {
-            String url = config.getServerUrl() + "/api/metrics";
-            
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("appId", appId);
-            requestBody.put("metrics", metrics);
-            
-            String json = toJson(requestBody);
-            
-            HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-            conn.setConnectTimeout(5000);
-            conn.setReadTimeout(10000);
-            
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(json.getBytes(StandardCharsets.UTF_8));
+            AgentTransport.Response response = transport.post("/api/metrics/bin", MetricsFrame.CONTENT_TYPE,
+                    binaryEncoder.buffer(), binaryEncoder.length());
+            if (response.getStatus() == RESYNC && !binaryEncoder.isKeyframePending()) {
+                System.out.println("[MetricsReporter] Server requested resync, sending keyframe");
+                binaryEncoder.reset();
+                encodePending(appId, count);
+                response = transport.post("/api/metrics/bin", MetricsFrame.CONTENT_TYPE,
+                        binaryEncoder.buffer(), binaryEncoder.length());
             }
-            
-            int responseCode = conn.getResponseCode();
-            return responseCode == 200;
-            
-        } catch (Exception e) {
+            if (!response.isOk()) {
+                System.err.println("[MetricsReporter] Send failed, status: " + response.getStatus());
+                return false;
+            }
+            binaryEncoder.commit();
+            return true;
+        } catch (IOException e) {
             System.err.println("[MetricsReporter] Send error: " + e.getMessage());
             return false;
         }
     }
     
-    private String toJson(Map<String, Object> map) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        int i = 0;
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            if (i > 0) sb.append(",");
-            sb.append("\"").append(entry.getKey()).append("\":");
-            Object value = entry.getValue();
-            if (value instanceof Map) {
-                sb.append(toJson((Map<String, Object>) value));
-            } else if (value instanceof String) {
-                sb.append("\"").append(value).append("\"");
-            } else {
-                sb.append(value);
+    /**
+     * 发送指标到 Server（压缩、连接复用和重试由传输负责）
+     * 
+     * @param path 接口路径
+     * @param body 已编码的 JSON 请求体
+     * @param length 有效长度
+     */
+    private boolean sendMetrics(String path, byte[] body, int length) {
+        try {
+            AgentTransport.Response response = transport.post(path, JSON, body, length);
+            if (!response.isOk()) {
+                System.err.println("[MetricsReporter] Send failed, status: " + response.getStatus());
             }
-            i++;
+            return response.isOk();
+        } catch (IOException e) {
+            System.err.println("[MetricsReporter] Send error: " + e.getMessage());
+            return false;
         }
-        sb.append("}");
-        return sb.toString();
+    }
+    
+    /**
+     * 获取最近一次采集的快照
+     */
+    public MetricsSnapshot getLatestSnapshot() {
+        return snapshots.front();
     }
     
     // ========== 静态工厂方法 ==========
@@ -165,16 +533,18 @@ public class MetricsReporter {
             return;
         }
         
-        // 先注册应用
-        AppRegister appRegister = new AppRegister(config);
+        // 先注册应用（注册与上报共用传输，复用同一条连接）
+        AgentTransport transport = AgentTransport.create(config);
+        AppRegister appRegister = new AppRegister(config, transport);
         Long appId = appRegister.register();
         if (appId == null) {
             System.err.println("[MetricsReporter] Failed to register app, metrics reporting disabled");
+            transport.close();
             return;
         }
         
         // 启动指标上报
-        instance = new MetricsReporter(config, appRegister);
+        instance = new MetricsReporter(config, appRegister, transport);
         instance.start();
         
         // 注册关闭钩子
@@ -0,0 +1,127 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 指标快照
+ *
+ * 按 {@link MetricRegistry} 分配的 ID 存放原始类型值，可反复复用。
+ * 未设置的指标不会被上报（等价于旧协议中的 null）。
+ */
+public class MetricsSnapshot {
+
+    private final MetricRegistry registry;
+
+    private long[] longValues;
+    private double[] doubleValues;
+    private boolean[] present;
+    private long timestamp;
+
+    public MetricsSnapshot(MetricRegistry registry) {
+        this.registry = registry;
+        int capacity = Math.max(registry.size(), 16);
+        this.longValues = new long[capacity];
+        this.doubleValues = new double[capacity];
+        this.present = new boolean[capacity];
+    }
+
+    /**
+     * 开始一次新的采集：清空上一轮的值，并在注册表增长后扩容
+     *
+     * @param timestamp 采集时间（epoch 毫秒）
+     */
+    public void reset(long timestamp) {
+        int required = registry.size();
+        if (required > present.length) {
+            int capacity = Math.max(required, present.length * 2);
+            longValues = Arrays.copyOf(longValues, capacity);
+            doubleValues = Arrays.copyOf(doubleValues, capacity);
+            present = new boolean[capacity];
+        } else {
+            Arrays.fill(present, false);
+        }
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * 采集过程中注册了新指标时扩容，保留已写入的值
+     */
+    public void ensureCapacity() {
+        int required = registry.size();
+        if (required > present.length) {
+            int capacity = Math.max(required, present.length * 2);
+            longValues = Arrays.copyOf(longValues, capacity);
+            doubleValues = Arrays.copyOf(doubleValues, capacity);
+            present = Arrays.copyOf(present, capacity);
+        }
+    }
+
+    public void setLong(int id, long value) {
+        longValues[id] = value;
+        present[id] = true;
+    }
+
+    public void setDouble(int id, double value) {
+        doubleValues[id] = value;
+        present[id] = true;
+    }
+
+    public boolean isPresent(int id) {
+        return id < present.length && present[id];
+    }
+
+    public long getLong(int id) {
+        return longValues[id];
+    }
+
+    public double getDouble(int id) {
+        return doubleValues[id];
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * 当前快照可容纳的 ID 上限
+     */
+    public int capacity() {
+        return present.length;
+    }
+
+    /**
+     * 复制另一个快照的内容
+     */
+    public void copyFrom(MetricsSnapshot other) {
+        reset(other.timestamp);
+        int n = Math.min(other.present.length, present.length);
+        System.arraycopy(other.longValues, 0, longValues, 0, n);
+        System.arraycopy(other.doubleValues, 0, doubleValues, 0, n);
+        System.arraycopy(other.present, 0, present, 0, n);
+    }
+
+    /**
+     * 转换为 Map（兼容旧接口，会分配对象，不用于稳态采集路径）
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        int n = Math.min(registry.size(), present.length);
+        for (int id = 0; id < n; id++) {
+            if (!present[id]) {
+                continue;
+            }
+            if (registry.type(id) == MetricRegistry.Type.DOUBLE) {
+                map.put(registry.name(id), doubleValues[id]);
+            } else {
+                map.put(registry.name(id), longValues[id]);
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,336 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 指标上报的本地暂存文件（store-and-forward）
+ *
+ * Server 不可达时，发送失败的上报请求体追加到固定大小的内存映射文件中，恢复后按批回放（见 {@link #peekBatch}）。
+ * 文件布局为 64 字节头部 + 环形数据区，记录为 [int 长度][long 序号][long 采集时间][请求体]；
+ * 数据区尾部放不下一条记录时写入回绕标记（长度 -1），从数据区起点继续。
+ * <ul>
+ *   <li>空间不足时丢弃最旧的记录；超过最长保留时间的记录在每次追加前（Server 不可达期间）和回放前丢弃（{@link #expire}），
+ *       磁盘占用不超过配置的大小</li>
+ *   <li>头部保存读写位置和下一个上报序号，Agent 重启后继续回放上次未发送的记录，序号不回退</li>
+ * </ul>
+ * 写入只修改映射内存，由操作系统回写，进程崩溃不丢数据（机器掉电可能丢失最近的记录）。线程安全。
+ */
+public class MetricsSpool {
+
+    private static final int MAGIC = 0x4A445350; // "JDSP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_HEADER = 4 + 8 + 8;
+    private static final int WRAP = -1;
+    /** 数据区最小字节数 */
+    public static final int MIN_CAPACITY = 64 * 1024;
+
+    // 头部字段偏移
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_CAPACITY = 8;
+    private static final int OFF_HEAD = 16;
+    private static final int OFF_TAIL = 24;
+    private static final int OFF_COUNT = 32;
+    private static final int OFF_USED = 40;
+    private static final int OFF_NEXT_SEQ = 48;
+
+    private final File file;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int capacity;
+    private final long maxAgeMillis;
+
+    // 数据区内的读 / 写位置、记录数、占用字节数（含回绕留下的空隙）
+    private int head;
+    private int tail;
+    private int count;
+    private int used;
+    private long nextSeq;
+    private long dropped;
+
+    // 回放批次：[记录,记录,...]
+    private byte[] batch = new byte[64 * 1024];
+    private int batchLength;
+
+    /**
+     * 打开或创建暂存文件；已有文件的格式或大小不一致时清空重建
+     *
+     * @param file 文件路径
+     * @param maxBytes 文件大小上限（含头部），不低于 {@link #MIN_CAPACITY}
+     * @param maxAgeMillis 记录最长保留时间（毫秒），0 表示不限
+     */
+    public MetricsSpool(File file, long maxBytes, long maxAgeMillis) throws IOException {
+        this.file = file;
+        this.capacity = (int) Math.max(MIN_CAPACITY, Math.min(maxBytes - HEADER_SIZE, Integer.MAX_VALUE - HEADER_SIZE));
+        this.maxAgeMillis = maxAgeMillis;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean reuse = channel.size() == HEADER_SIZE + capacity;
+        if (!reuse) {
+            channel.truncate(0);
+        }
+        this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+        if (!reuse || !loadHeader()) {
+            head = 0;
+            tail = 0;
+            count = 0;
+            used = 0;
+            nextSeq = 0;
+            map.putInt(OFF_MAGIC, MAGIC);
+            map.putInt(OFF_VERSION, VERSION);
+            map.putLong(OFF_CAPACITY, capacity);
+        }
+        // 序号跨重启单调：不低于当前时间（微秒量级），即使暂存文件被删除也不会与已上报的序号重复
+        nextSeq = Math.max(nextSeq, System.currentTimeMillis() * 1000);
+        storeHeader();
+    }
+
+    private boolean loadHeader() {
+        if (map.getInt(OFF_MAGIC) != MAGIC || map.getInt(OFF_VERSION) != VERSION
+                || map.getLong(OFF_CAPACITY) != capacity) {
+            return false;
+        }
+        long h = map.getLong(OFF_HEAD);
+        long t = map.getLong(OFF_TAIL);
+        long c = map.getLong(OFF_COUNT);
+        long u = map.getLong(OFF_USED);
+        if (h < 0 || h > capacity || t < 0 || t > capacity || c < 0 || u < 0 || u > capacity) {
+            return false;
+        }
+        head = (int) h;
+        tail = (int) t;
+        count = (int) c;
+        used = (int) u;
+        nextSeq = map.getLong(OFF_NEXT_SEQ);
+        return true;
+    }
+
+    private void storeHeader() {
+        map.putLong(OFF_HEAD, head);
+        map.putLong(OFF_TAIL, tail);
+        map.putLong(OFF_COUNT, count);
+        map.putLong(OFF_USED, used);
+        map.putLong(OFF_NEXT_SEQ, nextSeq);
+    }
+
+    /**
+     * 分配下一个上报序号（持久化在头部）
+     */
+    public synchronized long nextSequence() {
+        long seq = nextSeq++;
+        map.putLong(OFF_NEXT_SEQ, nextSeq);
+        return seq;
+    }
+
+    /**
+     * 追加一条记录，先丢弃超过最长保留时间的记录，空间仍不足时丢弃最旧的记录
+     *
+     * @return 记录大于整个数据区时返回 false
+     */
+    public synchronized boolean append(long seq, long timestamp, byte[] body, int length) {
+        expire(System.currentTimeMillis());
+        int need = RECORD_HEADER + length;
+        if (need > capacity) {
+            dropped++;
+            return false;
+        }
+        if (count == 0) {
+            // 清空时回到起点，消除回绕空隙
+            head = 0;
+            tail = 0;
+            used = 0;
+        }
+        int required = tail + need <= capacity ? need : capacity - tail + need;
+        while (capacity - used < required && count > 0) {
+            dropOldest();
+            dropped++;
+            if (count == 0) {
+                head = 0;
+                tail = 0;
+                used = 0;
+                required = need;
+            }
+        }
+        if (tail + need > capacity) {
+            if (capacity - tail >= 4) {
+                map.putInt(HEADER_SIZE + tail, WRAP);
+            }
+            used += capacity - tail;
+            tail = 0;
+        }
+        int pos = HEADER_SIZE + tail;
+        map.putInt(pos, length);
+        map.putLong(pos + 4, seq);
+        map.putLong(pos + 12, timestamp);
+        for (int i = 0; i < length; i++) {
+            map.put(pos + RECORD_HEADER + i, body[i]);
+        }
+        tail += need;
+        used += need;
+        count++;
+        storeHeader();
+        return true;
+    }
+
+    /**
+     * 读位置处于回绕空隙时跳回数据区起点
+     */
+    private void skipWrap() {
+        if (capacity - head < RECORD_HEADER || map.getInt(HEADER_SIZE + head) == WRAP) {
+            used -= capacity - head;
+            head = 0;
+        }
+    }
+
+    private void dropOldest() {
+        skipWrap();
+        int length = map.getInt(HEADER_SIZE + head);
+        head += RECORD_HEADER + length;
+        used -= RECORD_HEADER + length;
+        count--;
+    }
+
+    /**
+     * 丢弃超过最长保留时间的记录
+     *
+     * @return 丢弃的记录数
+     */
+    public synchronized int expire(long nowMillis) {
+        if (maxAgeMillis <= 0) {
+            return 0;
+        }
+        int expired = 0;
+        while (count > 0) {
+            skipWrap();
+            if (map.getLong(HEADER_SIZE + head + 12) >= nowMillis - maxAgeMillis) {
+                break;
+            }
+            dropOldest();
+            expired++;
+        }
+        if (expired > 0) {
+            dropped += expired;
+            storeHeader();
+        }
+        return expired;
+    }
+
+    /**
+     * 把最旧的若干条记录编码为 JSON 数组 [请求体,请求体,...]（不移除，发送成功后调用 {@link #remove}）
+     *
+     * @param maxRecords 最多读取的记录数
+     * @return 读取的记录数
+     */
+    public synchronized int peekBatch(int maxRecords) {
+        batchLength = 0;
+        writeBatch((byte) '[');
+        int read = 0;
+        int pos = head;
+        while (read < Math.min(maxRecords, count)) {
+            if (capacity - pos < RECORD_HEADER || map.getInt(HEADER_SIZE + pos) == WRAP) {
+                pos = 0;
+            }
+            int length = map.getInt(HEADER_SIZE + pos);
+            if (read > 0) {
+                writeBatch((byte) ',');
+            }
+            ensureBatch(length);
+            int start = HEADER_SIZE + pos + RECORD_HEADER;
+            for (int i = 0; i < length; i++) {
+                batch[batchLength++] = map.get(start + i);
+            }
+            pos += RECORD_HEADER + length;
+            read++;
+        }
+        writeBatch((byte) ']');
+        return read;
+    }
+
+    /**
+     * 移除最旧的若干条记录（回放成功后）
+     */
+    public synchronized void remove(int records) {
+        for (int i = 0; i < records && count > 0; i++) {
+            dropOldest();
+        }
+        if (count == 0) {
+            head = 0;
+            tail = 0;
+            used = 0;
+        }
+        storeHeader();
+    }
+
+    private void writeBatch(byte b) {
+        ensureBatch(1);
+        batch[batchLength++] = b;
+    }
+
+    private void ensureBatch(int extra) {
+        if (batchLength + extra > batch.length) {
+            batch = Arrays.copyOf(batch, Math.max(batch.length * 2, batchLength + extra));
+        }
+    }
+
+    /**
+     * 最近一次 {@link #peekBatch} 的编码结果（有效长度见 {@link #batchLength()}）
+     */
+    public synchronized byte[] batchBuffer() {
+        return batch;
+    }
+
+    public synchronized int batchLength() {
+        return batchLength;
+    }
+
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * 待回放的记录数
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * 数据区占用的字节数
+     */
+    public synchronized int usedBytes() {
+        return used;
+    }
+
+    /**
+     * 累计因空间或保留时间被丢弃的记录数
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 刷写到磁盘并关闭文件
+     */
+    public synchronized void close() {
+        try {
+            map.force();
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("[MetricsSpool] Close error: " + e.getMessage());
+        }
+    }
+}
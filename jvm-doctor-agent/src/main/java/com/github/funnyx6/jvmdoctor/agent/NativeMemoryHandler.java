@@ -0,0 +1,91 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Native Memory Tracking HTTP Handler
+ * 
+ * GET  /api/nmt            最近一次汇总（设置了基线时附带各类别相对基线的增量）
+ * POST /api/nmt/collect    立即采集一次
+ * POST /api/nmt/baseline   以最近一次汇总作为基线（先立即采集一次）
+ * POST /api/nmt/reset      清除基线
+ * POST /api/nmt/start      开启 NMT 采集（目标 JVM 需以 -XX:NativeMemoryTracking=summary 启动）
+ * POST /api/nmt/stop       关闭 NMT 采集
+ */
+public class NativeMemoryHandler extends ApiHandler {
+    
+    private final AgentConfig config;
+    
+    public NativeMemoryHandler(AgentConfig config) {
+        this.config = config;
+    }
+    
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        boolean action = path.endsWith("/start") || path.endsWith("/stop") || path.endsWith("/reset")
+                || path.endsWith("/collect") || path.endsWith("/baseline");
+        if (action && !requirePost(exchange)) {
+            return;
+        }
+        
+        if (path.endsWith("/start")) {
+            if (NativeMemoryTracker.start(config) == null) {
+                send(exchange, 501, "{\"error\":\"Native memory tracking not enabled (NativeMemoryTracking="
+                        + NativeMemoryTracker.trackingMode() + ")\"}");
+                return;
+            }
+        } else if (path.endsWith("/stop")) {
+            NativeMemoryTracker.shutdown();
+        } else if (path.endsWith("/reset")) {
+            NativeMemoryTracker tracker = NativeMemoryTracker.getInstance();
+            if (tracker != null) {
+                tracker.clearBaseline();
+            }
+        } else if (path.endsWith("/collect") || path.endsWith("/baseline")) {
+            NativeMemoryTracker tracker = NativeMemoryTracker.getInstance();
+            if (tracker == null) {
+                send(exchange, 409, "{\"error\":\"Native memory tracking not started\"}");
+                return;
+            }
+            try {
+                if (!tracker.collect()) {
+                    send(exchange, 500, "{\"error\":\"Unexpected VM.native_memory output\"}");
+                    return;
+                }
+            } catch (Exception e) {
+                send(exchange, 500, "{\"error\":\"" + escapeJson(String.valueOf(e.getMessage())) + "\"}");
+                return;
+            }
+            if (path.endsWith("/baseline")) {
+                tracker.setBaseline();
+            }
+        } else if (!path.endsWith("/nmt")) {
+            send(exchange, 404, "{\"error\":\"Not found\"}");
+            return;
+        }
+        
+        send(exchange, 200, getStatus());
+    }
+    
+    private String getStatus() {
+        NativeMemoryTracker tracker = NativeMemoryTracker.getInstance();
+        if (tracker == null) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("enabled", false);
+            result.put("mode", NativeMemoryTracker.trackingMode());
+            return toJson(result);
+        }
+        Map<String, Object> result = tracker.getSummary();
+        result.put("enabled", true);
+        result.put("mode", NativeMemoryTracker.trackingMode());
+        result.put("intervalSeconds", tracker.getIntervalSeconds());
+        result.put("lastDurationMillis", tracker.getLastDurationMillis());
+        result.put("collections", tracker.getCollections());
+        return toJson(result);
+    }
+}
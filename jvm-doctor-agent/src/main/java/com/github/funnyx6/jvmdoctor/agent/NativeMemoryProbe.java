@@ -0,0 +1,57 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.github.funnyx6.jvmdoctor.core.MemoryPoolMonitor;
+
+import java.util.Arrays;
+
+/**
+ * Native Memory Tracking 探针
+ *
+ * NMT 采集运行且已至少采集一次时（{@link NativeMemoryTracker#getInstance()} 非空），每个上报区间输出最近一次汇总：
+ * <ul>
+ *   <li>nmt.total.reserved / committed：所有类别合计的保留 / 提交字节数</li>
+ *   <li>nmt.&lt;类别&gt;.reserved / committed：按类别，如 nmt.Thread.committed、nmt.Java_Heap.reserved</li>
+ * </ul>
+ * 类别随汇总输出动态出现，首次出现时注册指标。
+ */
+public class NativeMemoryProbe implements MetricsProbe {
+
+    private final MetricRegistry registry;
+    private final NativeMemorySummary latest = new NativeMemorySummary();
+    private final int totalReservedId;
+    private final int totalCommittedId;
+    private int[] reservedIds = new int[0];
+    private int[] committedIds = new int[0];
+
+    public NativeMemoryProbe(MetricRegistry registry) {
+        this.registry = registry;
+        this.totalReservedId = registry.registerLong("nmt.total.reserved");
+        this.totalCommittedId = registry.registerLong("nmt.total.committed");
+    }
+
+    @Override
+    public void collect(MetricsSnapshot snapshot) {
+        NativeMemoryTracker tracker = NativeMemoryTracker.getInstance();
+        if (tracker == null || !tracker.copyLatest(latest)) {
+            return;
+        }
+        int categories = tracker.getCategoryCount();
+        if (categories > reservedIds.length) {
+            int known = reservedIds.length;
+            reservedIds = Arrays.copyOf(reservedIds, categories);
+            committedIds = Arrays.copyOf(committedIds, categories);
+            for (int id = known; id < categories; id++) {
+                String prefix = "nmt." + MemoryPoolMonitor.metricName(tracker.getCategoryName(id));
+                reservedIds[id] = registry.registerLong(prefix + ".reserved");
+                committedIds[id] = registry.registerLong(prefix + ".committed");
+            }
+            snapshot.ensureCapacity();
+        }
+        snapshot.setLong(totalReservedId, latest.getTotalReserved());
+        snapshot.setLong(totalCommittedId, latest.getTotalCommitted());
+        for (int id = 0; id < reservedIds.length; id++) {
+            snapshot.setLong(reservedIds[id], latest.reserved(id));
+            snapshot.setLong(committedIds[id], latest.committed(id));
+        }
+    }
+}
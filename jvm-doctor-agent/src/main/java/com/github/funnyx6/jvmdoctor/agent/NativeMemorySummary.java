@@ -0,0 +1,247 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.util.Arrays;
+
+/**
+ * 一次 Native Memory Tracking 汇总（VM.native_memory summary）的结果
+ *
+ * 按 {@link ClassNameTable} 的类别 ID 存放保留和提交字节数（原始类型数组，下标即 ID），可通过 {@link #parse} 反复复用。
+ * 低于输出精度被省略的类别按 0 计。
+ */
+public class NativeMemorySummary {
+
+    private long timestamp;
+    private long[] reserved = new long[32];
+    private long[] committed = new long[32];
+    private int categories;
+    private long totalReserved;
+    private long totalCommitted;
+    // 解析一行的保留 / 提交字节数
+    private final long[] sizes = new long[2];
+
+    /**
+     * 流式解析汇总文本，覆盖当前内容
+     *
+     * 只读取总计行和各类别的首行，类别下的明细行（malloc、mmap、arena 等）跳过：
+     * <pre>
+     * Total: reserved=2941325KB, committed=124641KB
+     * -                 Java Heap (reserved=1540096KB, committed=96256KB)
+     *                             (mmap: reserved=1540096KB, committed=96256KB)
+     * -                    Thread (reserved=13348KB, committed=708KB)
+     *                             (thread #13)
+     * </pre>
+     * 逐字符扫描，不拆分行、不使用正则，只为首次出现的类别名分配字符串。支持 B / KB / MB / GB 单位。
+     *
+     * @param text 汇总文本
+     * @param names 类别名驻留表
+     * @param timestamp 采集时间（epoch 毫秒）
+     * @return 解析出的类别数，文本不是 NMT 汇总（如 NMT 未开启）时返回 -1
+     */
+    public int parse(CharSequence text, ClassNameTable names, long timestamp) {
+        clear(timestamp);
+        int length = text.length();
+        int pos = 0;
+        boolean sawTotal = false;
+        while (pos < length) {
+            int lineEnd = pos;
+            while (lineEnd < length && text.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int end = lineEnd;
+            if (end > pos && text.charAt(end - 1) == '\r') {
+                end--;
+            }
+            int p = skipSpaces(text, pos, end);
+            if (startsWith(text, p, end, "Total:")) {
+                if (parseSizes(text, p + 6, end, sizes)) {
+                    totalReserved = sizes[0];
+                    totalCommitted = sizes[1];
+                    sawTotal = true;
+                }
+            } else if (p < end && text.charAt(p) == '-') {
+                parseCategory(text, p + 1, end, names);
+            }
+            pos = lineEnd + 1;
+        }
+        return sawTotal ? categories : -1;
+    }
+
+    private void parseCategory(CharSequence text, int pos, int end, ClassNameTable names) {
+        int nameStart = skipSpaces(text, pos, end);
+        int paren = nameStart;
+        while (paren < end && text.charAt(paren) != '(') {
+            paren++;
+        }
+        int nameEnd = paren;
+        while (nameEnd > nameStart && text.charAt(nameEnd - 1) == ' ') {
+            nameEnd--;
+        }
+        if (nameEnd == nameStart || paren == end || !parseSizes(text, paren + 1, end, sizes)) {
+            return;
+        }
+        categories++;
+        int id = names.intern(text, nameStart, nameEnd);
+        if (id < 0) {
+            return;
+        }
+        if (id >= reserved.length) {
+            int capacity = Math.max(id + 1, reserved.length * 2);
+            reserved = Arrays.copyOf(reserved, capacity);
+            committed = Arrays.copyOf(committed, capacity);
+        }
+        reserved[id] += sizes[0];
+        committed[id] += sizes[1];
+    }
+
+    /**
+     * 解析 "reserved=123KB, committed=45KB"
+     */
+    private static boolean parseSizes(CharSequence text, int pos, int end, long[] values) {
+        int p = skipSpaces(text, pos, end);
+        if (!startsWith(text, p, end, "reserved=")) {
+            return false;
+        }
+        p += 9;
+        int q = skipDigits(text, p, end);
+        if (q == p) {
+            return false;
+        }
+        long reservedValue = parseLong(text, p, q);
+        int unitEnd = skipLetters(text, q, end);
+        values[0] = reservedValue * scale(text, q, unitEnd);
+
+        p = unitEnd;
+        if (p < end && text.charAt(p) == ',') {
+            p++;
+        }
+        p = skipSpaces(text, p, end);
+        if (!startsWith(text, p, end, "committed=")) {
+            return false;
+        }
+        p += 10;
+        q = skipDigits(text, p, end);
+        if (q == p) {
+            return false;
+        }
+        long committedValue = parseLong(text, p, q);
+        values[1] = committedValue * scale(text, q, skipLetters(text, q, end));
+        return true;
+    }
+
+    private static long scale(CharSequence text, int start, int end) {
+        if (end - start >= 2) {
+            switch (Character.toUpperCase(text.charAt(start))) {
+                case 'K':
+                    return 1024L;
+                case 'M':
+                    return 1024L * 1024;
+                case 'G':
+                    return 1024L * 1024 * 1024;
+                default:
+                    break;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * 复制另一份汇总（保存基线、供探针读取），容量足够时不分配
+     */
+    public void copyFrom(NativeMemorySummary other) {
+        timestamp = other.timestamp;
+        if (reserved.length < other.reserved.length) {
+            reserved = new long[other.reserved.length];
+            committed = new long[other.committed.length];
+        }
+        Arrays.fill(reserved, 0);
+        Arrays.fill(committed, 0);
+        System.arraycopy(other.reserved, 0, reserved, 0, other.reserved.length);
+        System.arraycopy(other.committed, 0, committed, 0, other.committed.length);
+        categories = other.categories;
+        totalReserved = other.totalReserved;
+        totalCommitted = other.totalCommitted;
+    }
+
+    private void clear(long timestamp) {
+        this.timestamp = timestamp;
+        Arrays.fill(reserved, 0);
+        Arrays.fill(committed, 0);
+        categories = 0;
+        totalReserved = 0;
+        totalCommitted = 0;
+    }
+
+    private static int skipSpaces(CharSequence text, int pos, int end) {
+        while (pos < end && (text.charAt(pos) == ' ' || text.charAt(pos) == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipDigits(CharSequence text, int pos, int end) {
+        while (pos < end && text.charAt(pos) >= '0' && text.charAt(pos) <= '9') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipLetters(CharSequence text, int pos, int end) {
+        while (pos < end && Character.isLetter(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static long parseLong(CharSequence text, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static boolean startsWith(CharSequence text, int pos, int end, String prefix) {
+        if (end - pos < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(pos + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * 类别的保留字节数（未出现时为 0）
+     */
+    public long reserved(int id) {
+        return id < reserved.length ? reserved[id] : 0;
+    }
+
+    /**
+     * 类别的提交字节数（未出现时为 0）
+     */
+    public long committed(int id) {
+        return id < committed.length ? committed[id] : 0;
+    }
+
+    /**
+     * 本次输出的类别数
+     */
+    public int getCategories() {
+        return categories;
+    }
+
+    public long getTotalReserved() {
+        return totalReserved;
+    }
+
+    public long getTotalCommitted() {
+        return totalCommitted;
+    }
+}
@@ -0,0 +1,284 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Native Memory Tracking 采集
+ *
+ * 目标 JVM 以 -XX:NativeMemoryTracking=summary（或 detail）启动时，按固定间隔调用 DiagnosticCommand MBean 的
+ * vmNativeMemory（即 jcmd VM.native_memory summary），流式解析各类别（Java Heap、Class、Thread、Code、GC、
+ * Internal、Symbol 等）的保留和提交字节数。
+ *
+ * 基线保存在 Agent 中而不是 VM 中（不使用 VM.native_memory baseline），与 jcmd 手动设置的基线互不影响；
+ * 设置基线后各类别附带相对基线的增量，用于判断哪个类别在增长。
+ */
+public class NativeMemoryTracker {
+
+    /** 两次采集的最小间隔（秒） */
+    public static final int MIN_INTERVAL_SECONDS = 5;
+    private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+    private static final int MAX_CATEGORIES = 128;
+
+    private final int intervalSeconds;
+    private final ClassNameTable names = new ClassNameTable(MAX_CATEGORIES);
+    private final ScheduledExecutorService scheduler;
+    private final OverheadGovernor.Account account =
+            OverheadGovernor.account("nmt", OverheadGovernor.MAX_LEVEL);
+
+    // 解析到 scratch 后与 latest 交换，解析失败时保留上一次结果
+    private NativeMemorySummary latest = new NativeMemorySummary();
+    private NativeMemorySummary scratch = new NativeMemorySummary();
+    private NativeMemorySummary baseline;
+    private boolean collected = false;
+
+    private volatile long lastDurationMillis;
+    private volatile long collections;
+
+    /**
+     * @param intervalSeconds 采集间隔（秒），不低于 {@value #MIN_INTERVAL_SECONDS}
+     */
+    public NativeMemoryTracker(int intervalSeconds) {
+        this.intervalSeconds = Math.max(intervalSeconds, MIN_INTERVAL_SECONDS);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jvm-doctor-nmt");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 目标 JVM 的 NMT 模式（off / summary / detail），无法获取时返回 null
+     */
+    public static String trackingMode() {
+        try {
+            HotSpotDiagnosticMXBean diagnostic = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            return diagnostic != null ? diagnostic.getVMOption("NativeMemoryTracking").getValue() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * DiagnosticCommand MBean 可用且 NMT 已开启
+     */
+    public static boolean isSupported() {
+        try {
+            String mode = trackingMode();
+            return mode != null && !"off".equals(mode)
+                    && ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(DIAGNOSTIC_COMMAND));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 启动后台采集（立即采集一次，NMT 汇总不触发 GC）
+     */
+    public void startTracking() {
+        scheduler.scheduleAtFixedRate(() -> {
+            // 超出开销预算时拉长采集间隔
+            if (!account.shouldRun()) {
+                return;
+            }
+            long cpuStart = OverheadGovernor.threadCpuTime();
+            long allocStart = OverheadGovernor.threadAllocatedBytes();
+            long startNanos = System.nanoTime();
+            try {
+                collect();
+            } catch (Exception e) {
+                System.err.println("[NativeMemoryTracker] Collect error: " + e.getMessage());
+            }
+            account.record(startNanos, cpuStart, allocStart);
+        }, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void stopTracking() {
+        scheduler.shutdownNow();
+    }
+
+    public int getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    /**
+     * 采集一次汇总
+     *
+     * @return 输出不是 NMT 汇总（如 NMT 未开启）时返回 false
+     */
+    public boolean collect() throws Exception {
+        long startNanos = System.nanoTime();
+        String text;
+        try {
+            text = invokeNativeMemory();
+        } finally {
+            lastDurationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+        return record(text, System.currentTimeMillis());
+    }
+
+    private String invokeNativeMemory() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Object[] params = {new String[]{"summary"}};
+        String[] signature = {String[].class.getName()};
+        return (String) server.invoke(new ObjectName(DIAGNOSTIC_COMMAND), "vmNativeMemory", params, signature);
+    }
+
+    /**
+     * 解析一次汇总文本，成功时替换最近一次结果
+     */
+    synchronized boolean record(CharSequence text, long timestamp) {
+        if (scratch.parse(text, names, timestamp) < 0) {
+            return false;
+        }
+        NativeMemorySummary parsed = scratch;
+        scratch = latest;
+        latest = parsed;
+        collected = true;
+        collections++;
+        return true;
+    }
+
+    /**
+     * 以最近一次结果作为基线
+     *
+     * @return 尚未采集时返回 false
+     */
+    public synchronized boolean setBaseline() {
+        if (!collected) {
+            return false;
+        }
+        if (baseline == null) {
+            baseline = new NativeMemorySummary();
+        }
+        baseline.copyFrom(latest);
+        return true;
+    }
+
+    public synchronized void clearBaseline() {
+        baseline = null;
+    }
+
+    /**
+     * 复制最近一次结果（供指标探针读取，容量足够时不分配）
+     *
+     * @return 尚未采集时返回 false
+     */
+    public synchronized boolean copyLatest(NativeMemorySummary target) {
+        if (!collected) {
+            return false;
+        }
+        target.copyFrom(latest);
+        return true;
+    }
+
+    /**
+     * 已出现过的类别数（类别 ID 为 0 ~ 类别数 - 1）
+     */
+    public synchronized int getCategoryCount() {
+        return names.size();
+    }
+
+    public synchronized String getCategoryName(int id) {
+        return names.name(id);
+    }
+
+    /**
+     * 各类别的保留和提交字节数
+     *
+     * 设置了基线时附带 reservedDiff / committedDiff，按提交增量降序；否则按提交字节数降序。
+     */
+    public synchronized Map<String, Object> getSummary() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("collected", collected);
+        result.put("baseline", baseline != null);
+        if (!collected) {
+            return result;
+        }
+        result.put("timestamp", latest.getTimestamp());
+        result.put("totalReserved", latest.getTotalReserved());
+        result.put("totalCommitted", latest.getTotalCommitted());
+        if (baseline != null) {
+            result.put("baselineAt", baseline.getTimestamp());
+            result.put("totalReservedDiff", latest.getTotalReserved() - baseline.getTotalReserved());
+            result.put("totalCommittedDiff", latest.getTotalCommitted() - baseline.getTotalCommitted());
+        }
+
+        List<Map<String, Object>> categories = new ArrayList<>();
+        for (int id = 0; id < names.size(); id++) {
+            long reserved = latest.reserved(id);
+            long committed = latest.committed(id);
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("category", names.name(id));
+            entry.put("reserved", reserved);
+            entry.put("committed", committed);
+            if (baseline != null) {
+                entry.put("reservedDiff", reserved - baseline.reserved(id));
+                entry.put("committedDiff", committed - baseline.committed(id));
+            } else if (reserved == 0 && committed == 0) {
+                continue;
+            }
+            categories.add(entry);
+        }
+        String sortKey = baseline != null ? "committedDiff" : "committed";
+        categories.sort((a, b) -> Long.compare((Long) b.get(sortKey), (Long) a.get(sortKey)));
+        result.put("categories", categories);
+        return result;
+    }
+
+    /**
+     * 最近一次采集的耗时（毫秒）
+     */
+    public long getLastDurationMillis() {
+        return lastDurationMillis;
+    }
+
+    /**
+     * 累计采集次数
+     */
+    public long getCollections() {
+        return collections;
+    }
+
+    // ========== 静态工厂方法 ==========
+
+    private static volatile NativeMemoryTracker instance;
+
+    public static synchronized NativeMemoryTracker start(AgentConfig config) {
+        if (instance == null) {
+            if (!isSupported()) {
+                System.err.println("[NativeMemoryTracker] Native memory tracking not available"
+                        + " (start the JVM with -XX:NativeMemoryTracking=summary)");
+                return null;
+            }
+            NativeMemoryTracker tracker = new NativeMemoryTracker(config.getNmtInterval());
+            tracker.startTracking();
+            instance = tracker;
+            System.out.println("[NativeMemoryTracker] Started, mode: " + trackingMode()
+                    + ", interval: " + tracker.intervalSeconds + "s");
+        }
+        return instance;
+    }
+
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.stopTracking();
+            instance = null;
+            System.out.println("[NativeMemoryTracker] Stopped");
+        }
+    }
+
+    public static NativeMemoryTracker getInstance() {
+        return instance;
+    }
+}
@@ -0,0 +1,206 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Java 线程 ID 与操作系统线程 ID（Linux 上即 /proc/self/task 下的 TID，top -H 和 jstack 中的 nid）的映射
+ *
+ * JDK 没有公开线程的 native ID，这里解析 DiagnosticCommand 的 threadPrint（即 jcmd Thread.print）输出中每个线程头部的
+ * "#&lt;Java 线程 ID&gt;" 和 "nid=0x&lt;TID&gt;"（JDK 19 起 nid 为十进制）。
+ * threadPrint 要在安全点上遍历所有线程的堆栈，只在遇到未映射的线程时刷新，且两次刷新至少间隔 {@link #MIN_REFRESH_MILLIS}。
+ * 线程安全，全局共享一份（{@link #getShared()}）。
+ */
+public class NativeThreadIds {
+
+    /** 两次刷新的最小间隔（毫秒） */
+    public static final long MIN_REFRESH_MILLIS = 30_000;
+    private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+
+    private static final NativeThreadIds SHARED = new NativeThreadIds();
+
+    // Java 线程 ID → TID；TID → 槽位 → Java 线程 ID
+    private final LongIntMap tidsByJavaId = new LongIntMap(256);
+    private final LongIntMap slotsByTid = new LongIntMap(256);
+    private long[] javaIds = new long[256];
+    private int size = 0;
+
+    private long lastRefreshMillis;
+    private long refreshes;
+    private boolean available = true;
+
+    public static NativeThreadIds getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Java 线程对应的 TID
+     *
+     * @return 尚未映射时返回 -1
+     */
+    public synchronized int nativeId(long javaThreadId) {
+        return tidsByJavaId.get(javaThreadId);
+    }
+
+    /**
+     * TID 对应的 Java 线程 ID
+     *
+     * @return 不是 Java 线程（GC、JIT 编译等 JVM 内部线程或 JNI 创建的线程）或尚未映射时返回 -1
+     */
+    public synchronized long javaThreadId(int tid) {
+        int slot = slotsByTid.get(tid);
+        return slot >= 0 ? javaIds[slot] : -1;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 累计刷新次数
+     */
+    public synchronized long getRefreshes() {
+        return refreshes;
+    }
+
+    /**
+     * 重新建立映射
+     *
+     * @param force 为 false 时距上次刷新不足 {@link #MIN_REFRESH_MILLIS} 则跳过
+     * @return 是否执行了刷新
+     */
+    public boolean refresh(boolean force) {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (!available || (!force && lastRefreshMillis > 0 && now - lastRefreshMillis < MIN_REFRESH_MILLIS)) {
+                return false;
+            }
+            lastRefreshMillis = now;
+        }
+        String text;
+        try {
+            text = threadPrint();
+        } catch (Exception e) {
+            synchronized (this) {
+                // 没有 DiagnosticCommand MBean 的 JVM 不再尝试
+                available = false;
+            }
+            System.err.println("[NativeThreadIds] Thread.print unavailable: " + e.getMessage());
+            return false;
+        }
+        synchronized (this) {
+            parse(text);
+            refreshes++;
+        }
+        return true;
+    }
+
+    private static String threadPrint() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Object[] params = {new String[0]};
+        String[] signature = {String[].class.getName()};
+        return (String) server.invoke(new ObjectName(DIAGNOSTIC_COMMAND), "threadPrint", params, signature);
+    }
+
+    /**
+     * 解析 Thread.print 输出，替换当前映射
+     * <pre>
+     * "main" #1 prio=5 os_prio=0 cpu=189.82ms elapsed=0.32s tid=0x00007f99f8024f10 nid=0x125d waiting on condition
+     * "VM Thread" os_prio=0 cpu=0.38ms elapsed=0.29s tid=0x00007f99f805a930 nid=0x125e runnable
+     * </pre>
+     * 没有 "#ID" 的是 JVM 内部线程，不映射。
+     *
+     * @return 映射的线程数
+     */
+    synchronized int parse(CharSequence text) {
+        tidsByJavaId.clear();
+        slotsByTid.clear();
+        size = 0;
+        int length = text.length();
+        int pos = 0;
+        while (pos < length) {
+            int lineEnd = pos;
+            while (lineEnd < length && text.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (text.charAt(pos) == '"') {
+                parseHeader(text, pos, lineEnd);
+            }
+            pos = lineEnd + 1;
+        }
+        return size;
+    }
+
+    private void parseHeader(CharSequence text, int start, int end) {
+        int nid = indexOf(text, "nid=", start, end);
+        if (nid < 0) {
+            return;
+        }
+        // 线程名中可能有引号和 #，取 nid 之前最后一个 "\" #"
+        int hash = lastIndexOf(text, "\" #", start, nid);
+        if (hash < 0) {
+            return;
+        }
+        long javaId = parseNumber(text, hash + 3, end, 10);
+        int p = nid + 4;
+        int radix = 10;
+        if (p + 1 < end && text.charAt(p) == '0' && (text.charAt(p + 1) == 'x' || text.charAt(p + 1) == 'X')) {
+            p += 2;
+            radix = 16;
+        }
+        long tid = parseNumber(text, p, end, radix);
+        if (javaId < 0 || tid <= 0 || tid > Integer.MAX_VALUE) {
+            return;
+        }
+        if (size == javaIds.length) {
+            javaIds = Arrays.copyOf(javaIds, size * 2);
+        }
+        javaIds[size] = javaId;
+        slotsByTid.put(tid, size);
+        tidsByJavaId.put(javaId, (int) tid);
+        size++;
+    }
+
+    private static long parseNumber(CharSequence text, int start, int end, int radix) {
+        long value = 0;
+        int p = start;
+        while (p < end) {
+            int digit = Character.digit(text.charAt(p), radix);
+            if (digit < 0) {
+                break;
+            }
+            value = value * radix + digit;
+            p++;
+        }
+        return p == start ? -1 : value;
+    }
+
+    private static int indexOf(CharSequence text, String target, int start, int end) {
+        for (int i = start; i + target.length() <= end; i++) {
+            if (regionMatches(text, i, target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(CharSequence text, String target, int start, int end) {
+        for (int i = end - target.length(); i >= start; i--) {
+            if (regionMatches(text, i, target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(CharSequence text, int offset, String target) {
+        for (int j = 0; j < target.length(); j++) {
+            if (text.charAt(offset + j) != target.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,396 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.github.funnyx6.jvmdoctor.core.LogLinearHistogram;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Agent 开销预算控制
+ *
+ * Agent 的各个组件（指标采集、各探针、JSON 编码、线程接口、采样剖析、后台采样器）各自持有一个 {@link Account}，
+ * 执行时以当前线程的 CPU 时间和分配字节数计量。控制线程按窗口汇总所有账户的 CPU 时间，
+ * 与预算（单核的比例，如 0.005 即 0.5%）比较：
+ * <ul>
+ *   <li>超出预算：把窗口内最耗 CPU 的可限流账户提升一级，每级执行间隔翻倍，到达最高级时停用</li>
+ *   <li>低于预算的一半：按后进先出逐级恢复，估算恢复后的开销仍低于预算的 {@value #RESTORE_RATIO} 时才恢复</li>
+ * </ul>
+ * 账户在首次使用时注册，控制线程只在 {@link #start(AgentConfig)} 后运行；未启动时只计量，不限流。
+ */
+public class OverheadGovernor {
+
+    /** 最高限流级别：1~3 级间隔依次 ×2、×4、×8，第 4 级停用 */
+    public static final int MAX_LEVEL = 4;
+    private static final double RESTORE_RATIO = 0.8;
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean SUN_THREAD_MX_BEAN =
+            THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean
+                    ? (com.sun.management.ThreadMXBean) THREAD_MX_BEAN : null;
+
+    private static final ConcurrentMap<String, Account> ACCOUNTS = new ConcurrentHashMap<>();
+
+    /**
+     * 单个组件的开销账户
+     *
+     * 计量只做原子累加，不分配对象；每次执行的耗时（微秒）记入无锁直方图，供自监控指标输出分布。
+     * {@link #shouldRun()} 的计数器不做同步，
+     * 可限流的账户应只由单个线程驱动（如后台采样线程、上报线程）。
+     */
+    public static final class Account {
+        private final String name;
+        private final int maxLevel;
+        private final AtomicLong cpuNanos = new AtomicLong();
+        private final AtomicLong allocBytes = new AtomicLong();
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final LogLinearHistogram durationMicros = new LogLinearHistogram();
+        private volatile int level;
+        private int counter;
+
+        // 控制线程维护的窗口状态
+        private long lastCpuNanos;
+        private long lastAllocBytes;
+        private volatile long windowCpuNanos;
+        private volatile long windowAllocBytes;
+        private final Deque<Long> costBeforeThrottle = new ArrayDeque<>();
+
+        Account(String name, int maxLevel) {
+            this.name = name;
+            this.maxLevel = Math.max(0, Math.min(maxLevel, MAX_LEVEL));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 按当前限流级别判断本次是否执行（跳过的次数会被统计）
+         */
+        public boolean shouldRun() {
+            int l = level;
+            if (l == 0) {
+                return true;
+            }
+            if (l < MAX_LEVEL && (counter++ & ((1 << l) - 1)) == 0) {
+                return true;
+            }
+            skipped.incrementAndGet();
+            return false;
+        }
+
+        /**
+         * 记录一次执行的开销
+         *
+         * @param startNanos 执行前的 System.nanoTime()
+         * @param cpuStart 执行前的 {@link OverheadGovernor#threadCpuTime()}
+         * @param allocStart 执行前的 {@link OverheadGovernor#threadAllocatedBytes()}
+         */
+        public void record(long startNanos, long cpuStart, long allocStart) {
+            durationMicros.record((System.nanoTime() - startNanos) / 1000);
+            if (cpuStart >= 0) {
+                long cpu = threadCpuTime() - cpuStart;
+                if (cpu > 0) {
+                    cpuNanos.addAndGet(cpu);
+                }
+            }
+            if (allocStart >= 0) {
+                long alloc = threadAllocatedBytes() - allocStart;
+                if (alloc > 0) {
+                    allocBytes.addAndGet(alloc);
+                }
+            }
+            calls.incrementAndGet();
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        /**
+         * 当前执行间隔的倍数，停用时返回 0
+         */
+        public int getIntervalMultiplier() {
+            int l = level;
+            return l >= MAX_LEVEL ? 0 : 1 << l;
+        }
+
+        public boolean isThrottleable() {
+            return maxLevel > 0;
+        }
+
+        public long getCpuNanos() {
+            return cpuNanos.get();
+        }
+
+        public long getAllocBytes() {
+            return allocBytes.get();
+        }
+
+        public long getCalls() {
+            return calls.get();
+        }
+
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        /**
+         * 每次执行的耗时分布（微秒）
+         */
+        public LogLinearHistogram getDurationMicros() {
+            return durationMicros;
+        }
+    }
+
+    /**
+     * 获取（首次时注册）组件账户
+     *
+     * @param name 组件名，如 probe.gc、encoder、api.threads
+     * @param maxLevel 允许的最高限流级别，0 表示不限流，{@link #MAX_LEVEL} 表示允许停用
+     */
+    public static Account account(String name, int maxLevel) {
+        Account account = ACCOUNTS.get(name);
+        if (account == null) {
+            account = ACCOUNTS.computeIfAbsent(name, k -> new Account(k, maxLevel));
+        }
+        return account;
+    }
+
+    /**
+     * 已注册的所有账户
+     */
+    public static Collection<Account> accounts() {
+        return ACCOUNTS.values();
+    }
+
+    /**
+     * 当前线程的 CPU 时间（纳秒），不可用时返回 -1
+     */
+    public static long threadCpuTime() {
+        return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * 当前线程的累计分配字节数，不可用时返回 -1
+     */
+    @SuppressWarnings("deprecation")
+    public static long threadAllocatedBytes() {
+        if (SUN_THREAD_MX_BEAN == null) {
+            return -1;
+        }
+        return SUN_THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private final double budget;
+    private final long windowMillis;
+    private final ScheduledExecutorService scheduler;
+
+    // 被限流的账户，后进先出恢复
+    private final Deque<Account> throttled = new ArrayDeque<>();
+    private long lastNanos;
+    private volatile double overhead;
+    private volatile long windowAllocBytes;
+    private volatile long adjustments;
+
+    public OverheadGovernor(double budget, long windowMillis) {
+        this.budget = budget;
+        this.windowMillis = Math.max(windowMillis, 1000);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jvm-doctor-governor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 启动控制线程
+     */
+    public void startGoverning() {
+        synchronized (this) {
+            lastNanos = System.nanoTime();
+            for (Account account : ACCOUNTS.values()) {
+                account.lastCpuNanos = account.cpuNanos.get();
+                account.lastAllocBytes = account.allocBytes.get();
+            }
+        }
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                evaluate();
+            } catch (Exception e) {
+                System.err.println("[OverheadGovernor] Evaluate error: " + e.getMessage());
+            }
+        }, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止控制线程，恢复所有账户
+     */
+    public synchronized void stopGoverning() {
+        scheduler.shutdownNow();
+        for (Account account : throttled) {
+            account.level = 0;
+            account.costBeforeThrottle.clear();
+        }
+        throttled.clear();
+    }
+
+    /**
+     * 结算一个窗口并调整限流级别
+     */
+    public synchronized void evaluate() {
+        long now = System.nanoTime();
+        long wallNanos = now - lastNanos;
+        if (wallNanos <= 0) {
+            return;
+        }
+        lastNanos = now;
+
+        long totalCpu = 0;
+        long totalAlloc = 0;
+        Account hottest = null;
+        for (Account account : ACCOUNTS.values()) {
+            long cpu = account.cpuNanos.get();
+            long alloc = account.allocBytes.get();
+            account.windowCpuNanos = cpu - account.lastCpuNanos;
+            account.windowAllocBytes = alloc - account.lastAllocBytes;
+            account.lastCpuNanos = cpu;
+            account.lastAllocBytes = alloc;
+            totalCpu += account.windowCpuNanos;
+            totalAlloc += account.windowAllocBytes;
+            if (account.level < account.maxLevel && account.windowCpuNanos > 0
+                    && (hottest == null || account.windowCpuNanos > hottest.windowCpuNanos)) {
+                hottest = account;
+            }
+        }
+        double current = (double) totalCpu / wallNanos;
+        overhead = current;
+        windowAllocBytes = totalAlloc;
+
+        if (current > budget) {
+            if (hottest != null) {
+                hottest.costBeforeThrottle.push(hottest.windowCpuNanos * 1_000_000_000L / wallNanos);
+                hottest.level++;
+                throttled.push(hottest);
+                adjustments++;
+                System.out.println(String.format("[OverheadGovernor] Overhead %.3f%% over budget %.3f%%, %s %s",
+                        current * 100, budget * 100, hottest.name,
+                        hottest.level >= MAX_LEVEL ? "disabled" : "interval x" + (1 << hottest.level)));
+            }
+        } else if (current < budget / 2 && !throttled.isEmpty()) {
+            Account candidate = throttled.peek();
+            // 仍在运行的账户恢复一级后执行频率翻倍，开销约增加一个窗口的量；已停用的按停用前的开销估算
+            double restored;
+            if (candidate.level < MAX_LEVEL) {
+                restored = current + (double) candidate.windowCpuNanos / wallNanos;
+            } else {
+                Long before = candidate.costBeforeThrottle.peek();
+                restored = current + (before != null ? before / 1e9 : 0);
+            }
+            if (restored < budget * RESTORE_RATIO) {
+                throttled.pop();
+                candidate.costBeforeThrottle.poll();
+                candidate.level--;
+                adjustments++;
+                System.out.println("[OverheadGovernor] Headroom available, " + candidate.name
+                        + (candidate.level == 0 ? " restored" : " interval x" + (1 << candidate.level)));
+            }
+        }
+    }
+
+    /**
+     * 最近一个窗口的开销（单核的比例）
+     */
+    public double getOverhead() {
+        return overhead;
+    }
+
+    public double getBudget() {
+        return budget;
+    }
+
+    /**
+     * 当前被限流的账户数
+     */
+    public synchronized int getThrottledCount() {
+        int count = 0;
+        for (Account account : ACCOUNTS.values()) {
+            if (account.level > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 当前状态（预算、开销、各账户的开销和限流级别）
+     */
+    public synchronized Map<String, Object> getState() {
+        Map<String, Object> state = new HashMap<>();
+        state.put("budget", budget);
+        state.put("overhead", overhead);
+        state.put("windowMillis", windowMillis);
+        state.put("windowAllocBytes", windowAllocBytes);
+        state.put("adjustments", adjustments);
+        state.put("reducedFidelity", !throttled.isEmpty());
+
+        List<Map<String, Object>> accounts = new ArrayList<>();
+        for (Account account : ACCOUNTS.values()) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("name", account.name);
+            entry.put("cpuNanos", account.getCpuNanos());
+            entry.put("allocBytes", account.getAllocBytes());
+            entry.put("calls", account.getCalls());
+            entry.put("skipped", account.getSkipped());
+            entry.put("windowCpuNanos", account.windowCpuNanos);
+            entry.put("windowAllocBytes", account.windowAllocBytes);
+            entry.put("throttleable", account.isThrottleable());
+            entry.put("level", account.level);
+            entry.put("intervalMultiplier", account.getIntervalMultiplier());
+            entry.put("enabled", account.level < MAX_LEVEL);
+            accounts.add(entry);
+        }
+        accounts.sort((a, b) -> Long.compare((Long) b.get("windowCpuNanos"), (Long) a.get("windowCpuNanos")));
+        state.put("accounts", accounts);
+        return state;
+    }
+
+    // ========== 静态工厂方法 ==========
+
+    private static volatile OverheadGovernor instance;
+
+    public static synchronized OverheadGovernor start(AgentConfig config) {
+        if (instance == null && config.getOverheadBudget() > 0) {
+            instance = new OverheadGovernor(config.getOverheadBudget(), config.getOverheadWindow() * 1000L);
+            instance.startGoverning();
+            System.out.println(String.format("[OverheadGovernor] Started, budget: %.3f%% of one core, window: %ds",
+                    config.getOverheadBudget() * 100, config.getOverheadWindow()));
+        }
+        return instance;
+    }
+
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.stopGoverning();
+            instance = null;
+            System.out.println("[OverheadGovernor] Stopped");
+        }
+    }
+
+    public static OverheadGovernor getInstance() {
+        return instance;
+    }
+}
@@ -0,0 +1,497 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带连接池的 HTTP/1.1 传输（transport=pooled）
+ *
+ * 直接在 Socket 上收发 HTTP/1.1，持久连接在请求之间保留在池中，上报只在首次和连接被关闭后建连（含 TLS 握手）：
+ * <ul>
+ *   <li>空闲超过 transport.idle.timeout（或 Server 在 Keep-Alive 头中声明的更短时间）的连接不再复用，
+ *       默认值低于 Tomcat 默认的 60 秒 keep-alive 超时，避免复用已被 Server 关闭的连接</li>
+ *   <li>复用的连接在收到任何响应字节前被对端关闭或重置（Server 恰好关闭了空闲连接），立即换新连接重发一次，不计入重试；
+ *       读超时不在此列（Server 可能已处理了请求），交给调用方按重试策略处理</li>
+ *   <li>响应按 Content-Length 或 chunked 读完，Server 要求关闭（Connection: close）或无法确定长度时不放回池中</li>
+ * </ul>
+ * 不支持代理和重定向，需要时使用 transport=url。线程安全，每个请求独占一条连接。
+ */
+public class PooledHttpTransport extends HttpTransport {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final int MAX_LINE_BYTES = 8192;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final boolean tls;
+    private final String host;
+    private final int port;
+    private final String basePath;
+    private final String hostHeader;
+    private final long idleTimeoutNanos;
+
+    // 最近放回的连接在队首，优先复用
+    private final ArrayDeque<Connection> idle = new ArrayDeque<>();
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+    private volatile boolean closed;
+
+    public PooledHttpTransport(AgentConfig config) {
+        super(config);
+        URI uri = URI.create(serverUrl);
+        String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase();
+        if (!"http".equals(scheme) && !"https".equals(scheme)) {
+            throw new IllegalArgumentException("Unsupported server url: " + serverUrl);
+        }
+        this.tls = "https".equals(scheme);
+        this.host = uri.getHost();
+        int defaultPort = tls ? 443 : 80;
+        this.port = uri.getPort() > 0 ? uri.getPort() : defaultPort;
+        String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+        this.basePath = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        this.hostHeader = port == defaultPort ? host : host + ":" + port;
+        this.idleTimeoutNanos = Math.max(0, config.getTransportIdleTimeout()) * 1_000_000_000L;
+    }
+
+    /**
+     * 累计建立的连接数（即 TCP / TLS 握手次数）
+     */
+    public long getConnects() {
+        return connects.get();
+    }
+
+    /**
+     * 累计复用池中连接的请求数
+     */
+    public long getReuses() {
+        return reuses.get();
+    }
+
+    @Override
+    protected Response exchange(String method, String path, String contentType, String encoding,
+                                byte[] body, int length) throws IOException {
+        Connection conn = acquire();
+        if (conn != null) {
+            try {
+                return execute(conn, method, path, contentType, encoding, body, length);
+            } catch (IOException e) {
+                if (conn.responseStarted || !isStaleConnection(e)) {
+                    throw e;
+                }
+                // 空闲连接已被 Server 关闭，换新连接立即重发
+            }
+        }
+        return execute(connect(), method, path, contentType, encoding, body, length);
+    }
+
+    /**
+     * 是否为空闲连接已被对端关闭的特征（EOF、连接重置、断开的管道），此时 Server 不会处理过该请求
+     */
+    private static boolean isStaleConnection(IOException e) {
+        return e instanceof EOFException || e instanceof SocketException;
+    }
+
+    private Response execute(Connection conn, String method, String path, String contentType, String encoding,
+                             byte[] body, int length) throws IOException {
+        try {
+            Response response = conn.execute(method, basePath + path, hostHeader, contentType, encoding, body, length);
+            release(conn);
+            return response;
+        } catch (IOException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 取一条未过期的空闲连接
+     */
+    private Connection acquire() {
+        long now = System.nanoTime();
+        synchronized (idle) {
+            Connection conn;
+            while ((conn = idle.pollFirst()) != null) {
+                if (now - conn.lastUsedNanos < Math.min(idleTimeoutNanos, conn.keepAliveNanos)) {
+                    reuses.incrementAndGet();
+                    return conn;
+                }
+                conn.close();
+            }
+        }
+        return null;
+    }
+
+    private void release(Connection conn) {
+        if (!conn.keepAlive || closed || idleTimeoutNanos == 0) {
+            conn.close();
+            return;
+        }
+        conn.lastUsedNanos = System.nanoTime();
+        Connection evicted = null;
+        synchronized (idle) {
+            idle.addFirst(conn);
+            if (idle.size() > MAX_IDLE_CONNECTIONS) {
+                evicted = idle.pollLast();
+            }
+        }
+        if (evicted != null) {
+            evicted.close();
+        }
+    }
+
+    private Connection connect() throws IOException {
+        if (closed) {
+            throw new IOException("Transport closed");
+        }
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            if (tls) {
+                SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                        .createSocket(socket, host, port, true);
+                SSLParameters parameters = ssl.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                ssl.setSSLParameters(parameters);
+                ssl.startHandshake();
+                socket = ssl;
+            }
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // 忽略
+            }
+            throw e;
+        }
+        connects.incrementAndGet();
+        AgentTelemetry.getShared().recordConnect();
+        return new Connection(socket);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (idle) {
+            for (Connection conn : idle) {
+                conn.close();
+            }
+            idle.clear();
+        }
+        super.close();
+    }
+
+    /**
+     * 一条持久连接
+     */
+    private static final class Connection {
+
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final StringBuilder header = new StringBuilder(256);
+        private byte[] line = new byte[256];
+        private int lineLength;
+        // 当前响应的 Content-Length（-1 表示未声明）和是否 chunked
+        private long contentLength;
+        private boolean chunked;
+
+        long lastUsedNanos;
+        long keepAliveNanos = Long.MAX_VALUE;
+        boolean keepAlive;
+        boolean responseStarted;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+        }
+
+        Response execute(String method, String target, String host, String contentType, String encoding,
+                         byte[] body, int length) throws IOException {
+            responseStarted = false;
+            keepAlive = false;
+            header.setLength(0);
+            header.append(method).append(' ').append(target).append(" HTTP/1.1\r\n")
+                    .append("Host: ").append(host).append("\r\n")
+                    .append("User-Agent: jvm-doctor-agent\r\n")
+                    .append("Content-Type: ").append(contentType).append("\r\n")
+                    .append("Content-Length: ").append(length).append("\r\n")
+                    .append(CLOCK_HEADER).append(": ").append(System.currentTimeMillis()).append("\r\n");
+            if (encoding != null) {
+                header.append("Content-Encoding: ").append(encoding).append("\r\n");
+            }
+            header.append("\r\n");
+            for (int i = 0; i < header.length(); i++) {
+                out.write(header.charAt(i));
+            }
+            out.write(body, 0, length);
+            out.flush();
+            return readResponse(method);
+        }
+
+        private Response readResponse(String method) throws IOException {
+            int status;
+            boolean http11;
+            do {
+                if (!readLine()) {
+                    throw new EOFException("Connection closed by server");
+                }
+                responseStarted = true;
+                // HTTP/1.1 200 OK
+                if (lineLength < 12 || !lineStartsWith("HTTP/1.")) {
+                    throw new IOException("Malformed status line");
+                }
+                http11 = line[7] == '1';
+                status = (int) parseInt(9, 12, 10);
+                if (status < 100) {
+                    throw new IOException("Malformed status line");
+                }
+                keepAlive = http11;
+                readHeaders();
+            } while (status >= 100 && status < 200);
+
+            byte[] body;
+            if ("HEAD".equals(method) || status == 204 || status == 304) {
+                body = EMPTY;
+            } else if (chunked) {
+                body = readChunked();
+            } else if (contentLength >= 0) {
+                body = readFixed(contentLength);
+            } else {
+                // 无长度：读到连接关闭
+                body = readToEnd();
+                keepAlive = false;
+            }
+            return new AgentTransport.Response(status, body);
+        }
+
+        private void readHeaders() throws IOException {
+            contentLength = -1;
+            chunked = false;
+            while (true) {
+                if (!readLine()) {
+                    throw new EOFException("Connection closed in headers");
+                }
+                if (lineLength == 0) {
+                    return;
+                }
+                if (headerIs("Content-Length")) {
+                    contentLength = parseInt(valueStart(), lineLength, 10);
+                } else if (headerIs("Transfer-Encoding")) {
+                    chunked = valueContains("chunked");
+                } else if (headerIs("Connection")) {
+                    if (valueContains("close")) {
+                        keepAlive = false;
+                    } else if (valueContains("keep-alive")) {
+                        keepAlive = true;
+                    }
+                } else if (headerIs("Keep-Alive")) {
+                    // Keep-Alive: timeout=5, max=100
+                    int timeout = indexOf("timeout=", valueStart());
+                    if (timeout >= 0) {
+                        long seconds = parseInt(timeout + 8, lineLength, 10);
+                        if (seconds > 0) {
+                            keepAliveNanos = seconds * 1_000_000_000L;
+                        }
+                    }
+                }
+            }
+        }
+
+        private byte[] readFixed(long length) throws IOException {
+            if (length > Integer.MAX_VALUE - 8) {
+                throw new IOException("Response too large: " + length);
+            }
+            byte[] body = new byte[(int) length];
+            int read = 0;
+            while (read < body.length) {
+                int n = in.read(body, read, body.length - read);
+                if (n < 0) {
+                    throw new EOFException("Connection closed in body");
+                }
+                read += n;
+            }
+            return body;
+        }
+
+        private byte[] readChunked() throws IOException {
+            byte[] body = EMPTY;
+            int size = 0;
+            while (true) {
+                if (!readLine()) {
+                    throw new EOFException("Connection closed in chunk");
+                }
+                int end = indexOf(";", 0);
+                long chunk = parseInt(0, end < 0 ? lineLength : end, 16);
+                if (chunk < 0) {
+                    throw new IOException("Malformed chunk size");
+                }
+                if (chunk == 0) {
+                    // 跳过 trailer
+                    while (readLine() && lineLength > 0) {
+                        // 忽略
+                    }
+                    return size == body.length ? body : Arrays.copyOf(body, size);
+                }
+                byte[] data = readFixed(chunk);
+                if (size + data.length > body.length) {
+                    body = Arrays.copyOf(body, Math.max(body.length * 2, size + data.length));
+                }
+                System.arraycopy(data, 0, body, size, data.length);
+                size += data.length;
+                readLine();
+            }
+        }
+
+        private byte[] readToEnd() throws IOException {
+            byte[] body = new byte[1024];
+            int size = 0;
+            int n;
+            while ((n = in.read(body, size, body.length - size)) >= 0) {
+                size += n;
+                if (size == body.length) {
+                    body = Arrays.copyOf(body, body.length * 2);
+                }
+            }
+            return Arrays.copyOf(body, size);
+        }
+
+        /**
+         * 读一行（去掉 CRLF）
+         *
+         * @return 连接在行首就已关闭时返回 false
+         */
+        private boolean readLine() throws IOException {
+            lineLength = 0;
+            int b;
+            boolean any = false;
+            while ((b = in.read()) >= 0) {
+                any = true;
+                if (b == '\n') {
+                    if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                        lineLength--;
+                    }
+                    return true;
+                }
+                if (lineLength == line.length) {
+                    if (line.length >= MAX_LINE_BYTES) {
+                        throw new IOException("Response line too long");
+                    }
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[lineLength++] = (byte) b;
+            }
+            if (any) {
+                throw new EOFException("Connection closed in line");
+            }
+            return false;
+        }
+
+        private boolean lineStartsWith(String prefix) {
+            if (lineLength < prefix.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (line[i] != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean headerIs(String name) {
+            if (lineLength <= name.length() || line[name.length()] != ':') {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (Character.toLowerCase(line[i]) != Character.toLowerCase(name.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int valueStart() {
+            int p = 0;
+            while (p < lineLength && line[p] != ':') {
+                p++;
+            }
+            p++;
+            while (p < lineLength && (line[p] == ' ' || line[p] == '\t')) {
+                p++;
+            }
+            return p;
+        }
+
+        private boolean valueContains(String token) {
+            return indexOf(token, valueStart()) >= 0;
+        }
+
+        /**
+         * 在当前行中查找（ASCII 不区分大小写）
+         */
+        private int indexOf(String target, int from) {
+            for (int i = from; i + target.length() <= lineLength; i++) {
+                int j = 0;
+                while (j < target.length()
+                        && Character.toLowerCase(line[i + j]) == Character.toLowerCase(target.charAt(j))) {
+                    j++;
+                }
+                if (j == target.length()) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * 解析非负整数，遇到非数字字符结束
+         *
+         * @return 没有数字时返回 -1
+         */
+        private long parseInt(int start, int end, int radix) {
+            long value = 0;
+            int p = start;
+            while (p < end && (line[p] == ' ' || line[p] == '\t')) {
+                p++;
+            }
+            int digitsStart = p;
+            while (p < end) {
+                int digit = Character.digit(line[p], radix);
+                if (digit < 0) {
+                    break;
+                }
+                value = value * radix + digit;
+                p++;
+            }
+            return p == digitsStart ? -1 : value;
+        }
+
+        void close() {
+            keepAlive = false;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // 忽略
+            }
+        }
+    }
+}
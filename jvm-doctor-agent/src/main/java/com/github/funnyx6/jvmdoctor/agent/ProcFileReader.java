@@ -0,0 +1,338 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * /proc 和 cgroup 文件的读取器
+ *
+ * 支持三种格式：
+ * <ul>
+ *   <li>{@link #read}："键: 数值 [kB]" 或 "键 数值" 的多行文件（/proc/self/status、smaps、smaps_rollup、cgroup 的 cpu.stat 等）</li>
+ *   <li>{@link #readValues}：单行的若干数值（cpu.max、cpu.cfs_quota_us、memory.max 等），max 读作 {@link Long#MAX_VALUE}</li>
+ *   <li>{@link #readPressure}：PSI 压力文件（cpu.pressure、memory.pressure）</li>
+ *   <li>{@link #readStatFields}：/proc/&lt;pid&gt;/stat 格式的单行文件（按字段序号读取）</li>
+ * </ul>
+ * 文件按块读入复用的直接缓冲区，逐字节扫描，按字节比较键名，不构造行字符串、不使用正则。
+ * 同一个键出现多次时累加（smaps 中每个映射各有一组键），kB 单位换算为字节。
+ * 多行文件按流式处理，缓冲区大小与文件大小无关；超过缓冲区的单行被丢弃。非线程安全。
+ */
+public class ProcFileReader {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final byte[][] keys;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * @param keys {@link #read} 要读取的键（冒号或空白前的部分，区分大小写）
+     */
+    public ProcFileReader(String... keys) {
+        this.keys = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            this.keys[i] = keys[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * 读取文件中各键的值
+     *
+     * @param path 文件路径
+     * @param values 与构造时的键一一对应，输出字节数（未出现的键为 -1）
+     * @throws IOException 文件不存在或不可读
+     */
+    public void read(Path path, long[] values) throws IOException {
+        Arrays.fill(values, 0, keys.length, -1L);
+        // 经 Buffer 调用：JDK 9+ 编译出的 ByteBuffer 协变返回签名在 Java 8 上不存在
+        ((Buffer) buffer).clear();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (true) {
+                int n = channel.read(buffer);
+                ((Buffer) buffer).flip();
+                parseLines(values, n < 0);
+                if (n < 0) {
+                    break;
+                }
+                buffer.compact();
+                if (!buffer.hasRemaining()) {
+                    // 单行超过缓冲区：丢弃
+                    ((Buffer) buffer).clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析缓冲区中的完整行，剩余的不完整行留在缓冲区（末尾时也按一行解析）
+     */
+    private void parseLines(long[] values, boolean eof) {
+        int limit = buffer.limit();
+        int lineStart = buffer.position();
+        for (int i = lineStart; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                parseLine(lineStart, i, values);
+                lineStart = i + 1;
+            }
+        }
+        if (eof && lineStart < limit) {
+            parseLine(lineStart, limit, values);
+            lineStart = limit;
+        }
+        ((Buffer) buffer).position(lineStart);
+    }
+
+    private void parseLine(int start, int end, long[] values) {
+        int keyEnd = start;
+        while (keyEnd < end && buffer.get(keyEnd) != ':' && !isSpace(buffer.get(keyEnd))) {
+            keyEnd++;
+        }
+        if (keyEnd == end) {
+            return;
+        }
+        int key = matchKey(start, keyEnd);
+        if (key < 0) {
+            return;
+        }
+        int p = keyEnd;
+        if (buffer.get(p) == ':') {
+            p++;
+        }
+        p = skipSpaces(p, end);
+        int digitsStart = p;
+        long value = 0;
+        while (p < end && buffer.get(p) >= '0' && buffer.get(p) <= '9') {
+            value = value * 10 + (buffer.get(p) - '0');
+            p++;
+        }
+        if (p == digitsStart) {
+            return;
+        }
+        p = skipSpaces(p, end);
+        if (p < end && (buffer.get(p) == 'k' || buffer.get(p) == 'K')) {
+            value *= 1024;
+        }
+        values[key] = Math.max(values[key], 0) + value;
+    }
+
+    /**
+     * 读取单行文件中以空白分隔的数值（max 读作 {@link Long#MAX_VALUE}，支持负数）
+     *
+     * @param values 输出，最多读取 values.length 个
+     * @return 读取到的数值个数，遇到非数值时停止
+     * @throws IOException 文件不存在或不可读
+     */
+    public int readValues(Path path, long[] values) throws IOException {
+        int end = load(path);
+        int count = 0;
+        int p = skipSpaces(0, end);
+        while (p < end && count < values.length && buffer.get(p) != '\n') {
+            int tokenEnd = p;
+            while (tokenEnd < end && !isSpace(buffer.get(tokenEnd)) && buffer.get(tokenEnd) != '\n') {
+                tokenEnd++;
+            }
+            if (tokenEnd - p == 3 && buffer.get(p) == 'm' && buffer.get(p + 1) == 'a' && buffer.get(p + 2) == 'x') {
+                values[count++] = Long.MAX_VALUE;
+            } else {
+                boolean negative = buffer.get(p) == '-';
+                int q = negative ? p + 1 : p;
+                if (q == tokenEnd) {
+                    break;
+                }
+                long value = 0;
+                for (; q < tokenEnd; q++) {
+                    byte b = buffer.get(q);
+                    if (b < '0' || b > '9') {
+                        return count;
+                    }
+                    value = value * 10 + (b - '0');
+                }
+                values[count++] = negative ? -value : value;
+            }
+            p = skipSpaces(tokenEnd, end);
+        }
+        return count;
+    }
+
+    /**
+     * 读取 PSI 压力文件
+     * <pre>
+     * some avg10=0.12 avg60=0.05 avg300=0.00 total=123456
+     * full avg10=0.00 avg60=0.00 avg300=0.00 total=0
+     * </pre>
+     *
+     * @param values 输出 8 个值：some 的 avg10、avg60、avg300（百分比）和 total（微秒），再是 full 的同样 4 个；
+     *               未出现的行（如 cpu.pressure 在旧内核上没有 full）为 -1
+     * @throws IOException 文件不存在或不可读
+     */
+    public void readPressure(Path path, double[] values) throws IOException {
+        Arrays.fill(values, 0, 8, -1.0);
+        int end = load(path);
+        int lineStart = 0;
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int base = -1;
+            if (startsWith(lineStart, lineEnd, "some ")) {
+                base = 0;
+            } else if (startsWith(lineStart, lineEnd, "full ")) {
+                base = 4;
+            }
+            if (base >= 0) {
+                int p = lineStart + 5;
+                while (p < lineEnd) {
+                    p = skipSpaces(p, lineEnd);
+                    int eq = p;
+                    while (eq < lineEnd && buffer.get(eq) != '=' && !isSpace(buffer.get(eq))) {
+                        eq++;
+                    }
+                    if (eq >= lineEnd || buffer.get(eq) != '=') {
+                        break;
+                    }
+                    int field = startsWith(p, eq, "avg10") ? 0 : startsWith(p, eq, "avg60") ? 1
+                            : startsWith(p, eq, "avg300") ? 2 : startsWith(p, eq, "total") ? 3 : -1;
+                    int valueEnd = eq + 1;
+                    while (valueEnd < lineEnd && !isSpace(buffer.get(valueEnd))) {
+                        valueEnd++;
+                    }
+                    if (field >= 0) {
+                        values[base + field] = parseDecimal(eq + 1, valueEnd);
+                    }
+                    p = valueEnd;
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    /**
+     * 读取 /proc/&lt;pid&gt;/stat 或 /proc/&lt;pid&gt;/task/&lt;tid&gt;/stat 中的数值字段
+     *
+     * 第 2 个字段是括号中的线程名，可能含空格和括号，因此从最后一个 ')' 之后开始数，其后第一个字段（状态）为第 3 个字段。
+     *
+     * @param firstField 第一个要读取的字段序号（从 1 开始，与 proc(5) 一致，不小于 4），如 utime 为 14
+     * @param values 输出连续的 values.length 个字段，缺少的为 -1
+     * @throws IOException 文件不存在或不可读
+     */
+    public void readStatFields(Path path, int firstField, long[] values) throws IOException {
+        Arrays.fill(values, -1L);
+        int end = load(path);
+        int p = end - 1;
+        while (p >= 0 && buffer.get(p) != ')') {
+            p--;
+        }
+        if (p < 0) {
+            return;
+        }
+        int field = 2;
+        p++;
+        while (p < end) {
+            p = skipSpaces(p, end);
+            if (p >= end || buffer.get(p) == '\n') {
+                return;
+            }
+            field++;
+            int tokenEnd = p;
+            while (tokenEnd < end && !isSpace(buffer.get(tokenEnd)) && buffer.get(tokenEnd) != '\n') {
+                tokenEnd++;
+            }
+            int index = field - firstField;
+            if (index >= values.length) {
+                return;
+            }
+            if (index >= 0) {
+                long value = 0;
+                int q = p;
+                for (; q < tokenEnd && buffer.get(q) >= '0' && buffer.get(q) <= '9'; q++) {
+                    value = value * 10 + (buffer.get(q) - '0');
+                }
+                values[index] = q > p ? value : -1;
+            }
+            p = tokenEnd;
+        }
+    }
+
+    /**
+     * 读入整个小文件（不超过缓冲区大小），返回字节数
+     */
+    private int load(Path path) throws IOException {
+        ((Buffer) buffer).clear();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // 读满或读到末尾为止
+            }
+        }
+        return buffer.position();
+    }
+
+    private double parseDecimal(int start, int end) {
+        long integer = 0;
+        long fraction = 0;
+        long scale = 1;
+        boolean afterPoint = false;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '.') {
+                afterPoint = true;
+            } else if (b >= '0' && b <= '9') {
+                if (afterPoint) {
+                    fraction = fraction * 10 + (b - '0');
+                    scale *= 10;
+                } else {
+                    integer = integer * 10 + (b - '0');
+                }
+            } else {
+                break;
+            }
+        }
+        return integer + (double) fraction / scale;
+    }
+
+    private boolean startsWith(int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer.get(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipSpaces(int p, int end) {
+        while (p < end && isSpace(buffer.get(p))) {
+            p++;
+        }
+        return p;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private int matchKey(int start, int end) {
+        int length = end - start;
+        for (int k = 0; k < keys.length; k++) {
+            byte[] key = keys[k];
+            if (key.length != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && buffer.get(start + i) == key[i]) {
+                i++;
+            }
+            if (i == length) {
+                return k;
+            }
+        }
+        return -1;
+    }
+}
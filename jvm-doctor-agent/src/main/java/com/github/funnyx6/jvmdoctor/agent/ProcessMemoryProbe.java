@@ -0,0 +1,144 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 进程内存占用探针（Linux）
+ *
+ * 读取 /proc/self/status 和 /proc/self/smaps_rollup（内核 4.14 以下退化为逐映射累加 /proc/self/smaps），
+ * 与 JVM 自身的内存统计并列输出，用于解释 RSS 与堆 + 非堆之间的差距：
+ * <ul>
+ *   <li>process.rss / process.rss.peak：常驻内存 / 峰值（VmRSS / VmHWM）</li>
+ *   <li>process.rss.anon / .file / .shmem：匿名页 / 文件映射 / 共享内存部分</li>
+ *   <li>process.pss：按共享进程数分摊后的常驻内存</li>
+ *   <li>process.swap：被换出的内存</li>
+ *   <li>process.hugepages.anon / .hugetlb：透明大页 / hugetlbfs 大页</li>
+ *   <li>process.jvm.committed：堆提交 + 非堆提交 + 直接缓冲区，即 JVM 自己统计到的内存
+ *       （MappedByteBuffer 映射的文件页计入 process.rss.file，不在其中）</li>
+ *   <li>process.native.unaccounted：RSS 减去 JVM 统计到的内存，即线程栈、malloc、JNI 库等未纳入统计的本地内存；
+ *       已提交但未被访问的堆不占 RSS，因此该值可能为负</li>
+ * </ul>
+ * 文件读入复用的直接缓冲区按字节解析，每次采集只有打开文件的开销。非 Linux 系统不注册该探针。
+ */
+public class ProcessMemoryProbe implements MetricsProbe {
+
+    private static final Path STATUS = Paths.get("/proc/self/status");
+    private static final Path SMAPS_ROLLUP = Paths.get("/proc/self/smaps_rollup");
+    private static final Path SMAPS = Paths.get("/proc/self/smaps");
+
+    // /proc/self/status 中的键
+    private static final int VM_RSS = 0;
+    private static final int VM_HWM = 1;
+    private static final int RSS_ANON = 2;
+    private static final int RSS_FILE = 3;
+    private static final int RSS_SHMEM = 4;
+    private static final int VM_SWAP = 5;
+
+    // smaps / smaps_rollup 中的键
+    private static final int PSS = 0;
+    private static final int SWAP = 1;
+    private static final int ANON_HUGE = 2;
+    private static final int SHARED_HUGETLB = 3;
+    private static final int PRIVATE_HUGETLB = 4;
+
+    private final ProcFileReader statusReader =
+            new ProcFileReader("VmRSS", "VmHWM", "RssAnon", "RssFile", "RssShmem", "VmSwap");
+    private final ProcFileReader smapsReader =
+            new ProcFileReader("Pss", "Swap", "AnonHugePages", "Shared_Hugetlb", "Private_Hugetlb");
+    private final long[] status = new long[6];
+    private final long[] smaps = new long[5];
+    private final Path smapsPath;
+    private final BufferPoolMXBean directPool;
+
+    private final int heapCommittedId;
+    private final int nonHeapCommittedId;
+    private final int rssId;
+    private final int rssPeakId;
+    private final int rssAnonId;
+    private final int rssFileId;
+    private final int rssShmemId;
+    private final int pssId;
+    private final int swapId;
+    private final int hugeAnonId;
+    private final int hugetlbId;
+    private final int jvmCommittedId;
+    private final int unaccountedId;
+
+    public ProcessMemoryProbe(MetricRegistry registry) {
+        this.smapsPath = Files.isReadable(SMAPS_ROLLUP) ? SMAPS_ROLLUP : SMAPS;
+        this.directPool = findDirectPool();
+        // 内置指标，采集探针前已由 MetricsCollector 写入快照
+        this.heapCommittedId = registry.registerLong("heap.committed");
+        this.nonHeapCommittedId = registry.registerLong("nonheap.committed");
+        this.rssId = registry.registerLong("process.rss");
+        this.rssPeakId = registry.registerLong("process.rss.peak");
+        this.rssAnonId = registry.registerLong("process.rss.anon");
+        this.rssFileId = registry.registerLong("process.rss.file");
+        this.rssShmemId = registry.registerLong("process.rss.shmem");
+        this.pssId = registry.registerLong("process.pss");
+        this.swapId = registry.registerLong("process.swap");
+        this.hugeAnonId = registry.registerLong("process.hugepages.anon");
+        this.hugetlbId = registry.registerLong("process.hugepages.hugetlb");
+        this.jvmCommittedId = registry.registerLong("process.jvm.committed");
+        this.unaccountedId = registry.registerLong("process.native.unaccounted");
+    }
+
+    /**
+     * 当前系统是否提供 /proc/self/status
+     */
+    public static boolean isSupported() {
+        return Files.isReadable(STATUS);
+    }
+
+    @Override
+    public void collect(MetricsSnapshot snapshot) {
+        try {
+            statusReader.read(STATUS, status);
+            smapsReader.read(smapsPath, smaps);
+        } catch (Exception e) {
+            return;
+        }
+        setIfPresent(snapshot, rssId, status[VM_RSS]);
+        setIfPresent(snapshot, rssPeakId, status[VM_HWM]);
+        setIfPresent(snapshot, rssAnonId, status[RSS_ANON]);
+        setIfPresent(snapshot, rssFileId, status[RSS_FILE]);
+        setIfPresent(snapshot, rssShmemId, status[RSS_SHMEM]);
+        setIfPresent(snapshot, pssId, smaps[PSS]);
+        setIfPresent(snapshot, swapId, smaps[SWAP] >= 0 ? smaps[SWAP] : status[VM_SWAP]);
+        setIfPresent(snapshot, hugeAnonId, smaps[ANON_HUGE]);
+        if (smaps[SHARED_HUGETLB] >= 0 || smaps[PRIVATE_HUGETLB] >= 0) {
+            snapshot.setLong(hugetlbId, Math.max(smaps[SHARED_HUGETLB], 0) + Math.max(smaps[PRIVATE_HUGETLB], 0));
+        }
+
+        if (!snapshot.isPresent(heapCommittedId) || !snapshot.isPresent(nonHeapCommittedId)) {
+            return;
+        }
+        long jvmCommitted = snapshot.getLong(heapCommittedId) + snapshot.getLong(nonHeapCommittedId);
+        if (directPool != null) {
+            jvmCommitted += Math.max(directPool.getMemoryUsed(), 0);
+        }
+        snapshot.setLong(jvmCommittedId, jvmCommitted);
+        if (status[VM_RSS] >= 0) {
+            snapshot.setLong(unaccountedId, status[VM_RSS] - jvmCommitted);
+        }
+    }
+
+    private static BufferPoolMXBean findDirectPool() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool;
+            }
+        }
+        return null;
+    }
+
+    private static void setIfPresent(MetricsSnapshot snapshot, int id, long value) {
+        if (value >= 0) {
+            snapshot.setLong(id, value);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 采样剖析 HTTP Handler
+ * 
+ * GET /api/profiler?mode=cpu&seconds=10[&interval=20][&format=json]
+ * 阻塞指定时长后返回折叠堆栈（text/plain，可直接输入 flamegraph.pl），
+ * format=json 时返回统计信息和折叠堆栈。
+ */
+public class ProfilerHandler extends ApiHandler {
+    
+    private static final int DEFAULT_SECONDS = 10;
+    
+    private final SamplingProfiler profiler;
+    
+    public ProfilerHandler(SamplingProfiler profiler) {
+        this.profiler = profiler;
+    }
+    
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        
+        SamplingProfiler.Mode mode;
+        String modeParam = queryParam(query, "mode");
+        if (modeParam == null || modeParam.equalsIgnoreCase("cpu")) {
+            mode = SamplingProfiler.Mode.CPU;
+        } else if (modeParam.equalsIgnoreCase("wall")) {
+            mode = SamplingProfiler.Mode.WALL;
+        } else {
+            send(exchange, 400, "{\"error\":\"Unknown mode, expected cpu or wall\"}");
+            return;
+        }
+        
+        long durationMillis = parseDurationMillis(queryParam(query, "seconds"), DEFAULT_SECONDS * 1000L);
+        if (durationMillis <= 0) {
+            send(exchange, 400, "{\"error\":\"Invalid duration\"}");
+            return;
+        }
+        int interval = intParam(query, "interval", 0);
+        
+        SamplingProfiler.Result result;
+        try {
+            result = profiler.profile(mode, durationMillis, interval);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 500, "{\"error\":\"Interrupted\"}");
+            return;
+        }
+        if (result == null) {
+            send(exchange, 409, "{\"error\":\"Profiler already running\"}");
+            return;
+        }
+        
+        if ("json".equals(queryParam(query, "format"))) {
+            Map<String, Object> body = new HashMap<>();
+            body.put("mode", result.getMode().name().toLowerCase());
+            body.put("durationMillis", result.getDurationMillis());
+            body.put("intervalMillis", result.getIntervalMillis());
+            body.put("requestedIntervalMillis", result.getRequestedIntervalMillis());
+            body.put("ticks", result.getTicks());
+            body.put("backoffs", result.getBackoffs());
+            body.put("samples", result.getSamples());
+            body.put("truncatedSamples", result.getTruncatedSamples());
+            body.put("nodes", result.getNodes());
+            body.put("frames", result.getFrames());
+            body.put("overhead", result.getOverhead());
+            body.put("collapsed", result.getCollapsed());
+            send(exchange, 200, toJson(body));
+        } else {
+            exchange.getResponseHeaders().add("X-Profiler-Samples", String.valueOf(result.getSamples()));
+            exchange.getResponseHeaders().add("X-Profiler-Interval", String.valueOf(result.getIntervalMillis()));
+            send(exchange, 200, "text/plain; charset=utf-8", result.getCollapsed());
+        }
+    }
+}
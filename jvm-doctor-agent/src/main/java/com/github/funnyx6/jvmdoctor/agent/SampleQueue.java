@@ -0,0 +1,121 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 采集线程与发送线程之间的有界无锁队列（单生产者、单消费者）
+ *
+ * 每个槽位预分配一个 {@link MetricsSnapshot}，入队和出队都复制内容，稳态下不分配对象。
+ * 槽位状态按位置编号记录（Vyukov 有界队列）：等于位置表示可写，等于位置 + 1 表示已写入待取。
+ * 溢出策略为丢弃最旧的样本：队列满时采集线程与发送线程竞争队首，抢到后直接释放该槽位，
+ * 采集线程从不等待发送线程。极少数情况下发送线程正在复制最旧的槽位，此时丢弃新样本。
+ * 两种丢弃都计入 {@link #getDropped()}。
+ */
+public class SampleQueue {
+
+    private final int capacity;
+    private final MetricsSnapshot[] snapshots;
+    private final long[] sequences;
+    private final Object[] extras;
+    private final AtomicLongArray states;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // 只由采集线程写入
+    private volatile long tail;
+
+    public SampleQueue(MetricRegistry registry, int capacity) {
+        this.capacity = Math.max(2, capacity);
+        this.snapshots = new MetricsSnapshot[this.capacity];
+        this.sequences = new long[this.capacity];
+        this.extras = new Object[this.capacity];
+        this.states = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            snapshots[i] = new MetricsSnapshot(registry);
+            states.set(i, i);
+        }
+    }
+
+    /**
+     * 入队一个样本（复制快照内容），仅限采集线程调用，不阻塞
+     *
+     * @param seq 上报序号
+     * @param snapshot 采集结果
+     * @param extra 额外指标（如自定义采集器），可为 null；直接持有引用
+     * @return 样本是否入队（false 表示丢弃了新样本）
+     */
+    public boolean offer(long seq, MetricsSnapshot snapshot, Map<String, Object> extra) {
+        long position = tail;
+        int slot = slot(position);
+        if (states.get(slot) != position) {
+            // 已满：抢占并丢弃最旧的样本
+            long oldest = head.get();
+            if (position - oldest >= capacity && head.compareAndSet(oldest, oldest + 1)) {
+                extras[slot(oldest)] = null;
+                states.set(slot(oldest), oldest + capacity);
+                dropped.incrementAndGet();
+            }
+            if (states.get(slot) != position) {
+                // 最旧的样本正被发送线程复制
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+        snapshots[slot].copyFrom(snapshot);
+        sequences[slot] = seq;
+        extras[slot] = extra;
+        states.set(slot, position + 1);
+        tail = position + 1;
+        return true;
+    }
+
+    /**
+     * 把已入队的样本按顺序移入发送线程的缓冲区，仅限发送线程调用
+     *
+     * @return 移入的样本数
+     */
+    public int drainTo(SampleRing ring) {
+        int drained = 0;
+        while (true) {
+            long position = head.get();
+            int slot = slot(position);
+            long state = states.get(slot);
+            if (state < position + 1) {
+                return drained;
+            }
+            if (state == position + 1 && head.compareAndSet(position, position + 1)) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> extra = (Map<String, Object>) extras[slot];
+                ring.add(sequences[slot], snapshots[slot], extra);
+                extras[slot] = null;
+                states.set(slot, position + capacity);
+                drained++;
+            }
+            // 否则队首刚被采集线程丢弃，重读
+        }
+    }
+
+    /**
+     * 当前排队的样本数（近似值，可由任意线程读取）
+     */
+    public int size() {
+        long size = tail - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 累计因队列已满而丢弃的样本数
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private int slot(long position) {
+        return (int) (position % capacity);
+    }
+}
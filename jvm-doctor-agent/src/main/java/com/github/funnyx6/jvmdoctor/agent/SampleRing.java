@@ -0,0 +1,103 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.util.Map;
+
+/**
+ * 待发送样本的环形缓冲区
+ *
+ * 每个槽位预分配一个 {@link MetricsSnapshot}，加入样本时复制内容，稳态下不分配对象。
+ * 满后覆盖最旧的样本并计入 {@link #getDropped()}。只允许一个线程修改，{@link #size()} 和
+ * {@link #getDropped()} 可由其他线程读取（用于自监控指标）。
+ */
+public class SampleRing {
+
+    private final MetricsSnapshot[] snapshots;
+    private final long[] sequences;
+    private final Object[] extras;
+    private int head;
+    private volatile int size;
+    private volatile long dropped;
+
+    public SampleRing(MetricRegistry registry, int capacity) {
+        int slots = Math.max(1, capacity);
+        this.snapshots = new MetricsSnapshot[slots];
+        this.sequences = new long[slots];
+        this.extras = new Object[slots];
+        for (int i = 0; i < slots; i++) {
+            snapshots[i] = new MetricsSnapshot(registry);
+        }
+    }
+
+    /**
+     * 加入一个样本（复制快照内容），已满时丢弃最旧的样本
+     *
+     * @param seq 上报序号
+     * @param snapshot 采集结果
+     * @param extra 额外指标（如自定义采集器），可为 null；直接持有引用
+     */
+    public void add(long seq, MetricsSnapshot snapshot, Map<String, Object> extra) {
+        if (size == snapshots.length) {
+            remove(1);
+            dropped++;
+        }
+        int slot = (head + size) % snapshots.length;
+        snapshots[slot].copyFrom(snapshot);
+        sequences[slot] = seq;
+        extras[slot] = extra;
+        size++;
+    }
+
+    /**
+     * 第 index 个样本的快照（0 为最旧）
+     */
+    public MetricsSnapshot snapshot(int index) {
+        return snapshots[slot(index)];
+    }
+
+    public long sequence(int index) {
+        return sequences[slot(index)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> extra(int index) {
+        return (Map<String, Object>) extras[slot(index)];
+    }
+
+    /**
+     * 移除最旧的 count 个样本
+     */
+    public void remove(int count) {
+        int n = Math.min(count, size);
+        for (int i = 0; i < n; i++) {
+            extras[head] = null;
+            head = (head + 1) % snapshots.length;
+        }
+        size -= n;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int capacity() {
+        return snapshots.length;
+    }
+
+    /**
+     * 累计因缓冲区已满而丢弃的样本数
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    private int slot(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return (head + index) % snapshots.length;
+    }
+}
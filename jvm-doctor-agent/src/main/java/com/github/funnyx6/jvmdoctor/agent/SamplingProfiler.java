@@ -0,0 +1,195 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 采样剖析器
+ *
+ * 按配置的频率用 ThreadMXBean.dumpAllThreads 批量抓取堆栈，折叠进 {@link CallTree}，
+ * 结束后输出折叠堆栈（collapsed stack）供火焰图使用。
+ * <ul>
+ *   <li>CPU 模式：只采样 RUNNABLE 线程</li>
+ *   <li>WALL 模式：采样所有线程</li>
+ * </ul>
+ * 内存由调用树节点上限和栈深度上限约束；
+ * 采样耗时超过开销预算时自动加倍采样间隔。同一时间只允许一个剖析任务。
+ */
+public class SamplingProfiler {
+
+    /**
+     * 采样模式
+     */
+    public enum Mode {
+        CPU,
+        WALL
+    }
+
+    private static final int MAX_INTERVAL_MILLIS = 1000;
+    private static final AtomicBoolean running = new AtomicBoolean(false);
+
+    private final ThreadMXBean threadMXBean;
+    private final Method dumpWithDepth;
+    private final int intervalMillis;
+    private final int maxDepth;
+    private final int maxNodes;
+    private final double maxOverhead;
+    private final int maxSeconds;
+
+    public SamplingProfiler(AgentConfig config) {
+        this(config.getProfilerInterval(), config.getProfilerMaxDepth(), config.getProfilerMaxNodes(),
+                config.getProfilerMaxOverhead(), config.getProfilerMaxSeconds());
+    }
+
+    public SamplingProfiler(int intervalMillis, int maxDepth, int maxNodes, double maxOverhead, int maxSeconds) {
+        this.threadMXBean = ManagementFactory.getThreadMXBean();
+        this.dumpWithDepth = findDumpWithDepth();
+        this.intervalMillis = Math.max(intervalMillis, 1);
+        this.maxDepth = Math.max(maxDepth, 1);
+        this.maxNodes = Math.max(maxNodes, 2);
+        this.maxOverhead = maxOverhead > 0 ? maxOverhead : 0.05;
+        this.maxSeconds = Math.max(maxSeconds, 1);
+    }
+
+    public int getMaxSeconds() {
+        return maxSeconds;
+    }
+
+    public static boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * 在当前线程上剖析指定时长（阻塞）
+     *
+     * @param mode 采样模式
+     * @param durationMillis 时长，超过上限时按上限
+     * @param requestedInterval 采样间隔（毫秒），小于等于 0 时使用配置值
+     * @return 剖析结果，已有剖析任务在运行时返回 null
+     */
+    public Result profile(Mode mode, long durationMillis, int requestedInterval) throws InterruptedException {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        try {
+            return doProfile(mode, Math.min(durationMillis, maxSeconds * 1000L),
+                    requestedInterval > 0 ? requestedInterval : intervalMillis);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private Result doProfile(Mode mode, long durationMillis, int interval) throws InterruptedException {
+        FrameTable frames = new FrameTable(maxNodes);
+        CallTree tree = new CallTree(frames, maxNodes);
+        long selfId = Thread.currentThread().getId();
+
+        Result result = new Result();
+        result.mode = mode;
+        result.requestedIntervalMillis = interval;
+
+        long start = System.nanoTime();
+        long deadline = start + durationMillis * 1_000_000L;
+        long samplingNanos = 0;
+
+        while (System.nanoTime() < deadline) {
+            long t0 = System.nanoTime();
+            ThreadInfo[] infos = dumpAllThreads();
+            for (ThreadInfo info : infos) {
+                if (info == null || info.getThreadId() == selfId) {
+                    continue;
+                }
+                if (mode == Mode.CPU && info.getThreadState() != Thread.State.RUNNABLE) {
+                    continue;
+                }
+                StackTraceElement[] stack = info.getStackTrace();
+                if (stack.length == 0) {
+                    continue;
+                }
+                tree.addSample(stack);
+            }
+            result.ticks++;
+            long cost = System.nanoTime() - t0;
+            samplingNanos += cost;
+
+            // 超出开销预算时降低采样频率
+            long elapsed = System.nanoTime() - start;
+            if (interval < MAX_INTERVAL_MILLIS && samplingNanos > elapsed * maxOverhead) {
+                interval = Math.min(interval * 2, MAX_INTERVAL_MILLIS);
+                result.backoffs++;
+            }
+
+            long sleepMillis = interval - cost / 1_000_000;
+            if (sleepMillis > 0) {
+                Thread.sleep(Math.min(sleepMillis, Math.max(1, (deadline - System.nanoTime()) / 1_000_000)));
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        result.durationMillis = elapsed / 1_000_000;
+        result.intervalMillis = interval;
+        result.samples = tree.getTotalSamples();
+        result.truncatedSamples = tree.getTruncatedSamples();
+        result.nodes = tree.nodeCount();
+        result.frames = frames.size();
+        result.overhead = elapsed > 0 ? (double) samplingNanos / elapsed : 0.0;
+        result.collapsed = tree.toCollapsed();
+        return result;
+    }
+
+    /**
+     * 抓取所有线程堆栈；JDK 10+ 使用带 maxDepth 的重载，避免抓取超深堆栈
+     */
+    private ThreadInfo[] dumpAllThreads() {
+        if (dumpWithDepth != null) {
+            try {
+                return (ThreadInfo[]) dumpWithDepth.invoke(threadMXBean, false, false, maxDepth);
+            } catch (Exception e) {
+                // 退化为不限深度
+            }
+        }
+        return threadMXBean.dumpAllThreads(false, false);
+    }
+
+    private static Method findDumpWithDepth() {
+        try {
+            return ThreadMXBean.class.getMethod("dumpAllThreads", boolean.class, boolean.class, int.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 剖析结果
+     */
+    public static class Result {
+        private Mode mode;
+        private long durationMillis;
+        private int requestedIntervalMillis;
+        private int intervalMillis;
+        private long ticks;
+        private int backoffs;
+        private long samples;
+        private long truncatedSamples;
+        private int nodes;
+        private int frames;
+        private double overhead;
+        private String collapsed;
+
+        public Mode getMode() { return mode; }
+        public long getDurationMillis() { return durationMillis; }
+        public int getRequestedIntervalMillis() { return requestedIntervalMillis; }
+        public int getIntervalMillis() { return intervalMillis; }
+        public long getTicks() { return ticks; }
+        public int getBackoffs() { return backoffs; }
+        public long getSamples() { return samples; }
+        public long getTruncatedSamples() { return truncatedSamples; }
+        public int getNodes() { return nodes; }
+        public int getFrames() { return frames; }
+        public double getOverhead() { return overhead; }
+        public String getCollapsed() { return collapsed; }
+    }
+}
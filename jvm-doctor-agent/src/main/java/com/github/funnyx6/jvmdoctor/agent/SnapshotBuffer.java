@@ -0,0 +1,44 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+/**
+ * 双缓冲快照
+ *
+ * 采集线程写入后台缓冲区，写完后调用 {@link #publish()} 与前台缓冲区交换；
+ * 上报方读取 {@link #front()}，在下一次 publish 之前该缓冲区内容保持不变。
+ * 只允许一个写线程。
+ */
+public class SnapshotBuffer {
+
+    private final MetricsSnapshot[] buffers;
+    private volatile int frontIndex = 0;
+
+    public SnapshotBuffer(MetricRegistry registry) {
+        this.buffers = new MetricsSnapshot[] {
+                new MetricsSnapshot(registry),
+                new MetricsSnapshot(registry)
+        };
+    }
+
+    /**
+     * 获取可写的后台缓冲区（仅限采集线程调用）
+     */
+    public MetricsSnapshot back() {
+        return buffers[frontIndex ^ 1];
+    }
+
+    /**
+     * 发布后台缓冲区，使其成为新的前台缓冲区
+     */
+    public MetricsSnapshot publish() {
+        int next = frontIndex ^ 1;
+        frontIndex = next;
+        return buffers[next];
+    }
+
+    /**
+     * 获取最近一次发布的快照
+     */
+    public MetricsSnapshot front() {
+        return buffers[frontIndex];
+    }
+}
@@ -0,0 +1,264 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * 按 /proc/self/task 读取进程内所有线程（含 GC、JIT 编译等 JVM 内部线程）的调度统计（Linux）
+ *
+ * 每个线程只读一个文件：
+ * <ul>
+ *   <li>task/&lt;tid&gt;/schedstat：累计 CPU 时间、在运行队列中等待的时间（纳秒）和被调度上 CPU 的次数（时间片数）</li>
+ *   <li>内核未开启调度统计（CONFIG_SCHED_INFO）时退化为 task/&lt;tid&gt;/stat 的 utime + stime（10 毫秒精度），没有等待时间和时间片数</li>
+ * </ul>
+ * 结果存放在按扫描顺序排列的原始类型数组中，可通过 {@link #mark()} 保存上一次扫描用于计算增量。
+ * 文件读入 {@link ProcFileReader} 复用的缓冲区，不经过 JVM 的线程列表，也不进入安全点。非线程安全。
+ */
+public class TaskStatReader {
+
+    private static final Path TASK_DIR = Paths.get("/proc/self/task");
+    // /proc/<pid>/stat 的时间单位（USER_HZ，Linux 上固定为 100）
+    private static final long NANOS_PER_TICK = 10_000_000L;
+    private static final int UTIME_FIELD = 14;
+
+    private final Path taskDir;
+    private final boolean schedstat;
+    private final ProcFileReader reader = new ProcFileReader();
+    private final ProcFileReader statusReader =
+            new ProcFileReader("voluntary_ctxt_switches", "nonvoluntary_ctxt_switches");
+    private final long[] values = new long[3];
+
+    // 最近一次扫描
+    private int count;
+    private int[] tids = new int[256];
+    private long[] cpuNanos = new long[256];
+    private long[] waitNanos = new long[256];
+    private long[] timeslices = new long[256];
+    private final LongIntMap indexByTid = new LongIntMap(256);
+
+    // mark() 保存的扫描
+    private int markedCount;
+    private int[] markedTids = new int[256];
+    private long[] markedCpuNanos = new long[256];
+    private long[] markedWaitNanos = new long[256];
+    private long[] markedTimeslices = new long[256];
+    private final LongIntMap markedIndexByTid = new LongIntMap(256);
+    private long scanNanos;
+    private long markedNanos;
+
+    public TaskStatReader() {
+        this(TASK_DIR, Files.isReadable(Paths.get("/proc/self/schedstat")));
+    }
+
+    TaskStatReader(Path taskDir, boolean schedstat) {
+        this.taskDir = taskDir;
+        this.schedstat = schedstat;
+    }
+
+    /**
+     * 当前系统是否提供 /proc/self/task
+     */
+    public static boolean isSupported() {
+        return Files.isDirectory(TASK_DIR);
+    }
+
+    /**
+     * 是否有运行队列等待时间和时间片数
+     */
+    public boolean hasSchedstat() {
+        return schedstat;
+    }
+
+    /**
+     * 扫描所有线程，覆盖最近一次扫描的结果（扫描期间退出的线程被跳过）
+     *
+     * @return 线程数
+     */
+    public int scan() throws IOException {
+        count = 0;
+        indexByTid.clear();
+        try (DirectoryStream<Path> tasks = Files.newDirectoryStream(taskDir)) {
+            for (Path task : tasks) {
+                int tid = parseTid(task.getFileName().toString());
+                if (tid <= 0) {
+                    continue;
+                }
+                try {
+                    if (schedstat) {
+                        if (reader.readValues(task.resolve("schedstat"), values) < 3) {
+                            continue;
+                        }
+                    } else {
+                        reader.readStatFields(task.resolve("stat"), UTIME_FIELD, values);
+                        if (values[0] < 0 || values[1] < 0) {
+                            continue;
+                        }
+                        values[0] = (values[0] + values[1]) * NANOS_PER_TICK;
+                        values[1] = -1;
+                        values[2] = -1;
+                    }
+                } catch (IOException e) {
+                    // 扫描期间退出的线程：打开时 ENOENT，读取时 ESRCH
+                    continue;
+                }
+                append(tid, values[0], values[1], values[2]);
+            }
+        }
+        scanNanos = System.nanoTime();
+        return count;
+    }
+
+    private void append(int tid, long cpu, long wait, long slices) {
+        if (count == tids.length) {
+            int capacity = count * 2;
+            tids = Arrays.copyOf(tids, capacity);
+            cpuNanos = Arrays.copyOf(cpuNanos, capacity);
+            waitNanos = Arrays.copyOf(waitNanos, capacity);
+            timeslices = Arrays.copyOf(timeslices, capacity);
+        }
+        tids[count] = tid;
+        cpuNanos[count] = cpu;
+        waitNanos[count] = wait;
+        timeslices[count] = slices;
+        indexByTid.put(tid, count);
+        count++;
+    }
+
+    private static int parseTid(String name) {
+        int tid = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            tid = tid * 10 + (c - '0');
+        }
+        return tid;
+    }
+
+    /**
+     * 保存最近一次扫描，之后的 {@code marked*} 方法返回它的值
+     */
+    public void mark() {
+        if (markedTids.length < tids.length) {
+            markedTids = new int[tids.length];
+            markedCpuNanos = new long[tids.length];
+            markedWaitNanos = new long[tids.length];
+            markedTimeslices = new long[tids.length];
+        }
+        System.arraycopy(tids, 0, markedTids, 0, count);
+        System.arraycopy(cpuNanos, 0, markedCpuNanos, 0, count);
+        System.arraycopy(waitNanos, 0, markedWaitNanos, 0, count);
+        System.arraycopy(timeslices, 0, markedTimeslices, 0, count);
+        markedIndexByTid.clear();
+        for (int i = 0; i < count; i++) {
+            markedIndexByTid.put(tids[i], i);
+        }
+        markedCount = count;
+        markedNanos = scanNanos;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int tid(int index) {
+        return tids[index];
+    }
+
+    /**
+     * 线程在最近一次扫描中的下标
+     *
+     * @return 不存在（已退出）时返回 -1
+     */
+    public int indexOf(int tid) {
+        return indexByTid.get(tid);
+    }
+
+    /**
+     * 累计 CPU 时间（纳秒）
+     */
+    public long cpuNanos(int index) {
+        return cpuNanos[index];
+    }
+
+    /**
+     * 累计在运行队列中等待的时间（纳秒），没有调度统计时为 -1
+     */
+    public long waitNanos(int index) {
+        return waitNanos[index];
+    }
+
+    /**
+     * 累计被调度上 CPU 的次数，没有调度统计时为 -1
+     */
+    public long timeslices(int index) {
+        return timeslices[index];
+    }
+
+    /**
+     * 线程在 mark() 保存的扫描中的下标
+     *
+     * @return 不存在（新线程）时返回 -1
+     */
+    public int markedIndexOf(int tid) {
+        return markedCount > 0 ? markedIndexByTid.get(tid) : -1;
+    }
+
+    public long markedCpuNanos(int index) {
+        return markedCpuNanos[index];
+    }
+
+    public long markedWaitNanos(int index) {
+        return markedWaitNanos[index];
+    }
+
+    public long markedTimeslices(int index) {
+        return markedTimeslices[index];
+    }
+
+    /**
+     * 最近一次扫描与 mark() 保存的扫描之间的时长（纳秒）
+     */
+    public long elapsedNanos() {
+        return markedCount > 0 ? scanNanos - markedNanos : 0;
+    }
+
+    /**
+     * 线程名（task/&lt;tid&gt;/comm，内核截断为 15 字节）
+     *
+     * @return 线程已退出时返回 null
+     */
+    public String name(int tid) {
+        try {
+            byte[] bytes = Files.readAllBytes(taskDir.resolve(Integer.toString(tid)).resolve("comm"));
+            int length = bytes.length;
+            while (length > 0 && (bytes[length - 1] == '\n' || bytes[length - 1] == 0)) {
+                length--;
+            }
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 读取线程的主动 / 被动上下文切换次数（task/&lt;tid&gt;/status）
+     *
+     * @param out 至少 2 个元素：主动切换（等待锁、I/O 等）、被动切换（时间片用完被抢占）
+     * @return 线程已退出时返回 false
+     */
+    public boolean readContextSwitches(int tid, long[] out) {
+        try {
+            statusReader.read(taskDir.resolve(Integer.toString(tid)).resolve("status"), out);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线程 CPU / 内存分配活动跟踪器
+ *
+ * 后台按固定间隔批量采样所有线程的 CPU 时间和累计分配字节数，
+ * 每个线程的 CPU 增量（微秒，int）和分配增量（KB，int）保存在紧凑的环形缓冲区中（线程 ID → 最近 N 个采样），
+ * 进程级分配量按采样保存在独立的环中。
+ * 查询时按窗口（如 5s、30s、5m）计算 CPU 使用率或分配速率，并用有界堆选出 Top N。
+ */
+public class ThreadActivityTracker {
+
+    private final ThreadSampler sampler;
+    private final int intervalMillis;
+    private final int history;
+    private final ScheduledExecutorService scheduler;
+    private final OverheadGovernor.Account account =
+            OverheadGovernor.account("thread.tracker", OverheadGovernor.MAX_LEVEL);
+
+    // 采样时间环，长度 history + 1，使 history 个增量都有起止时间
+    private final long[] sampleNanos;
+    private long tick = 0;
+
+    // 线程 ID → 槽位
+    private final LongIntMap slotsByThread = new LongIntMap(256);
+    private int slotCount = 0;
+    private int[] freeSlots = new int[64];
+    private int freeCount = 0;
+
+    // 按槽位存放的状态
+    private long[] slotThreadIds = new long[0];
+    private long[] slotSeenTick = new long[0];
+    private long[] lastCpuTimes = new long[0];
+    private long[] lastAllocBytes = new long[0]; // 只按整 KB 推进，余数计入下一次采样
+    private int[] cpuDeltaMicros = new int[0];   // slot * history + (tick % history)
+    private int[] allocDeltaKb = new int[0];     // slot * history + (tick % history)
+    
+    // 进程级每次采样的分配字节数（tick % history）
+    private final long[] tickAllocBytes;
+
+    public ThreadActivityTracker(ThreadSampler sampler, int intervalMillis, int history) {
+        this.sampler = sampler;
+        this.intervalMillis = Math.max(intervalMillis, 100);
+        this.history = Math.max(history, 2);
+        this.sampleNanos = new long[this.history + 1];
+        this.tickAllocBytes = new long[this.history];
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jvm-doctor-thread-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 启动后台采样
+     */
+    public void startSampling() {
+        scheduler.scheduleAtFixedRate(() -> {
+            // 超出开销预算时拉长采样间隔（窗口计算按实际采样时间，不受影响）
+            if (!account.shouldRun()) {
+                return;
+            }
+            long cpuStart = OverheadGovernor.threadCpuTime();
+            long allocStart = OverheadGovernor.threadAllocatedBytes();
+            long startNanos = System.nanoTime();
+            try {
+                sample();
+            } catch (Exception e) {
+                System.err.println("[ThreadActivityTracker] Sample error: " + e.getMessage());
+            }
+            account.record(startNanos, cpuStart, allocStart);
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止后台采样
+     */
+    public void stopSampling() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 最近一次采样的 CPU 时间来源：proc（/proc/self/task）或 mxbean
+     */
+    public String getCpuSource() {
+        return sampler.isProcActive() ? "proc" : "mxbean";
+    }
+
+    public int getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * 窗口可覆盖的最大时长（毫秒）
+     */
+    public long getMaxWindowMillis() {
+        return (long) intervalMillis * history;
+    }
+
+    /**
+     * 执行一次采样
+     */
+    public void sample() {
+        long[] threadIds = sampler.threadIds();
+        long[] cpuTimes = sampler.cpuTimes(threadIds);
+        long[] allocBytes = sampler.allocatedBytes(threadIds);
+        long now = System.nanoTime();
+
+        synchronized (this) {
+            tick++;
+            sampleNanos[(int) (tick % sampleNanos.length)] = now;
+            int pos = (int) (tick % history);
+            long tickAlloc = 0;
+
+            for (int i = 0; i < threadIds.length; i++) {
+                long cpuTime = cpuTimes[i];
+                long allocated = allocBytes[i];
+                if (cpuTime < 0 && allocated < 0) {
+                    continue;
+                }
+                int slot = slotsByThread.get(threadIds[i]);
+                int cpuDelta = 0;
+                int allocDelta = 0;
+                if (slot < 0) {
+                    slot = allocateSlot(threadIds[i]);
+                    lastAllocBytes[slot] = allocated;
+                } else {
+                    if (cpuTime >= 0) {
+                        cpuDelta = (int) Math.min((cpuTime - lastCpuTimes[slot]) / 1000, Integer.MAX_VALUE);
+                    }
+                    if (allocated >= 0) {
+                        long kb = (allocated - lastAllocBytes[slot]) >> 10;
+                        allocDelta = (int) Math.max(0, Math.min(kb, Integer.MAX_VALUE));
+                        lastAllocBytes[slot] += (long) allocDelta << 10;
+                        tickAlloc += (long) allocDelta << 10;
+                    }
+                }
+                lastCpuTimes[slot] = cpuTime;
+                slotSeenTick[slot] = tick;
+                cpuDeltaMicros[slot * history + pos] = Math.max(cpuDelta, 0);
+                allocDeltaKb[slot * history + pos] = allocDelta;
+            }
+            tickAllocBytes[pos] = tickAlloc;
+
+            // 回收本轮未出现的线程（已退出）
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (slotThreadIds[slot] != 0 && slotSeenTick[slot] != tick) {
+                    releaseSlot(slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按窗口内 CPU 使用率获取 Top N 线程
+     *
+     * @param windowMillis 窗口长度（毫秒），超出保留历史时按最大历史计算
+     * @param topN 返回数量
+     * @return 按 CPU 使用率降序的线程信息
+     */
+    public List<Map<String, Object>> getTopCpuThreads(long windowMillis, int topN) {
+        List<Map<String, Object>> threads = new ArrayList<>();
+        Ranking ranking = rank(false, windowMillis, topN);
+        ThreadInfo[] infos = ranking.threadInfos();
+        for (int i = 0; i < infos.length; i++) {
+            if (infos[i] == null) {
+                continue;
+            }
+            double usage = ranking.elapsedNanos > 0 ? ranking.windowSums[i] * 1000.0 / ranking.elapsedNanos : 0.0;
+
+            Map<String, Object> thread = threadEntry(infos[i], ranking.threadIds[i]);
+            thread.put("cpuUsage", usage);
+            thread.put("cpuPercent", Math.round(usage * 10000) / 100.0);
+            thread.put("windowCpuMillis", ranking.windowSums[i] / 1000);
+            thread.put("cpuTimeMillis", ranking.totals[i] / 1_000_000);
+            // 走 /proc 路径时已建立映射，可与 top -H 对照
+            int tid = NativeThreadIds.getShared().nativeId(ranking.threadIds[i]);
+            if (tid > 0) {
+                thread.put("nid", "0x" + Integer.toHexString(tid));
+            }
+            threads.add(thread);
+        }
+        return threads;
+    }
+
+    /**
+     * 按窗口内分配速率获取 Top N 线程
+     *
+     * @param windowMillis 窗口长度（毫秒），超出保留历史时按最大历史计算
+     * @param topN 返回数量
+     * @return 按分配速率降序的线程信息
+     */
+    public List<Map<String, Object>> getTopAllocatingThreads(long windowMillis, int topN) {
+        List<Map<String, Object>> threads = new ArrayList<>();
+        Ranking ranking = rank(true, windowMillis, topN);
+        ThreadInfo[] infos = ranking.threadInfos();
+        for (int i = 0; i < infos.length; i++) {
+            if (infos[i] == null) {
+                continue;
+            }
+            long windowBytes = ranking.windowSums[i] << 10;
+
+            Map<String, Object> thread = threadEntry(infos[i], ranking.threadIds[i]);
+            thread.put("allocBytesPerSec", ranking.elapsedNanos > 0 ? windowBytes * 1e9 / ranking.elapsedNanos : 0.0);
+            thread.put("windowAllocBytes", windowBytes);
+            thread.put("allocatedBytes", ranking.totals[i]);
+            threads.add(thread);
+        }
+        return threads;
+    }
+
+    /**
+     * 进程级分配速率（字节/秒），按窗口内所有线程的分配量计算
+     *
+     * @return 分配速率，尚无足够采样或不支持时返回 -1
+     */
+    public synchronized double getAllocationRate(long windowMillis) {
+        int samples = windowSamples(windowMillis);
+        if (samples <= 0 || !sampler.isAllocatedMemorySupported()) {
+            return -1;
+        }
+        long elapsedNanos = sampleNanos[(int) (tick % sampleNanos.length)]
+                - sampleNanos[(int) ((tick - samples) % sampleNanos.length)];
+        if (elapsedNanos <= 0) {
+            return -1;
+        }
+        long bytes = 0;
+        for (int i = 0; i < samples; i++) {
+            bytes += tickAllocBytes[(int) ((tick - i) % history)];
+        }
+        return bytes * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * 按 CPU 或分配增量在窗口内的合计选出 Top N（锁内只做原始类型计算）
+     */
+    private Ranking rank(boolean byAllocation, long windowMillis, int topN) {
+        Ranking ranking = new Ranking();
+        synchronized (this) {
+            // 扩容会替换数组，必须在锁内取引用
+            int[] deltas = byAllocation ? allocDeltaKb : cpuDeltaMicros;
+            long[] totals = byAllocation ? lastAllocBytes : lastCpuTimes;
+            int samples = windowSamples(windowMillis);
+            if (samples <= 0) {
+                return ranking;
+            }
+            ranking.elapsedNanos = sampleNanos[(int) (tick % sampleNanos.length)]
+                    - sampleNanos[(int) ((tick - samples) % sampleNanos.length)];
+
+            TopNHeap heap = new TopNHeap(topN);
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (slotThreadIds[slot] == 0) {
+                    continue;
+                }
+                heap.offer(sumDeltas(deltas, slot, samples), slot);
+            }
+            heap.sortDescending();
+
+            ranking.threadIds = new long[heap.size()];
+            ranking.windowSums = new long[heap.size()];
+            ranking.totals = new long[heap.size()];
+            for (int i = 0; i < heap.size(); i++) {
+                int slot = heap.index(i);
+                ranking.threadIds[i] = slotThreadIds[slot];
+                ranking.windowSums[i] = (long) heap.score(i);
+                ranking.totals[i] = totals[slot];
+            }
+        }
+        return ranking;
+    }
+
+    private static Map<String, Object> threadEntry(ThreadInfo info, long threadId) {
+        Map<String, Object> thread = new HashMap<>();
+        thread.put("threadId", threadId);
+        thread.put("name", info.getThreadName());
+        thread.put("state", info.getThreadState().name());
+        return thread;
+    }
+
+    /**
+     * Top N 排名结果
+     */
+    private final class Ranking {
+        long elapsedNanos;
+        long[] threadIds = new long[0];
+        long[] windowSums = new long[0];
+        long[] totals = new long[0];
+
+        /**
+         * 只为 Top N 线程查询名称和状态
+         */
+        ThreadInfo[] threadInfos() {
+            return threadIds.length == 0 ? new ThreadInfo[0] : sampler.threadInfos(threadIds, 0);
+        }
+    }
+
+    /**
+     * 窗口实际覆盖的时长（毫秒）
+     */
+    public synchronized long effectiveWindowMillis(long windowMillis) {
+        int samples = windowSamples(windowMillis);
+        if (samples <= 0) {
+            return 0;
+        }
+        return (sampleNanos[(int) (tick % sampleNanos.length)]
+                - sampleNanos[(int) ((tick - samples) % sampleNanos.length)]) / 1_000_000;
+    }
+
+    private int windowSamples(long windowMillis) {
+        long samples = (windowMillis + intervalMillis - 1) / intervalMillis;
+        samples = Math.max(1, Math.min(samples, history));
+        // 第一次采样只建立基线，没有增量
+        return (int) Math.min(samples, tick - 1);
+    }
+
+    private long sumDeltas(int[] deltas, int slot, int samples) {
+        long sum = 0;
+        int base = slot * history;
+        for (int i = 0; i < samples; i++) {
+            sum += deltas[base + (int) ((tick - i) % history)];
+        }
+        return sum;
+    }
+
+    private int allocateSlot(long threadId) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = slotCount++;
+            if (slot >= slotThreadIds.length) {
+                growSlots(Math.max(64, slotThreadIds.length * 2));
+            }
+        }
+        slotThreadIds[slot] = threadId;
+        Arrays.fill(cpuDeltaMicros, slot * history, (slot + 1) * history, 0);
+        Arrays.fill(allocDeltaKb, slot * history, (slot + 1) * history, 0);
+        slotsByThread.put(threadId, slot);
+        return slot;
+    }
+
+    private void releaseSlot(int slot) {
+        slotsByThread.remove(slotThreadIds[slot]);
+        slotThreadIds[slot] = 0;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void growSlots(int capacity) {
+        slotThreadIds = Arrays.copyOf(slotThreadIds, capacity);
+        slotSeenTick = Arrays.copyOf(slotSeenTick, capacity);
+        lastCpuTimes = Arrays.copyOf(lastCpuTimes, capacity);
+        lastAllocBytes = Arrays.copyOf(lastAllocBytes, capacity);
+        cpuDeltaMicros = Arrays.copyOf(cpuDeltaMicros, capacity * history);
+        allocDeltaKb = Arrays.copyOf(allocDeltaKb, capacity * history);
+    }
+
+    // ========== 静态工厂方法 ==========
+
+    private static volatile ThreadActivityTracker instance;
+
+    public static synchronized ThreadActivityTracker start(AgentConfig config) {
+        if (instance == null) {
+            instance = new ThreadActivityTracker(
+                    new ThreadSampler(ManagementFactory.getThreadMXBean(), config.getThreadProcThreshold()),
+                    config.getThreadSampleInterval(), config.getThreadSampleHistory());
+            instance.startSampling();
+            System.out.println("[ThreadActivityTracker] Started, interval: "
+                    + instance.intervalMillis + "ms, history: " + instance.history);
+        }
+        return instance;
+    }
+
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.stopSampling();
+            instance = null;
+        }
+    }
+
+    public static ThreadActivityTracker getInstance() {
+        return instance;
+    }
+}
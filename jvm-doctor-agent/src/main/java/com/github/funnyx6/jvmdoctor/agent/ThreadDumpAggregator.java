@@ -0,0 +1,352 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按堆栈去重的线程转储聚合
+ *
+ * 栈帧（类名、方法名、文件名、行号）和整条堆栈（帧 ID 序列）都驻留为稠密的整数 ID，
+ * 状态和堆栈都相同的线程合并为一组，只输出一份堆栈、线程数和线程名列表。
+ * 驻留表和每条堆栈渲染好的帧列表在多次请求之间复用，重复出现的堆栈查找不分配对象；
+ * 任一张表写满时整体清空重建，堆栈 ID 只在两次清空之间稳定。线程安全（方法级同步）。
+ */
+public class ThreadDumpAggregator {
+
+    static final int DEFAULT_MAX_FRAMES = 65536;
+    static final int DEFAULT_MAX_STACKS = 16384;
+
+    private static final Thread.State[] STATES = Thread.State.values();
+
+    private final int maxFrames;
+    private final int maxStacks;
+
+    // 帧表：存放首次出现的 StackTraceElement，开放寻址槽位存放 ID + 1
+    private StackTraceElement[] frames = new StackTraceElement[256];
+    private int[] frameHashes = new int[256];
+    private int frameCount = 0;
+    private int[] frameTable = new int[512];
+
+    // 堆栈表：帧 ID 序列及其渲染结果
+    private int[][] stacks = new int[256][];
+    private int[] stackHashes = new int[256];
+    private List<?>[] rendered = new List<?>[256];
+    private int stackCount = 0;
+    private int[] stackTable = new int[512];
+
+    // 当前堆栈的帧 ID，查找已有堆栈时不分配
+    private int[] scratch = new int[64];
+
+    private long resets = 0;
+
+    public ThreadDumpAggregator() {
+        this(DEFAULT_MAX_FRAMES, DEFAULT_MAX_STACKS);
+    }
+
+    public ThreadDumpAggregator(int maxFrames, int maxStacks) {
+        this.maxFrames = Math.max(maxFrames, 1);
+        this.maxStacks = Math.max(maxStacks, 1);
+    }
+
+    /**
+     * 聚合一次线程快照
+     *
+     * @param threadInfos 带堆栈的线程信息（null 元素为已退出的线程）
+     * @return groups 按线程数降序，另附线程总数、各状态线程数和驻留表大小
+     */
+    public synchronized Map<String, Object> aggregate(ThreadInfo[] threadInfos) {
+        int[] stackIds = new int[threadInfos.length];
+        if (!internAll(threadInfos, stackIds)) {
+            // 表已写满：清空后重试一次，单次快照仍然放不下的堆栈不去重
+            clear();
+            resets++;
+            internAll(threadInfos, stackIds);
+        }
+
+        // 分组键 = 堆栈 ID × 状态数 + 状态序号；未驻留的堆栈各自成组
+        Map<Long, Group> groups = new HashMap<>();
+        List<Group> ordered = new ArrayList<>();
+        Map<String, Integer> stateCounts = new HashMap<>();
+        int total = 0;
+        for (int i = 0; i < threadInfos.length; i++) {
+            ThreadInfo info = threadInfos[i];
+            if (info == null || info.getThreadName() == null) {
+                continue;
+            }
+            total++;
+            Thread.State state = info.getThreadState();
+            stateCounts.merge(state.name(), 1, Integer::sum);
+
+            Group group = null;
+            if (stackIds[i] >= 0) {
+                long key = (long) stackIds[i] * STATES.length + state.ordinal();
+                group = groups.get(key);
+                if (group == null) {
+                    group = new Group(state, stackIds[i], rendered(stackIds[i]));
+                    groups.put(key, group);
+                    ordered.add(group);
+                }
+            } else {
+                group = new Group(state, -1, render(info.getStackTrace()));
+                ordered.add(group);
+            }
+            group.add(info);
+        }
+
+        ordered.sort((a, b) -> Integer.compare(b.names.size(), a.names.size()));
+        List<Map<String, Object>> result = new ArrayList<>(ordered.size());
+        for (Group group : ordered) {
+            result.add(group.toMap());
+        }
+
+        Map<String, Object> dump = new HashMap<>();
+        dump.put("groups", result);
+        dump.put("groupCount", result.size());
+        dump.put("totalCount", total);
+        dump.put("stateCounts", stateCounts);
+        dump.put("internedFrames", frameCount);
+        dump.put("internedStacks", stackCount);
+        dump.put("tableResets", resets);
+        return dump;
+    }
+
+    /**
+     * 驻留所有线程的堆栈
+     *
+     * @return 是否全部驻留成功（失败的位置为 -1）
+     */
+    private boolean internAll(ThreadInfo[] threadInfos, int[] stackIds) {
+        boolean complete = true;
+        for (int i = 0; i < threadInfos.length; i++) {
+            ThreadInfo info = threadInfos[i];
+            stackIds[i] = info == null ? -1 : internStack(info.getStackTrace());
+            if (info != null && stackIds[i] < 0) {
+                complete = false;
+            }
+        }
+        return complete;
+    }
+
+    // ========== 帧表 ==========
+
+    int internFrame(StackTraceElement element) {
+        int hash = frameHash(element);
+        int mask = frameTable.length - 1;
+        int i = hash & mask;
+        while (true) {
+            int entry = frameTable[i];
+            if (entry == 0) {
+                break;
+            }
+            int id = entry - 1;
+            if (frameHashes[id] == hash && sameFrame(frames[id], element)) {
+                return id;
+            }
+            i = (i + 1) & mask;
+        }
+        if (frameCount >= maxFrames) {
+            return -1;
+        }
+
+        int id = frameCount++;
+        if (id == frames.length) {
+            frames = Arrays.copyOf(frames, id * 2);
+            frameHashes = Arrays.copyOf(frameHashes, id * 2);
+        }
+        frames[id] = element;
+        frameHashes[id] = hash;
+        frameTable[i] = id + 1;
+        if (frameCount * 2 > frameTable.length) {
+            frameTable = rehash(frameHashes, frameCount, frameTable.length * 2);
+        }
+        return id;
+    }
+
+    private static int frameHash(StackTraceElement element) {
+        int h = element.getClassName().hashCode();
+        h = h * 31 + element.getMethodName().hashCode();
+        h = h * 31 + (element.getFileName() != null ? element.getFileName().hashCode() : 0);
+        h = h * 31 + element.getLineNumber();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 只比较转储中输出的字段（JDK 9+ 的 equals 还会比较模块和类加载器）
+     */
+    private static boolean sameFrame(StackTraceElement a, StackTraceElement b) {
+        return a.getLineNumber() == b.getLineNumber()
+                && a.getClassName().equals(b.getClassName())
+                && a.getMethodName().equals(b.getMethodName())
+                && (a.getFileName() == null ? b.getFileName() == null : a.getFileName().equals(b.getFileName()));
+    }
+
+    // ========== 堆栈表 ==========
+
+    /**
+     * 查找或驻留堆栈
+     *
+     * @return 堆栈 ID，帧表或堆栈表写满时返回 -1
+     */
+    int internStack(StackTraceElement[] stackTrace) {
+        if (scratch.length < stackTrace.length) {
+            scratch = new int[Math.max(stackTrace.length, scratch.length * 2)];
+        }
+        int length = stackTrace.length;
+        int hash = 1;
+        for (int f = 0; f < length; f++) {
+            int frame = internFrame(stackTrace[f]);
+            if (frame < 0) {
+                return -1;
+            }
+            scratch[f] = frame;
+            hash = hash * 31 + frame;
+        }
+        hash ^= hash >>> 16;
+
+        int mask = stackTable.length - 1;
+        int i = hash & mask;
+        while (true) {
+            int entry = stackTable[i];
+            if (entry == 0) {
+                break;
+            }
+            int id = entry - 1;
+            if (stackHashes[id] == hash && sameStack(stacks[id], scratch, length)) {
+                return id;
+            }
+            i = (i + 1) & mask;
+        }
+        if (stackCount >= maxStacks) {
+            return -1;
+        }
+
+        int id = stackCount++;
+        if (id == stacks.length) {
+            stacks = Arrays.copyOf(stacks, id * 2);
+            stackHashes = Arrays.copyOf(stackHashes, id * 2);
+            rendered = Arrays.copyOf(rendered, id * 2);
+        }
+        stacks[id] = Arrays.copyOf(scratch, length);
+        stackHashes[id] = hash;
+        stackTable[i] = id + 1;
+        if (stackCount * 2 > stackTable.length) {
+            stackTable = rehash(stackHashes, stackCount, stackTable.length * 2);
+        }
+        return id;
+    }
+
+    private static boolean sameStack(int[] stack, int[] frameIds, int length) {
+        if (stack.length != length) {
+            return false;
+        }
+        for (int f = 0; f < length; f++) {
+            if (stack[f] != frameIds[f]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 驻留堆栈的帧列表，首次使用时渲染并缓存
+     */
+    private List<?> rendered(int stackId) {
+        List<?> frameList = rendered[stackId];
+        if (frameList == null) {
+            int[] stack = stacks[stackId];
+            StackTraceElement[] elements = new StackTraceElement[stack.length];
+            for (int f = 0; f < stack.length; f++) {
+                elements[f] = frames[stack[f]];
+            }
+            frameList = render(elements);
+            rendered[stackId] = frameList;
+        }
+        return frameList;
+    }
+
+    private static List<Map<String, String>> render(StackTraceElement[] stackTrace) {
+        List<Map<String, String>> frameList = new ArrayList<>(stackTrace.length);
+        for (StackTraceElement element : stackTrace) {
+            Map<String, String> frame = new HashMap<>();
+            frame.put("className", element.getClassName());
+            frame.put("methodName", element.getMethodName());
+            frame.put("fileName", element.getFileName());
+            frame.put("lineNumber", String.valueOf(element.getLineNumber()));
+            frameList.add(frame);
+        }
+        return frameList;
+    }
+
+    private static int[] rehash(int[] hashes, int size, int capacity) {
+        int[] table = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hashes[id] & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = id + 1;
+        }
+        return table;
+    }
+
+    /**
+     * 清空驻留表
+     */
+    public synchronized void clear() {
+        Arrays.fill(frames, 0, frameCount, null);
+        Arrays.fill(stacks, 0, stackCount, null);
+        Arrays.fill(rendered, 0, stackCount, null);
+        frameCount = 0;
+        stackCount = 0;
+        Arrays.fill(frameTable, 0);
+        Arrays.fill(stackTable, 0);
+    }
+
+    synchronized int frameCount() {
+        return frameCount;
+    }
+
+    synchronized int stackCount() {
+        return stackCount;
+    }
+
+    /**
+     * 状态和堆栈都相同的一组线程
+     */
+    private static final class Group {
+        private final Thread.State state;
+        private final int stackId;
+        private final List<?> stackTrace;
+        private final List<String> names = new ArrayList<>();
+        private final List<Long> threadIds = new ArrayList<>();
+
+        Group(Thread.State state, int stackId, List<?> stackTrace) {
+            this.state = state;
+            this.stackId = stackId;
+            this.stackTrace = stackTrace;
+        }
+
+        void add(ThreadInfo info) {
+            names.add(info.getThreadName());
+            threadIds.add(info.getThreadId());
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("state", state.name());
+            map.put("count", names.size());
+            map.put("threads", names);
+            map.put("threadIds", threadIds);
+            if (stackId >= 0) {
+                map.put("stackId", stackId);
+            }
+            map.put("stackTrace", stackTrace);
+            return map;
+        }
+    }
+}
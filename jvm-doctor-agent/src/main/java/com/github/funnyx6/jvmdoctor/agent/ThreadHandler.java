@@ -1,53 +1,91 @@
 package com.github.funnyx6.jvmdoctor.agent;
 
+import com.github.funnyx6.jvmdoctor.core.DeadlockDetector;
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 线程信息 HTTP Handler
- * 提供线程列表、CPU Top、线程堆栈等 API
+ * 提供线程列表、按堆栈聚合的线程转储、CPU Top、内存分配 Top、OS 线程调度统计、线程堆栈等 API
  */
-public class ThreadHandler implements HttpHandler {
+public class ThreadHandler extends ApiHandler {
+    
+    private static final int DEFAULT_STACK_DEPTH = 50;
+    private static final int MAX_STACK_DEPTH = 200;
+    private static final long DEFAULT_WINDOW_MILLIS = 30_000;
+    private static final long DEFAULT_TASK_INTERVAL_MILLIS = 1000;
+    private static final long MAX_TASK_INTERVAL_MILLIS = 10_000;
     
     private final MetricsCollector collector;
+    // 帧和堆栈驻留表在请求之间复用
+    private final ThreadDumpAggregator aggregator = new ThreadDumpAggregator();
+    // /proc/self/task 读取器，非 Linux 时为 null；同一时刻只有一次采样在使用
+    private final TaskStatReader taskReader;
+    private final AtomicBoolean taskSampling = new AtomicBoolean();
+    // 间隔结束后做第二次扫描并发送响应，不占用 HTTP 线程等待；首次采样时创建
+    private ScheduledExecutorService taskScheduler;
     
     public ThreadHandler() {
         this.collector = new MetricsCollector();
+        this.taskReader = TaskStatReader.isSupported() ? new TaskStatReader() : null;
     }
     
     @Override
     public void handle(HttpExchange exchange) throws IOException {
         String path = exchange.getRequestURI().getPath();
-        
-        // 添加 CORS 头
-        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        String query = exchange.getRequestURI().getRawQuery();
         
         String response;
         int statusCode = 200;
         
         try {
             if (path.endsWith("/threads")) {
-                // 获取所有线程
-                response = getAllThreads();
+                // 获取所有线程，?stacks=true 或 ?depth=N 时附带堆栈
+                int depth = intParam(query, "depth", 0);
+                if (depth <= 0 && "true".equals(queryParam(query, "stacks"))) {
+                    depth = DEFAULT_STACK_DEPTH;
+                }
+                response = getAllThreads(Math.min(depth, MAX_STACK_DEPTH));
             } else if (path.endsWith("/threads/top")) {
-                // 获取 CPU Top 线程
-                String[] parts = path.split("/");
-                int topN = 10;
-                try {
-                    if (parts.length > 0) {
-                        topN = Integer.parseInt(parts[parts.length - 1]);
-                    }
-                } catch (NumberFormatException e) {
-                    // 使用默认值
+                // 获取 CPU Top 线程：?window=30s&n=10
+                int topN = intParam(query, "n", intParam(query, "limit", 10));
+                long windowMillis = parseDurationMillis(queryParam(query, "window"), DEFAULT_WINDOW_MILLIS);
+                response = getTopCpuThreads(Math.max(topN, 1), windowMillis);
+            } else if (path.endsWith("/threads/top-alloc")) {
+                // 获取内存分配 Top 线程：?window=30s&n=10
+                int topN = intParam(query, "n", intParam(query, "limit", 10));
+                long windowMillis = parseDurationMillis(queryParam(query, "window"), DEFAULT_WINDOW_MILLIS);
+                response = getTopAllocatingThreads(Math.max(topN, 1), windowMillis);
+            } else if (path.endsWith("/threads/groups")) {
+                // 按状态和堆栈聚合的线程转储：?depth=N
+                int depth = intParam(query, "depth", DEFAULT_STACK_DEPTH);
+                response = getThreadGroups(Math.min(Math.max(depth, 1), MAX_STACK_DEPTH));
+            } else if (path.endsWith("/threads/tasks")) {
+                // OS 线程调度统计：?interval=1s&n=20
+                int topN = intParam(query, "n", intParam(query, "limit", 20));
+                long intervalMillis = parseDurationMillis(queryParam(query, "interval"), DEFAULT_TASK_INTERVAL_MILLIS);
+                if (taskReader == null) {
+                    response = "{\"error\":\"/proc/self/task not available\"}";
+                    statusCode = 501;
+                } else if (startNativeTasks(exchange, Math.max(topN, 1),
+                        Math.max(1, Math.min(intervalMillis, MAX_TASK_INTERVAL_MILLIS)))) {
+                    // 响应在间隔结束后由调度线程发送
+                    return;
+                } else {
+                    response = "{\"error\":\"Task sampling already in progress\"}";
+                    statusCode = 409;
                 }
-                response = getTopCpuThreads(topN);
             } else if (path.startsWith("/threads/") && !path.endsWith("/threads")) {
                 // 获取指定线程堆栈
                 String[] parts = path.split("/");
@@ -64,8 +102,8 @@ public class ThreadHandler implements HttpHandler {
                     statusCode = 400;
                 }
             } else if (path.endsWith("/deadlock")) {
-                // 获取死锁线程
-                response = getDeadlockedThreads();
+                // 获取死锁线程（共享缓存结果），?force=true 时存在阻塞线程即做完整检测
+                response = getDeadlockedThreads("true".equals(queryParam(query, "force")));
             } else {
                 response = "{\"error\":\"Not found\"}";
                 statusCode = 404;
@@ -75,17 +113,14 @@ public class ThreadHandler implements HttpHandler {
             statusCode = 500;
         }
         
-        exchange.sendResponseHeaders(statusCode, response.getBytes().length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes());
-        }
+        send(exchange, statusCode, response);
     }
     
     /**
      * 获取所有线程信息
      */
-    private String getAllThreads() {
-        List<Map<String, Object>> threads = collector.collectThreadInfo();
+    private String getAllThreads(int stackDepth) {
+        List<Map<String, Object>> threads = collector.collectThreadInfo(stackDepth);
         
         // 统计各状态线程数
         Map<String, Integer> stateCounts = new HashMap<>();
@@ -102,13 +137,62 @@ public class ThreadHandler implements HttpHandler {
         return toJson(result);
     }
     
+    /**
+     * 获取按堆栈去重的线程转储：状态和堆栈相同的线程合并为一组
+     */
+    private String getThreadGroups(int stackDepth) {
+        return toJson(aggregator.aggregate(collector.dumpThreads(stackDepth)));
+    }
+    
     /**
      * 获取 CPU 占用 Top 线程
+     * 
+     * 跟踪器运行时按窗口内的 CPU 使用率排序，否则退化为按累计 CPU 时间排序
      */
-    private String getTopCpuThreads(int topN) {
-        List<Map<String, Object>> threads = collector.getTopCpuThreads(topN);
+    private String getTopCpuThreads(int topN, long windowMillis) {
+        Map<String, Object> result = new HashMap<>();
+        List<Map<String, Object>> threads;
         
+        ThreadActivityTracker tracker = ThreadActivityTracker.getInstance();
+        if (tracker != null) {
+            threads = tracker.getTopCpuThreads(windowMillis, topN);
+            result.put("window", tracker.effectiveWindowMillis(windowMillis));
+            result.put("rankBy", "window");
+            result.put("cpuSource", tracker.getCpuSource());
+        } else {
+            threads = collector.getTopCpuThreads(topN);
+            result.put("rankBy", "cumulative");
+        }
+        
+        result.put("threads", threads);
+        result.put("count", threads.size());
+        
+        return toJson(result);
+    }
+    
+    /**
+     * 获取内存分配 Top 线程
+     * 
+     * 跟踪器运行时按窗口内的分配速率排序，并附带进程级分配速率，否则退化为按累计分配字节数排序
+     */
+    private String getTopAllocatingThreads(int topN, long windowMillis) {
         Map<String, Object> result = new HashMap<>();
+        List<Map<String, Object>> threads;
+        
+        ThreadActivityTracker tracker = ThreadActivityTracker.getInstance();
+        if (tracker != null) {
+            threads = tracker.getTopAllocatingThreads(windowMillis, topN);
+            result.put("window", tracker.effectiveWindowMillis(windowMillis));
+            result.put("rankBy", "window");
+            double processRate = tracker.getAllocationRate(windowMillis);
+            if (processRate >= 0) {
+                result.put("processAllocBytesPerSec", processRate);
+            }
+        } else {
+            threads = collector.getTopAllocatingThreads(topN);
+            result.put("rankBy", "cumulative");
+        }
+        
         result.put("threads", threads);
         result.put("count", threads.size());
         
@@ -124,72 +208,201 @@ public class ThreadHandler implements HttpHandler {
     }
     
     /**
-     * 获取死锁线程列表
+     * 开始一次 OS 线程调度统计：立即做第一次扫描，间隔结束后由调度线程做第二次扫描并发送响应
+     * 
+     * @return 已有采样在进行时返回 false（不排队等待）
      */
-    private String getDeadlockedThreads() {
-        List<Map<String, Object>> deadlocks = collector.getDeadlockedThreads();
-        
+    private boolean startNativeTasks(HttpExchange exchange, int topN, long intervalMillis) throws IOException {
+        if (!taskSampling.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            taskReader.scan();
+            taskReader.mark();
+            taskScheduler().schedule(() -> finishNativeTasks(exchange, topN), intervalMillis, TimeUnit.MILLISECONDS);
+        } catch (IOException | RuntimeException e) {
+            taskSampling.set(false);
+            throw e;
+        }
+        return true;
+    }
+    
+    private void finishNativeTasks(HttpExchange exchange, int topN) {
+        String response;
+        int statusCode = 200;
+        try {
+            response = getNativeTasks(topN);
+        } catch (Exception e) {
+            response = "{\"error\":\"" + escapeJson(e.getMessage()) + "\"}";
+            statusCode = 500;
+        } finally {
+            taskSampling.set(false);
+        }
+        try {
+            send(exchange, statusCode, response);
+        } catch (IOException e) {
+            // 调用方已断开
+        }
+    }
+    
+    private synchronized ScheduledExecutorService taskScheduler() {
+        if (taskScheduler == null) {
+            taskScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, AgentTelemetry.THREAD_PREFIX + "-tasks");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return taskScheduler;
+    }
+    
+    /**
+     * 获取 OS 线程的调度统计：以 {@link #startNativeTasks} 标记的扫描为起点再扫描一次 /proc/self/task，
+     * 按间隔内 CPU 使用率选出 Top N
+     * 
+     * 包含 GC、JIT 编译等 JVM 内部线程；nid 与 top -H、jstack 中的一致，Java 线程附带 Java 线程 ID 和线程名
+     */
+    private String getNativeTasks(int topN) throws Exception {
         Map<String, Object> result = new HashMap<>();
-        result.put("deadlocks", deadlocks);
-        result.put("count", deadlocks.size());
-        result.put("hasDeadlock", !deadlocks.isEmpty());
+        List<Map<String, Object>> tasks = new ArrayList<>();
+        NativeThreadIds nativeIds = NativeThreadIds.getShared();
+        taskReader.scan();
+        long elapsedNanos = Math.max(taskReader.elapsedNanos(), 1);
         
+        TopNHeap heap = new TopNHeap(topN);
+        long totalCpu = 0;
+        long totalWait = 0;
+        boolean unmapped = false;
+        for (int i = 0; i < taskReader.size(); i++) {
+            long cpu = cpuDelta(i);
+            totalCpu += cpu;
+            totalWait += Math.max(waitDelta(i), 0);
+            heap.offer(cpu, i);
+        }
+        heap.sortDescending();
+        for (int i = 0; i < heap.size() && !unmapped; i++) {
+            unmapped = nativeIds.javaThreadId(taskReader.tid(heap.index(i))) < 0;
+        }
+        if (unmapped) {
+            // JVM 内部线程永远不会映射，刷新有最小间隔
+            nativeIds.refresh(false);
+        }
+        
+        long[] switches = new long[2];
+        long[] javaIds = new long[heap.size()];
+        for (int i = 0; i < heap.size(); i++) {
+            int index = heap.index(i);
+            int tid = taskReader.tid(index);
+            long cpu = cpuDelta(index);
+            Map<String, Object> task = new HashMap<>();
+            task.put("tid", tid);
+            task.put("nid", "0x" + Integer.toHexString(tid));
+            task.put("name", taskReader.name(tid));
+            task.put("cpuUsage", (double) cpu / elapsedNanos);
+            task.put("cpuPercent", Math.round(cpu * 10000.0 / elapsedNanos) / 100.0);
+            task.put("cpuTimeMillis", taskReader.cpuNanos(index) / 1_000_000);
+            long wait = waitDelta(index);
+            if (wait >= 0) {
+                task.put("runQueueWaitMillis", wait / 1_000_000.0);
+                task.put("runQueueWaitRatio", (double) wait / elapsedNanos);
+                task.put("timeslices", taskReader.timeslices(index) - markedTimeslices(index));
+            }
+            if (taskReader.readContextSwitches(tid, switches)) {
+                task.put("voluntarySwitches", switches[0]);
+                task.put("involuntarySwitches", switches[1]);
+            }
+            javaIds[i] = nativeIds.javaThreadId(tid);
+            if (javaIds[i] >= 0) {
+                task.put("threadId", javaIds[i]);
+            }
+            tasks.add(task);
+        }
+        addJavaThreadNames(tasks, javaIds);
+        
+        result.put("interval", elapsedNanos / 1_000_000);
+        result.put("taskCount", taskReader.size());
+        result.put("cpuUsage", (double) totalCpu / elapsedNanos);
+        if (taskReader.hasSchedstat()) {
+            result.put("runQueueWaitRatio", (double) totalWait / elapsedNanos);
+        }
+        result.put("schedstat", taskReader.hasSchedstat());
+        result.put("mappedThreads", nativeIds.size());
+        result.put("tasks", tasks);
+        result.put("count", tasks.size());
         return toJson(result);
     }
     
-    private String toJson(Map<String, Object> map) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        int i = 0;
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            if (i > 0) sb.append(",");
-            sb.append("\"").append(entry.getKey()).append("\":");
-            Object value = entry.getValue();
-            if (value == null) {
-                sb.append("null");
-            } else if (value instanceof Map) {
-                sb.append(toJson((Map<String, Object>) value));
-            } else if (value instanceof List) {
-                sb.append(toJson((List<?>) value));
-            } else if (value instanceof String) {
-                sb.append("\"").append(escapeJson((String) value)).append("\"");
-            } else if (value instanceof Number) {
-                sb.append(value);
-            } else if (value instanceof Boolean) {
-                sb.append(value);
-            } else {
-                sb.append("\"").append(escapeJson(value.toString())).append("\"");
+    /**
+     * 间隔内的 CPU 时间增量（纳秒），间隔内新建的线程按累计值计
+     */
+    private long cpuDelta(int index) {
+        int marked = taskReader.markedIndexOf(taskReader.tid(index));
+        long cpu = taskReader.cpuNanos(index);
+        return Math.max(marked >= 0 ? cpu - taskReader.markedCpuNanos(marked) : cpu, 0);
+    }
+    
+    /**
+     * 间隔内的运行队列等待时间增量（纳秒），没有调度统计时返回 -1
+     */
+    private long waitDelta(int index) {
+        long wait = taskReader.waitNanos(index);
+        if (wait < 0) {
+            return -1;
+        }
+        int marked = taskReader.markedIndexOf(taskReader.tid(index));
+        return Math.max(marked >= 0 ? wait - taskReader.markedWaitNanos(marked) : wait, 0);
+    }
+    
+    private long markedTimeslices(int index) {
+        int marked = taskReader.markedIndexOf(taskReader.tid(index));
+        return marked >= 0 ? taskReader.markedTimeslices(marked) : 0;
+    }
+    
+    /**
+     * 一次批量查询为 Java 线程补充线程名和状态
+     */
+    private static void addJavaThreadNames(List<Map<String, Object>> tasks, long[] javaIds) {
+        int count = 0;
+        for (long id : javaIds) {
+            if (id >= 0) {
+                count++;
             }
-            i++;
-        }
-        sb.append("}");
-        return sb.toString();
-    }
-    
-    private String toJson(List<?> list) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-        for (int i = 0; i < list.size(); i++) {
-            if (i > 0) sb.append(",");
-            Object value = list.get(i);
-            if (value instanceof Map) {
-                sb.append(toJson((Map<String, Object>) value));
-            } else if (value instanceof String) {
-                sb.append("\"").append(escapeJson((String) value)).append("\"");
-            } else {
-                sb.append(value);
+        }
+        if (count == 0) {
+            return;
+        }
+        long[] ids = new long[count];
+        int[] positions = new int[count];
+        for (int i = 0, j = 0; i < javaIds.length; i++) {
+            if (javaIds[i] >= 0) {
+                ids[j] = javaIds[i];
+                positions[j++] = i;
+            }
+        }
+        ThreadInfo[] infos = ManagementFactory.getThreadMXBean().getThreadInfo(ids, 0);
+        for (int j = 0; j < count; j++) {
+            if (infos[j] != null) {
+                tasks.get(positions[j]).put("javaName", infos[j].getThreadName());
+                tasks.get(positions[j]).put("state", infos[j].getThreadState().name());
             }
         }
-        sb.append("]");
-        return sb.toString();
     }
     
-    private String escapeJson(String s) {
-        if (s == null) return "";
-        return s.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
+    /**
+     * 获取死锁线程列表
+     */
+    private String getDeadlockedThreads(boolean force) {
+        DeadlockDetector.Result detection = collector.checkDeadlocks(force);
+        List<Map<String, Object>> deadlocks = collector.getDeadlockedThreads(detection);
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("deadlocks", deadlocks);
+        result.put("count", deadlocks.size());
+        result.put("hasDeadlock", !deadlocks.isEmpty());
+        result.put("blockedThreads", detection.getBlockedThreads());
+        result.put("checkedAt", detection.getCheckedAt());
+        result.put("censusAt", detection.getCensusAt());
+        
+        return toJson(result);
     }
 }
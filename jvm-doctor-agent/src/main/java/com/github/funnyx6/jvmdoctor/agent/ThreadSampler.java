@@ -0,0 +1,258 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * 线程批量采样
+ *
+ * 对所有线程只做一次 MXBean 调用：
+ * - getThreadInfo(long[], maxDepth)，maxDepth 为 0 时不抓堆栈，HotSpot 也无需进入安全点
+ * - com.sun.management.ThreadMXBean 的批量 getThreadCpuTime(long[]) / getThreadUserTime(long[])
+ *   / getThreadAllocatedBytes(long[])
+ * 不支持批量接口的 JVM 退化为逐线程调用。
+ *
+ * 线程数达到阈值时（Linux），CPU 时间可改为扫描 /proc/self/task 读取（见 {@link TaskStatReader}），
+ * 按 {@link NativeThreadIds} 把 TID 对应到 Java 线程；尚未映射的线程逐个走 MXBean，并触发一次（限频的）映射刷新。
+ * 两条路径的开销因内核和虚拟化环境而异（打开 /proc 文件在部分虚拟机中很慢），达到阈值后各测一次每线程耗时，
+ * 之后使用较快的一条，较慢的是 /proc 时每 {@value #PROC_REPROBE_CALLS} 次重新测一次。
+ */
+public class ThreadSampler {
+
+    private final ThreadMXBean threadMXBean;
+    private final com.sun.management.ThreadMXBean sunThreadMXBean;
+    private final Method isDaemonMethod;
+    // /proc 读取路径，非 Linux 或阈值为 0 时为 null
+    private final TaskStatReader taskReader;
+    private final int procThreshold;
+    private final NativeThreadIds nativeIds = NativeThreadIds.getShared();
+    private volatile boolean procActive;
+    private static final int PROC_REPROBE_CALLS = 30;
+    // 两条路径最近一次的每线程耗时（纳秒），-1 表示尚未测量
+    private volatile long procNanosPerThread = -1;
+    private volatile long mxbeanNanosPerThread = -1;
+    private int slowerProcCalls;
+
+    public ThreadSampler() {
+        this(ManagementFactory.getThreadMXBean());
+    }
+
+    public ThreadSampler(ThreadMXBean threadMXBean) {
+        this(threadMXBean, 0);
+    }
+
+    /**
+     * @param procThreshold 线程数达到该值时通过 /proc/self/task 读取 CPU 时间，0 表示始终使用 MXBean
+     */
+    public ThreadSampler(ThreadMXBean threadMXBean, int procThreshold) {
+        this(threadMXBean, procThreshold > 0 && TaskStatReader.isSupported() ? new TaskStatReader() : null,
+                procThreshold);
+    }
+
+    ThreadSampler(ThreadMXBean threadMXBean, TaskStatReader taskReader, int procThreshold) {
+        this.threadMXBean = threadMXBean;
+        this.sunThreadMXBean = threadMXBean instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threadMXBean : null;
+        this.isDaemonMethod = findIsDaemonMethod();
+        this.taskReader = taskReader;
+        this.procThreshold = procThreshold;
+    }
+
+    /**
+     * 最近一次批量获取 CPU 时间是否走了 /proc 路径
+     */
+    public boolean isProcActive() {
+        return procActive;
+    }
+
+    public ThreadMXBean getThreadMXBean() {
+        return threadMXBean;
+    }
+
+    /**
+     * 是否支持批量 CPU 时间接口
+     */
+    public boolean isBulkCpuTimeSupported() {
+        return sunThreadMXBean != null && isCpuTimeEnabled();
+    }
+
+    /**
+     * 获取所有存活线程 ID
+     */
+    public long[] threadIds() {
+        return threadMXBean.getAllThreadIds();
+    }
+
+    /**
+     * 批量获取线程信息
+     *
+     * @param threadIds 线程 ID
+     * @param maxDepth 堆栈深度，0 表示不抓堆栈
+     * @return 与 threadIds 一一对应，已退出的线程为 null
+     */
+    public ThreadInfo[] threadInfos(long[] threadIds, int maxDepth) {
+        return threadMXBean.getThreadInfo(threadIds, Math.max(0, maxDepth));
+    }
+
+    /**
+     * 批量获取线程 CPU 时间（纳秒），不可用时为 -1
+     */
+    public long[] cpuTimes(long[] threadIds) {
+        boolean aboveThreshold = taskReader != null && threadIds.length >= procThreshold;
+        if (aboveThreshold && preferProc()) {
+            long start = System.nanoTime();
+            long[] times = procCpuTimes(threadIds);
+            procActive = times != null;
+            if (times != null) {
+                procNanosPerThread = (System.nanoTime() - start) / threadIds.length;
+                return times;
+            }
+        } else {
+            procActive = false;
+        }
+        if (!isCpuTimeEnabled()) {
+            return filled(threadIds.length, -1);
+        }
+        if (sunThreadMXBean != null) {
+            long start = System.nanoTime();
+            long[] times = sunThreadMXBean.getThreadCpuTime(threadIds);
+            if (aboveThreshold) {
+                mxbeanNanosPerThread = (System.nanoTime() - start) / threadIds.length;
+            }
+            return times;
+        }
+        long[] times = new long[threadIds.length];
+        for (int i = 0; i < threadIds.length; i++) {
+            times[i] = threadMXBean.getThreadCpuTime(threadIds[i]);
+        }
+        return times;
+    }
+
+    /**
+     * 按两条路径测得的耗时选择是否走 /proc
+     */
+    private boolean preferProc() {
+        long proc = procNanosPerThread;
+        long mxbean = mxbeanNanosPerThread;
+        if (proc < 0) {
+            return true;
+        }
+        if (mxbean < 0) {
+            return sunThreadMXBean == null;
+        }
+        if (proc <= mxbean) {
+            return true;
+        }
+        return ++slowerProcCalls % PROC_REPROBE_CALLS == 0;
+    }
+
+    /**
+     * 扫描 /proc/self/task 获取 CPU 时间，扫描失败时返回 null
+     */
+    private long[] procCpuTimes(long[] threadIds) {
+        long[] times = new long[threadIds.length];
+        int unmapped = 0;
+        synchronized (taskReader) {
+            try {
+                taskReader.scan();
+            } catch (Exception e) {
+                return null;
+            }
+            for (int i = 0; i < threadIds.length; i++) {
+                int tid = nativeIds.nativeId(threadIds[i]);
+                int index = tid > 0 ? taskReader.indexOf(tid) : -1;
+                if (index >= 0) {
+                    times[i] = taskReader.cpuNanos(index);
+                } else {
+                    // 新线程尚未映射（或映射后已退出）
+                    times[i] = isCpuTimeEnabled() ? threadMXBean.getThreadCpuTime(threadIds[i]) : -1;
+                    unmapped++;
+                }
+            }
+        }
+        if (unmapped > 0) {
+            nativeIds.refresh(false);
+        }
+        return times;
+    }
+
+    /**
+     * 批量获取线程用户态 CPU 时间（纳秒），不可用时为 -1
+     */
+    public long[] userTimes(long[] threadIds) {
+        if (!isCpuTimeEnabled()) {
+            return filled(threadIds.length, -1);
+        }
+        if (sunThreadMXBean != null) {
+            return sunThreadMXBean.getThreadUserTime(threadIds);
+        }
+        long[] times = new long[threadIds.length];
+        for (int i = 0; i < threadIds.length; i++) {
+            times[i] = threadMXBean.getThreadUserTime(threadIds[i]);
+        }
+        return times;
+    }
+
+    /**
+     * 是否支持线程分配字节数统计
+     */
+    public boolean isAllocatedMemorySupported() {
+        return sunThreadMXBean != null
+                && sunThreadMXBean.isThreadAllocatedMemorySupported()
+                && sunThreadMXBean.isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * 批量获取线程累计分配字节数，不可用时为 -1
+     */
+    public long[] allocatedBytes(long[] threadIds) {
+        if (!isAllocatedMemorySupported()) {
+            return filled(threadIds.length, -1);
+        }
+        return sunThreadMXBean.getThreadAllocatedBytes(threadIds);
+    }
+
+    /**
+     * 单个线程的 CPU 时间（纳秒），不可用时为 -1
+     */
+    public long cpuTime(long threadId) {
+        return isCpuTimeEnabled() ? threadMXBean.getThreadCpuTime(threadId) : -1;
+    }
+
+    /**
+     * 线程是否为守护线程
+     *
+     * ThreadInfo.isDaemon 在 JDK 9 才加入，JDK 8 上返回 null
+     */
+    public Boolean isDaemon(ThreadInfo threadInfo) {
+        if (isDaemonMethod == null) {
+            return null;
+        }
+        try {
+            return (Boolean) isDaemonMethod.invoke(threadInfo);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private boolean isCpuTimeEnabled() {
+        return threadMXBean.isThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled();
+    }
+
+    private static long[] filled(int length, long value) {
+        long[] values = new long[length];
+        Arrays.fill(values, value);
+        return values;
+    }
+
+    private static Method findIsDaemonMethod() {
+        try {
+            return ThreadInfo.class.getMethod("isDaemon");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package com.github.funnyx6.jvmdoctor.agent;
 
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 线程信息 HTTP Server
@@ -16,13 +18,24 @@ public class ThreadServer {
     private static volatile HttpServer server;
     private static volatile int port = 0; // 0 表示随机端口
     
+    /**
+     * 启动 HTTP 服务器（使用默认配置）
+     * 
+     * @param port 端口，0 表示随机端口
+     * @return 实际启动的端口
+     */
+    public static int start(int port) {
+        return start(port, new AgentConfig());
+    }
+    
     /**
      * 启动 HTTP 服务器
      * 
      * @param port 端口，0 表示随机端口
+     * @param config Agent 配置
      * @return 实际启动的端口
      */
-    public static synchronized int start(int port) {
+    public static synchronized int start(int port, AgentConfig config) {
         if (server != null) {
             return port;
         }
@@ -31,9 +44,32 @@ public class ThreadServer {
             ThreadServer.port = port;
             server = HttpServer.create(new InetSocketAddress(port), 0);
             
-            // 注册线程相关 API
-            server.createContext("/api/threads", new ThreadHandler());
-            server.createContext("/api/deadlock", new ThreadHandler());
+            // 注册线程相关 API（共用一个 Handler，/proc/self/task 读取器只有一份）
+            ThreadHandler threadHandler = new ThreadHandler();
+            server.createContext("/api/threads", metered("api.threads", threadHandler));
+            server.createContext("/api/deadlock", metered("api.deadlock", threadHandler));
+            
+            // 采样剖析
+            server.createContext("/api/profiler",
+                    metered("api.profiler", new ProfilerHandler(new SamplingProfiler(config))));
+            
+            // 锁竞争
+            server.createContext("/api/contention", metered("api.contention", new ContentionHandler(config)));
+            
+            // 类直方图趋势（泄漏嫌疑类）
+            server.createContext("/api/histogram", metered("api.histogram", new HistogramHandler(config)));
+            
+            // 按需堆转储（后台转储并分块上传到 Server）
+            server.createContext("/api/heapdump", metered("api.heapdump", new HeapDumpHandler(config)));
+            
+            // Native Memory Tracking 汇总与基线对比
+            server.createContext("/api/nmt", metered("api.nmt", new NativeMemoryHandler(config)));
+            
+            // 开销预算状态
+            server.createContext("/api/governor", new GovernorHandler());
+            
+            // Agent 自监控
+            server.createContext("/api/agent", new AgentHandler());
             
             // 健康检查
             server.createContext("/api/health", exchange -> {
@@ -45,7 +81,13 @@ public class ThreadServer {
                 }
             });
             
-            server.setExecutor(Executors.newFixedThreadPool(4));
+            // 线程名带 Agent 前缀，计入 Agent 自身的 CPU 和分配统计
+            AtomicInteger threadIndex = new AtomicInteger();
+            server.setExecutor(Executors.newFixedThreadPool(4, r -> {
+                Thread t = new Thread(r, AgentTelemetry.THREAD_PREFIX + "-http-" + threadIndex.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }));
             server.start();
             
             int actualPort = server.getAddress().getPort();
@@ -59,6 +101,23 @@ public class ThreadServer {
         }
     }
     
+    /**
+     * 按请求计入开销账户（按需调用的接口不限流）
+     */
+    private static HttpHandler metered(String name, HttpHandler handler) {
+        OverheadGovernor.Account account = OverheadGovernor.account(name, 0);
+        return exchange -> {
+            long cpuStart = OverheadGovernor.threadCpuTime();
+            long allocStart = OverheadGovernor.threadAllocatedBytes();
+            long startNanos = System.nanoTime();
+            try {
+                handler.handle(exchange);
+            } finally {
+                account.record(startNanos, cpuStart, allocStart);
+            }
+        };
+    }
+    
     /**
      * 停止服务器
      */
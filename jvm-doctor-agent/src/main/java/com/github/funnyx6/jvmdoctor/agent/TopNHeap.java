@@ -0,0 +1,103 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+/**
+ * 有界小顶堆，用于 Top-N 选择
+ *
+ * 只保留得分最高的 N 个下标，复杂度 O(M log N)，不对全部候选排序。
+ * 使用原始类型数组，可通过 {@link #clear()} 复用。非线程安全。
+ */
+public class TopNHeap {
+
+    private final double[] scores;
+    private final int[] indexes;
+    private int size;
+
+    public TopNHeap(int capacity) {
+        this.scores = new double[Math.max(capacity, 1)];
+        this.indexes = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * 提交一个候选
+     *
+     * @param score 得分
+     * @param index 候选下标（由调用方解释）
+     */
+    public void offer(double score, int index) {
+        if (size < scores.length) {
+            scores[size] = score;
+            indexes[size] = index;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            scores[0] = score;
+            indexes[0] = index;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * 原地按得分降序排列，之后可按 0..size-1 读取
+     */
+    public void sortDescending() {
+        // 堆排序：依次把堆顶（最小值）换到末尾
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double score(int i) {
+        return scores[i];
+    }
+
+    public int index(int i) {
+        return indexes[i];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[i] >= scores[parent]) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int limit) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= limit) {
+                break;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < limit && scores[right] < scores[left]) {
+                smallest = right;
+            }
+            if (scores[i] <= scores[smallest]) {
+                break;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        double s = scores[a];
+        scores[a] = scores[b];
+        scores[b] = s;
+        int x = indexes[a];
+        indexes[a] = indexes[b];
+        indexes[b] = x;
+    }
+}
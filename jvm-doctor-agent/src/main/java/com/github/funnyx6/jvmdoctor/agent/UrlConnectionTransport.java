@@ -0,0 +1,61 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * 基于 HttpURLConnection 的传输（transport=url，默认实现）
+ *
+ * 走 JDK 的代理、认证和重定向设置。每次都读完并关闭响应流，连接才会回到 JDK 的 keep-alive 缓存。
+ * 缓存按 Server 响应头 Keep-Alive: timeout=N 保留空闲连接，jvm-doctor-web 声明 60 秒，长于默认上报间隔；
+ * Server 未声明时 JDK 只保留 5 秒，上报间隔更长时每次都要重新建连，此时可改用 transport=pooled。
+ */
+public class UrlConnectionTransport extends HttpTransport {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+
+    public UrlConnectionTransport(AgentConfig config) {
+        super(config);
+    }
+
+    @Override
+    protected Response exchange(String method, String path, String contentType, String encoding,
+                                byte[] body, int length) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(serverUrl + path).openConnection();
+        conn.setRequestMethod(method);
+        conn.setRequestProperty("Content-Type", contentType);
+        conn.setRequestProperty(CLOCK_HEADER, Long.toString(System.currentTimeMillis()));
+        if (encoding != null) {
+            conn.setRequestProperty("Content-Encoding", encoding);
+        }
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(length);
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+
+        try (OutputStream os = conn.getOutputStream()) {
+            os.write(body, 0, length);
+        }
+
+        int status = conn.getResponseCode();
+        InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+        return new Response(status, in == null ? new byte[0] : readAll(in));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream is = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = is.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
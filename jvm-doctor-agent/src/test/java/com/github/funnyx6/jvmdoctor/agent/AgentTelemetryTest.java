@@ -0,0 +1,80 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AgentTelemetry / AgentProbe 单元测试
+ */
+class AgentTelemetryTest {
+
+    @Test
+    void testProbeReportsAccountDurationsAndReportCounters() {
+        AgentTelemetry telemetry = new AgentTelemetry(new ThreadSampler());
+        MetricRegistry registry = new MetricRegistry();
+        AgentProbe probe = new AgentProbe(telemetry, registry);
+
+        // 探针创建后才注册的账户，下次采集时动态注册指标
+        OverheadGovernor.Account account = OverheadGovernor.account("test.telemetry", 0);
+        for (int i = 0; i < 3; i++) {
+            account.record(System.nanoTime() - 2_000_000L, OverheadGovernor.threadCpuTime(),
+                    OverheadGovernor.threadAllocatedBytes());
+        }
+        telemetry.recordReport(1200, true);
+        telemetry.recordRetry();
+        telemetry.recordReport(800, false);
+
+        MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+        probe.collect(snapshot);
+        assertEquals(3, snapshot.getLong(registry.idOf("agent.test.telemetry.duration.count")));
+        long p50 = snapshot.getLong(registry.idOf("agent.test.telemetry.duration.p50"));
+        assertTrue(p50 >= 1800 && p50 < 1_000_000, "p50 micros: " + p50);
+        assertEquals(800, snapshot.getLong(registry.idOf("agent.payload.bytes")));
+        assertEquals(1, snapshot.getLong(registry.idOf("agent.report.failed")));
+        assertEquals(1, snapshot.getLong(registry.idOf("agent.report.retried")));
+
+        // 区间指标：没有新的执行和失败时不再重复计数
+        snapshot.reset(System.currentTimeMillis());
+        probe.collect(snapshot);
+        assertFalse(snapshot.isPresent(registry.idOf("agent.test.telemetry.duration.count")));
+        assertEquals(0, snapshot.getLong(registry.idOf("agent.report.failed")));
+        assertTrue(snapshot.isPresent(registry.idOf("agent.cpu.usage")));
+
+        assertEquals(2, telemetry.getReports());
+        assertEquals(2000, telemetry.getPayloadBytes());
+    }
+
+    @Test
+    void testThreadUsageCountsOnlyAgentThreads() throws Exception {
+        ThreadSampler sampler = new ThreadSampler();
+        AgentTelemetry telemetry = new AgentTelemetry(sampler);
+
+        CountDownLatch release = new CountDownLatch(1);
+        Thread agentThread = new Thread(() -> awaitQuietly(release), AgentTelemetry.THREAD_PREFIX + "-test");
+        Thread appThread = new Thread(() -> awaitQuietly(release), "app-test");
+        agentThread.start();
+        appThread.start();
+        try {
+            AgentTelemetry.ThreadUsage usage = telemetry.threadUsage();
+            // 至少包含 jvm-doctor-test，不包含 main 和 app-test
+            assertTrue(usage.getThreadCount() >= 1);
+            assertTrue(usage.getThreadCount() <= sampler.threadIds().length - 2);
+            assertTrue(usage.getCpuNanos() >= -1);
+        } finally {
+            release.countDown();
+            agentThread.join(1000);
+            appThread.join(1000);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
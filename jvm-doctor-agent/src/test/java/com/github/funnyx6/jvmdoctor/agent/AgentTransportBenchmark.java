@@ -0,0 +1,131 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.github.funnyx6.jvmdoctor.agent.AgentTransportTest.FakeServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 传输基准：按真实上报间隔发送，比较每个样本的握手次数和请求字节数
+ *
+ * 耗时为 样本数 × 上报间隔（默认 5 × 30 秒），不在默认测试中运行：
+ * <pre>
+ * mvn -Pbenchmark test -pl jvm-doctor-agent -am
+ * mvn -Pbenchmark test -pl jvm-doctor-agent -am -Dbenchmark.samples=10 -Dbenchmark.interval=60
+ * </pre>
+ * 各传输在各自的模拟 Server 上并行运行，连接在两次上报之间空闲一个完整的上报间隔。
+ */
+class AgentTransportBenchmark {
+
+    static {
+        // JDK 内置 HttpServer 默认 30 秒回收空闲连接，放宽到长于上报间隔，只由客户端决定是否复用
+        System.setProperty("sun.net.httpserver.idleInterval", "600");
+    }
+
+    private static final int SAMPLES = Integer.getInteger("benchmark.samples", 5);
+    private static final int INTERVAL_SECONDS = Integer.getInteger("benchmark.interval",
+            AgentConfig.parse("").getReportInterval());
+
+    /**
+     * 一种传输与其专用的模拟 Server
+     */
+    private static final class Arm {
+        final String name;
+        final FakeServer server = new FakeServer();
+        // 为 null 时按改造前的方式发送
+        final Function<AgentConfig, AgentTransport> factory;
+
+        Arm(String name, int keepAliveSeconds, Function<AgentConfig, AgentTransport> factory) {
+            this.name = name;
+            this.server.keepAliveSeconds = keepAliveSeconds;
+            this.factory = factory;
+        }
+
+        void run(MetricsJsonEncoder payload) throws Exception {
+            String url = server.start();
+            AgentTransport transport = factory == null ? null : factory.apply(AgentTransportTest.config(url, ""));
+            try {
+                for (int i = 0; i < SAMPLES; i++) {
+                    if (i > 0) {
+                        Thread.sleep(INTERVAL_SECONDS * 1000L);
+                    }
+                    boolean ok = transport == null
+                            ? legacyPost(url + "/api/metrics", payload) == 200
+                            : transport.post("/api/metrics", "application/json", payload.buffer(), payload.length()).isOk();
+                    assertTrue(ok, name + " sample " + i);
+                }
+            } finally {
+                if (transport != null) {
+                    transport.close();
+                }
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    void testHandshakesAtReportInterval() throws Exception {
+        MetricsJsonEncoder payload = AgentTransportTest.samplePayload();
+        Arm legacy = new Arm("legacy", 0, null);
+        Arm url = new Arm("url", 0, UrlConnectionTransport::new);
+        Arm urlKeepAlive = new Arm("url+ka", 60, UrlConnectionTransport::new);
+        Arm pooled = new Arm("pooled", 0, PooledHttpTransport::new);
+        List<Arm> arms = Arrays.asList(legacy, url, urlKeepAlive, pooled);
+
+        ExecutorService executor = Executors.newFixedThreadPool(arms.size());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Arm arm : arms) {
+                futures.add(executor.submit(() -> {
+                    arm.run(payload);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        System.out.println(String.format("[AgentTransportBenchmark] %d samples every %ds, payload %d bytes",
+                SAMPLES, INTERVAL_SECONDS, payload.length()));
+        for (Arm arm : arms) {
+            System.out.println(String.format("[AgentTransportBenchmark] %-8s handshakes/sample=%.2f bytes/sample=%d",
+                    arm.name, (double) arm.server.connections.size() / SAMPLES, arm.server.wireBytes.get() / SAMPLES));
+        }
+
+        // Server 声明的 Keep-Alive 超时长于上报间隔时，HttpURLConnection 全程只建一次连接
+        if (INTERVAL_SECONDS < urlKeepAlive.server.keepAliveSeconds) {
+            assertEquals(1, urlKeepAlive.server.connections.size());
+        }
+    }
+
+    /**
+     * 改造前 MetricsReporter.postMetrics 的行为：每次新建 HttpURLConnection，不读取也不关闭响应流
+     */
+    private static int legacyPost(String url, MetricsJsonEncoder payload) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "application/json");
+        conn.setDoOutput(true);
+        conn.setConnectTimeout(5000);
+        conn.setReadTimeout(10000);
+        try (OutputStream os = conn.getOutputStream()) {
+            os.write(payload.buffer(), 0, payload.length());
+        }
+        return conn.getResponseCode();
+    }
+}
@@ -0,0 +1,281 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.github.funnyx6.jvmdoctor.core.GcTelemetry;
+import com.github.funnyx6.jvmdoctor.core.MemoryPoolMonitor;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AgentTransport 单元测试（本地模拟 Server，统计连接数和线上字节数）
+ *
+ * 按真实上报间隔比较各传输握手次数的基准见 {@link AgentTransportBenchmark}。
+ */
+class AgentTransportTest {
+
+    /**
+     * 统计每个请求的来源连接和请求字节数（请求行 + 头部 + 请求体），并校验 gzip 请求体
+     */
+    static final class FakeServer {
+        final Set<SocketAddress> connections = ConcurrentHashMap.newKeySet();
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicLong wireBytes = new AtomicLong();
+        final AtomicInteger failures = new AtomicInteger();
+        // 大于 0 时在响应中声明 Keep-Alive: timeout=N（与 jvm-doctor-web 的内嵌 Tomcat 一致）
+        volatile int keepAliveSeconds;
+        volatile byte[] lastBody;
+        HttpServer server;
+
+        String start() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/api/", this::handle);
+            server.start();
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        void handle(HttpExchange exchange) throws IOException {
+            connections.add(exchange.getRemoteAddress());
+            requests.incrementAndGet();
+            byte[] raw = readAll(exchange.getRequestBody());
+            long bytes = exchange.getRequestMethod().length() + exchange.getRequestURI().toString().length() + 12;
+            Headers headers = exchange.getRequestHeaders();
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                for (String value : header.getValue()) {
+                    bytes += header.getKey().length() + 2 + value.length() + 2;
+                }
+            }
+            wireBytes.addAndGet(bytes + 2 + raw.length);
+            boolean gzip = "gzip".equals(headers.getFirst("Content-Encoding"));
+            lastBody = gzip ? readAll(new GZIPInputStream(new ByteArrayInputStream(raw))) : raw;
+            if (keepAliveSeconds > 0) {
+                // 与 Tomcat 一致：HttpURLConnection 只在有 Connection: keep-alive 时读取 Keep-Alive 头
+                exchange.getResponseHeaders().set("Connection", "keep-alive");
+                exchange.getResponseHeaders().set("Keep-Alive", "timeout=" + keepAliveSeconds);
+            }
+            if (failures.getAndDecrement() > 0) {
+                respond(exchange, 503, "{}");
+                return;
+            }
+            respond(exchange, 200, "{\"status\":\"ok\"}");
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    static AgentConfig config(String serverUrl, String extra) {
+        return AgentConfig.parse("server=" + serverUrl + (extra.isEmpty() ? "" : "," + extra));
+    }
+
+    /**
+     * 接近真实上报的请求体：与 MetricsReporter 相同的常驻探针（GC、内存池、进程内存、容器、Agent 自监控）
+     */
+    static MetricsJsonEncoder samplePayload() throws InterruptedException {
+        MetricsCollector collector = new MetricsCollector();
+        GcTelemetry gc = new GcTelemetry();
+        if (gc.start()) {
+            collector.addProbe("gc", new GcProbe(gc, collector.getRegistry()));
+        }
+        collector.addProbe("memory.pool", new MemoryPoolProbe(new MemoryPoolMonitor(), collector.getRegistry()));
+        if (ProcessMemoryProbe.isSupported()) {
+            collector.addProbe("process.memory", new ProcessMemoryProbe(collector.getRegistry()));
+        }
+        if (collector.getCgroup() != null) {
+            collector.addProbe("cgroup", new CgroupProbe(collector.getCgroup(), collector.getRegistry()));
+        }
+        collector.addProbe("agent", new AgentProbe(AgentTelemetry.getShared(), collector.getRegistry()));
+        MetricsSnapshot snapshot = new MetricsSnapshot(collector.getRegistry());
+        // 第二次采集才有区间类指标
+        collector.collect(snapshot);
+        System.gc();
+        Thread.sleep(50);
+        snapshot = new MetricsSnapshot(collector.getRegistry());
+        collector.collect(snapshot);
+        collector.closeProbes();
+        MetricsJsonEncoder encoder = new MetricsJsonEncoder();
+        encoder.encode(1, System.currentTimeMillis() * 1000, snapshot, null);
+        return encoder;
+    }
+
+    @Test
+    void testPooledReusesConnectionAndCompresses() throws Exception {
+        FakeServer server = new FakeServer();
+        String url = server.start();
+        PooledHttpTransport transport = new PooledHttpTransport(config(url, "transport.gzip.min=64"));
+        try {
+            byte[] body = new byte[2048];
+            for (int i = 0; i < body.length; i++) {
+                body[i] = (byte) ('a' + i % 7);
+            }
+            for (int i = 0; i < 10; i++) {
+                AgentTransport.Response response = transport.post("/api/metrics", "application/json", body, body.length);
+                assertTrue(response.isOk());
+                assertEquals("{\"status\":\"ok\"}", response.bodyAsString());
+                assertArrayEquals(body, server.lastBody);
+            }
+            assertEquals(1, server.connections.size());
+            assertEquals(1, transport.getConnects());
+            assertEquals(9, transport.getReuses());
+
+            // 小于阈值不压缩
+            byte[] small = "{}".getBytes(StandardCharsets.UTF_8);
+            assertTrue(transport.post("/api/metrics", "application/json", small, small.length).isOk());
+            assertArrayEquals(small, server.lastBody);
+        } finally {
+            transport.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    void testUrlTransportReusesConnection() throws Exception {
+        FakeServer server = new FakeServer();
+        server.keepAliveSeconds = 60;
+        AgentTransport transport = new UrlConnectionTransport(config(server.start(), "transport.gzip.min=64"));
+        try {
+            MetricsJsonEncoder payload = samplePayload();
+            for (int i = 0; i < 10; i++) {
+                assertTrue(transport.post("/api/metrics", "application/json", payload.buffer(), payload.length()).isOk());
+            }
+            assertArrayEquals(Arrays.copyOf(payload.buffer(), payload.length()), server.lastBody);
+            assertEquals(1, server.connections.size());
+        } finally {
+            transport.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    void testRetriesTransientStatusWithBackoff() throws Exception {
+        FakeServer server = new FakeServer();
+        String url = server.start();
+        PooledHttpTransport transport = new PooledHttpTransport(
+                config(url, "transport.retries=2,transport.backoff.max=150"));
+        try {
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            server.failures.set(2);
+            long start = System.nanoTime();
+            assertTrue(transport.post("/api/metrics", "application/json", body, body.length).isOk());
+            // 100ms + min(200ms, 150ms)
+            assertTrue(System.nanoTime() - start >= 240_000_000L);
+            assertEquals(3, server.requests.get());
+
+            // 重试用尽后返回最后一次的状态
+            server.failures.set(5);
+            assertEquals(503, transport.post("/api/metrics", "application/json", body, body.length).getStatus());
+        } finally {
+            transport.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    void testReconnectsWhenIdleConnectionClosedAndReadsChunked() throws Exception {
+        // 每条连接只应答一次（chunked），之后不声明 Connection: close 直接关闭，模拟 Server 回收空闲连接
+        ServerSocket listener = new ServerSocket(0, 50, java.net.InetAddress.getByName("127.0.0.1"));
+        AtomicInteger accepted = new AtomicInteger();
+        Thread acceptor = new Thread(() -> {
+            while (!listener.isClosed()) {
+                try (Socket socket = listener.accept()) {
+                    accepted.incrementAndGet();
+                    InputStream in = socket.getInputStream();
+                    int contentLength = 0;
+                    StringBuilder line = new StringBuilder();
+                    int b;
+                    while ((b = in.read()) >= 0) {
+                        if (b == '\n') {
+                            String header = line.toString().trim();
+                            if (header.isEmpty()) {
+                                break;
+                            }
+                            if (header.toLowerCase().startsWith("content-length:")) {
+                                contentLength = Integer.parseInt(header.substring(15).trim());
+                            }
+                            line.setLength(0);
+                        } else {
+                            line.append((char) b);
+                        }
+                    }
+                    for (int i = 0; i < contentLength; i++) {
+                        in.read();
+                    }
+                    socket.getOutputStream().write(("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                            + "5;ext=1\r\nhello\r\n6\r\n world\r\n0\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                    socket.getOutputStream().flush();
+                } catch (IOException e) {
+                    // 关闭监听
+                }
+            }
+        }, "fake-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        PooledHttpTransport transport = new PooledHttpTransport(
+                config("http://127.0.0.1:" + listener.getLocalPort(), "transport.retries=0"));
+        try {
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < 3; i++) {
+                AgentTransport.Response response = transport.post("/api/metrics", "application/json", body, body.length);
+                assertEquals("hello world", response.bodyAsString());
+            }
+            // 复用失败后立即换新连接，不计入重试
+            assertEquals(3, transport.getConnects());
+            assertEquals(3, accepted.get());
+        } finally {
+            transport.close();
+            listener.close();
+        }
+    }
+
+    @Test
+    void testCreateFromConfig() {
+        assertTrue(AgentTransport.create(config("http://127.0.0.1:1", "")) instanceof UrlConnectionTransport);
+        assertTrue(AgentTransport.create(config("http://127.0.0.1:1", "transport=pooled")) instanceof PooledHttpTransport);
+        assertTrue(AgentTransport.create(config("http://127.0.0.1:1",
+                "transport=" + UrlConnectionTransport.class.getName())) instanceof UrlConnectionTransport);
+        // 无法创建时退回默认实现
+        assertTrue(AgentTransport.create(config("http://127.0.0.1:1", "transport=no.such.Transport"))
+                instanceof UrlConnectionTransport);
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.github.funnyx6.jvmdoctor.agent.AgentTransportTest.FakeServer;
+import com.github.funnyx6.jvmdoctor.core.MemoryPoolMonitor;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AlertSender 单元测试
+ */
+class AlertSenderTest {
+
+    @Test
+    void testEncodeAlertEscapesControlCharacters() {
+        MetricsJsonEncoder encoder = new MetricsJsonEncoder();
+        encoder.encodeAlert(7, "memory_threshold", "warning", "Pool \"A\"\\\u0001", "line1\nline2\u001f", 123);
+
+        assertEquals("{\"appId\":7,\"alertType\":\"memory_threshold\",\"alertLevel\":\"warning\""
+                + ",\"source\":\"Pool \\\"A\\\"\\\\\\u0001\",\"alertMsg\":\"line1\\nline2\\u001f\""
+                + ",\"timestamp\":123}", encoder.toString());
+
+        encoder.encodeAlert(7, "memory_threshold", "warning", null, "msg", 1);
+        assertTrue(encoder.toString().contains("\"source\":null"));
+    }
+
+    @Test
+    void testRetriesUntilServerRecovers() throws Exception {
+        FakeServer server = new FakeServer();
+        String url = server.start();
+        // 传输本身不重试，只验证告警线程的重发
+        AgentTransport transport = new UrlConnectionTransport(AgentTransportTest.config(url, "transport.retries=0"));
+        AlertSender alerts = new AlertSender(transport, () -> 1L, 50);
+        try {
+            server.failures.set(3);
+            alerts.send(event("G1 Old Gen", 100));
+            alerts.send(event("G1 Eden Space", 200));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (alerts.getSent() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, alerts.getSent());
+            assertEquals(0, alerts.getPending());
+            assertEquals(0, alerts.getDropped());
+            // 3 次失败 + 2 次成功，按产生顺序送达
+            assertEquals(5, server.requests.get());
+            String last = new String(server.lastBody, StandardCharsets.UTF_8);
+            assertTrue(last.contains("\"source\":\"G1 Eden Space\""), last);
+            assertTrue(last.contains("\"timestamp\":200"), last);
+        } finally {
+            alerts.close();
+            transport.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    void testQueueDropsOldestWhenFull() throws Exception {
+        FakeServer server = new FakeServer();
+        String url = server.start();
+        AgentTransport transport = new UrlConnectionTransport(AgentTransportTest.config(url, "transport.retries=0"));
+        AlertSender alerts = new AlertSender(transport, () -> 1L, 60_000);
+        try {
+            server.failures.set(Integer.MAX_VALUE);
+            for (int i = 0; i < AlertSender.MAX_PENDING + 3; i++) {
+                alerts.send(event("pool-" + i, i));
+            }
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (alerts.getDropped() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(3, alerts.getDropped());
+            assertEquals(AlertSender.MAX_PENDING, alerts.getPending());
+            // 等待重发期间新告警只排队，不逐条发送
+            assertEquals(1, server.requests.get());
+        } finally {
+            alerts.close();
+            transport.close();
+            server.stop();
+        }
+    }
+
+    private static MemoryPoolMonitor.ThresholdEvent event(String pool, long timestamp) {
+        return new MemoryPoolMonitor.ThresholdEvent(pool, MemoryPoolMonitor.ThresholdType.COLLECTION,
+                900, 1000, 800, 1, timestamp);
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cgroup / CgroupProbe 单元测试（在临时目录中模拟 cgroup 文件）
+ */
+class CgroupTest {
+
+    private static void write(Path dir, String file, String content) throws IOException {
+        Files.write(dir.resolve(file), content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void testCgroupV2() throws Exception {
+        Path dir = Files.createTempDirectory("cgroup-v2");
+        Path app = Files.createDirectory(dir.resolve("app.slice"));
+        write(app, "cpu.max", "150000 100000\n");
+        write(app, "cpu.stat", "usage_usec 1000000\nuser_usec 800000\nsystem_usec 200000\n"
+                + "nr_periods 100\nnr_throttled 10\nthrottled_usec 50000\n");
+        write(app, "memory.max", "536870912\n");
+        write(app, "memory.current", "134217728\n");
+        write(app, "memory.pressure", "some avg10=1.50 avg60=0.75 avg300=0.10 total=12345\n"
+                + "full avg10=0.25 avg60=0.00 avg300=0.00 total=678\n");
+
+        Cgroup cgroup = Cgroup.detect(
+                Collections.singletonList("0::/app.slice"),
+                Collections.singletonList("35 24 0:30 / " + dir + " rw,nosuid - cgroup2 cgroup2 rw,nsdelegate"));
+        assertNotNull(cgroup);
+        assertEquals(2, cgroup.getVersion());
+        assertEquals(1.5, cgroup.cpuLimit(), 1e-9);
+        assertEquals(536870912L, cgroup.memoryLimit());
+        assertEquals(134217728L, cgroup.memoryUsage());
+
+        long[] stat = new long[4];
+        assertTrue(cgroup.readCpuStat(stat));
+        assertEquals(100, stat[Cgroup.NR_PERIODS]);
+        assertEquals(10, stat[Cgroup.NR_THROTTLED]);
+        assertEquals(50_000_000L, stat[Cgroup.THROTTLED_NANOS]);
+        assertEquals(1_000_000_000L, stat[Cgroup.USAGE_NANOS]);
+
+        double[] pressure = new double[8];
+        assertTrue(cgroup.readMemoryPressure(pressure));
+        assertEquals(1.5, pressure[0], 1e-9);
+        assertEquals(12345, pressure[3], 1e-9);
+        assertEquals(0.25, pressure[4], 1e-9);
+        // 没有 cpu.pressure 文件
+        assertFalse(cgroup.readCpuPressure(pressure));
+
+        // 不限制
+        write(app, "cpu.max", "max 100000\n");
+        write(app, "memory.max", "max\n");
+        assertEquals(-1, cgroup.cpuLimit(), 1e-9);
+        assertEquals(-1, cgroup.memoryLimit());
+    }
+
+    @Test
+    void testCgroupV1FallsBackToMountPoint() throws Exception {
+        Path cpu = Files.createTempDirectory("cgroup-cpu");
+        Path memory = Files.createTempDirectory("cgroup-memory");
+        write(cpu, "cpu.cfs_quota_us", "-1\n");
+        write(cpu, "cpu.cfs_period_us", "100000\n");
+        write(cpu, "cpu.stat", "nr_periods 0\nnr_throttled 0\nthrottled_time 0\n");
+        write(cpu, "cpuacct.usage", "123456789\n");
+        write(memory, "memory.limit_in_bytes", "9223372036854771712\n");
+        write(memory, "memory.usage_in_bytes", "4096\n");
+
+        // 容器内看到的是宿主机上的路径，挂载点下不存在该目录
+        Cgroup cgroup = Cgroup.detect(
+                Arrays.asList(
+                        "12:memory:/docker/abc",
+                        "4:cpu,cpuacct:/docker/abc",
+                        "0::/docker/abc"),
+                Arrays.asList(
+                        "30 25 0:26 / /sys/fs/cgroup/unified rw - cgroup2 cgroup2 rw",
+                        "40 25 0:36 / " + cpu + " rw,nosuid shared:15 - cgroup cgroup rw,cpu,cpuacct",
+                        "41 25 0:37 / " + memory + " rw,nosuid shared:16 - cgroup cgroup rw,memory"));
+        assertNotNull(cgroup);
+        assertEquals(1, cgroup.getVersion());
+        assertEquals(-1, cgroup.cpuLimit(), 1e-9);
+        assertEquals(-1, cgroup.memoryLimit());
+        assertEquals(4096L, cgroup.memoryUsage());
+        long[] stat = new long[4];
+        assertTrue(cgroup.readCpuStat(stat));
+        assertEquals(123456789L, stat[Cgroup.USAGE_NANOS]);
+        assertFalse(cgroup.readMemoryPressure(new double[8]));
+
+        assertNull(Cgroup.detect(Collections.singletonList("0::/"), Collections.<String>emptyList()));
+    }
+
+    @Test
+    void testProbeThrottlingDelta() throws Exception {
+        Path dir = Files.createTempDirectory("cgroup-probe");
+        write(dir, "cpu.max", "100000 100000\n");
+        write(dir, "cpu.stat", "usage_usec 0\nnr_periods 100\nnr_throttled 0\nthrottled_usec 0\n");
+        write(dir, "memory.max", "1000\n");
+        write(dir, "memory.current", "250\n");
+        Cgroup cgroup = new Cgroup(2, dir, dir, dir);
+
+        MetricRegistry registry = new MetricRegistry();
+        CgroupProbe probe = new CgroupProbe(cgroup, registry);
+        MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+        snapshot.reset(1000);
+        probe.collect(snapshot);
+        assertEquals(1.0, snapshot.getDouble(registry.idOf("container.cpu.limit")), 1e-9);
+        assertEquals(0.25, snapshot.getDouble(registry.idOf("container.memory.usage.ratio")), 1e-9);
+        // 首次采集只记录基准
+        assertFalse(snapshot.isPresent(registry.idOf("container.cpu.throttled.ratio")));
+
+        write(dir, "cpu.stat", "usage_usec 5000\nnr_periods 200\nnr_throttled 25\nthrottled_usec 40000\n");
+        snapshot.reset(2000);
+        probe.collect(snapshot);
+        assertEquals(100, snapshot.getLong(registry.idOf("container.cpu.periods")));
+        assertEquals(0.25, snapshot.getDouble(registry.idOf("container.cpu.throttled.ratio")), 1e-9);
+        assertEquals(40, snapshot.getLong(registry.idOf("container.cpu.throttled.time")));
+        assertTrue(snapshot.isPresent(registry.idOf("container.cpu.usage")));
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * ClassHistogramTracker 单元测试
+ */
+class ClassHistogramTrackerTest {
+
+    private static String histogram(long leakInstances, long stableInstances) {
+        return " num     #instances         #bytes  class name (module)\n"
+                + "-------------------------------------------------------\n"
+                + "   1:         " + leakInstances + "         " + leakInstances * 32 + "  com.example.Leak\n"
+                + "   2:         " + stableInstances + "         " + stableInstances * 16 + "  [B (java.base@17.0.9)\n"
+                + "   3:             7            168  com.example.Leak\n"
+                + "Total         " + (leakInstances + stableInstances + 7) + "        "
+                + (leakInstances * 32 + stableInstances * 16 + 168) + "\n";
+    }
+
+    @Test
+    void testParseMergesSameNameAndReadsTotals() {
+        ClassNameTable names = new ClassNameTable(16);
+        ClassHistogram histogram = new ClassHistogram();
+
+        assertEquals(3, histogram.parse(histogram(100, 50), names, 1000));
+        int leak = names.intern("com.example.Leak");
+        int bytes = names.intern("[B");
+        assertEquals(2, names.size());
+        assertEquals(107, histogram.instances(leak));
+        assertEquals(100 * 32 + 168, histogram.bytes(leak));
+        assertEquals(50, histogram.instances(bytes));
+        assertEquals(157, histogram.getTotalInstances());
+        assertEquals(100 * 32 + 50 * 16 + 168, histogram.getTotalBytes());
+
+        // 复用时覆盖上一次的内容；JDK 8 格式没有模块信息，也没有汇总行时按条目求和
+        histogram.parse("   1:  5  80  [B\r\n", names, 2000);
+        assertEquals(0, histogram.instances(leak));
+        assertEquals(5, histogram.instances(bytes));
+        assertEquals(5, histogram.getTotalInstances());
+        assertEquals(80, histogram.getTotalBytes());
+    }
+
+    @Test
+    void testClassNameTableLimit() {
+        ClassNameTable names = new ClassNameTable(1);
+        ClassHistogram histogram = new ClassHistogram();
+        histogram.parse(histogram(10, 20), names, 1000);
+        assertEquals(1, names.size());
+        assertEquals(17, histogram.instances(0));
+        assertEquals(-1, names.intern("[B"));
+        // 超出容量的类仍计入汇总
+        assertEquals(37, histogram.getTotalInstances());
+    }
+
+    @Test
+    void testGrowingClassesReportedAsSuspects() {
+        ClassHistogramTracker tracker = new ClassHistogramTracker(600, 4, 100, false);
+        assertTrue(tracker.getSuspects(10, true).isEmpty());
+
+        // Leak 持续增长；[B 在窗口内上下波动，没有净增长
+        long[] stable = {500, 520, 480, 500, 500};
+        for (int i = 0; i < stable.length; i++) {
+            tracker.record(histogram(100 + i * 50, stable[i]), i * 60_000L);
+        }
+        assertEquals(4, tracker.getHistoryCount());
+        assertEquals(60_000, tracker.getWindowStart());
+        assertEquals(1, tracker.getSuspectCount());
+        // 窗口 3 分钟内增长 150 个实例
+        assertEquals(150 * 32 / 180.0, tracker.getSuspectBytesRate(), 0.001);
+
+        List<Map<String, Object>> suspects = tracker.getSuspects(10, false);
+        assertEquals(1, suspects.size());
+        assertEquals("com.example.Leak", suspects.get(0).get("class"));
+        assertEquals(150L, suspects.get(0).get("instancesDelta"));
+        assertEquals(50L, suspects.get(0).get("instancesPerMinute"));
+
+        List<Map<String, Object>> top = tracker.getTopClasses(1);
+        assertEquals("com.example.Leak", top.get(0).get("class"));
+
+        tracker.reset();
+        assertEquals(0, tracker.getHistoryCount());
+        assertEquals(0, tracker.getSuspectCount());
+        assertNull(tracker.getLatest());
+    }
+
+    @Test
+    void testCollectFromDiagnosticCommandIsRateLimited() throws Exception {
+        assumeTrue(ClassHistogramTracker.isSupported());
+        ClassHistogramTracker tracker = new ClassHistogramTracker(1, 2, 20_000, false);
+        assertEquals(ClassHistogramTracker.MIN_INTERVAL_SECONDS, tracker.getIntervalSeconds());
+
+        assertTrue(tracker.collect());
+        ClassHistogram latest = tracker.getLatest();
+        assertNotNull(latest);
+        assertTrue(latest.getEntries() > 0);
+        assertTrue(latest.getTotalBytes() > 0);
+
+        // 距上次不足最小间隔，不再触发
+        assertFalse(tracker.collect());
+        assertEquals(1, tracker.getCollections());
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * ContentionMonitor 单元测试
+ */
+class ContentionMonitorTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBlockedTimeAttributedToLockAndOwner() throws Exception {
+        ThreadSampler sampler = new ThreadSampler();
+        assumeTrue(sampler.getThreadMXBean().isThreadContentionMonitoringSupported());
+
+        // 采样间隔设得很长，由测试手动驱动 sample()
+        ContentionMonitor monitor = new ContentionMonitor(sampler, 60_000, 16);
+        assertTrue(monitor.startMonitoring());
+
+        Object lock = new Object();
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread owner = new Thread(() -> {
+            synchronized (lock) {
+                held.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                    // 退出
+                }
+            }
+        }, "contention-test-owner");
+        Thread waiter = new Thread(() -> {
+            synchronized (lock) {
+                lock.hashCode();
+            }
+        }, "contention-test-waiter");
+        owner.setDaemon(true);
+        waiter.setDaemon(true);
+
+        try {
+            owner.start();
+            held.await();
+            waiter.start();
+            while (waiter.getState() != Thread.State.BLOCKED) {
+                Thread.sleep(5);
+            }
+            monitor.sample();
+            Thread.sleep(200);
+            monitor.sample();
+
+            assertTrue(monitor.getBlockedThreads() >= 1);
+            List<Map<String, Object>> hottest = monitor.getHottestMonitors(5);
+            Map<String, Object> entry = null;
+            for (Map<String, Object> candidate : hottest) {
+                if (((String) candidate.get("lock")).startsWith("java.lang.Object@")) {
+                    entry = candidate;
+                }
+            }
+            assertNotNull(entry, "Contended lock should be tracked: " + hottest);
+            assertEquals("java.lang.Object", entry.get("lockClass"));
+            assertTrue((Long) entry.get("blockedMillis") >= 100, "Blocked time should accumulate: " + entry);
+            assertTrue((Integer) entry.get("waitingThreads") >= 1);
+
+            List<Map<String, Object>> owners = (List<Map<String, Object>>) entry.get("ownerFrames");
+            assertFalse(owners.isEmpty());
+            assertTrue(monitor.getTotalBlockedMillis() >= 100);
+        } finally {
+            release.countDown();
+            owner.join(1000);
+            waiter.join(1000);
+            monitor.stopMonitoring();
+        }
+    }
+
+    @Test
+    void testMonitorTableIsBounded() throws Exception {
+        ThreadSampler sampler = new ThreadSampler();
+        assumeTrue(sampler.getThreadMXBean().isThreadContentionMonitoringSupported());
+
+        ContentionMonitor monitor = new ContentionMonitor(sampler, 60_000, 2);
+        assertTrue(monitor.startMonitoring());
+        try {
+            for (int i = 0; i < 4; i++) {
+                Object lock = new Object();
+                CountDownLatch held = new CountDownLatch(1);
+                CountDownLatch release = new CountDownLatch(1);
+                Thread owner = new Thread(() -> {
+                    synchronized (lock) {
+                        held.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException ignored) {
+                            // 退出
+                        }
+                    }
+                });
+                Thread waiter = new Thread(() -> {
+                    synchronized (lock) {
+                        lock.hashCode();
+                    }
+                });
+                owner.start();
+                held.await();
+                waiter.start();
+                while (waiter.getState() != Thread.State.BLOCKED) {
+                    Thread.sleep(5);
+                }
+                monitor.sample();
+                release.countDown();
+                owner.join(1000);
+                waiter.join(1000);
+            }
+            monitor.sample();
+            assertTrue(monitor.getHottestMonitors(10).size() <= 2);
+        } finally {
+            monitor.stopMonitoring();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HeapDumpUploader 单元测试（本地模拟 Server 的分块接收接口）
+ */
+class HeapDumpUploaderTest {
+
+    /**
+     * 与 Server 相同的接收语义：偏移必须等于已接收字节数，校验长度和 CRC
+     */
+    private static final class FakeServer {
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        final AtomicInteger chunks = new AtomicInteger();
+        volatile int failChunk = -1;
+        volatile boolean completed;
+        HttpServer server;
+
+        String start() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/api/heapdumps/", this::handle);
+            server.start();
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        synchronized void handle(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getQuery();
+            if (path.endsWith("/chunks")) {
+                int index = chunks.getAndIncrement();
+                long offset = param(query, "offset");
+                long length = param(query, "length");
+                byte[] data = readAll(new InflaterInputStream(exchange.getRequestBody()));
+                if (index == failChunk) {
+                    // 数据已写入但确认丢失
+                    received.write(data, 0, data.length);
+                    respond(exchange, 500, "{}");
+                    return;
+                }
+                if (offset != received.size()) {
+                    respond(exchange, 409, "{\"receivedBytes\":" + received.size() + "}");
+                    return;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(data, 0, data.length);
+                assertEquals(length, data.length);
+                assertEquals(param(query, "crc"), crc.getValue());
+                received.write(data, 0, data.length);
+                respond(exchange, 200, "{\"receivedBytes\":" + received.size() + "}");
+            } else if (path.endsWith("/complete")) {
+                completed = param(query, "size") == received.size();
+                respond(exchange, completed ? 200 : 409, "{}");
+            } else {
+                respond(exchange, 200, "{\"receivedBytes\": " + received.size() + "}");
+            }
+        }
+
+        private static long param(String query, String name) {
+            for (String pair : query.split("&")) {
+                if (pair.startsWith(name + "=")) {
+                    return Long.parseLong(pair.substring(name.length() + 1));
+                }
+            }
+            throw new IllegalArgumentException(name);
+        }
+
+        private static byte[] readAll(InputStream in) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+
+        private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(code, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+
+    private static File createDump(int size) throws IOException {
+        byte[] data = new byte[size];
+        Random random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            // 一半可压缩，一半随机
+            data[i] = (byte) (i % 2 == 0 ? i >> 10 : random.nextInt());
+        }
+        File file = File.createTempFile("heapdump-test", ".hprof");
+        file.deleteOnExit();
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    @Test
+    void testUploadsAllChunksAndResumesAfterLostAck() throws Exception {
+        FakeServer fake = new FakeServer();
+        fake.failChunk = 1;
+        String url = fake.start();
+        try {
+            File dump = createDump(300 * 1024 + 17);
+            HeapDumpUploader uploader = new HeapDumpUploader(url, dump.getParentFile(), 64 * 1024, 0, true);
+            uploader.upload("test-1", dump);
+
+            assertTrue(fake.completed);
+            assertArrayEquals(Files.readAllBytes(dump.toPath()), fake.received.toByteArray());
+            // 确认丢失的块已被 Server 写入，查询偏移后不再重发：共 5 次上传
+            assertEquals(5, fake.chunks.get());
+            assertEquals(1, uploader.getStatus().get("retries"));
+            assertEquals(dump.length(), uploader.getStatus().get("uploadedBytes"));
+            long compressed = (Long) uploader.getStatus().get("compressedBytes");
+            assertTrue(compressed > 0 && compressed < dump.length());
+        } finally {
+            fake.server.stop(0);
+        }
+    }
+
+    @Test
+    void testUploadIsThrottled() throws Exception {
+        FakeServer fake = new FakeServer();
+        String url = fake.start();
+        try {
+            File dump = createDump(256 * 1024);
+            // 限速 200KB/s，压缩后约 130KB，至少需要约 0.6 秒
+            HeapDumpUploader uploader = new HeapDumpUploader(url, dump.getParentFile(), 64 * 1024, 200 * 1024, true);
+            long start = System.nanoTime();
+            uploader.upload("test-2", dump);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            long compressed = (Long) uploader.getStatus().get("compressedBytes");
+            assertTrue(elapsedMillis >= compressed * 1000 / (200 * 1024) - 50,
+                    "elapsed " + elapsedMillis + "ms for " + compressed + " bytes");
+            assertTrue(fake.completed);
+        } finally {
+            fake.server.stop(0);
+        }
+    }
+
+    private static int request(String method, String url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestMethod(method);
+        if ("POST".equals(method)) {
+            conn.setDoOutput(true);
+            conn.getOutputStream().close();
+        }
+        int status = conn.getResponseCode();
+        conn.disconnect();
+        return status;
+    }
+
+    @Test
+    void testHandlerRequiresPostAndEnabledSwitch() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/heapdump", new HeapDumpHandler(new AgentConfig()));
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/heapdump";
+            // 有副作用的操作不接受 GET
+            assertEquals(405, request("GET", base + "/start?id=test-3"));
+            assertEquals(405, request("GET", base + "/cancel"));
+            // 默认不允许远程触发转储
+            assertEquals(403, request("POST", base + "/start?id=test-3"));
+            assertEquals(200, request("GET", base));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testDumpIdValidation() {
+        assertTrue(HeapDumpUploader.isValidId("app1-20261016-210400"));
+        assertFalse(HeapDumpUploader.isValidId("../etc/passwd"));
+        assertFalse(HeapDumpUploader.isValidId(".hidden"));
+        assertFalse(HeapDumpUploader.isValidId(""));
+        assertFalse(HeapDumpUploader.isValidId(null));
+        assertEquals(123, HeapDumpUploader.receivedBytes("{\"id\":\"x\",\"receivedBytes\": 123}"));
+        assertEquals(-1, HeapDumpUploader.receivedBytes("{}"));
+    }
+}
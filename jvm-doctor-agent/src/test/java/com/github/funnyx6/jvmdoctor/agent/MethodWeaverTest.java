@@ -0,0 +1,177 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MethodWeaver / MethodPatterns 单元测试
+ */
+class MethodWeaverTest {
+
+    private static final String TARGET = Target.class.getName();
+
+    @Test
+    void testPatterns() {
+        MethodPatterns patterns = MethodPatterns.parse(
+                "com.example.OrderService#placeOrder; com.example.dao.*Dao#find* ;com.example.Checkout");
+        assertEquals(3, patterns.size());
+        assertTrue(patterns.matchesMethod("com/example/OrderService", "placeOrder"));
+        assertFalse(patterns.matchesMethod("com/example/OrderService", "cancel"));
+        assertTrue(patterns.matchesMethod("com/example/dao/UserDao", "findById"));
+        assertFalse(patterns.matchesMethod("com/example/dao/UserDao", "save"));
+        assertTrue(patterns.matchesMethod("com/example/Checkout", "anything"));
+        assertTrue(patterns.matchesClass("com/example/dao/order/OrderDao"));
+        assertFalse(patterns.matchesClass("com/other/UserDao"));
+        assertTrue(MethodPatterns.parse(" ; ").isEmpty());
+    }
+
+    @Test
+    void testWovenClassBehavesLikeOriginalAndIsTimed() throws Exception {
+        MethodPatterns patterns = MethodPatterns.parse(TARGET + "#*");
+        byte[] woven = MethodWeaver.weave(classBytes(Target.class), patterns, MethodTimers::register);
+        assertNotNull(woven);
+
+        Class<?> type = new WovenLoader(woven).loadClass(TARGET);
+        assertNotSame(Target.class, type);
+        Object target = type.getDeclaredConstructor().newInstance();
+
+        long addBefore = count("add");
+        long fibBefore = count("fib");
+        long failBefore = count("fail");
+
+        Method add = type.getMethod("add", int.class, int.class);
+        assertEquals(5, add.invoke(null, 2, 3));
+
+        Method mix = type.getMethod("mix", long.class, double.class, String.class, int[].class);
+        assertEquals(10L + 2 + 3 + 6, mix.invoke(target, 10L, 2.5, "abc", new int[]{1, 2, 3}));
+
+        Method flags = type.getDeclaredMethod("flags", boolean.class, char.class, short.class, byte.class, float.class);
+        flags.setAccessible(true);
+        assertEquals("true:x:7:3:1.5", flags.invoke(target, true, 'x', (short) 7, (byte) 3, 1.5f));
+
+        Method join = type.getMethod("join", String[].class);
+        assertTrue(join.isVarArgs());
+        assertEquals("a,b", join.invoke(null, (Object) new String[]{"a", "b"}));
+
+        // 递归调用也走包装方法，每层各计一次
+        assertEquals(8, type.getMethod("fib", int.class).invoke(target, 6));
+
+        // 异常原样抛出，并计时
+        InvocationTargetException thrown = assertThrows(InvocationTargetException.class,
+                () -> type.getMethod("fail", String.class).invoke(target, "boom"));
+        assertTrue(thrown.getCause() instanceof IllegalStateException);
+        assertEquals("boom", thrown.getCause().getMessage());
+
+        assertEquals(addBefore + 1, count("add"));
+        assertEquals(fibBefore + 15, count("fib"));
+        assertEquals(failBefore + 1, count("fail"));
+
+        // 包装方法保留原名、修饰符和注解；原方法改名为私有 synthetic
+        Method fail = type.getMethod("fail", String.class);
+        assertTrue(fail.isAnnotationPresent(Deprecated.class));
+        assertFalse(Modifier.isSynchronized(fail.getModifiers()));
+        Method renamed = type.getDeclaredMethod("fail" + MethodWeaver.TIMED_SUFFIX, String.class);
+        assertTrue(Modifier.isPrivate(renamed.getModifiers()));
+        assertTrue(Modifier.isSynchronized(renamed.getModifiers()));
+        assertTrue(renamed.isSynthetic());
+
+        // 已织入的类不会再次织入
+        assertNull(MethodWeaver.weave(woven, patterns, MethodTimers::register));
+    }
+
+    @Test
+    void testNoMatchingMethodReturnsNull() throws Exception {
+        MethodPatterns patterns = MethodPatterns.parse(TARGET + "#doesNotExist");
+        assertNull(MethodWeaver.weave(classBytes(Target.class), patterns, MethodTimers::register));
+    }
+
+    @Test
+    void testLocalIndexAbove255UsesWide() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(bytes);
+        MethodWeaver.writeLocal(code, 0x16, 255);
+        MethodWeaver.writeLocal(code, 0x16, 300);
+        code.flush();
+        assertArrayEquals(new byte[]{0x16, (byte) 0xff, (byte) 0xc4, 0x16, 0x01, 0x2c}, bytes.toByteArray());
+    }
+
+    private static long count(String method) {
+        return MethodTimers.timer(MethodTimers.register(TARGET, method)).getCount();
+    }
+
+    private static byte[] classBytes(Class<?> type) throws Exception {
+        String resource = type.getName().substring(type.getName().lastIndexOf('.') + 1) + ".class";
+        try (InputStream in = type.getResourceAsStream(resource)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * 只定义被织入的类，其余委托给测试类加载器
+     */
+    private static final class WovenLoader extends ClassLoader {
+        private final byte[] woven;
+
+        WovenLoader(byte[] woven) {
+            super(MethodWeaverTest.class.getClassLoader());
+            this.woven = woven;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.equals(TARGET)) {
+                synchronized (getClassLoadingLock(name)) {
+                    Class<?> loaded = findLoadedClass(name);
+                    return loaded != null ? loaded : defineClass(name, woven, 0, woven.length);
+                }
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    public static class Target {
+
+        public static int add(int a, int b) {
+            return a + b;
+        }
+
+        public long mix(long a, double b, String s, int[] values) {
+            long sum = a + (long) b + s.length();
+            for (int value : values) {
+                sum += value;
+            }
+            return sum;
+        }
+
+        private String flags(boolean b, char c, short s, byte by, float f) {
+            return b + ":" + c + ":" + s + ":" + by + ":" + f;
+        }
+
+        public static String join(String... parts) {
+            return String.join(",", parts);
+        }
+
+        public int fib(int n) {
+            return n <= 2 ? 1 : fib(n - 1) + fib(n - 2);
+        }
+
+        @Deprecated
+        public synchronized void fail(String message) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
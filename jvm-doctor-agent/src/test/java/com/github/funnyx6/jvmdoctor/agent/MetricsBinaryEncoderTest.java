@@ -0,0 +1,241 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.github.funnyx6.jvmdoctor.core.MetricsFrame;
+import com.github.funnyx6.jvmdoctor.core.MetricsFrameSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MetricsBinaryEncoder 与 MetricsFrameSession 的编解码测试
+ */
+class MetricsBinaryEncoderTest {
+
+    private MetricRegistry registry;
+    private MetricsBinaryEncoder encoder;
+    private MetricsFrameSession session;
+    private Map<String, Object> decoded;
+    private int heapUsed;
+    private int cpuLoad;
+
+    @BeforeEach
+    void setUp() {
+        registry = new MetricRegistry();
+        heapUsed = registry.registerLong("heap.used");
+        cpuLoad = registry.registerDouble("cpu.load");
+        encoder = new MetricsBinaryEncoder();
+        session = new MetricsFrameSession();
+        decoded = new HashMap<>();
+    }
+
+    @Test
+    void testKeyframeThenDelta() {
+        MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+        snapshot.reset(1_000);
+        snapshot.setLong(heapUsed, 512L * 1024 * 1024);
+        snapshot.setDouble(cpuLoad, 0.25);
+        encoder.encode(7, 100, snapshot, null);
+        int keyframeLength = encoder.length();
+        MetricsFrame.Header header = decode();
+        encoder.commit();
+
+        assertTrue(header.isKeyframe());
+        assertEquals(7, header.getAppId());
+        assertEquals(1_000, header.getTimestamp());
+        assertEquals(512L * 1024 * 1024, decoded.get("heap.used"));
+        assertEquals(0.25, decoded.get("cpu.load"));
+
+        snapshot.reset(2_000);
+        snapshot.setLong(heapUsed, 512L * 1024 * 1024 - 3);
+        snapshot.setDouble(cpuLoad, 0.25);
+        encoder.encode(7, 101, snapshot, null);
+        header = decode();
+        encoder.commit();
+
+        assertFalse(header.isKeyframe());
+        assertEquals(100, header.getBaseSeq());
+        assertEquals(512L * 1024 * 1024 - 3, decoded.get("heap.used"));
+        assertEquals(0.25, decoded.get("cpu.load"));
+        assertTrue(encoder.length() < keyframeLength / 2,
+                "delta frame " + encoder.length() + " bytes, keyframe " + keyframeLength);
+    }
+
+    @Test
+    void testBatchedFramesChainDeltas() {
+        MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+        encoder.begin();
+        for (int i = 0; i < 3; i++) {
+            snapshot.reset(1_000 + i);
+            snapshot.setLong(heapUsed, 100 + i);
+            encoder.append(1, 10 + i, snapshot, null);
+        }
+        assertEquals(3, encoder.frames());
+
+        MetricsFrame.Reader in = new MetricsFrame.Reader(encoder.buffer(), 0, encoder.length());
+        long[] timestamps = new long[3];
+        for (int i = 0; i < 3; i++) {
+            decoded.clear();
+            MetricsFrame.Header header = MetricsFrame.readHeader(in);
+            session.apply(in, header, this::slotOf, sink());
+            assertEquals(i == 0, header.isKeyframe());
+            assertEquals(i == 0 ? -1 : 10 + i - 1, header.getBaseSeq());
+            assertEquals(100L + i, decoded.get("heap.used"));
+            timestamps[i] = header.getTimestamp();
+        }
+        assertEquals(0, in.remaining());
+        assertArrayEquals(new long[] {1_000, 1_001, 1_002}, timestamps);
+
+        // 确认后下一批以批内最后一帧为基准
+        encoder.commit();
+        snapshot.reset(2_000);
+        snapshot.setLong(heapUsed, 200);
+        encoder.encode(1, 13, snapshot, null);
+        MetricsFrame.Header header = decode();
+        assertEquals(12, header.getBaseSeq());
+        assertEquals(200L, decoded.get("heap.used"));
+    }
+
+    @Test
+    void testNewMetricExtendsDictionary() {
+        MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+        snapshot.reset(1_000);
+        snapshot.setLong(heapUsed, 10);
+        encoder.encode(1, 1, snapshot, null);
+        decode();
+        encoder.commit();
+
+        int threads = registry.registerLong("thread.count");
+        snapshot.reset(2_000);
+        snapshot.setLong(heapUsed, 11);
+        snapshot.setLong(threads, 42);
+        encoder.encode(1, 2, snapshot, null);
+        MetricsFrame.Header header = decode();
+
+        assertFalse(header.isKeyframe());
+        assertEquals(3, session.size());
+        assertEquals(11L, decoded.get("heap.used"));
+        assertEquals(42L, decoded.get("thread.count"));
+    }
+
+    @Test
+    void testUnacknowledgedFrameIsNotABase() {
+        MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+        snapshot.reset(1_000);
+        snapshot.setLong(heapUsed, 10);
+        encoder.encode(1, 1, snapshot, null);
+        decode();
+        encoder.commit();
+
+        // 发送失败（未 commit），Server 没收到
+        snapshot.setLong(heapUsed, 20);
+        encoder.encode(1, 2, snapshot, null);
+
+        snapshot.setLong(heapUsed, 30);
+        encoder.encode(1, 3, snapshot, null);
+        MetricsFrame.Header header = decode();
+
+        assertEquals(1, header.getBaseSeq());
+        assertEquals(30L, decoded.get("heap.used"));
+    }
+
+    @Test
+    void testResyncAfterServerRestart() {
+        MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+        snapshot.reset(1_000);
+        snapshot.setLong(heapUsed, 10);
+        encoder.encode(1, 1, snapshot, null);
+        decode();
+        encoder.commit();
+
+        session = new MetricsFrameSession();
+        snapshot.setLong(heapUsed, 20);
+        encoder.encode(1, 2, snapshot, null);
+        assertThrows(MetricsFrame.ResyncException.class, this::decode);
+
+        encoder.reset();
+        encoder.encode(1, 2, snapshot, null);
+        MetricsFrame.Header header = decode();
+
+        assertTrue(header.isKeyframe());
+        assertEquals(20L, decoded.get("heap.used"));
+    }
+
+    @Test
+    void testExtraMetricsAndSkippedValues() {
+        MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+        snapshot.reset(1_000);
+        snapshot.setDouble(cpuLoad, Double.NaN);
+        Map<String, Object> extra = new LinkedHashMap<>();
+        extra.put("orders.pending", 17);
+        extra.put("cache.hit.ratio", 0.875);
+        extra.put("healthy", true);
+        extra.put("version", "1.2.3");
+        encoder.encode(1, 1, snapshot, extra);
+        decode();
+
+        assertFalse(decoded.containsKey("cpu.load"));
+        assertFalse(decoded.containsKey("version"));
+        assertEquals(17L, decoded.get("orders.pending"));
+        assertEquals(0.875, decoded.get("cache.hit.ratio"));
+        assertEquals(1L, decoded.get("healthy"));
+    }
+
+    @Test
+    void testTruncatedFrameRejected() {
+        MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+        snapshot.reset(1_000);
+        snapshot.setLong(heapUsed, 10);
+        encoder.encode(1, 1, snapshot, null);
+        byte[] truncated = Arrays.copyOf(encoder.buffer(), encoder.length() - 1);
+
+        MetricsFrame.Reader in = new MetricsFrame.Reader(truncated);
+        MetricsFrame.Header header = MetricsFrame.readHeader(in);
+        assertThrows(IllegalArgumentException.class, () -> session.apply(in, header, name -> 0, sink()));
+        assertEquals(-1, session.getLastSeq());
+    }
+
+    /**
+     * 解码当前帧，槽位即字典中的名称序号
+     */
+    private MetricsFrame.Header decode() {
+        decoded.clear();
+        MetricsFrame.Reader in = new MetricsFrame.Reader(encoder.buffer(), 0, encoder.length());
+        MetricsFrame.Header header = MetricsFrame.readHeader(in);
+        session.apply(in, header, this::slotOf, sink());
+        assertEquals(0, in.remaining());
+        return header;
+    }
+
+    private final String[] slotNames = new String[32];
+    private int slotCount;
+
+    private int slotOf(String name) {
+        for (int i = 0; i < slotCount; i++) {
+            if (slotNames[i].equals(name)) {
+                return i;
+            }
+        }
+        slotNames[slotCount] = name;
+        return slotCount++;
+    }
+
+    private MetricsFrameSession.Sink sink() {
+        return new MetricsFrameSession.Sink() {
+            @Override
+            public void onLong(int slot, long value) {
+                decoded.put(slotNames[slot], value);
+            }
+
+            @Override
+            public void onDouble(int slot, double value) {
+                decoded.put(slotNames[slot], value);
+            }
+        };
+    }
+}
@@ -0,0 +1,248 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.github.funnyx6.jvmdoctor.core.DeadlockDetector;
+import com.github.funnyx6.jvmdoctor.core.GcTelemetry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * MetricsCollector 单元测试
+ */
+class MetricsCollectorTest {
+
+    private static final int WARMUP_ITERATIONS = 20_000;
+    private static final int MEASURE_ITERATIONS = 1_000;
+    // 整个测量（而不是每次迭代）允许的分配字节数，容纳预热后偶发的去优化等一次性分配；
+    // 小于 16 字节 × MEASURE_ITERATIONS，每次迭代哪怕多分配一个对象也会失败
+    private static final long ALLOCATION_SLACK = 4096;
+
+    private MetricRegistry registry;
+    private MetricsCollector collector;
+
+    @BeforeEach
+    void setUp() {
+        registry = new MetricRegistry();
+        collector = new MetricsCollector(registry);
+    }
+
+    @Test
+    void testCollectIntoSnapshot() {
+        MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+        collector.collect(snapshot);
+
+        assertTrue(snapshot.isPresent(registry.idOf("heap.used")));
+        assertTrue(snapshot.isPresent(registry.idOf("thread.count")));
+        assertTrue(snapshot.getLong(registry.idOf("thread.count")) > 0);
+        assertTrue(snapshot.getTimestamp() > 0);
+    }
+
+    @Test
+    void testCollectMapCompatible() {
+        Map<String, Object> metrics = collector.collect(false);
+
+        assertTrue(metrics.containsKey("heap.used"));
+        assertTrue(metrics.containsKey("nonheap.used"));
+        assertTrue(metrics.containsKey("gc.count"));
+        assertTrue(metrics.containsKey("uptime"));
+    }
+
+    @Test
+    void testDoubleBufferSwap() {
+        SnapshotBuffer buffer = new SnapshotBuffer(registry);
+        MetricsSnapshot back = buffer.back();
+        collector.collect(back);
+
+        assertSame(back, buffer.publish());
+        assertSame(back, buffer.front());
+        assertNotSame(back, buffer.back());
+    }
+
+    @Test
+    void testGcProbeReportsIntervalPauses() throws Exception {
+        GcTelemetry telemetry = new GcTelemetry();
+        assumeTrue(telemetry.start());
+        collector.addProbe(new GcProbe(telemetry, registry));
+        try {
+            System.gc();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (telemetry.getEventCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+
+            MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+            collector.collect(snapshot);
+            assertTrue(snapshot.getLong(registry.idOf("gc.pause.count")) > 0);
+            assertTrue(snapshot.isPresent(registry.idOf("gc.pause.p99")));
+            assertTrue(snapshot.isPresent(registry.idOf("gc.cause.System.gc().count")));
+            assertTrue(snapshot.isPresent(registry.idOf("gc.alloc.rate")));
+
+            // 下一个区间没有新的 GC
+            collector.collect(snapshot);
+            assertEquals(0, snapshot.getLong(registry.idOf("gc.pause.count")));
+            assertFalse(snapshot.isPresent(registry.idOf("gc.cause.System.gc().count")));
+        } finally {
+            collector.closeProbes();
+        }
+    }
+
+    @Test
+    void testThreadInfoHasStackOnlyWhenRequested() {
+        long self = Thread.currentThread().getId();
+
+        Map<String, Object> shallow = findThread(collector.collectThreadInfo(), self);
+        assertEquals(Thread.currentThread().getName(), shallow.get("name"));
+        assertTrue(shallow.containsKey("cpuTime"));
+        assertFalse(shallow.containsKey("stackTrace"));
+        for (Map<String, Object> thread : collector.collectThreadInfo()) {
+            assertFalse(thread.containsKey("stackTrace"), "thread " + thread.get("name"));
+        }
+
+        Map<String, Object> deep = findThread(collector.collectThreadInfo(5), self);
+        List<?> frames = (List<?>) deep.get("stackTrace");
+        assertNotNull(frames);
+        assertFalse(frames.isEmpty());
+        assertTrue(frames.size() <= 5);
+    }
+
+    @Test
+    void testEncodeSnapshot() {
+        MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+        collector.collect(snapshot);
+
+        MetricsJsonEncoder encoder = new MetricsJsonEncoder();
+        encoder.encode(42, snapshot, null);
+        String json = encoder.toString();
+
+        assertTrue(json.startsWith("{\"appId\":42,\"metrics\":{"));
+        assertTrue(json.contains("\"heap.used\":"));
+        assertTrue(json.endsWith("}}"));
+    }
+
+    @Test
+    void testCollectDoesNotAllocate() {
+        com.sun.management.ThreadMXBean sunThreadMXBean = allocationCounter();
+
+        // 死锁普查（线程 ID 数组、ThreadInfo[]、阻塞线程表）由 JMX 分配，每秒最多一次，
+        // 不计入稳态：首次采集普查一次后只走缓存路径，普查的频率见 testDeadlockCensusRateLimited
+        DeadlockDetector detector = new DeadlockDetector(ManagementFactory.getThreadMXBean(),
+                DeadlockDetector.DEFAULT_MIN_CHECK_INTERVAL_MILLIS, Long.MAX_VALUE);
+        collector = new MetricsCollector(registry, detector);
+        SnapshotBuffer buffer = new SnapshotBuffer(registry);
+        MetricsBinaryEncoder binaryEncoder = new MetricsBinaryEncoder();
+        long[] seq = {0};
+        Runnable collectAndEncode = () -> {
+            collector.collect(buffer.back());
+            MetricsSnapshot snapshot = buffer.publish();
+            binaryEncoder.encode(1L, seq[0]++, snapshot, null);
+            binaryEncoder.commit();
+        };
+
+        // 非堆内存的 MemoryUsage 由 JVM 在 native 层构造，单独测量后扣除
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        Runnable nonHeapRead = memoryMXBean::getNonHeapMemoryUsage;
+
+        // 预热，让 JIT 编译并使缓冲区扩容到稳态大小
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            collectAndEncode.run();
+            nonHeapRead.run();
+        }
+
+        long unavoidable = allocatedBytes(sunThreadMXBean, nonHeapRead);
+        long allocated = allocatedBytes(sunThreadMXBean, collectAndEncode);
+
+        assertEquals(1, detector.getCensusCount());
+        assertTrue(allocated - unavoidable <= ALLOCATION_SLACK,
+                "collect() allocated " + allocated + " bytes in " + MEASURE_ITERATIONS
+                        + " iterations, JVM-internal MemoryUsage accounts for " + unavoidable);
+    }
+
+    @Test
+    void testJsonEncodeDoesNotAllocate() {
+        com.sun.management.ThreadMXBean sunThreadMXBean = allocationCounter();
+
+        // JDK 的 double 转十进制（FloatingDecimal）对少数取值会分配大数对象，与编码器无关，
+        // 这里固定 double 指标为有短十进制表示的值
+        MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+        collector.collect(snapshot);
+        snapshot.setDouble(registry.idOf("heap.usage"), 0.25);
+        snapshot.setDouble(registry.idOf("cpu.load"), 0.5);
+        snapshot.setDouble(registry.idOf("system.load"), 1.75);
+        MetricsJsonEncoder encoder = new MetricsJsonEncoder();
+        long[] seq = {0};
+        Runnable encode = () -> encoder.encode(1L, seq[0]++, snapshot, null);
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            encode.run();
+        }
+        long allocated = allocatedBytes(sunThreadMXBean, encode);
+
+        assertTrue(allocated <= ALLOCATION_SLACK,
+                "encode() allocated " + allocated + " bytes in " + MEASURE_ITERATIONS + " iterations");
+    }
+
+    @Test
+    void testDeadlockCensusRateLimited() {
+        com.sun.management.ThreadMXBean sunThreadMXBean = allocationCounter();
+        DeadlockDetector detector = new DeadlockDetector(ManagementFactory.getThreadMXBean(),
+                DeadlockDetector.DEFAULT_MIN_CHECK_INTERVAL_MILLIS, 60_000);
+        collector = new MetricsCollector(registry, detector);
+        MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+
+        // 普查间隔内的采集只读取缓存结果，不再普查
+        for (int i = 0; i < 100; i++) {
+            collector.collect(snapshot);
+        }
+        assertEquals(1, detector.getCensusCount());
+        assertTrue(snapshot.isPresent(registry.idOf("thread.blocked")));
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            detector.check();
+        }
+        long cached = allocatedBytes(sunThreadMXBean, detector::check);
+        assertTrue(cached <= ALLOCATION_SLACK, "cached check() allocated " + cached + " bytes");
+        assertEquals(1, detector.getCensusCount());
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(sunThreadMXBean.isThreadAllocatedMemorySupported()
+                && sunThreadMXBean.isThreadAllocatedMemoryEnabled());
+        return sunThreadMXBean;
+    }
+
+    private static Map<String, Object> findThread(List<Map<String, Object>> threads, long threadId) {
+        for (Map<String, Object> thread : threads) {
+            if (Long.valueOf(threadId).equals(thread.get("threadId"))) {
+                return thread;
+            }
+        }
+        fail("thread " + threadId + " not found");
+        return null;
+    }
+
+    private long allocatedBytes(com.sun.management.ThreadMXBean threadMXBean, Runnable task) {
+        long threadId = Thread.currentThread().getId();
+        // getThreadAllocatedBytes 自身的开销
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        long after = threadMXBean.getThreadAllocatedBytes(threadId);
+        long overhead = after - before;
+
+        before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            task.run();
+        }
+        after = threadMXBean.getThreadAllocatedBytes(threadId);
+        return after - before - overhead;
+    }
+}
@@ -0,0 +1,145 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MetricsSpool 单元测试
+ */
+class MetricsSpoolTest {
+
+    private static final int CAPACITY = MetricsSpool.MIN_CAPACITY + 64;
+
+    private static File tempFile() throws Exception {
+        File file = Files.createTempFile("spool", ".dat").toFile();
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static boolean append(MetricsSpool spool, long seq, long timestamp, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return spool.append(seq, timestamp, bytes, bytes.length);
+    }
+
+    private static String batch(MetricsSpool spool) {
+        return new String(spool.batchBuffer(), 0, spool.batchLength(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testPeekAndRemove() throws Exception {
+        MetricsSpool spool = new MetricsSpool(tempFile(), CAPACITY, 0);
+        assertTrue(spool.isEmpty());
+        assertEquals(0, spool.peekBatch(10));
+        assertEquals("[]", batch(spool));
+
+        append(spool, 1, 1000, "{\"seq\":1}");
+        append(spool, 2, 2000, "{\"seq\":2}");
+        append(spool, 3, 3000, "{\"seq\":3}");
+        assertEquals(3, spool.size());
+
+        assertEquals(2, spool.peekBatch(2));
+        assertEquals("[{\"seq\":1},{\"seq\":2}]", batch(spool));
+        // 未移除前重复读取得到同样的批次
+        assertEquals(2, spool.peekBatch(2));
+        spool.remove(2);
+        assertEquals(1, spool.peekBatch(10));
+        assertEquals("[{\"seq\":3}]", batch(spool));
+        spool.remove(1);
+        assertTrue(spool.isEmpty());
+        assertEquals(0, spool.usedBytes());
+        spool.close();
+    }
+
+    @Test
+    void testWrapAndDropOldest() throws Exception {
+        MetricsSpool spool = new MetricsSpool(tempFile(), CAPACITY, 0);
+        // 每条 20 + 1000 字节，数据区放得下 64 条
+        char[] filler = new char[1000 - 8];
+        java.util.Arrays.fill(filler, 'x');
+        String padding = new String(filler);
+        for (int i = 0; i < 200; i++) {
+            assertTrue(append(spool, i, i, String.format("%08d", i) + padding));
+            assertTrue(spool.usedBytes() <= CAPACITY - 64);
+        }
+        int kept = spool.size();
+        assertTrue(kept > 0 && kept < 200);
+        assertEquals(200 - kept, spool.getDropped());
+
+        // 剩下的是最新的记录，跨回绕位置仍按顺序读出
+        int read = spool.peekBatch(kept);
+        assertEquals(kept, read);
+        String json = batch(spool);
+        int first = 200 - kept;
+        assertTrue(json.startsWith("[" + String.format("%08d", first)), json.substring(0, 20));
+        assertTrue(json.endsWith(String.format("%08d", 199) + padding + "]"));
+
+        // 大于整个数据区的记录被拒绝
+        byte[] huge = new byte[CAPACITY];
+        assertFalse(spool.append(1000, 1000, huge, huge.length));
+        assertEquals(kept, spool.size());
+        spool.close();
+    }
+
+    @Test
+    void testExpire() throws Exception {
+        MetricsSpool spool = new MetricsSpool(tempFile(), CAPACITY, 60_000);
+        long now = System.currentTimeMillis();
+        append(spool, 1, now - 90_000, "a");
+        // Server 持续不可达时，追加即丢弃过期的记录
+        append(spool, 2, now - 10_000, "b");
+        assertEquals(1, spool.size());
+        assertEquals(1, spool.getDropped());
+        append(spool, 3, now, "c");
+        assertEquals(1, spool.expire(now + 55_000));
+        assertEquals(1, spool.size());
+        assertEquals(1, spool.peekBatch(10));
+        assertEquals("[c]", batch(spool));
+        assertEquals(2, spool.getDropped());
+        spool.close();
+    }
+
+    @Test
+    void testReopenKeepsRecordsAndSequence() throws Exception {
+        File file = tempFile();
+        MetricsSpool spool = new MetricsSpool(file, CAPACITY, 0);
+        long first = spool.nextSequence();
+        assertTrue(first >= System.currentTimeMillis() * 1000 - 1_000_000);
+        long second = spool.nextSequence();
+        assertEquals(first + 1, second);
+        append(spool, first, 1, "one");
+        append(spool, second, 2, "two");
+        spool.remove(1);
+        spool.close();
+
+        MetricsSpool reopened = new MetricsSpool(file, CAPACITY, 0);
+        assertEquals(1, reopened.size());
+        assertEquals(1, reopened.peekBatch(10));
+        assertEquals("[two]", batch(reopened));
+        assertTrue(reopened.nextSequence() > second);
+        reopened.close();
+
+        // 大小变化时清空重建
+        MetricsSpool resized = new MetricsSpool(file, CAPACITY * 2, 0);
+        assertTrue(resized.isEmpty());
+        resized.close();
+    }
+
+    @Test
+    void testEncoderWritesSequence() {
+        MetricRegistry registry = new MetricRegistry();
+        int id = registry.registerLong("heap.used");
+        MetricsSnapshot snapshot = new MetricsSnapshot(registry);
+        snapshot.reset(1234);
+        snapshot.setLong(id, 42);
+        MetricsJsonEncoder encoder = new MetricsJsonEncoder();
+        encoder.encode(7, 99, snapshot, null);
+        assertEquals("{\"appId\":7,\"seq\":99,\"timestamp\":1234,\"metrics\":{\"heap.used\":42}}", encoder.toString());
+        encoder.encode(7, snapshot, null);
+        assertEquals("{\"appId\":7,\"metrics\":{\"heap.used\":42}}", encoder.toString());
+    }
+}
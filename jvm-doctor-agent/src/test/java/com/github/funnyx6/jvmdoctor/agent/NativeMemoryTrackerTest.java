@@ -0,0 +1,112 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * NativeMemoryTracker 单元测试
+ */
+class NativeMemoryTrackerTest {
+
+    private static String summary(long threadCommittedKb, long classCommittedKb) {
+        return "\nNative Memory Tracking:\n\n"
+                + "(Omitting categories weighting less than 1KB)\n\n"
+                + "Total: reserved=2941325KB, committed=" + (96256 + threadCommittedKb + classCommittedKb) + "KB\n"
+                + "       malloc: 4669KB #18425\n"
+                + "       mmap:   reserved=2936656KB, committed=119972KB\n\n"
+                + "-                 Java Heap (reserved=1540096KB, committed=96256KB)\n"
+                + "                            (mmap: reserved=1540096KB, committed=96256KB) \n"
+                + " \n"
+                + "-                     Class (reserved=1048719KB, committed=" + classCommittedKb + "KB)\n"
+                + "                            (classes #1530)\n"
+                + "                            (    reserved=65536KB, committed=2688KB)\n"
+                + " \n"
+                + "-                    Thread (reserved=13348KB, committed=" + threadCommittedKb + "KB)\n"
+                + "                            (thread #13)\n"
+                + "                            (stack: reserved=13312KB, committed=672KB)\n"
+                + " \n"
+                + "-    Native Memory Tracking (reserved=292KB, committed=292KB)\n"
+                + "                            (tracking overhead=288KB)\n";
+    }
+
+    @Test
+    void testParseCategoriesAndTotals() {
+        ClassNameTable names = new ClassNameTable(16);
+        NativeMemorySummary summary = new NativeMemorySummary();
+
+        assertEquals(4, summary.parse(summary(708, 527), names, 1000));
+        assertEquals(4, names.size());
+        assertEquals(2941325L * 1024, summary.getTotalReserved());
+        assertEquals((96256L + 708 + 527) * 1024, summary.getTotalCommitted());
+        int heap = names.intern("Java Heap");
+        int thread = names.intern("Thread");
+        int nmt = names.intern("Native Memory Tracking");
+        assertEquals(1540096L * 1024, summary.reserved(heap));
+        assertEquals(708L * 1024, summary.committed(thread));
+        assertEquals(292L * 1024, summary.committed(nmt));
+
+        // 复用时覆盖上一次的内容，省略的类别为 0；JDK 8 格式、MB 单位
+        String jdk8 = "Native Memory Tracking:\r\n\r\n"
+                + "Total: reserved=1500MB, committed=200MB\r\n"
+                + "-                    Thread (reserved=30MB, committed=30MB)\r\n";
+        assertEquals(1, summary.parse(jdk8, names, 2000));
+        assertEquals(0, summary.reserved(heap));
+        assertEquals(30L * 1024 * 1024, summary.committed(thread));
+        assertEquals(200L * 1024 * 1024, summary.getTotalCommitted());
+    }
+
+    @Test
+    void testParseRejectsDisabledTracking() {
+        NativeMemorySummary summary = new NativeMemorySummary();
+        assertEquals(-1, summary.parse("Native memory tracking is not enabled\n", new ClassNameTable(16), 1000));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBaselineDiff() {
+        NativeMemoryTracker tracker = new NativeMemoryTracker(60);
+        assertFalse(tracker.setBaseline());
+        assertTrue(tracker.record(summary(708, 527), 1000));
+        assertTrue(tracker.setBaseline());
+
+        // 线程数增长，Class 稳定
+        assertTrue(tracker.record(summary(708 + 10240, 527), 2000));
+        // 无法解析的输出不覆盖最近一次结果
+        assertFalse(tracker.record("Native memory tracking is not enabled\n", 3000));
+
+        Map<String, Object> result = tracker.getSummary();
+        assertEquals(true, result.get("baseline"));
+        assertEquals(1000L, result.get("baselineAt"));
+        assertEquals(2000L, result.get("timestamp"));
+        assertEquals(10240L * 1024, result.get("totalCommittedDiff"));
+        List<Map<String, Object>> categories = (List<Map<String, Object>>) result.get("categories");
+        assertEquals("Thread", categories.get(0).get("category"));
+        assertEquals(10240L * 1024, categories.get(0).get("committedDiff"));
+        assertEquals(0L, categories.get(1).get("committedDiff"));
+
+        // 探针读取的是最近一次结果
+        NativeMemorySummary copy = new NativeMemorySummary();
+        assertTrue(tracker.copyLatest(copy));
+        assertEquals((708L + 10240) * 1024, copy.committed(categoryId(tracker, "Thread")));
+
+        tracker.clearBaseline();
+        result = tracker.getSummary();
+        assertEquals(false, result.get("baseline"));
+        categories = (List<Map<String, Object>>) result.get("categories");
+        assertEquals("Java Heap", categories.get(0).get("category"));
+        tracker.stopTracking();
+    }
+
+    private static int categoryId(NativeMemoryTracker tracker, String category) {
+        for (int id = 0; id < tracker.getCategoryCount(); id++) {
+            if (tracker.getCategoryName(id).equals(category)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * OverheadGovernor 单元测试
+ */
+class OverheadGovernorTest {
+
+    private static volatile long sink;
+
+    @Test
+    void testShouldRunFollowsLevel() {
+        OverheadGovernor.Account account = OverheadGovernor.account("test.levels", OverheadGovernor.MAX_LEVEL);
+        int runs = 0;
+        for (int i = 0; i < 8; i++) {
+            if (account.shouldRun()) {
+                runs++;
+            }
+        }
+        assertEquals(8, runs);
+        assertEquals(1, account.getIntervalMultiplier());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testThrottlesHottestAccountAndRestores() throws Exception {
+        assumeTrue(OverheadGovernor.threadCpuTime() >= 0);
+        OverheadGovernor governor = new OverheadGovernor(0.001, 1000);
+        OverheadGovernor.Account hot = OverheadGovernor.account("test.hot", OverheadGovernor.MAX_LEVEL);
+        governor.evaluate();
+
+        // 远超 0.1% 预算的 CPU 消耗
+        long cpuStart = OverheadGovernor.threadCpuTime();
+        long allocStart = OverheadGovernor.threadAllocatedBytes();
+        long startNanos = System.nanoTime();
+        long x = 0;
+        long deadline = System.nanoTime() + 50_000_000L;
+        while (System.nanoTime() < deadline) {
+            x += System.nanoTime() % 7;
+        }
+        sink = x;
+        hot.record(startNanos, cpuStart, allocStart);
+
+        governor.evaluate();
+        assertTrue(governor.getOverhead() > 0.001);
+        assertEquals(1, hot.getLevel());
+        assertEquals(2, hot.getIntervalMultiplier());
+        assertTrue(governor.getThrottledCount() >= 1);
+
+        Map<String, Object> state = governor.getState();
+        assertEquals(true, state.get("reducedFidelity"));
+        boolean found = false;
+        for (Map<String, Object> entry : (List<Map<String, Object>>) state.get("accounts")) {
+            if ("test.hot".equals(entry.get("name"))) {
+                found = true;
+                assertEquals(1, entry.get("level"));
+            }
+        }
+        assertTrue(found);
+
+        // 空闲窗口：开销低于预算一半，恢复
+        Thread.sleep(100);
+        governor.evaluate();
+        assertEquals(0, hot.getLevel());
+        assertEquals(false, governor.getState().get("reducedFidelity"));
+        governor.stopGoverning();
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * ProcFileReader 和 ProcessMemoryProbe 单元测试
+ */
+class ProcFileReaderTest {
+
+    @Test
+    void testReadsStatusStyleFile() throws Exception {
+        Path file = Files.createTempFile("proc-status", ".txt");
+        try {
+            Files.write(file, ("Name:\tjava\n"
+                    + "VmHWM:\t  204800 kB\n"
+                    + "VmRSS:\t  102400 kB\n"
+                    + "RssAnon:\t   81920 kB\n"
+                    + "Threads:\t42").getBytes(StandardCharsets.US_ASCII));
+            ProcFileReader reader = new ProcFileReader("VmRSS", "RssAnon", "VmSwap", "Threads", "Name");
+            long[] values = new long[5];
+            reader.read(file, values);
+            assertEquals(102400L * 1024, values[0]);
+            assertEquals(81920L * 1024, values[1]);
+            // 未出现的键、非数值的键
+            assertEquals(-1, values[2]);
+            assertEquals(-1, values[4]);
+            // 末尾没有换行、没有单位
+            assertEquals(42, values[3]);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testSumsKeysAcrossMappingsLargerThanBuffer() throws Exception {
+        Path file = Files.createTempFile("proc-smaps", ".txt");
+        try {
+            StringBuilder smaps = new StringBuilder();
+            int mappings = 2000;
+            for (int i = 0; i < mappings; i++) {
+                smaps.append(String.format("%012x-%012x rw-p 00000000 00:00 0 %n", i * 4096L, (i + 1) * 4096L));
+                smaps.append("Rss:                   8 kB\n");
+                smaps.append("Pss:                   4 kB\n");
+                smaps.append("Swap:                  1 kB\n");
+                smaps.append("VmFlags: rd wr mr mw me ac\n");
+            }
+            Files.write(file, smaps.toString().getBytes(StandardCharsets.US_ASCII));
+            assertTrue(Files.size(file) > 64 * 1024);
+
+            ProcFileReader reader = new ProcFileReader("Pss", "Swap", "Rss");
+            long[] values = new long[3];
+            reader.read(file, values);
+            assertEquals(mappings * 4L * 1024, values[0]);
+            assertEquals(mappings * 1024L, values[1]);
+            assertEquals(mappings * 8L * 1024, values[2]);
+
+            // 复用时重新计数
+            reader.read(file, values);
+            assertEquals(mappings * 4L * 1024, values[0]);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testProcessMemoryProbe() {
+        assumeTrue(ProcessMemoryProbe.isSupported());
+        MetricsCollector collector = new MetricsCollector();
+        collector.addProbe("process.memory", new ProcessMemoryProbe(collector.getRegistry()));
+        Map<String, Object> metrics = new HashMap<>(collector.collect(false));
+
+        long rss = ((Number) metrics.get("process.rss")).longValue();
+        assertTrue(rss > 0);
+        assertTrue(((Number) metrics.get("process.rss.anon")).longValue() <= rss);
+        assertTrue(((Number) metrics.get("process.jvm.committed")).longValue() > 0);
+        assertEquals(rss - ((Number) metrics.get("process.jvm.committed")).longValue(),
+                ((Number) metrics.get("process.native.unaccounted")).longValue());
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SampleQueue 单元测试
+ */
+class SampleQueueTest {
+
+    private MetricRegistry registry;
+    private int valueId;
+    private MetricsSnapshot snapshot;
+
+    @BeforeEach
+    void setUp() {
+        registry = new MetricRegistry();
+        valueId = registry.registerLong("value");
+        snapshot = new MetricsSnapshot(registry);
+    }
+
+    private void offer(SampleQueue queue, long seq) {
+        snapshot.reset(seq);
+        snapshot.setLong(valueId, seq);
+        queue.offer(seq, snapshot, null);
+    }
+
+    @Test
+    void testDrainKeepsOrder() {
+        SampleQueue queue = new SampleQueue(registry, 4);
+        SampleRing ring = new SampleRing(registry, 16);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 3; i++) {
+                offer(queue, round * 3 + i);
+            }
+            assertEquals(3, queue.size());
+            assertEquals(3, queue.drainTo(ring));
+            assertEquals(0, queue.size());
+        }
+
+        assertEquals(9, ring.size());
+        for (int i = 0; i < 9; i++) {
+            assertEquals(i, ring.sequence(i));
+            assertEquals(i, ring.snapshot(i).getLong(valueId));
+        }
+        assertEquals(0, queue.getDropped());
+        assertEquals(0, queue.drainTo(ring));
+    }
+
+    @Test
+    void testOverflowDropsOldest() {
+        SampleQueue queue = new SampleQueue(registry, 4);
+        for (int i = 0; i < 10; i++) {
+            offer(queue, i);
+        }
+
+        assertEquals(4, queue.size());
+        assertEquals(6, queue.getDropped());
+        SampleRing ring = new SampleRing(registry, 16);
+        assertEquals(4, queue.drainTo(ring));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(6 + i, ring.sequence(i));
+            assertEquals(6 + i, ring.snapshot(i).getLong(valueId));
+        }
+    }
+
+    @Test
+    void testConcurrentProducerNeverBlocks() throws Exception {
+        SampleQueue queue = new SampleQueue(registry, 8);
+        int samples = 200_000;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        long[] received = new long[1];
+        SampleRing ring = new SampleRing(registry, 64);
+
+        Thread consumer = new Thread(() -> {
+            long last = -1;
+            while (true) {
+                boolean finished = done.get();
+                queue.drainTo(ring);
+                for (int i = 0; i < ring.size(); i++) {
+                    long seq = ring.sequence(i);
+                    // 复制到的内容必须完整属于同一个样本，且序号递增
+                    if (seq <= last || ring.snapshot(i).getLong(valueId) != seq
+                            || ring.snapshot(i).getTimestamp() != seq) {
+                        failure.compareAndSet(null, "seq " + seq + " after " + last);
+                    }
+                    last = seq;
+                    received[0]++;
+                }
+                ring.remove(ring.size());
+                if (finished) {
+                    return;
+                }
+            }
+        });
+        consumer.start();
+        for (int i = 0; i < samples; i++) {
+            offer(queue, i);
+        }
+        done.set(true);
+        consumer.join(10_000);
+
+        assertFalse(consumer.isAlive());
+        assertNull(failure.get());
+        assertEquals(samples, received[0] + queue.getDropped() + ring.getDropped());
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SampleRing 单元测试
+ */
+class SampleRingTest {
+
+    private MetricRegistry registry;
+    private int valueId;
+    private MetricsSnapshot snapshot;
+
+    @BeforeEach
+    void setUp() {
+        registry = new MetricRegistry();
+        valueId = registry.registerLong("value");
+        snapshot = new MetricsSnapshot(registry);
+    }
+
+    @Test
+    void testSamplesAreCopied() {
+        SampleRing ring = new SampleRing(registry, 4);
+        for (int i = 0; i < 3; i++) {
+            snapshot.reset(1_000 + i);
+            snapshot.setLong(valueId, i);
+            ring.add(100 + i, snapshot, i == 1 ? Collections.singletonMap("custom", (Object) 7) : null);
+        }
+
+        assertEquals(3, ring.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(100 + i, ring.sequence(i));
+            assertEquals(1_000 + i, ring.snapshot(i).getTimestamp());
+            assertEquals(i, ring.snapshot(i).getLong(valueId));
+        }
+        assertNull(ring.extra(0));
+        assertEquals(7, ring.extra(1).get("custom"));
+        assertEquals(0, ring.getDropped());
+    }
+
+    @Test
+    void testOverflowDropsOldest() {
+        SampleRing ring = new SampleRing(registry, 3);
+        for (int i = 0; i < 5; i++) {
+            snapshot.reset(i);
+            snapshot.setLong(valueId, i);
+            ring.add(i, snapshot, null);
+        }
+
+        assertEquals(3, ring.size());
+        assertEquals(2, ring.getDropped());
+        assertEquals(2, ring.sequence(0));
+        assertEquals(4, ring.snapshot(2).getLong(valueId));
+    }
+
+    @Test
+    void testRemoveOldest() {
+        SampleRing ring = new SampleRing(registry, 3);
+        for (int i = 0; i < 3; i++) {
+            snapshot.reset(i);
+            ring.add(i, snapshot, null);
+        }
+        ring.remove(2);
+        snapshot.reset(3);
+        ring.add(3, snapshot, null);
+
+        assertEquals(2, ring.size());
+        assertEquals(2, ring.sequence(0));
+        assertEquals(3, ring.sequence(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> ring.sequence(2));
+
+        ring.remove(10);
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    void testSnapshotGrowsWithRegistry() {
+        SampleRing ring = new SampleRing(registry, 2);
+        for (int i = 0; i < 40; i++) {
+            registry.registerLong("late." + i);
+        }
+        int lateId = registry.idOf("late.39");
+        snapshot.reset(1);
+        snapshot.setLong(lateId, 42);
+        ring.add(1, snapshot, null);
+
+        assertTrue(ring.snapshot(0).isPresent(lateId));
+        assertEquals(42, ring.snapshot(0).getLong(lateId));
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SamplingProfiler 单元测试
+ */
+class SamplingProfilerTest {
+
+    private static volatile long sink;
+
+    @Test
+    void testFrameTableInterns() {
+        FrameTable frames = new FrameTable(2);
+        int a = frames.intern("com.example.A", "run");
+        int b = frames.intern("com.example.B", "run");
+
+        assertEquals(a, frames.intern(new StackTraceElement("com.example.A", "run", "A.java", 10)));
+        assertNotEquals(a, b);
+        assertEquals(-1, frames.intern("com.example.C", "run"));
+        assertEquals("com.example.B.run", frames.frameName(b));
+    }
+
+    @Test
+    void testCallTreeCollapsed() {
+        CallTree tree = new CallTree(new FrameTable(100), 100);
+        StackTraceElement main = new StackTraceElement("App", "main", null, -1);
+        StackTraceElement work = new StackTraceElement("App", "work", null, -1);
+        StackTraceElement idle = new StackTraceElement("App", "idle", null, -1);
+
+        tree.addSample(new StackTraceElement[]{work, main});
+        tree.addSample(new StackTraceElement[]{work, main});
+        tree.addSample(new StackTraceElement[]{idle, main});
+
+        String collapsed = tree.toCollapsed();
+        assertTrue(collapsed.contains("App.main;App.work 2\n"));
+        assertTrue(collapsed.contains("App.main;App.idle 1\n"));
+        assertEquals(3, tree.getTotalSamples());
+        assertEquals(4, tree.nodeCount());
+    }
+
+    @Test
+    void testCallTreeNodeCap() {
+        CallTree tree = new CallTree(new FrameTable(100), 3);
+        StackTraceElement a = new StackTraceElement("X", "a", null, -1);
+        StackTraceElement b = new StackTraceElement("X", "b", null, -1);
+        StackTraceElement c = new StackTraceElement("X", "c", null, -1);
+
+        tree.addSample(new StackTraceElement[]{c, b, a});
+
+        assertEquals(3, tree.nodeCount());
+        assertEquals(1, tree.getTruncatedSamples());
+        assertEquals("X.a;X.b 1\n", tree.toCollapsed());
+    }
+
+    @Test
+    void testCpuProfileFindsBusyThread() throws Exception {
+        Thread busy = new Thread(SamplingProfilerTest::spin, "profiler-test-busy");
+        busy.setDaemon(true);
+        busy.start();
+        try {
+            SamplingProfiler profiler = new SamplingProfiler(5, 64, 10_000, 0.5, 10);
+            SamplingProfiler.Result result = profiler.profile(SamplingProfiler.Mode.CPU, 300, 0);
+
+            assertNotNull(result);
+            assertTrue(result.getSamples() > 0);
+            assertTrue(result.getCollapsed().contains("SamplingProfilerTest.spin"));
+            assertFalse(SamplingProfiler.isRunning());
+        } finally {
+            busy.interrupt();
+        }
+    }
+
+    private static void spin() {
+        long x = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            x += System.nanoTime() % 7;
+        }
+        sink = x;
+    }
+}
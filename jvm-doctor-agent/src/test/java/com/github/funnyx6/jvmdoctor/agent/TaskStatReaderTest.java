@@ -0,0 +1,119 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * TaskStatReader / NativeThreadIds 单元测试
+ */
+class TaskStatReaderTest {
+
+    private static void write(Path dir, int tid, String file, String content) throws IOException {
+        Path task = dir.resolve(Integer.toString(tid));
+        Files.createDirectories(task);
+        Files.write(task.resolve(file), content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void testScanSchedstatAndDeltas() throws Exception {
+        Path dir = Files.createTempDirectory("task");
+        write(dir, 100, "schedstat", "5000000 200000 10\n");
+        write(dir, 101, "schedstat", "1000 0 1\n");
+        write(dir, 100, "comm", "main\n");
+        write(dir, 100, "status", "Name:\tmain\nvoluntary_ctxt_switches:\t7\nnonvoluntary_ctxt_switches:\t3\n");
+
+        TaskStatReader reader = new TaskStatReader(dir, true);
+        assertEquals(2, reader.scan());
+        reader.mark();
+
+        write(dir, 100, "schedstat", "8000000 500000 14\n");
+        Files.delete(dir.resolve("101").resolve("schedstat"));
+        Files.delete(dir.resolve("101"));
+        write(dir, 102, "schedstat", "42 0 1\n");
+        assertEquals(2, reader.scan());
+
+        int main = reader.indexOf(100);
+        int marked = reader.markedIndexOf(100);
+        assertEquals(3_000_000L, reader.cpuNanos(main) - reader.markedCpuNanos(marked));
+        assertEquals(300_000L, reader.waitNanos(main) - reader.markedWaitNanos(marked));
+        assertEquals(4L, reader.timeslices(main) - reader.markedTimeslices(marked));
+        // 已退出 / 新建的线程
+        assertEquals(-1, reader.indexOf(101));
+        assertEquals(-1, reader.markedIndexOf(102));
+
+        assertEquals("main", reader.name(100));
+        assertNull(reader.name(101));
+        long[] switches = new long[2];
+        assertTrue(reader.readContextSwitches(100, switches));
+        assertArrayEquals(new long[]{7, 3}, switches);
+    }
+
+    @Test
+    void testStatFallback() throws Exception {
+        Path dir = Files.createTempDirectory("task-stat");
+        // 线程名中带空格和括号；utime=25、stime=5（时钟滴答）
+        write(dir, 200, "stat", "200 (pool (1) x) S 1 200 200 0 -1 4194624 100 0 0 0 25 5 0 0 20 0 40 0 123\n");
+
+        TaskStatReader reader = new TaskStatReader(dir, false);
+        assertFalse(reader.hasSchedstat());
+        assertEquals(1, reader.scan());
+        int index = reader.indexOf(200);
+        assertEquals(300_000_000L, reader.cpuNanos(index));
+        assertEquals(-1, reader.waitNanos(index));
+        assertEquals(-1, reader.timeslices(index));
+    }
+
+    @Test
+    void testParseThreadPrint() {
+        NativeThreadIds ids = new NativeThreadIds();
+        String jdk8 = "2024-01-01 00:00:00\nFull thread dump OpenJDK 64-Bit Server VM:\n\n"
+                + "\"main\" #1 prio=5 os_prio=0 tid=0x00007f99f8024f10 nid=0x125d waiting on condition\n"
+                + "   java.lang.Thread.State: TIMED_WAITING (sleeping)\n\n"
+                + "\"say \\\"hi\\\" #2\" #12 daemon prio=5 os_prio=0 tid=0x00007f99f805f190 nid=0x1300 runnable\n"
+                + "\"GC Thread#0\" os_prio=0 tid=0x00007f99f805a930 nid=0x125e runnable\n";
+        assertEquals(2, ids.parse(jdk8));
+        assertEquals(0x125d, ids.nativeId(1));
+        assertEquals(0x1300, ids.nativeId(12));
+        assertEquals(1L, ids.javaThreadId(0x125d));
+        // JVM 内部线程不映射
+        assertEquals(-1L, ids.javaThreadId(0x125e));
+
+        // JDK 19 起 nid 为十进制，重新解析时替换旧映射
+        assertEquals(1, ids.parse("\"main\" #1 [4701] prio=5 os_prio=0 cpu=1.00ms elapsed=1.00s tid=0x00007f nid=4701 runnable\n"));
+        assertEquals(4701, ids.nativeId(1));
+        assertEquals(-1, ids.nativeId(12));
+    }
+
+    @Test
+    void testProcCpuTimesMatchMXBean() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(TaskStatReader.isSupported() && threadMXBean.isThreadCpuTimeSupported()
+                && threadMXBean.isThreadCpuTimeEnabled());
+        assumeTrue(NativeThreadIds.getShared().refresh(true));
+
+        ThreadSampler sampler = new ThreadSampler(threadMXBean, 1);
+        long self = Thread.currentThread().getId();
+        long[] ids = {self};
+        long before = threadMXBean.getThreadCpuTime(self);
+        long[] procTimes = sampler.cpuTimes(ids);
+        long after = threadMXBean.getThreadCpuTime(self);
+        assertTrue(sampler.isProcActive());
+        // 两种来源都是内核的 sum_exec_runtime，schedstat 不可用时 stat 的精度为 10ms
+        assertTrue(procTimes[0] >= before - 10_000_000L && procTimes[0] <= after + 10_000_000L,
+                before + " <= " + procTimes[0] + " <= " + after);
+
+        // 低于阈值时走 MXBean
+        ThreadSampler mxbean = new ThreadSampler(threadMXBean, 1000);
+        mxbean.cpuTimes(ids);
+        assertFalse(mxbean.isProcActive());
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * ThreadActivityTracker 单元测试
+ */
+class ThreadActivityTrackerTest {
+
+    private static volatile long sink;
+    private static volatile Object allocationSink;
+
+    @Test
+    void testBusyThreadRanksFirst() throws Exception {
+        ThreadSampler sampler = new ThreadSampler();
+        assumeTrue(sampler.getThreadMXBean().isThreadCpuTimeSupported());
+
+        ThreadActivityTracker tracker = new ThreadActivityTracker(sampler, 100, 10);
+        Thread busy = new Thread(() -> {
+            long x = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                x += System.nanoTime() % 7;
+            }
+            sink = x;
+        }, "tracker-test-busy");
+        busy.setDaemon(true);
+        busy.start();
+
+        try {
+            for (int i = 0; i < 5; i++) {
+                tracker.sample();
+                Thread.sleep(100);
+            }
+            tracker.sample();
+
+            List<Map<String, Object>> top = tracker.getTopCpuThreads(1000, 3);
+            assertFalse(top.isEmpty());
+            assertEquals("tracker-test-busy", top.get(0).get("name"));
+            assertTrue(((Number) top.get(0).get("cpuUsage")).doubleValue() > 0.5);
+        } finally {
+            busy.interrupt();
+        }
+    }
+
+    @Test
+    void testAllocatingThreadRanksFirst() throws Exception {
+        ThreadSampler sampler = new ThreadSampler();
+        assumeTrue(sampler.isAllocatedMemorySupported());
+
+        ThreadActivityTracker tracker = new ThreadActivityTracker(sampler, 100, 10);
+        Thread allocator = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                allocationSink = new byte[4096];
+            }
+        }, "tracker-test-allocator");
+        allocator.setDaemon(true);
+        allocator.start();
+
+        try {
+            for (int i = 0; i < 5; i++) {
+                tracker.sample();
+                Thread.sleep(100);
+            }
+            tracker.sample();
+
+            List<Map<String, Object>> top = tracker.getTopAllocatingThreads(1000, 3);
+            assertFalse(top.isEmpty());
+            assertEquals("tracker-test-allocator", top.get(0).get("name"));
+            assertTrue(((Number) top.get(0).get("allocBytesPerSec")).doubleValue() > 1024 * 1024);
+            assertTrue(tracker.getAllocationRate(1000) > 1024 * 1024);
+        } finally {
+            allocator.interrupt();
+        }
+    }
+
+    @Test
+    void testEmptyBeforeSecondSample() {
+        ThreadActivityTracker tracker = new ThreadActivityTracker(new ThreadSampler(), 100, 10);
+        assertTrue(tracker.getTopCpuThreads(1000, 5).isEmpty());
+
+        tracker.sample();
+        assertTrue(tracker.getTopCpuThreads(1000, 5).isEmpty());
+    }
+
+    @Test
+    void testTopNHeapKeepsLargest() {
+        TopNHeap heap = new TopNHeap(3);
+        double[] scores = {5, 1, 9, 3, 7, 2, 8};
+        for (int i = 0; i < scores.length; i++) {
+            heap.offer(scores[i], i);
+        }
+        heap.sortDescending();
+
+        assertEquals(3, heap.size());
+        assertEquals(9, heap.score(0));
+        assertEquals(8, heap.score(1));
+        assertEquals(7, heap.score(2));
+        assertEquals(2, heap.index(0));
+    }
+}
@@ -0,0 +1,131 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ThreadDumpAggregator 单元测试
+ */
+class ThreadDumpAggregatorTest {
+
+    @Test
+    void testInternReusesFramesAndStacks() {
+        ThreadDumpAggregator aggregator = new ThreadDumpAggregator();
+        StackTraceElement[] a = {
+                new StackTraceElement("com.example.Pool", "take", "Pool.java", 10),
+                new StackTraceElement("java.lang.Thread", "run", "Thread.java", 748)
+        };
+        // 内容相同的另一组实例
+        StackTraceElement[] b = {
+                new StackTraceElement("com.example.Pool", "take", "Pool.java", 10),
+                new StackTraceElement("java.lang.Thread", "run", "Thread.java", 748)
+        };
+        StackTraceElement[] c = {
+                new StackTraceElement("com.example.Pool", "take", "Pool.java", 12),
+                new StackTraceElement("java.lang.Thread", "run", "Thread.java", 748)
+        };
+
+        int first = aggregator.internStack(a);
+        assertEquals(first, aggregator.internStack(b));
+        assertNotEquals(first, aggregator.internStack(c));
+        assertEquals(first, aggregator.internStack(a));
+        assertEquals(3, aggregator.frameCount());
+        assertEquals(2, aggregator.stackCount());
+        // 空堆栈也是一条堆栈
+        assertEquals(aggregator.internStack(new StackTraceElement[0]), aggregator.internStack(new StackTraceElement[0]));
+    }
+
+    @Test
+    void testInternReturnsMinusOneWhenFull() {
+        ThreadDumpAggregator aggregator = new ThreadDumpAggregator(2, 16);
+        assertTrue(aggregator.internStack(new StackTraceElement[]{
+                new StackTraceElement("A", "a", null, 1), new StackTraceElement("B", "b", null, 2)}) >= 0);
+        assertEquals(-1, aggregator.internStack(new StackTraceElement[]{new StackTraceElement("C", "c", null, 3)}));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testGroupsIdenticalThreads() throws Exception {
+        int workers = 20;
+        CountDownLatch ready = new CountDownLatch(workers);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(() -> {
+                ready.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                    // 退出
+                }
+            }, "aggregator-test-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        try {
+            ready.await();
+            // 等待所有线程停在 await 上
+            long[] ids = threads.stream().mapToLong(Thread::getId).toArray();
+            ThreadInfo[] infos = null;
+            for (int attempt = 0; attempt < 100; attempt++) {
+                infos = ManagementFactory.getThreadMXBean().getThreadInfo(ids, 50);
+                boolean allWaiting = true;
+                for (ThreadInfo info : infos) {
+                    allWaiting &= info != null && info.getThreadState() == Thread.State.WAITING;
+                }
+                if (allWaiting) {
+                    break;
+                }
+                Thread.sleep(20);
+            }
+
+            ThreadDumpAggregator aggregator = new ThreadDumpAggregator();
+            Map<String, Object> dump = aggregator.aggregate(infos);
+            assertEquals(workers, dump.get("totalCount"));
+            assertEquals(1, dump.get("groupCount"));
+            Map<String, Object> group = ((List<Map<String, Object>>) dump.get("groups")).get(0);
+            assertEquals("WAITING", group.get("state"));
+            assertEquals(workers, group.get("count"));
+            assertEquals(workers, ((List<String>) group.get("threads")).size());
+            assertTrue(((List<String>) group.get("threads")).contains("aggregator-test-0"));
+            assertFalse(((List<?>) group.get("stackTrace")).isEmpty());
+
+            // 第二次快照复用驻留表和渲染好的帧列表
+            int frames = aggregator.frameCount();
+            Map<String, Object> again = aggregator.aggregate(infos);
+            Map<String, Object> groupAgain = ((List<Map<String, Object>>) again.get("groups")).get(0);
+            assertEquals(frames, aggregator.frameCount());
+            assertEquals(group.get("stackId"), groupAgain.get("stackId"));
+            assertSame(group.get("stackTrace"), groupAgain.get("stackTrace"));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testClearsTablesWhenFull() {
+        ThreadInfo[] infos = ManagementFactory.getThreadMXBean().dumpAllThreads(false, false);
+        ThreadDumpAggregator aggregator = new ThreadDumpAggregator(4, 1);
+        Map<String, Object> dump = aggregator.aggregate(infos);
+
+        // 一次快照放不下时清空重试，放不下的线程各自成组，线程总数不变
+        int alive = 0;
+        for (ThreadInfo info : infos) {
+            if (info != null) {
+                alive++;
+            }
+        }
+        assertEquals(alive, dump.get("totalCount"));
+        assertEquals(1L, dump.get("tableResets"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.funnyx6.jvmdoctor.agent;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * ThreadHandler 单元测试
+ */
+class ThreadHandlerTest {
+
+    @Test
+    void testTaskSamplingDoesNotHoldHttpThread() throws Exception {
+        assumeTrue(TaskStatReader.isSupported());
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/threads", new ThreadHandler());
+        // 只有一个 HTTP 线程：采样等待期间若占用它，其他请求都会排队
+        ExecutorService httpThreads = Executors.newSingleThreadExecutor();
+        server.setExecutor(httpThreads);
+        server.start();
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/threads";
+            Future<Integer> sampling = client.submit(() -> get(base + "/tasks?interval=1500ms&n=5"));
+            Thread.sleep(300);
+
+            long start = System.nanoTime();
+            assertEquals(409, get(base + "/tasks?interval=1s"));
+            assertEquals(200, get(base));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+
+            assertEquals(200, (int) sampling.get(5, TimeUnit.SECONDS));
+            // 上一次采样结束后可以再次采样
+            assertEquals(200, get(base + "/tasks?interval=10ms"));
+        } finally {
+            client.shutdownNow();
+            server.stop(0);
+            httpThreads.shutdownNow();
+        }
+    }
+
+    private static int get(String url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(2000);
+        conn.setReadTimeout(5000);
+        int status = conn.getResponseCode();
+        conn.disconnect();
+        return status;
+    }
+}
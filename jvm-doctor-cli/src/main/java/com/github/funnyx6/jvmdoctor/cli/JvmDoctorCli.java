@@ -1,5 +1,7 @@
 package com.github.funnyx6.jvmdoctor.cli;
 
+import com.github.funnyx6.jvmdoctor.core.HeapAnalysis;
+import com.github.funnyx6.jvmdoctor.core.HeapAnalyzer;
 import com.github.funnyx6.jvmdoctor.core.JvmMonitor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -359,6 +361,103 @@ public class JvmDoctorCli implements Callable<Integer> {
         }
     }
     
+    @Command(name = "analyze-heap",
+             description = "Analyze an HPROF heap dump: class histogram, retained sizes and leak suspects")
+    static class AnalyzeHeapCommand implements Callable<Integer> {
+
+        @Parameters(index = "0",
+                    description = "HPROF heap dump file")
+        private File dumpFile;
+
+        @Option(names = {"-n", "--top"},
+                description = "Number of classes and dominators to show (default: 20)",
+                defaultValue = "20")
+        private int top;
+
+        @Option(names = {"-t", "--threads"},
+                description = "Indexing threads (default: number of CPUs)",
+                defaultValue = "0")
+        private int threads;
+
+        @Option(names = {"--tmp-dir"},
+                description = "Directory for the off-heap index files (default: next to the dump)")
+        private File tmpDir;
+
+        @Option(names = {"--suspect-threshold"},
+                description = "Retained heap percentage that makes a leak suspect (default: 10)",
+                defaultValue = "10")
+        private double suspectThreshold;
+
+        @Option(names = {"-o", "--output"},
+                description = "Also write the full result to this file (JSON format)")
+        private File outputFile;
+
+        @Override
+        public Integer call() throws Exception {
+            if (!dumpFile.isFile()) {
+                System.err.println("Heap dump not found: " + dumpFile);
+                return 1;
+            }
+            System.out.println("Analyzing heap dump " + dumpFile.getAbsolutePath()
+                    + " (" + formatBytes(dumpFile.length()) + ")...");
+
+            HeapAnalysis analysis = new HeapAnalyzer(dumpFile, threads, tmpDir)
+                    .analyze(top, suspectThreshold / 100);
+
+            System.out.println("\n=== Heap Summary ===");
+            System.out.println("Objects: " + analysis.getObjects()
+                    + " (" + analysis.getReachableObjects() + " reachable)");
+            System.out.println("Classes: " + analysis.getClasses());
+            System.out.println("GC Roots: " + analysis.getGcRoots());
+            System.out.println("Heap Size: " + formatBytes(analysis.getTotalBytes())
+                    + " (" + formatBytes(analysis.getReachableBytes()) + " reachable)");
+            System.out.println("Analysis Time: " + analysis.getAnalysisMillis() + "ms");
+
+            System.out.println("\n=== Class Histogram ===");
+            System.out.println(String.format("%14s %12s  %s", "Instances", "Shallow", "Class"));
+            for (HeapAnalysis.ClassEntry entry : analysis.getHistogram()) {
+                System.out.println(String.format("%14d %12s  %s",
+                        entry.getInstances(), formatBytes(entry.getShallowBytes()), entry.getClassName()));
+            }
+
+            System.out.println("\n=== Biggest Objects (Dominator Tree) ===");
+            System.out.println(String.format("%12s %8s  %s", "Retained", "%", "Object"));
+            for (HeapAnalysis.ObjectEntry entry : analysis.getDominators()) {
+                System.out.println(String.format("%12s %7.2f%%  %s", formatBytes(entry.getRetainedBytes()),
+                        entry.getRetainedPercent(), describe(entry)));
+            }
+
+            System.out.println("\n=== Leak Suspects ===");
+            if (analysis.getSuspects().isEmpty()) {
+                System.out.println("No object retains more than " + suspectThreshold + "% of the reachable heap");
+            }
+            for (HeapAnalysis.Suspect suspect : analysis.getSuspects()) {
+                System.out.println("• " + suspect.getDescription() + " (" + formatBytes(suspect.getRetainedBytes()) + ")");
+                if (suspect.getAccumulationPoint() != null) {
+                    System.out.println("    accumulated in " + describe(suspect.getAccumulationPoint())
+                            + ", retaining " + formatBytes(suspect.getAccumulationPoint().getRetainedBytes()));
+                }
+            }
+
+            if (outputFile != null) {
+                new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(outputFile, analysis);
+                System.out.println("\nReport saved to: " + outputFile.getAbsolutePath());
+            }
+            return 0;
+        }
+
+        private String describe(HeapAnalysis.ObjectEntry entry) {
+            return entry.getClassName() + " @ 0x" + Long.toHexString(entry.getObjectId());
+        }
+
+        private String formatBytes(long bytes) {
+            if (bytes < 1024) return bytes + " B";
+            if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+            if (bytes < 1024 * 1024 * 1024) return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+            return String.format("%.1f GB", bytes / (1024.0 * 1024.0 * 1024.0));
+        }
+    }
+
     @Command(name = "version", 
              description = "Show version information")
     static class VersionCommand implements Callable<Integer> {
@@ -385,6 +484,7 @@ public class JvmDoctorCli implements Callable<Integer> {
         // 注册子命令
         commandLine.addSubcommand("monitor", new MonitorCommand());
         commandLine.addSubcommand("analyze", new AnalyzeCommand());
+        commandLine.addSubcommand("analyze-heap", new AnalyzeHeapCommand());
         commandLine.addSubcommand("version", new VersionCommand());
         
         int exitCode = commandLine.execute(args);
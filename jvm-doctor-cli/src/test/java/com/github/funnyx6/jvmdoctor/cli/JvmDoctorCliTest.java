@@ -39,12 +39,20 @@ class JvmDoctorCliTest {
         assertNotNull(analyzeCommand);
     }
     
+    @Test
+    void testAnalyzeHeapCommandClass() {
+        // 测试堆转储分析命令类存在
+        JvmDoctorCli.AnalyzeHeapCommand analyzeHeapCommand = new JvmDoctorCli.AnalyzeHeapCommand();
+        assertNotNull(analyzeHeapCommand);
+    }
+    
     @Test
     void testCallableReturnType() {
         // 测试所有命令实现 Callable
         assertTrue(new JvmDoctorCli.VersionCommand() instanceof java.util.concurrent.Callable);
         assertTrue(new JvmDoctorCli.MonitorCommand() instanceof java.util.concurrent.Callable);
         assertTrue(new JvmDoctorCli.AnalyzeCommand() instanceof java.util.concurrent.Callable);
+        assertTrue(new JvmDoctorCli.AnalyzeHeapCommand() instanceof java.util.concurrent.Callable);
     }
     
     @Test
@@ -0,0 +1,245 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 自适应死锁检测
+ *
+ * findDeadlockedThreads 需要让整个 JVM 进入安全点，耗时随线程数增长，不适合每次采集都调用。
+ * 这里先做一次廉价的阻塞线程普查（getThreadInfo 不抓堆栈，无需安全点），
+ * 统计等待一个有持有者的锁的线程（BLOCKED，或 WAITING 在 j.u.c 锁上），
+ * 只有在以下情况才执行完整的环检测：
+ * <ul>
+ *   <li>至少 2 个阻塞线程在两次普查之间仍停留在同一次阻塞中（死锁线程永远不会恢复）</li>
+ *   <li>阻塞线程数突增（至少翻倍且增加 {@value #JUMP_MIN} 个以上）</li>
+ * </ul>
+ * 完整检测之间至少间隔 minCheckIntervalMillis（最大检测频率），普查默认至少间隔 {@value #CENSUS_MIN_INTERVAL_MILLIS} 毫秒；
+ * 结果被缓存，供指标采集和 HTTP 查询共享，频繁刷新不会引发额外的安全点。
+ * 普查会分配线程 ID 数组、ThreadInfo 数组和阻塞线程表，间隔内返回缓存结果不分配对象。
+ */
+public class DeadlockDetector {
+    private static final Logger logger = LoggerFactory.getLogger(DeadlockDetector.class);
+
+    static final long CENSUS_MIN_INTERVAL_MILLIS = 1000;
+    static final int JUMP_MIN = 2;
+    public static final long DEFAULT_MIN_CHECK_INTERVAL_MILLIS = 10_000;
+
+    private static final ThreadInfo[] NO_THREADS = new ThreadInfo[0];
+    private static final long[] NO_IDS = new long[0];
+
+    private final ThreadMXBean threadMXBean;
+    private volatile long minCheckIntervalMillis;
+    private final long censusIntervalMillis;
+
+    // 上一次普查中阻塞线程的 ID → 阻塞轮次（blockedCount + waitedCount）
+    private Map<Long, Long> lastEpisodes = new HashMap<>();
+    private long lastCensusMillis;
+    private long lastCheckMillis;
+    private long censusCount;
+    private long checkCount;
+    private volatile Result result = new Result(NO_IDS, NO_THREADS, 0, 0, 0);
+
+    public DeadlockDetector() {
+        this(ManagementFactory.getThreadMXBean(), DEFAULT_MIN_CHECK_INTERVAL_MILLIS);
+    }
+
+    public DeadlockDetector(ThreadMXBean threadMXBean, long minCheckIntervalMillis) {
+        this(threadMXBean, minCheckIntervalMillis, CENSUS_MIN_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param censusIntervalMillis 两次普查的最小间隔（毫秒），间隔内 {@link #check()} 直接返回缓存结果
+     */
+    public DeadlockDetector(ThreadMXBean threadMXBean, long minCheckIntervalMillis, long censusIntervalMillis) {
+        this.threadMXBean = threadMXBean;
+        this.minCheckIntervalMillis = minCheckIntervalMillis;
+        this.censusIntervalMillis = censusIntervalMillis;
+    }
+
+    /**
+     * 设置完整检测的最小间隔（毫秒）
+     */
+    public void setMinCheckIntervalMillis(long minCheckIntervalMillis) {
+        this.minCheckIntervalMillis = Math.max(0, minCheckIntervalMillis);
+    }
+
+    public long getMinCheckIntervalMillis() {
+        return minCheckIntervalMillis;
+    }
+
+    /**
+     * 普查阻塞线程，必要时执行完整检测
+     *
+     * @return 最近一次的检测结果（可能是缓存）
+     */
+    public Result check() {
+        return check(false);
+    }
+
+    /**
+     * 普查阻塞线程，必要时执行完整检测
+     *
+     * @param force 只要存在 2 个以上阻塞线程就执行完整检测（仍受最大检测频率限制）
+     * @return 最近一次的检测结果（可能是缓存）
+     */
+    public synchronized Result check(boolean force) {
+        long now = System.currentTimeMillis();
+        if (!force && now - lastCensusMillis < censusIntervalMillis && censusCount > 0) {
+            return result;
+        }
+        lastCensusMillis = now;
+        censusCount++;
+
+        // 普查：不抓堆栈的 ThreadInfo 无需安全点
+        long[] threadIds = threadMXBean.getAllThreadIds();
+        ThreadInfo[] infos = threadMXBean.getThreadInfo(threadIds, 0);
+        Map<Long, Long> episodes = new HashMap<>();
+        int persisted = 0;
+        for (ThreadInfo info : infos) {
+            if (info == null || !isWaitingOnOwnedLock(info)) {
+                continue;
+            }
+            long episode = info.getBlockedCount() + info.getWaitedCount();
+            episodes.put(info.getThreadId(), episode);
+            Long previous = lastEpisodes.get(info.getThreadId());
+            if (previous != null && previous == episode) {
+                persisted++;
+            }
+        }
+        int blocked = episodes.size();
+        int lastBlocked = lastEpisodes.size();
+        lastEpisodes = episodes;
+
+        Result current = result;
+        boolean needCheck;
+        if (blocked < 2) {
+            // 死锁至少需要 2 个线程
+            needCheck = false;
+            current = new Result(NO_IDS, NO_THREADS, blocked, current.checkedAt, now);
+        } else if (current.hasDeadlock() && containsAll(episodes, current.deadlockedThreadIds)) {
+            // 死锁线程不会恢复，缓存结果仍然有效
+            needCheck = false;
+            current = new Result(current.deadlockedThreadIds, current.threadInfos, blocked, current.checkedAt, now);
+        } else {
+            boolean jumped = blocked - lastBlocked >= Math.max(JUMP_MIN, lastBlocked);
+            needCheck = force || persisted >= 2 || jumped || current.hasDeadlock();
+            current = new Result(current.deadlockedThreadIds, current.threadInfos, blocked, current.checkedAt, now);
+        }
+
+        if (needCheck && now - lastCheckMillis >= minCheckIntervalMillis) {
+            lastCheckMillis = now;
+            checkCount++;
+            current = fullCheck(blocked, now);
+        }
+        result = current;
+        return current;
+    }
+
+    private Result fullCheck(int blocked, long now) {
+        long[] ids = threadMXBean.findDeadlockedThreads();
+        if (ids == null || ids.length == 0) {
+            return new Result(NO_IDS, NO_THREADS, blocked, now, now);
+        }
+        ThreadInfo[] infos = threadMXBean.getThreadInfo(ids,
+                threadMXBean.isObjectMonitorUsageSupported(), threadMXBean.isSynchronizerUsageSupported());
+        logger.warn("Detected {} deadlocked threads", ids.length);
+        return new Result(ids, infos, blocked, now, now);
+    }
+
+    private static boolean isWaitingOnOwnedLock(ThreadInfo info) {
+        Thread.State state = info.getThreadState();
+        return state == Thread.State.BLOCKED
+                || (state == Thread.State.WAITING && info.getLockOwnerId() >= 0);
+    }
+
+    private static boolean containsAll(Map<Long, Long> episodes, long[] ids) {
+        for (long id : ids) {
+            if (!episodes.containsKey(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 最近一次的检测结果（不触发普查）
+     */
+    public Result getLastResult() {
+        return result;
+    }
+
+    /**
+     * 已执行的普查次数
+     */
+    public synchronized long getCensusCount() {
+        return censusCount;
+    }
+
+    /**
+     * 已执行的完整检测次数
+     */
+    public synchronized long getCheckCount() {
+        return checkCount;
+    }
+
+    /**
+     * 检测结果
+     */
+    public static class Result {
+        private final long[] deadlockedThreadIds;
+        private final ThreadInfo[] threadInfos;
+        private final int blockedThreads;
+        private final long checkedAt;
+        private final long censusAt;
+
+        Result(long[] deadlockedThreadIds, ThreadInfo[] threadInfos, int blockedThreads,
+               long checkedAt, long censusAt) {
+            this.deadlockedThreadIds = deadlockedThreadIds;
+            this.threadInfos = threadInfos;
+            this.blockedThreads = blockedThreads;
+            this.checkedAt = checkedAt;
+            this.censusAt = censusAt;
+        }
+
+        /** 死锁线程 ID */
+        public long[] getDeadlockedThreadIds() { return deadlockedThreadIds.clone(); }
+        /** 死锁线程信息（含堆栈和持有的锁），在完整检测时抓取 */
+        public ThreadInfo[] getThreadInfos() { return threadInfos.clone(); }
+        public int getDeadlockedCount() { return deadlockedThreadIds.length; }
+        public boolean hasDeadlock() { return deadlockedThreadIds.length > 0; }
+        /** 最近一次普查中等待有持有者的锁的线程数 */
+        public int getBlockedThreads() { return blockedThreads; }
+        /** 最近一次完整检测的时间，0 表示尚未检测 */
+        public long getCheckedAt() { return checkedAt; }
+        /** 最近一次普查的时间 */
+        public long getCensusAt() { return censusAt; }
+    }
+
+    // ========== 进程内共享实例 ==========
+
+    private static volatile DeadlockDetector shared;
+
+    /**
+     * 进程内共享的检测器，死锁是整个 JVM 的状态，所有调用方共享同一份缓存
+     */
+    public static DeadlockDetector getShared() {
+        DeadlockDetector detector = shared;
+        if (detector == null) {
+            synchronized (DeadlockDetector.class) {
+                detector = shared;
+                if (detector == null) {
+                    detector = new DeadlockDetector();
+                    shared = detector;
+                }
+            }
+        }
+        return detector;
+    }
+}
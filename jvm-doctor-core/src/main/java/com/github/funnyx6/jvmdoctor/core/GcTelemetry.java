@@ -0,0 +1,285 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于 GC 通知的 GC 遥测
+ *
+ * 订阅每个 GarbageCollectorMXBean 的 GarbageCollectionNotificationInfo，
+ * 每次停顿的耗时（毫秒）记入总体、按收集器、按原因三组 {@link LogLinearHistogram}，
+ * 轮询方按区间读取分位数，两次轮询之间的 GC 不会丢失。
+ *
+ * 并发收集器（CMS、G1 Concurrent GC、ZGC / Shenandoah Cycles）通知中的耗时是整个并发周期的长度，
+ * 不是停顿，单独记入周期直方图，不计入停顿分布。
+ *
+ * 同时根据每次 GC 前后的内存池使用量累计：
+ * <ul>
+ *   <li>分配字节数：本次 GC 前堆使用量 - 上次 GC 后堆使用量</li>
+ *   <li>晋升字节数：年轻代 GC 后老年代使用量的净增长</li>
+ * </ul>
+ * 同一次 GC 可能由多个收集器各发一条通知（如 ZGC 的 Cycles 与 Pauses），
+ * 只用其中一个收集器的通知计算，见 {@link #tracksAllocation(String)}。
+ */
+public class GcTelemetry implements AutoCloseable {
+
+    private final List<GarbageCollectorMXBean> gcBeans;
+    private final Set<String> heapPools = new HashSet<>();
+    private final Set<String> oldPools = new HashSet<>();
+
+    private final LogLinearHistogram pauses = new LogLinearHistogram();
+    private final Map<String, LogLinearHistogram> collectorPauses = new ConcurrentHashMap<>();
+    private final Map<String, LogLinearHistogram> causePauses = new ConcurrentHashMap<>();
+    private final LogLinearHistogram cycles = new LogLinearHistogram();
+    private final Map<String, LogLinearHistogram> collectorCycles = new ConcurrentHashMap<>();
+
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong promotedBytes = new AtomicLong();
+    private final AtomicLong eventCount = new AtomicLong();
+
+    // 上次 GC 后的堆使用量，由通知线程维护
+    private long lastHeapAfterGc;
+
+    private final NotificationListener listener = this::handleNotification;
+    private final NotificationFilter filter = notification ->
+            GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType());
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+
+    public GcTelemetry() {
+        this.gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) {
+                continue;
+            }
+            heapPools.add(pool.getName());
+            if (isOldPool(pool.getName())) {
+                oldPools.add(pool.getName());
+            }
+        }
+        for (GarbageCollectorMXBean gcBean : gcBeans) {
+            if (isConcurrentCycle(gcBean.getName(), null)) {
+                collectorCycles.put(gcBean.getName(), new LogLinearHistogram());
+            } else {
+                collectorPauses.put(gcBean.getName(), new LogLinearHistogram());
+            }
+        }
+    }
+
+    /**
+     * 注册 GC 通知监听
+     *
+     * @return 至少注册成功一个收集器时返回 true
+     */
+    public synchronized boolean start() {
+        if (!emitters.isEmpty()) {
+            return true;
+        }
+        lastHeapAfterGc = currentHeapPoolUsage();
+        for (GarbageCollectorMXBean gcBean : gcBeans) {
+            if (gcBean instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) gcBean;
+                emitter.addNotificationListener(listener, filter, null);
+                emitters.add(emitter);
+            }
+        }
+        return !emitters.isEmpty();
+    }
+
+    /**
+     * 取消 GC 通知监听
+     */
+    @Override
+    public synchronized void close() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener, filter, null);
+            } catch (Exception ignored) {
+                // 已被移除
+            }
+        }
+        emitters.clear();
+    }
+
+    private void handleNotification(Notification notification, Object handback) {
+        GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        GcInfo gcInfo = info.getGcInfo();
+        long duration = gcInfo.getDuration();
+        String name = info.getGcName();
+
+        if (isConcurrentCycle(name, info.getGcAction())) {
+            cycles.record(duration);
+            histogram(collectorCycles, name).record(duration);
+        } else {
+            pauses.record(duration);
+            histogram(collectorPauses, name).record(duration);
+            histogram(causePauses, info.getGcCause()).record(duration);
+        }
+
+        if (tracksAllocation(name)) {
+            recordPoolUsage(info.getGcAction(), gcInfo.getMemoryUsageBeforeGc(), gcInfo.getMemoryUsageAfterGc());
+        }
+        eventCount.incrementAndGet();
+    }
+
+    private static LogLinearHistogram histogram(Map<String, LogLinearHistogram> histograms, String key) {
+        LogLinearHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(key, k -> new LogLinearHistogram());
+        }
+        return histogram;
+    }
+
+    private synchronized void recordPoolUsage(String action, Map<String, MemoryUsage> before,
+                                              Map<String, MemoryUsage> after) {
+        long heapBefore = 0;
+        long heapAfter = 0;
+        long oldBefore = 0;
+        long oldAfter = 0;
+        for (String pool : heapPools) {
+            MemoryUsage b = before.get(pool);
+            MemoryUsage a = after.get(pool);
+            if (b == null || a == null) {
+                continue;
+            }
+            heapBefore += b.getUsed();
+            heapAfter += a.getUsed();
+            if (oldPools.contains(pool)) {
+                oldBefore += b.getUsed();
+                oldAfter += a.getUsed();
+            }
+        }
+
+        long allocated = heapBefore - lastHeapAfterGc;
+        if (allocated > 0) {
+            allocatedBytes.addAndGet(allocated);
+        }
+        lastHeapAfterGc = heapAfter;
+
+        // 只统计年轻代 GC 的晋升，Full GC 中老年代的变化是回收而不是晋升
+        if (action != null && action.contains("minor") && oldAfter > oldBefore) {
+            promotedBytes.addAndGet(oldAfter - oldBefore);
+        }
+    }
+
+    private long currentHeapPoolUsage() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (heapPools.contains(pool.getName())) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static boolean isOldPool(String name) {
+        return name.contains("Old") || name.contains("Tenured");
+    }
+
+    /**
+     * 收集器通知的耗时是否为并发周期长度（而不是停顿）
+     *
+     * @param gcName 收集器名称
+     * @param gcAction 通知中的 GC 动作，未知时为 null
+     */
+    static boolean isConcurrentCycle(String gcName, String gcAction) {
+        return "ConcurrentMarkSweep".equals(gcName)
+                || "G1 Concurrent GC".equals(gcName)
+                || gcName.endsWith(" Cycles")
+                || (gcAction != null && gcAction.contains("cycle"));
+    }
+
+    /**
+     * 是否用该收集器的通知计算分配和晋升
+     *
+     * ZGC / Shenandoah 的 Pauses 与 Cycles 描述同一次 GC，只用 Cycles；
+     * CMS 与 G1 的并发周期和年轻代 GC 交叠，只用停顿式收集器。
+     */
+    static boolean tracksAllocation(String gcName) {
+        if (gcName.endsWith(" Cycles")) {
+            return true;
+        }
+        return !gcName.endsWith(" Pauses") && !isConcurrentCycle(gcName, null);
+    }
+
+    /**
+     * 所有停顿的耗时直方图（毫秒）
+     */
+    public LogLinearHistogram getPauseHistogram() {
+        return pauses;
+    }
+
+    /**
+     * 按收集器名称的停顿耗时直方图（毫秒）
+     */
+    public Map<String, LogLinearHistogram> getCollectorHistograms() {
+        return collectorPauses;
+    }
+
+    /**
+     * 所有并发周期的时长直方图（毫秒）
+     */
+    public LogLinearHistogram getCycleHistogram() {
+        return cycles;
+    }
+
+    /**
+     * 按收集器名称的并发周期时长直方图（毫秒）
+     */
+    public Map<String, LogLinearHistogram> getCollectorCycleHistograms() {
+        return collectorCycles;
+    }
+
+    /**
+     * 按 GC 原因的停顿耗时直方图（毫秒），原因在第一次出现时创建
+     */
+    public Map<String, LogLinearHistogram> getCauseHistograms() {
+        return causePauses;
+    }
+
+    /**
+     * 累计分配字节数
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * 累计晋升到老年代的字节数
+     */
+    public long getPromotedBytes() {
+        return promotedBytes.get();
+    }
+
+    /**
+     * 已处理的 GC 通知数
+     */
+    public long getEventCount() {
+        return eventCount.get();
+    }
+
+    /**
+     * 转换为指标名片段（空白替换为下划线）
+     */
+    public static String metricName(String name) {
+        return name.replaceAll("\\s+", "_");
+    }
+}
@@ -0,0 +1,231 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import java.util.List;
+
+/**
+ * 堆转储分析结果
+ *
+ * 大小均为估算值：按 HPROF 中的字段字节数加两个字长的对象头计算，按 8 字节对齐。
+ */
+public class HeapAnalysis {
+
+    /**
+     * 类直方图中的一项
+     */
+    public static class ClassEntry {
+        private final String className;
+        private final long instances;
+        private final long shallowBytes;
+
+        public ClassEntry(String className, long instances, long shallowBytes) {
+            this.className = className;
+            this.instances = instances;
+            this.shallowBytes = shallowBytes;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public long getInstances() {
+            return instances;
+        }
+
+        public long getShallowBytes() {
+            return shallowBytes;
+        }
+    }
+
+    /**
+     * 支配树中的一个对象
+     */
+    public static class ObjectEntry {
+        private final String className;
+        private final long objectId;
+        private final long shallowBytes;
+        private final long retainedBytes;
+        private final double retainedPercent;
+
+        public ObjectEntry(String className, long objectId, long shallowBytes, long retainedBytes, double retainedPercent) {
+            this.className = className;
+            this.objectId = objectId;
+            this.shallowBytes = shallowBytes;
+            this.retainedBytes = retainedBytes;
+            this.retainedPercent = retainedPercent;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public long getObjectId() {
+            return objectId;
+        }
+
+        public long getShallowBytes() {
+            return shallowBytes;
+        }
+
+        public long getRetainedBytes() {
+            return retainedBytes;
+        }
+
+        public double getRetainedPercent() {
+            return retainedPercent;
+        }
+    }
+
+    /**
+     * 泄漏嫌疑：保留了超过阈值比例的单个对象，或同一个类的一组顶层支配对象
+     */
+    public static class Suspect {
+        private final String description;
+        private final String className;
+        private final long instances;
+        private final long retainedBytes;
+        private final double retainedPercent;
+        private final ObjectEntry object;
+        private final ObjectEntry accumulationPoint;
+
+        public Suspect(String description, String className, long instances, long retainedBytes,
+                       double retainedPercent, ObjectEntry object, ObjectEntry accumulationPoint) {
+            this.description = description;
+            this.className = className;
+            this.instances = instances;
+            this.retainedBytes = retainedBytes;
+            this.retainedPercent = retainedPercent;
+            this.object = object;
+            this.accumulationPoint = accumulationPoint;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public long getInstances() {
+            return instances;
+        }
+
+        public long getRetainedBytes() {
+            return retainedBytes;
+        }
+
+        public double getRetainedPercent() {
+            return retainedPercent;
+        }
+
+        /**
+         * 单个对象的嫌疑为该对象，一组对象时为 null
+         */
+        public ObjectEntry getObject() {
+            return object;
+        }
+
+        /**
+         * 积累点：从嫌疑对象沿支配树向下，直到保留大小分散到多个子节点为止的对象（没有时为 null）
+         */
+        public ObjectEntry getAccumulationPoint() {
+            return accumulationPoint;
+        }
+    }
+
+    private final String file;
+    private final long fileSize;
+    private final int idSize;
+    private final long objects;
+    private final long classes;
+    private final long gcRoots;
+    private final long totalBytes;
+    private final long reachableObjects;
+    private final long reachableBytes;
+    private final long analysisMillis;
+    private final List<ClassEntry> histogram;
+    private final List<ObjectEntry> dominators;
+    private final List<Suspect> suspects;
+
+    public HeapAnalysis(String file, long fileSize, int idSize, long objects, long classes, long gcRoots,
+                        long totalBytes, long reachableObjects, long reachableBytes, long analysisMillis,
+                        List<ClassEntry> histogram, List<ObjectEntry> dominators, List<Suspect> suspects) {
+        this.file = file;
+        this.fileSize = fileSize;
+        this.idSize = idSize;
+        this.objects = objects;
+        this.classes = classes;
+        this.gcRoots = gcRoots;
+        this.totalBytes = totalBytes;
+        this.reachableObjects = reachableObjects;
+        this.reachableBytes = reachableBytes;
+        this.analysisMillis = analysisMillis;
+        this.histogram = histogram;
+        this.dominators = dominators;
+        this.suspects = suspects;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public int getIdSize() {
+        return idSize;
+    }
+
+    public long getObjects() {
+        return objects;
+    }
+
+    public long getClasses() {
+        return classes;
+    }
+
+    public long getGcRoots() {
+        return gcRoots;
+    }
+
+    /**
+     * 所有对象（含不可达对象）的浅大小之和
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getReachableObjects() {
+        return reachableObjects;
+    }
+
+    public long getReachableBytes() {
+        return reachableBytes;
+    }
+
+    public long getAnalysisMillis() {
+        return analysisMillis;
+    }
+
+    /**
+     * 按浅大小排序的类直方图
+     */
+    public List<ClassEntry> getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * 按保留大小排序的顶层支配对象（直接由 GC Root 支配）
+     */
+    public List<ObjectEntry> getDominators() {
+        return dominators;
+    }
+
+    /**
+     * 按保留大小排序的泄漏嫌疑
+     */
+    public List<Suspect> getSuspects() {
+        return suspects;
+    }
+}
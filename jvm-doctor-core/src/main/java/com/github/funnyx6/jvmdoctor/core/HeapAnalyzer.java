@@ -0,0 +1,207 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HPROF 堆转储分析
+ *
+ * 转储文件以内存映射方式读取，对象索引、引用图和支配树都放在临时目录下的映射文件中（峰值约每个对象 70 字节加每个引用 8 字节），
+ * 分析几十 GB 的转储不需要同等大小的 Java 堆，由操作系统页缓存按需换入换出。
+ * 建索引的各阶段按转储块或对象区间在线程池中并行，支配树（Lengauer-Tarjan）为顺序计算。
+ *
+ * 输出类直方图、按保留大小排序的顶层支配对象，以及泄漏嫌疑：
+ * <ul>
+ *   <li>单个顶层支配对象保留了超过阈值比例的可达堆</li>
+ *   <li>同一个类的多个顶层支配对象合计保留了超过阈值比例的可达堆</li>
+ * </ul>
+ * 单个对象的嫌疑同时给出积累点：沿支配树向下，只要最大的子节点保留了当前节点 {@value #ACCUMULATION_RATIO} 以上的大小就继续下降。
+ */
+public class HeapAnalyzer {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeapAnalyzer.class);
+
+    public static final double DEFAULT_SUSPECT_THRESHOLD = 0.1;
+    static final double ACCUMULATION_RATIO = 0.8;
+    private static final int MAX_ACCUMULATION_DEPTH = 10_000;
+
+    private final File dumpFile;
+    private final int threads;
+    private final File tmpDir;
+    private long chunkBytes = HeapIndex.CHUNK_BYTES;
+
+    public HeapAnalyzer(File dumpFile) {
+        this(dumpFile, 0, null);
+    }
+
+    /**
+     * @param dumpFile HPROF 文件
+     * @param threads 建索引的线程数（0 为 CPU 核数）
+     * @param tmpDir 索引文件目录（null 为转储文件所在目录）
+     */
+    public HeapAnalyzer(File dumpFile, int threads, File tmpDir) {
+        this.dumpFile = dumpFile;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.tmpDir = tmpDir != null ? tmpDir : dumpFile.getAbsoluteFile().getParentFile();
+    }
+
+    /**
+     * 并行任务的划分粒度（测试用）
+     */
+    void setChunkBytes(long chunkBytes) {
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * 分析转储
+     *
+     * @param topN 直方图和支配对象的条数
+     * @param suspectThreshold 泄漏嫌疑的保留比例阈值（0~1）
+     */
+    public HeapAnalysis analyze(int topN, double suspectThreshold) throws IOException {
+        long start = System.currentTimeMillis();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "jvm-doctor-heap-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (HprofFile hprof = new HprofFile(dumpFile);
+             HeapIndex index = new HeapIndex(hprof, tmpDir, pool, chunkBytes);
+             DominatorTree tree = new DominatorTree(index, tmpDir)) {
+            index.build();
+            tree.compute();
+            HeapAnalysis analysis = summarize(hprof, index, tree, topN, suspectThreshold,
+                    System.currentTimeMillis() - start);
+            logger.info("Analyzed {} in {}ms", dumpFile, System.currentTimeMillis() - start);
+            return analysis;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private HeapAnalysis summarize(HprofFile hprof, HeapIndex index, DominatorTree tree, int topN,
+                                   double suspectThreshold, long millis) {
+        long reachableBytes = tree.getReachableBytes();
+
+        List<HeapAnalysis.ClassEntry> histogram = new ArrayList<>();
+        for (int c = 0; c < index.getClassCount(); c++) {
+            if (index.getClassInstances(c) > 0) {
+                histogram.add(new HeapAnalysis.ClassEntry(index.getClassName(c), index.getClassInstances(c),
+                        index.getClassBytes(c)));
+            }
+        }
+        histogram.sort(Comparator.comparingLong(HeapAnalysis.ClassEntry::getShallowBytes).reversed());
+        if (histogram.size() > topN) {
+            histogram = new ArrayList<>(histogram.subList(0, topN));
+        }
+
+        // 顶层支配对象：取保留大小最大的 topN，同时按类汇总
+        int[] top = new int[Math.max(topN, 0)];
+        int topCount = 0;
+        long[] groupBytes = new long[index.getClassCount()];
+        long[] groupCount = new long[index.getClassCount()];
+        long thresholdBytes = (long) (reachableBytes * suspectThreshold);
+        List<HeapAnalysis.Suspect> suspects = new ArrayList<>();
+        boolean[] singleSuspectClass = new boolean[index.getClassCount()];
+
+        int roots = tree.childCount(DominatorTree.ROOT);
+        for (int i = 0; i < roots; i++) {
+            int d = tree.child(DominatorTree.ROOT, i);
+            long retained = tree.retainedBytes(d);
+            int classIdx = index.classOf(tree.node(d));
+            groupBytes[classIdx] += retained;
+            groupCount[classIdx]++;
+
+            if (top.length > 0 && (topCount < top.length || retained > tree.retainedBytes(top[topCount - 1]))) {
+                int pos = topCount < top.length ? topCount++ : topCount - 1;
+                while (pos > 0 && tree.retainedBytes(top[pos - 1]) < retained) {
+                    top[pos] = top[pos - 1];
+                    pos--;
+                }
+                top[pos] = d;
+            }
+
+            if (retained > 0 && retained >= thresholdBytes) {
+                HeapAnalysis.ObjectEntry object = entry(index, tree, d, reachableBytes);
+                int point = accumulationPoint(tree, d);
+                suspects.add(new HeapAnalysis.Suspect(
+                        "One instance of " + object.getClassName() + " retains " + percent(object.getRetainedPercent())
+                                + " of the reachable heap",
+                        object.getClassName(), 1, retained, object.getRetainedPercent(), object,
+                        point == d ? null : entry(index, tree, point, reachableBytes)));
+                singleSuspectClass[classIdx] = true;
+            }
+        }
+
+        for (int c = 0; c < groupBytes.length; c++) {
+            // 类对象各自独立（静态字段），不按组判断
+            if (groupCount[c] < 2 || c == index.getJavaLangClass() || singleSuspectClass[c]
+                    || groupBytes[c] == 0 || groupBytes[c] < thresholdBytes) {
+                continue;
+            }
+            double pct = percentOf(groupBytes[c], reachableBytes);
+            suspects.add(new HeapAnalysis.Suspect(
+                    groupCount[c] + " instances of " + index.getClassName(c) + " retain " + percent(pct)
+                            + " of the reachable heap",
+                    index.getClassName(c), groupCount[c], groupBytes[c], pct, null, null));
+        }
+        suspects.sort(Comparator.comparingLong(HeapAnalysis.Suspect::getRetainedBytes).reversed());
+
+        List<HeapAnalysis.ObjectEntry> dominators = new ArrayList<>();
+        for (int i = 0; i < topCount; i++) {
+            dominators.add(entry(index, tree, top[i], reachableBytes));
+        }
+
+        return new HeapAnalysis(dumpFile.getPath(), hprof.size(), hprof.getIdSize(), index.getObjectCount(),
+                index.getClassDumpCount(), index.getRootCount(), index.getTotalBytes(), tree.getReachableCount(),
+                reachableBytes, millis, histogram, dominators, suspects);
+    }
+
+    /**
+     * 沿支配树向下，直到最大的子节点保留的大小不足当前节点的 ACCUMULATION_RATIO
+     */
+    static int accumulationPoint(DominatorTree tree, int d) {
+        int current = d;
+        for (int depth = 0; depth < MAX_ACCUMULATION_DEPTH; depth++) {
+            int biggest = -1;
+            long biggestBytes = -1;
+            for (int i = 0, n = tree.childCount(current); i < n; i++) {
+                int child = tree.child(current, i);
+                if (tree.retainedBytes(child) > biggestBytes) {
+                    biggest = child;
+                    biggestBytes = tree.retainedBytes(child);
+                }
+            }
+            if (biggest < 0 || biggestBytes < tree.retainedBytes(current) * ACCUMULATION_RATIO) {
+                break;
+            }
+            current = biggest;
+        }
+        return current;
+    }
+
+    private static HeapAnalysis.ObjectEntry entry(HeapIndex index, DominatorTree tree, int d, long reachableBytes) {
+        int node = tree.node(d);
+        long retained = tree.retainedBytes(d);
+        return new HeapAnalysis.ObjectEntry(index.describe(node), index.objectId(node), index.shallowBytes(node),
+                retained, percentOf(retained, reachableBytes));
+    }
+
+    private static double percentOf(long bytes, long total) {
+        return total > 0 ? Math.round(bytes * 10000.0 / total) / 100.0 : 0;
+    }
+
+    private static String percent(double value) {
+        return String.format("%.2f%%", value);
+    }
+}
@@ -0,0 +1,990 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * HPROF 对象索引
+ *
+ * 对象按标识符排序后编号为 1..n（0 保留给连接所有 GC Root 的虚拟根），所有按对象的数组都在堆外：
+ * <ul>
+ *   <li>ids / offsets：对象标识符及其子记录在文件中的偏移（long）</li>
+ *   <li>classOf / shallow：类编号和估算的浅大小（int，以 8 字节为单位）</li>
+ *   <li>edgeStart / edges：引用图的 CSR 表示，edges 为目标对象编号，引用了转储中不存在的对象时为 -1</li>
+ * </ul>
+ * 只有类信息（通常几万个）和字符串索引在 Java 堆上，索引大小与堆转储中的对象数成正比，与转储的字节数无关。
+ *
+ * 构建分为几个阶段：顺序扫描一遍子记录头部，把堆转储切成约 {@value #CHUNK_BYTES} 字节的块并统计每块的对象数、
+ * 收集类定义和 GC Root；之后按块并行登记对象并在块内归并排序（块之间无序时再做一次多路归并），
+ * 按对象编号区间并行计算类、浅大小和出度，前缀和之后再并行填充引用。
+ */
+final class HeapIndex implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeapIndex.class);
+
+    // 顶层记录
+    static final int TAG_UTF8 = 0x01;
+    static final int TAG_LOAD_CLASS = 0x02;
+    static final int TAG_HEAP_DUMP = 0x0C;
+    static final int TAG_HEAP_DUMP_SEGMENT = 0x1C;
+
+    // 堆转储子记录
+    static final int ROOT_UNKNOWN = 0xFF;
+    static final int ROOT_JNI_GLOBAL = 0x01;
+    static final int ROOT_JNI_LOCAL = 0x02;
+    static final int ROOT_JAVA_FRAME = 0x03;
+    static final int ROOT_NATIVE_STACK = 0x04;
+    static final int ROOT_STICKY_CLASS = 0x05;
+    static final int ROOT_THREAD_BLOCK = 0x06;
+    static final int ROOT_MONITOR_USED = 0x07;
+    static final int ROOT_THREAD_OBJECT = 0x08;
+    static final int CLASS_DUMP = 0x20;
+    static final int INSTANCE_DUMP = 0x21;
+    static final int OBJ_ARRAY_DUMP = 0x22;
+    static final int PRIM_ARRAY_DUMP = 0x23;
+
+    // 基本类型
+    static final int TYPE_OBJECT = 2;
+    static final int TYPE_BOOLEAN = 4;
+    static final int TYPE_LONG = 11;
+
+    private static final String[] PRIMITIVE_ARRAY_NAMES = {
+            null, null, null, null, "[Z", "[C", "[F", "[D", "[B", "[S", "[I", "[J"
+    };
+
+    static final long CHUNK_BYTES = 64L << 20;
+    static final int TASK_OBJECTS = 1 << 20;
+
+    /**
+     * 类定义（CLASS DUMP）
+     */
+    static final class ClassInfo {
+        final long id;
+        final long superId;
+        final byte[] fieldTypes;
+        // 类对象引用的对象：父类、类加载器、静态引用字段（均非 0）
+        final long[] refs;
+        final int staticBytes;
+        String name;
+        // 实例数据中引用字段的偏移（本类字段在前，父类字段在后）
+        int[] refOffsets = new int[0];
+
+        ClassInfo(long id, long superId, byte[] fieldTypes, long[] refs, int staticBytes) {
+            this.id = id;
+            this.superId = superId;
+            this.fieldTypes = fieldTypes;
+            this.refs = refs;
+            this.staticBytes = staticBytes;
+        }
+
+        static ClassInfo synthetic(String name) {
+            ClassInfo info = new ClassInfo(0, 0, new byte[0], new long[0], 0);
+            info.name = name;
+            return info;
+        }
+    }
+
+    /**
+     * 一段连续的子记录，可以跨越多个 HEAP DUMP SEGMENT（从 segment 号段的 start 开始，到 end 为止）
+     */
+    private static final class Chunk {
+        final int segment;
+        final long start;
+        final long end;
+        final int base;
+        final int count;
+
+        Chunk(int segment, long start, long end, int base, int count) {
+            this.segment = segment;
+            this.start = start;
+            this.end = end;
+            this.base = base;
+            this.count = count;
+        }
+    }
+
+    /**
+     * 可增长的 long 列表
+     */
+    private static final class LongList {
+        long[] values = new long[1024];
+        int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    private final HprofFile hprof;
+    private final int idSize;
+    private final int headerSize;
+    private final File tmpDir;
+    private final ExecutorService pool;
+    private final long chunkBytes;
+
+    // 扫描阶段
+    private final LongLongMap strings = new LongLongMap();
+    private final LongLongMap classNames = new LongLongMap();
+    private final LongList heapSegments = new LongList();
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final LongList rootIds = new LongList();
+
+    // 类（含合成的基本类型数组类和未知类）
+    private final List<ClassInfo> classes = new ArrayList<>();
+    private final LongLongMap classIndex = new LongLongMap();
+    private final int[] primitiveArrayClasses = new int[TYPE_LONG + 1];
+    private int classDumpCount;
+    private int javaLangClass;
+    private int unknownClass;
+
+    private int objectCount;
+    private OffHeapArray ids;
+    private OffHeapArray offsets;
+    private OffHeapArray classOf;
+    private OffHeapArray shallow;
+    private OffHeapArray edgeStart;
+    private OffHeapArray edges;
+    private long[] classInstances;
+    private long[] classBytes;
+    private long totalBytes;
+
+    HeapIndex(HprofFile hprof, File tmpDir, ExecutorService pool) {
+        this(hprof, tmpDir, pool, CHUNK_BYTES);
+    }
+
+    HeapIndex(HprofFile hprof, File tmpDir, ExecutorService pool, long chunkBytes) {
+        this.hprof = hprof;
+        this.idSize = hprof.getIdSize();
+        // 对象头按两个字长估算（数组另加 4 字节长度）
+        this.headerSize = 2 * idSize;
+        this.tmpDir = tmpDir;
+        this.pool = pool;
+        this.chunkBytes = chunkBytes;
+    }
+
+    void build() throws IOException {
+        long start = System.currentTimeMillis();
+        try {
+            scanRecords();
+            scanHeap();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated heap dump: " + hprof.getFile(), e);
+        }
+        resolveClasses();
+        logger.info("Scanned {}: {} objects, {} classes, {} GC roots in {} chunks ({}ms)",
+                hprof.getFile(), objectCount, classDumpCount, rootIds.size, chunks.size(),
+                System.currentTimeMillis() - start);
+
+        start = System.currentTimeMillis();
+        indexObjects();
+        scanObjects();
+        buildEdges();
+        logger.info("Indexed {} objects and {} references ({}ms)",
+                objectCount, edgeStart.getLong(objectCount + 1L), System.currentTimeMillis() - start);
+    }
+
+    // ========== 顺序扫描 ==========
+
+    private void scanRecords() throws IOException {
+        long size = hprof.size();
+        long pos = hprof.getDataStart();
+        while (pos + 9 <= size) {
+            int tag = hprof.getUnsignedByte(pos);
+            long length = hprof.getUnsignedInt(pos + 5);
+            long body = pos + 9;
+            if (body + length > size) {
+                throw new IOException("Truncated record 0x" + Integer.toHexString(tag) + " at " + pos);
+            }
+            switch (tag) {
+                case TAG_UTF8:
+                    strings.put(hprof.getId(body), body);
+                    break;
+                case TAG_LOAD_CLASS:
+                    // u4 序号、类对象 ID、u4 栈序号、类名 ID
+                    classNames.put(hprof.getId(body + 4), hprof.getId(body + 8 + idSize));
+                    break;
+                case TAG_HEAP_DUMP:
+                case TAG_HEAP_DUMP_SEGMENT:
+                    heapSegments.add(body);
+                    heapSegments.add(body + length);
+                    break;
+                default:
+                    break;
+            }
+            pos = body + length;
+        }
+    }
+
+    private void scanHeap() throws IOException {
+        long count = 0;
+        int chunkSegment = 0;
+        long chunkStart = heapSegments.size > 0 ? heapSegments.values[0] : 0;
+        long chunkSize = 0;
+        int chunkCount = 0;
+        long pos = chunkStart;
+        for (int s = 0; s < heapSegments.size; s += 2) {
+            pos = heapSegments.values[s];
+            long end = heapSegments.values[s + 1];
+            while (pos < end) {
+                int tag = hprof.getUnsignedByte(pos);
+                switch (tag) {
+                    case ROOT_UNKNOWN:
+                    case ROOT_JNI_GLOBAL:
+                    case ROOT_JNI_LOCAL:
+                    case ROOT_JAVA_FRAME:
+                    case ROOT_NATIVE_STACK:
+                    case ROOT_STICKY_CLASS:
+                    case ROOT_THREAD_BLOCK:
+                    case ROOT_MONITOR_USED:
+                    case ROOT_THREAD_OBJECT:
+                        rootIds.add(hprof.getId(pos + 1));
+                        break;
+                    case CLASS_DUMP:
+                        readClassDump(pos);
+                        chunkCount++;
+                        break;
+                    case INSTANCE_DUMP:
+                    case OBJ_ARRAY_DUMP:
+                    case PRIM_ARRAY_DUMP:
+                        chunkCount++;
+                        break;
+                    default:
+                        break;
+                }
+                long next = recordEnd(pos, tag);
+                chunkSize += next - pos;
+                pos = next;
+                if (chunkSize >= chunkBytes) {
+                    addChunk(chunkSegment, chunkStart, pos, count, chunkCount);
+                    count += chunkCount;
+                    chunkSegment = s;
+                    chunkStart = pos;
+                    chunkSize = 0;
+                    chunkCount = 0;
+                }
+            }
+            if (pos != end) {
+                throw new IOException("Heap dump sub-record crosses segment end at " + end);
+            }
+            if (chunkSize == 0 && s + 2 < heapSegments.size) {
+                // 上一块恰好在段尾结束，下一块从下一段开始
+                chunkSegment = s + 2;
+                chunkStart = heapSegments.values[s + 2];
+            }
+        }
+        if (chunkSize > 0) {
+            addChunk(chunkSegment, chunkStart, pos, count, chunkCount);
+            count += chunkCount;
+        }
+        objectCount = (int) count;
+    }
+
+    private void addChunk(int segment, long start, long end, long before, int count) throws IOException {
+        if (before + count >= Integer.MAX_VALUE - 2) {
+            throw new IOException("Too many objects in heap dump: more than " + (Integer.MAX_VALUE - 3));
+        }
+        chunks.add(new Chunk(segment, start, end, (int) before + 1, count));
+    }
+
+    /**
+     * 子记录的结束位置
+     */
+    private long recordEnd(long pos, int tag) throws IOException {
+        switch (tag) {
+            case ROOT_UNKNOWN:
+            case ROOT_STICKY_CLASS:
+            case ROOT_MONITOR_USED:
+                return pos + 1 + idSize;
+            case ROOT_JNI_GLOBAL:
+                return pos + 1 + 2L * idSize;
+            case ROOT_NATIVE_STACK:
+            case ROOT_THREAD_BLOCK:
+                return pos + 1 + idSize + 4;
+            case ROOT_JNI_LOCAL:
+            case ROOT_JAVA_FRAME:
+            case ROOT_THREAD_OBJECT:
+                return pos + 1 + idSize + 8;
+            case CLASS_DUMP:
+                return classDumpEnd(pos);
+            case INSTANCE_DUMP:
+                // ID、u4 栈序号、类 ID、u4 字节数、字段数据
+                return pos + 1 + 2L * idSize + 8 + hprof.getUnsignedInt(pos + 1 + 2L * idSize + 4);
+            case OBJ_ARRAY_DUMP:
+                // ID、u4 栈序号、u4 元素数、数组类 ID、元素
+                return pos + 1 + 2L * idSize + 8 + hprof.getUnsignedInt(pos + 1 + idSize + 4) * idSize;
+            case PRIM_ARRAY_DUMP:
+                // ID、u4 栈序号、u4 元素数、u1 类型、元素
+                return pos + 1 + idSize + 9 + hprof.getUnsignedInt(pos + 1 + idSize + 4)
+                        * typeSize(hprof.getUnsignedByte(pos + 1 + idSize + 8));
+            default:
+                throw new IOException("Unknown heap dump sub-record 0x" + Integer.toHexString(tag) + " at " + pos);
+        }
+    }
+
+    private long classDumpEnd(long pos) throws IOException {
+        // 类 ID、u4 栈序号、父类、类加载器、签名者、保护域、2 个保留 ID、u4 实例大小
+        long p = pos + 1 + 7L * idSize + 8;
+        int constants = hprof.getUnsignedShort(p);
+        p += 2;
+        for (int i = 0; i < constants; i++) {
+            p += 3 + typeSize(hprof.getUnsignedByte(p + 2));
+        }
+        int statics = hprof.getUnsignedShort(p);
+        p += 2;
+        for (int i = 0; i < statics; i++) {
+            p += idSize + 1 + typeSize(hprof.getUnsignedByte(p + idSize));
+        }
+        int fields = hprof.getUnsignedShort(p);
+        return p + 2 + (long) fields * (idSize + 1);
+    }
+
+    private void readClassDump(long pos) throws IOException {
+        long id = hprof.getId(pos + 1);
+        long superId = hprof.getId(pos + 1 + idSize + 4);
+        long loaderId = hprof.getId(pos + 1 + 2L * idSize + 4);
+        LongList refs = new LongList();
+        if (superId != 0) {
+            refs.add(superId);
+        }
+        if (loaderId != 0) {
+            refs.add(loaderId);
+        }
+
+        long p = pos + 1 + 7L * idSize + 8;
+        int constants = hprof.getUnsignedShort(p);
+        p += 2;
+        for (int i = 0; i < constants; i++) {
+            p += 3 + typeSize(hprof.getUnsignedByte(p + 2));
+        }
+        int statics = hprof.getUnsignedShort(p);
+        p += 2;
+        int staticBytes = 0;
+        for (int i = 0; i < statics; i++) {
+            int type = hprof.getUnsignedByte(p + idSize);
+            p += idSize + 1;
+            if (type == TYPE_OBJECT) {
+                long ref = hprof.getId(p);
+                if (ref != 0) {
+                    refs.add(ref);
+                }
+            }
+            staticBytes += typeSize(type);
+            p += typeSize(type);
+        }
+        int fields = hprof.getUnsignedShort(p);
+        p += 2;
+        byte[] fieldTypes = new byte[fields];
+        for (int i = 0; i < fields; i++) {
+            fieldTypes[i] = hprof.get(p + idSize);
+            p += idSize + 1;
+        }
+
+        classIndex.put(id, classes.size());
+        classes.add(new ClassInfo(id, superId, fieldTypes, Arrays.copyOf(refs.values, refs.size), staticBytes));
+        classDumpCount++;
+    }
+
+    int typeSize(int type) throws IOException {
+        switch (type) {
+            case TYPE_OBJECT:
+                return idSize;
+            case TYPE_BOOLEAN:
+            case 8:  // byte
+                return 1;
+            case 5:  // char
+            case 9:  // short
+                return 2;
+            case 6:  // float
+            case 10: // int
+                return 4;
+            case 7:  // double
+            case TYPE_LONG:
+                return 8;
+            default:
+                throw new IOException("Unknown basic type " + type);
+        }
+    }
+
+    /**
+     * 解析类名、引用字段偏移，补充基本类型数组类和未知类
+     */
+    private void resolveClasses() throws IOException {
+        Map<String, Integer> byName = new HashMap<>();
+        for (int i = 0; i < classes.size(); i++) {
+            ClassInfo info = classes.get(i);
+            String raw = string(classNames.get(info.id, 0));
+            info.name = raw == null ? "class@0x" + Long.toHexString(info.id) : prettyName(raw);
+            if (raw != null) {
+                byName.put(raw.replace('.', '/'), i);
+            }
+
+            List<Integer> refOffsets = new ArrayList<>();
+            int offset = 0;
+            ClassInfo current = info;
+            for (int depth = 0; current != null && depth < 256; depth++) {
+                for (byte type : current.fieldTypes) {
+                    if (type == TYPE_OBJECT) {
+                        refOffsets.add(offset);
+                    }
+                    offset += typeSize(type);
+                }
+                long superIndex = classIndex.get(current.superId, -1);
+                current = superIndex < 0 ? null : classes.get((int) superIndex);
+            }
+            info.refOffsets = new int[refOffsets.size()];
+            for (int k = 0; k < info.refOffsets.length; k++) {
+                info.refOffsets[k] = refOffsets.get(k);
+            }
+        }
+
+        for (int type = TYPE_BOOLEAN; type <= TYPE_LONG; type++) {
+            Integer index = byName.get(PRIMITIVE_ARRAY_NAMES[type]);
+            if (index == null) {
+                index = classes.size();
+                classes.add(ClassInfo.synthetic(prettyName(PRIMITIVE_ARRAY_NAMES[type])));
+            }
+            primitiveArrayClasses[type] = index;
+        }
+        Integer classClass = byName.get("java/lang/Class");
+        if (classClass == null) {
+            classClass = classes.size();
+            classes.add(ClassInfo.synthetic("java.lang.Class"));
+        }
+        javaLangClass = classClass;
+        unknownClass = classes.size();
+        classes.add(ClassInfo.synthetic("<unknown>"));
+    }
+
+    private String string(long id) {
+        long pos = strings.get(id, -1);
+        if (pos < 0) {
+            return null;
+        }
+        return hprof.getString(pos + idSize, (int) (hprof.getUnsignedInt(pos - 4) - idSize));
+    }
+
+    /**
+     * java/lang/String → java.lang.String，[[I → int[][]，[Ljava/lang/Object; → java.lang.Object[]
+     */
+    static String prettyName(String raw) {
+        String name = raw.replace('/', '.');
+        int dims = 0;
+        while (dims < name.length() && name.charAt(dims) == '[') {
+            dims++;
+        }
+        if (dims == 0 || dims == name.length()) {
+            return name;
+        }
+        String element;
+        switch (name.charAt(dims)) {
+            case 'Z': element = "boolean"; break;
+            case 'C': element = "char"; break;
+            case 'F': element = "float"; break;
+            case 'D': element = "double"; break;
+            case 'B': element = "byte"; break;
+            case 'S': element = "short"; break;
+            case 'I': element = "int"; break;
+            case 'J': element = "long"; break;
+            case 'L':
+                element = name.substring(dims + 1, name.endsWith(";") ? name.length() - 1 : name.length());
+                break;
+            default:
+                return name;
+        }
+        StringBuilder sb = new StringBuilder(element);
+        for (int i = 0; i < dims; i++) {
+            sb.append("[]");
+        }
+        return sb.toString();
+    }
+
+    // ========== 并行建索引 ==========
+
+    /**
+     * 按块并行登记对象的 ID 和偏移，块内按 ID 排序；块之间无序时多路归并
+     */
+    private void indexObjects() throws IOException {
+        ids = OffHeapArray.ofLongs(tmpDir, objectCount + 1L);
+        offsets = OffHeapArray.ofLongs(tmpDir, objectCount + 1L);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            tasks.add(() -> {
+                int segment = chunk.segment;
+                long pos = chunk.start;
+                int index = chunk.base;
+                while (pos != chunk.end) {
+                    if (pos == heapSegments.values[segment + 1]) {
+                        segment += 2;
+                        pos = heapSegments.values[segment];
+                        continue;
+                    }
+                    int tag = hprof.getUnsignedByte(pos);
+                    if (tag >= CLASS_DUMP && tag <= PRIM_ARRAY_DUMP) {
+                        ids.putLong(index, hprof.getId(pos + 1));
+                        offsets.putLong(index, pos);
+                        index++;
+                    }
+                    pos = recordEnd(pos, tag);
+                }
+                sortChunk(chunk);
+                return null;
+            });
+        }
+        runAll(tasks);
+
+        long last = Long.MIN_VALUE;
+        boolean ordered = true;
+        for (Chunk chunk : chunks) {
+            if (chunk.count == 0) {
+                continue;
+            }
+            if (ids.getLong(chunk.base) <= last) {
+                ordered = false;
+                break;
+            }
+            last = ids.getLong(chunk.base + chunk.count - 1);
+        }
+        if (!ordered) {
+            mergeChunks();
+        }
+    }
+
+    /**
+     * 块内按 ID 排序（ids 与 offsets 同步移动）
+     *
+     * 堆按区域顺序遍历，块内通常只有少数几段升序，用自然归并排序：找出升序段后两两归并，
+     * 比较次数为 O(n log 段数)，已有序时只需扫描一遍。归并用的临时数组同样在堆外。
+     */
+    private void sortChunk(Chunk chunk) throws IOException {
+        int[] runs = new int[16];
+        int runCount = 0;
+        runs[runCount++] = 0;
+        for (int i = 1; i < chunk.count; i++) {
+            if (ids.getLong(chunk.base + i) < ids.getLong(chunk.base + i - 1)) {
+                if (runCount == runs.length) {
+                    runs = Arrays.copyOf(runs, runCount * 2);
+                }
+                runs[runCount++] = i;
+            }
+        }
+        if (runCount <= 1) {
+            return;
+        }
+        if (runCount == runs.length) {
+            runs = Arrays.copyOf(runs, runCount + 1);
+        }
+        runs[runCount] = chunk.count;
+
+        try (OffHeapArray tmpIds = OffHeapArray.ofLongs(tmpDir, chunk.count);
+             OffHeapArray tmpOffsets = OffHeapArray.ofLongs(tmpDir, chunk.count)) {
+            OffHeapArray srcIds = ids;
+            OffHeapArray srcOffsets = offsets;
+            long srcBase = chunk.base;
+            OffHeapArray dstIds = tmpIds;
+            OffHeapArray dstOffsets = tmpOffsets;
+            long dstBase = 0;
+            while (runCount > 1) {
+                int merged = 0;
+                for (int r = 0; r < runCount; r += 2) {
+                    int from = runs[r];
+                    int mid = runs[Math.min(r + 1, runCount)];
+                    int to = runs[Math.min(r + 2, runCount)];
+                    int i = from;
+                    int j = mid;
+                    for (int k = from; k < to; k++) {
+                        int take;
+                        if (j >= to || (i < mid && srcIds.getLong(srcBase + i) <= srcIds.getLong(srcBase + j))) {
+                            take = i++;
+                        } else {
+                            take = j++;
+                        }
+                        dstIds.putLong(dstBase + k, srcIds.getLong(srcBase + take));
+                        dstOffsets.putLong(dstBase + k, srcOffsets.getLong(srcBase + take));
+                    }
+                    runs[merged++] = from;
+                }
+                runs[merged] = chunk.count;
+                runCount = merged;
+
+                OffHeapArray swapIds = srcIds;
+                OffHeapArray swapOffsets = srcOffsets;
+                long swapBase = srcBase;
+                srcIds = dstIds;
+                srcOffsets = dstOffsets;
+                srcBase = dstBase;
+                dstIds = swapIds;
+                dstOffsets = swapOffsets;
+                dstBase = swapBase;
+            }
+            if (srcIds != ids) {
+                for (int k = 0; k < chunk.count; k++) {
+                    ids.putLong(chunk.base + k, srcIds.getLong(k));
+                    offsets.putLong(chunk.base + k, srcOffsets.getLong(k));
+                }
+            }
+        }
+    }
+
+    private void mergeChunks() throws IOException {
+        long start = System.currentTimeMillis();
+        int[] heap = new int[chunks.size()];
+        long[] cursor = new long[chunks.size()];
+        int size = 0;
+        for (int c = 0; c < chunks.size(); c++) {
+            if (chunks.get(c).count > 0) {
+                cursor[c] = chunks.get(c).base;
+                heap[size++] = c;
+            }
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(heap, size, i, cursor);
+        }
+
+        OffHeapArray mergedIds = OffHeapArray.ofLongs(tmpDir, objectCount + 1L);
+        OffHeapArray mergedOffsets = OffHeapArray.ofLongs(tmpDir, objectCount + 1L);
+        for (int out = 1; out <= objectCount; out++) {
+            int c = heap[0];
+            long k = cursor[c]++;
+            mergedIds.putLong(out, ids.getLong(k));
+            mergedOffsets.putLong(out, offsets.getLong(k));
+            Chunk chunk = chunks.get(c);
+            if (cursor[c] == chunk.base + chunk.count) {
+                heap[0] = heap[--size];
+            }
+            siftDown(heap, size, 0, cursor);
+        }
+        ids.close();
+        offsets.close();
+        ids = mergedIds;
+        offsets = mergedOffsets;
+        logger.info("Merged {} chunks ({}ms)", chunks.size(), System.currentTimeMillis() - start);
+    }
+
+    private void siftDown(int[] heap, int size, int i, long[] cursor) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && ids.getLong(cursor[heap[left]]) < ids.getLong(cursor[heap[smallest]])) {
+                smallest = left;
+            }
+            if (right < size && ids.getLong(cursor[heap[right]]) < ids.getLong(cursor[heap[smallest]])) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            int tmp = heap[i];
+            heap[i] = heap[smallest];
+            heap[smallest] = tmp;
+            i = smallest;
+        }
+    }
+
+    /**
+     * 并行计算每个对象的类、浅大小和出度，同时统计类直方图
+     */
+    private void scanObjects() throws IOException {
+        classOf = OffHeapArray.ofInts(tmpDir, objectCount + 1L);
+        shallow = OffHeapArray.ofInts(tmpDir, objectCount + 1L);
+        edgeStart = OffHeapArray.ofLongs(tmpDir, objectCount + 2L);
+        int classCount = classes.size();
+
+        List<Callable<long[][]>> tasks = new ArrayList<>();
+        for (int from = 1; from <= objectCount; from += TASK_OBJECTS) {
+            int first = from;
+            int last = (int) Math.min((long) from + TASK_OBJECTS - 1, objectCount);
+            tasks.add(() -> {
+                long[] instances = new long[classCount];
+                long[] bytes = new long[classCount];
+                for (int i = first; i <= last; i++) {
+                    long pos = offsets.getLong(i);
+                    int tag = hprof.getUnsignedByte(pos);
+                    int classIdx;
+                    long size;
+                    long degree;
+                    if (tag == INSTANCE_DUMP) {
+                        classIdx = classIndexOf(hprof.getId(pos + 1 + idSize + 4));
+                        long length = hprof.getUnsignedInt(pos + 1 + 2L * idSize + 4);
+                        size = align(headerSize + length);
+                        degree = 1 + countFieldRefs(classes.get(classIdx), pos + 1 + 2L * idSize + 8, length);
+                    } else if (tag == OBJ_ARRAY_DUMP) {
+                        long length = hprof.getUnsignedInt(pos + 1 + idSize + 4);
+                        classIdx = classIndexOf(hprof.getId(pos + 1 + idSize + 8));
+                        size = align(headerSize + 4 + length * idSize);
+                        degree = 1;
+                        long data = pos + 1 + 2L * idSize + 8;
+                        for (long k = 0; k < length; k++) {
+                            if (hprof.getId(data + k * idSize) != 0) {
+                                degree++;
+                            }
+                        }
+                    } else if (tag == PRIM_ARRAY_DUMP) {
+                        long length = hprof.getUnsignedInt(pos + 1 + idSize + 4);
+                        int type = hprof.getUnsignedByte(pos + 1 + idSize + 8);
+                        classIdx = type >= TYPE_BOOLEAN && type <= TYPE_LONG ? primitiveArrayClasses[type] : unknownClass;
+                        size = align(headerSize + 4 + length * typeSize(type));
+                        degree = 0;
+                    } else {
+                        ClassInfo info = classes.get(classIndexOf(hprof.getId(pos + 1)));
+                        classIdx = javaLangClass;
+                        size = align(headerSize + info.staticBytes);
+                        degree = info.refs.length;
+                    }
+                    classOf.putInt(i, classIdx);
+                    shallow.putInt(i, (int) Math.min(size >>> 3, Integer.MAX_VALUE));
+                    edgeStart.putLong(i + 1L, degree);
+                    instances[classIdx]++;
+                    bytes[classIdx] += size;
+                }
+                return new long[][]{instances, bytes};
+            });
+        }
+
+        classInstances = new long[classCount];
+        classBytes = new long[classCount];
+        for (long[][] partial : runAll(tasks)) {
+            for (int c = 0; c < classCount; c++) {
+                classInstances[c] += partial[0][c];
+                classBytes[c] += partial[1][c];
+                totalBytes += partial[1][c];
+            }
+        }
+    }
+
+    private int classIndexOf(long classId) {
+        return (int) classIndex.get(classId, unknownClass);
+    }
+
+    private long countFieldRefs(ClassInfo info, long data, long length) {
+        long count = 0;
+        for (int offset : info.refOffsets) {
+            if (offset + idSize <= length && hprof.getId(data + offset) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * 前缀和得到每个对象的引用区间，再并行填充引用目标（虚拟根的引用为全部 GC Root）
+     */
+    private void buildEdges() throws IOException {
+        edgeStart.putLong(1, rootIds.size);
+        for (long i = 2; i <= objectCount + 1L; i++) {
+            edgeStart.putLong(i, edgeStart.getLong(i) + edgeStart.getLong(i - 1));
+        }
+        edges = OffHeapArray.ofInts(tmpDir, edgeStart.getLong(objectCount + 1L));
+        for (int k = 0; k < rootIds.size; k++) {
+            edges.putInt(k, indexOf(rootIds.values[k]));
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 1; from <= objectCount; from += TASK_OBJECTS) {
+            int first = from;
+            int last = (int) Math.min((long) from + TASK_OBJECTS - 1, objectCount);
+            tasks.add(() -> {
+                for (int i = first; i <= last; i++) {
+                    long pos = offsets.getLong(i);
+                    int tag = hprof.getUnsignedByte(pos);
+                    long edge = edgeStart.getLong(i);
+                    if (tag == INSTANCE_DUMP) {
+                        long classId = hprof.getId(pos + 1 + idSize + 4);
+                        long length = hprof.getUnsignedInt(pos + 1 + 2L * idSize + 4);
+                        long data = pos + 1 + 2L * idSize + 8;
+                        edges.putInt(edge++, indexOf(classId));
+                        for (int offset : classes.get(classIndexOf(classId)).refOffsets) {
+                            if (offset + idSize <= length) {
+                                long ref = hprof.getId(data + offset);
+                                if (ref != 0) {
+                                    edges.putInt(edge++, indexOf(ref));
+                                }
+                            }
+                        }
+                    } else if (tag == OBJ_ARRAY_DUMP) {
+                        long length = hprof.getUnsignedInt(pos + 1 + idSize + 4);
+                        long data = pos + 1 + 2L * idSize + 8;
+                        edges.putInt(edge++, indexOf(hprof.getId(pos + 1 + idSize + 8)));
+                        for (long k = 0; k < length; k++) {
+                            long ref = hprof.getId(data + k * idSize);
+                            if (ref != 0) {
+                                edges.putInt(edge++, indexOf(ref));
+                            }
+                        }
+                    } else if (tag == CLASS_DUMP) {
+                        for (long ref : classes.get(classIndexOf(hprof.getId(pos + 1))).refs) {
+                            edges.putInt(edge++, indexOf(ref));
+                        }
+                    }
+                    if (edge != edgeStart.getLong(i + 1L)) {
+                        throw new IllegalStateException("Reference count mismatch for object " + i);
+                    }
+                }
+                return null;
+            });
+        }
+        runAll(tasks);
+        // 之后只需要图结构
+        offsets.close();
+        offsets = null;
+    }
+
+    /**
+     * 对象 ID → 对象编号，不存在时返回 -1
+     */
+    int indexOf(long id) {
+        int lo = 1;
+        int hi = objectCount;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midId = ids.getLong(mid);
+            if (midId < id) {
+                lo = mid + 1;
+            } else if (midId > id) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private <T> List<T> runAll(List<Callable<T>> tasks) throws IOException {
+        List<Future<T>> futures = new ArrayList<>();
+        for (Callable<T> task : tasks) {
+            futures.add(pool.submit(task));
+        }
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Heap dump indexing interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Corrupt heap dump: " + hprof.getFile(), cause);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    // ========== 查询 ==========
+
+    int getObjectCount() {
+        return objectCount;
+    }
+
+    int getClassDumpCount() {
+        return classDumpCount;
+    }
+
+    int getRootCount() {
+        return rootIds.size;
+    }
+
+    long getTotalBytes() {
+        return totalBytes;
+    }
+
+    int getClassCount() {
+        return classes.size();
+    }
+
+    String getClassName(int classIdx) {
+        return classes.get(classIdx).name;
+    }
+
+    long getClassInstances(int classIdx) {
+        return classInstances[classIdx];
+    }
+
+    long getClassBytes(int classIdx) {
+        return classBytes[classIdx];
+    }
+
+    int getJavaLangClass() {
+        return javaLangClass;
+    }
+
+    /**
+     * 对象 node 的出边区间为 [edgeStart(node), edgeStart(node + 1))，node 0 为虚拟根
+     */
+    long edgeStart(int node) {
+        return edgeStart.getLong(node);
+    }
+
+    /**
+     * 第 k 条边的目标对象编号，目标不在转储中时为 -1
+     */
+    int edge(long k) {
+        return edges.getInt(k);
+    }
+
+    long getEdgeCount() {
+        return edgeStart.getLong(objectCount + 1L);
+    }
+
+    long objectId(int node) {
+        return ids.getLong(node);
+    }
+
+    int classOf(int node) {
+        return classOf.getInt(node);
+    }
+
+    long shallowBytes(int node) {
+        return (long) shallow.getInt(node) << 3;
+    }
+
+    /**
+     * 对象的类名；类对象显示为 "class 类名"
+     */
+    String describe(int node) {
+        int classIdx = classOf(node);
+        if (classIdx == javaLangClass) {
+            long index = classIndex.get(objectId(node), -1);
+            if (index >= 0) {
+                return "class " + classes.get((int) index).name;
+            }
+        }
+        return classes.get(classIdx).name;
+    }
+
+    @Override
+    public void close() {
+        for (OffHeapArray array : new OffHeapArray[]{ids, offsets, classOf, shallow, edgeStart, edges}) {
+            if (array != null) {
+                array.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 内存映射的 HPROF 文件
+ *
+ * 按 1GB 分段只读映射，每段额外多映射 {@value #OVERLAP} 字节，起点落在段内的定长读取不会跨段，
+ * 不需要逐字节拼接。数据不进入 Java 堆，多个线程可以并发读取（只使用绝对位置的读取）。
+ * HPROF 为大端字节序。
+ */
+final class HprofFile implements Closeable {
+
+    private static final String MAGIC = "JAVA PROFILE 1.0.";
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    private static final int OVERLAP = 64 * 1024;
+
+    private final File file;
+    private final long size;
+    private final ByteBuffer[] segments;
+    private final int idSize;
+    private final long timestamp;
+    private final long dataStart;
+
+    HprofFile(File file) throws IOException {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            this.size = channel.size();
+            segments = new ByteBuffer[(int) Math.max(1, (size + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min((1L << SEGMENT_SHIFT) + OVERLAP, size - start));
+            }
+        }
+
+        // 头部：以 0 结尾的版本字符串、u4 标识符长度、u8 时间戳
+        long pos = 0;
+        StringBuilder version = new StringBuilder();
+        while (pos < Math.min(size, 64) && get(pos) != 0) {
+            version.append((char) get(pos++));
+        }
+        if (!version.toString().startsWith(MAGIC) || pos + 13 > size) {
+            close();
+            throw new IOException("Not an HPROF file: " + file);
+        }
+        this.idSize = getInt(pos + 1);
+        this.timestamp = getLong(pos + 5);
+        this.dataStart = pos + 13;
+        if (idSize != 4 && idSize != 8) {
+            close();
+            throw new IOException("Unsupported identifier size " + idSize + " in " + file);
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long size() {
+        return size;
+    }
+
+    int getIdSize() {
+        return idSize;
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * 第一条记录的偏移
+     */
+    long getDataStart() {
+        return dataStart;
+    }
+
+    byte get(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].get((int) (pos & SEGMENT_MASK));
+    }
+
+    int getUnsignedByte(long pos) {
+        return get(pos) & 0xFF;
+    }
+
+    int getUnsignedShort(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].getShort((int) (pos & SEGMENT_MASK)) & 0xFFFF;
+    }
+
+    int getInt(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].getInt((int) (pos & SEGMENT_MASK));
+    }
+
+    long getUnsignedInt(long pos) {
+        return getInt(pos) & 0xFFFFFFFFL;
+    }
+
+    long getLong(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].getLong((int) (pos & SEGMENT_MASK));
+    }
+
+    /**
+     * 读取一个对象标识符（4 或 8 字节）
+     */
+    long getId(long pos) {
+        return idSize == 8 ? getLong(pos) : getUnsignedInt(pos);
+    }
+
+    String getString(long pos, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = get(pos + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < segments.length; i++) {
+            OffHeapArray.unmap(segments[i]);
+            segments[i] = null;
+        }
+    }
+}
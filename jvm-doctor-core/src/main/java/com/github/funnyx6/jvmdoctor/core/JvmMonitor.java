@@ -17,6 +17,7 @@ import java.net.MalformedURLException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -37,6 +38,19 @@ public class JvmMonitor {
     
     private Map<String, Object> lastMetrics;
     
+    // 本地监控时的 GC 通知遥测
+    private final GcTelemetry gcTelemetry;
+    private final LogLinearHistogram.Snapshot gcScratch = new LogLinearHistogram.Snapshot();
+    private long lastAllocatedBytes;
+    private long lastPromotedBytes;
+    private long lastGcSampleNanos;
+    
+    // 本地监控时的内存池阈值（越过时立即记录，无需等待下一次采集）
+    private static final double POOL_USAGE_THRESHOLD = 0.9;
+    private static final double POOL_COLLECTION_THRESHOLD = 0.8;
+    private final MemoryPoolMonitor poolMonitor;
+    private final Map<String, MemoryPoolMonitor.ThresholdEvent> poolThresholdEvents = new ConcurrentHashMap<>();
+    
     /**
      * 监控当前 JVM
      */
@@ -57,7 +71,47 @@ public class JvmMonitor {
         
         if (isRemote) {
             initRemoteConnection(pid);
+            this.gcTelemetry = null;
+            this.poolMonitor = null;
+        } else {
+            this.gcTelemetry = startGcTelemetry();
+            this.poolMonitor = startPoolMonitor();
+        }
+    }
+    
+    /**
+     * 布置当前 JVM 内存池的阈值通知
+     */
+    private MemoryPoolMonitor startPoolMonitor() {
+        try {
+            MemoryPoolMonitor monitor = new MemoryPoolMonitor();
+            monitor.armThresholds(POOL_USAGE_THRESHOLD, POOL_COLLECTION_THRESHOLD);
+            monitor.addListener(event -> {
+                poolThresholdEvents.put(event.getPoolName(), event);
+                logger.warn("Memory pool threshold exceeded: {}", event);
+            });
+            return monitor;
+        } catch (Exception e) {
+            logger.warn("Failed to arm memory pool thresholds: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 订阅当前 JVM 的 GC 通知
+     */
+    private GcTelemetry startGcTelemetry() {
+        try {
+            GcTelemetry telemetry = new GcTelemetry();
+            if (telemetry.start()) {
+                lastGcSampleNanos = System.nanoTime();
+                return telemetry;
+            }
+            logger.warn("GC notifications not supported, GC telemetry disabled");
+        } catch (Exception | LinkageError e) {
+            logger.warn("Failed to subscribe GC notifications: {}", e.getMessage());
         }
+        return null;
     }
     
     /**
@@ -179,6 +233,12 @@ public class JvmMonitor {
             scheduler.shutdownNow();
             Thread.currentThread().interrupt();
         }
+        if (gcTelemetry != null) {
+            gcTelemetry.close();
+        }
+        if (poolMonitor != null) {
+            poolMonitor.close();
+        }
     }
     
     /**
@@ -218,6 +278,23 @@ public class JvmMonitor {
         
         metrics.put("nonheap.used", nonHeapUsage.getUsed());
         metrics.put("nonheap.committed", nonHeapUsage.getCommitted());
+        metrics.put("nonheap.max", nonHeapUsage.getMax());
+        
+        // 内存池指标
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (!pool.isValid()) {
+                continue;
+            }
+            String prefix = "mem.pool." + MemoryPoolMonitor.metricName(pool.getName());
+            MemoryUsage usage = pool.getUsage();
+            metrics.put(prefix + ".used", usage.getUsed());
+            metrics.put(prefix + ".committed", usage.getCommitted());
+            metrics.put(prefix + ".max", usage.getMax());
+            MemoryUsage collectionUsage = pool.getCollectionUsage();
+            if (collectionUsage != null) {
+                metrics.put(prefix + ".gc.used", collectionUsage.getUsed());
+            }
+        }
         
         // GC 指标
         for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
@@ -225,16 +302,19 @@ public class JvmMonitor {
             metrics.put("gc." + gcName + ".count", gcBean.getCollectionCount());
             metrics.put("gc." + gcName + ".time", gcBean.getCollectionTime());
         }
+        collectGcTelemetry(metrics);
         
         // 线程指标
         ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
         metrics.put("thread.count", threadBean.getThreadCount());
         metrics.put("thread.daemon", threadBean.getDaemonThreadCount());
         metrics.put("thread.peak", threadBean.getPeakThreadCount());
+        metrics.put("thread.totalStarted", threadBean.getTotalStartedThreadCount());
         
-        // 死锁检测
-        long[] deadlockedThreads = threadBean.findDeadlockedThreads();
-        metrics.put("thread.deadlock", deadlockedThreads != null ? deadlockedThreads.length : 0);
+        // 死锁检测（先普查阻塞线程，必要时才做需要安全点的完整检测）
+        DeadlockDetector.Result deadlocks = DeadlockDetector.getShared().check();
+        metrics.put("thread.blocked", deadlocks.getBlockedThreads());
+        metrics.put("thread.deadlock", deadlocks.getDeadlockedCount());
         
         // 系统指标
         OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
@@ -244,10 +324,62 @@ public class JvmMonitor {
         // 运行时信息
         RuntimeMXBean runtimeBean = ManagementFactory.getRuntimeMXBean();
         metrics.put("uptime", runtimeBean.getUptime());
+        metrics.put("startTime", runtimeBean.getStartTime());
         metrics.put("jvm.name", runtimeBean.getVmName());
         metrics.put("jvm.version", runtimeBean.getVmVersion());
     }
     
+    /**
+     * 收集自上次采集以来的 GC 停顿分布、并发周期分布和分配/晋升速率
+     */
+    private void collectGcTelemetry(Map<String, Object> metrics) {
+        if (gcTelemetry == null) {
+            return;
+        }
+        putPauseStats(metrics, "gc.pause", gcTelemetry.getPauseHistogram(), false);
+        for (Map.Entry<String, LogLinearHistogram> entry : gcTelemetry.getCollectorHistograms().entrySet()) {
+            putPauseStats(metrics, "gc." + GcTelemetry.metricName(entry.getKey()) + ".pause", entry.getValue(), false);
+        }
+        if (!gcTelemetry.getCollectorCycleHistograms().isEmpty()) {
+            putPauseStats(metrics, "gc.cycle", gcTelemetry.getCycleHistogram(), false);
+        }
+        for (Map.Entry<String, LogLinearHistogram> entry : gcTelemetry.getCollectorCycleHistograms().entrySet()) {
+            putPauseStats(metrics, "gc." + GcTelemetry.metricName(entry.getKey()) + ".cycle", entry.getValue(), false);
+        }
+        for (Map.Entry<String, LogLinearHistogram> entry : gcTelemetry.getCauseHistograms().entrySet()) {
+            putPauseStats(metrics, "gc.cause." + GcTelemetry.metricName(entry.getKey()), entry.getValue(), true);
+        }
+        
+        long now = System.nanoTime();
+        long allocated = gcTelemetry.getAllocatedBytes();
+        long promoted = gcTelemetry.getPromotedBytes();
+        double seconds = (now - lastGcSampleNanos) / 1e9;
+        if (seconds > 0) {
+            metrics.put("gc.alloc.rate", (allocated - lastAllocatedBytes) / seconds);
+            metrics.put("gc.promotion.rate", (promoted - lastPromotedBytes) / seconds);
+        }
+        metrics.put("gc.alloc.bytes", allocated);
+        metrics.put("gc.promoted.bytes", promoted);
+        lastAllocatedBytes = allocated;
+        lastPromotedBytes = promoted;
+        lastGcSampleNanos = now;
+    }
+    
+    private void putPauseStats(Map<String, Object> metrics, String prefix,
+                               LogLinearHistogram histogram, boolean onlyWhenActive) {
+        histogram.intervalSnapshot(gcScratch);
+        long count = gcScratch.getCount();
+        if (count == 0 && onlyWhenActive) {
+            return;
+        }
+        metrics.put(prefix + ".count", count);
+        if (count > 0) {
+            metrics.put(prefix + ".p50", gcScratch.getValueAtQuantile(0.5));
+            metrics.put(prefix + ".p99", gcScratch.getValueAtQuantile(0.99));
+            metrics.put(prefix + ".max", gcScratch.getMax());
+        }
+    }
+    
     /**
      * 收集远程 JVM 指标
      */
@@ -345,6 +477,21 @@ public class JvmMonitor {
                 String.format("Heap usage is high: %.2f%%", heapUsage * 100));
         }
         
+        // 内存池阈值：由 JVM 通知记录，仍处于越过状态的池视为问题
+        if (poolMonitor != null) {
+            for (MemoryPoolMXBean pool : poolMonitor.getPools()) {
+                MemoryPoolMonitor.ThresholdEvent event = poolThresholdEvents.get(pool.getName());
+                if (event == null) {
+                    continue;
+                }
+                if (pool.isValid() && poolMonitor.isThresholdExceeded(pool)) {
+                    issues.put("memory_threshold_" + MemoryPoolMonitor.metricName(pool.getName()), event.toString());
+                } else {
+                    poolThresholdEvents.remove(pool.getName());
+                }
+            }
+        }
+        
         Integer deadlockCount = getIntValue(lastMetrics.get("thread.deadlock"));
         if (deadlockCount != null && deadlockCount > 0) {
             issues.put("deadlock_detected", 
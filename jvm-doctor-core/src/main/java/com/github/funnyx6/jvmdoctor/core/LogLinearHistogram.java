@@ -0,0 +1,196 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁对数线性直方图
+ *
+ * 每个 2 的幂区间再线性切分为 16 个子桶，相对误差不超过 1/16，
+ * 覆盖 0 ~ Long.MAX_VALUE，共 960 个桶。
+ * 记录只做原子自增和 CAS，可被任意线程并发调用。
+ *
+ * 区间统计：读取方保存上一次的桶计数，{@link #intervalSnapshot(Snapshot)} 返回两次调用之间的增量，
+ * 因此区间统计只允许单个读取方使用。
+ */
+public class LogLinearHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final AtomicLong intervalMax = new AtomicLong();
+
+    // 区间读取方状态
+    private final long[] lastCounts = new long[BUCKET_COUNT];
+    private long lastSum;
+
+    /**
+     * 记录一个非负值（负值按 0 记录）
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucketIndex(value));
+        sum.addAndGet(value);
+        updateMax(max, value);
+        updateMax(intervalMax, value);
+        count.incrementAndGet();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * 累计快照
+     */
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot.counts[i] = buckets.get(i);
+        }
+        snapshot.count = count.get();
+        snapshot.sum = sum.get();
+        snapshot.max = max.get();
+        return snapshot;
+    }
+
+    /**
+     * 自上次调用以来的区间快照，写入复用的 Snapshot 对象
+     *
+     * @param into 目标快照
+     * @return into
+     */
+    public Snapshot intervalSnapshot(Snapshot into) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long current = buckets.get(i);
+            long delta = current - lastCounts[i];
+            into.counts[i] = delta;
+            lastCounts[i] = current;
+            total += delta;
+        }
+        long currentSum = sum.get();
+        into.count = total;
+        into.sum = currentSum - lastSum;
+        into.max = intervalMax.getAndSet(0);
+        lastSum = currentSum;
+        return into;
+    }
+
+    /**
+     * 值所在的桶下标
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * 桶内的最大值
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lower = ((long) (SUB_BUCKETS + sub)) << shift;
+        return lower + ((1L << shift) - 1);
+    }
+
+    private static void updateMax(AtomicLong target, long value) {
+        long current = target.get();
+        while (value > current && !target.compareAndSet(current, value)) {
+            current = target.get();
+        }
+    }
+
+    /**
+     * 直方图快照（可复用）
+     */
+    public static class Snapshot {
+        private final long[] counts = new long[BUCKET_COUNT];
+        private long count;
+        private long sum;
+        private long max;
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count > 0 ? (double) sum / count : 0.0;
+        }
+
+        /**
+         * 分位数（返回所在桶的上界，不超过最大值）
+         *
+         * @param quantile 0 ~ 1
+         */
+        public long getValueAtQuantile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            rank = Math.max(1, Math.min(rank, count));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    long upper = bucketUpperBound(i);
+                    return max > 0 ? Math.min(upper, max) : upper;
+                }
+            }
+            return max;
+        }
+
+        /**
+         * 累加另一个快照（用于合并分片）
+         */
+        public void add(Snapshot other) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            sum += other.sum;
+            max = Math.max(max, other.max);
+        }
+
+        public void clear() {
+            Arrays.fill(counts, 0);
+            count = 0;
+            sum = 0;
+            max = 0;
+        }
+    }
+}
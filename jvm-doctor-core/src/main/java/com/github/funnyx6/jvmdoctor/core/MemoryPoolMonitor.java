@@ -0,0 +1,217 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 内存池监控
+ *
+ * 提供各个 MemoryPoolMXBean（Eden、Survivor、Old、Metaspace、Code Cache、Compressed Class Space 等）的列表，
+ * 并通过 setUsageThreshold / setCollectionUsageThreshold 布置阈值，
+ * 由 JVM 在使用量越过阈值时立即发出通知，而不是等下一次轮询。
+ *
+ * 阈值按池的最大容量计算，未设置上限的池（如默认的 Metaspace）无法布置阈值。
+ */
+public class MemoryPoolMonitor implements AutoCloseable {
+
+    /**
+     * 阈值类型
+     */
+    public enum ThresholdType {
+        /** 当前使用量越过阈值 */
+        USAGE,
+        /** GC 后使用量越过阈值 */
+        COLLECTION
+    }
+
+    /**
+     * 阈值越过事件
+     */
+    public static class ThresholdEvent {
+        private final String poolName;
+        private final ThresholdType type;
+        private final long used;
+        private final long max;
+        private final long threshold;
+        private final long count;
+        private final long timestamp;
+
+        public ThresholdEvent(String poolName, ThresholdType type, long used, long max,
+                              long threshold, long count, long timestamp) {
+            this.poolName = poolName;
+            this.type = type;
+            this.used = used;
+            this.max = max;
+            this.threshold = threshold;
+            this.count = count;
+            this.timestamp = timestamp;
+        }
+
+        public String getPoolName() { return poolName; }
+        public ThresholdType getType() { return type; }
+        public long getUsed() { return used; }
+        public long getMax() { return max; }
+        public long getThreshold() { return threshold; }
+        public long getCount() { return count; }
+        public long getTimestamp() { return timestamp; }
+
+        public double getUsage() {
+            return max > 0 ? (double) used / max : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%s] %s usage %.1f%% of max (%d / %d bytes), threshold %d bytes, crossed %d times",
+                    poolName, type == ThresholdType.USAGE ? "current" : "after-GC",
+                    getUsage() * 100, used, max, threshold, count);
+        }
+    }
+
+    /**
+     * 阈值事件监听器（在 JVM 通知线程上调用，不应阻塞）
+     */
+    public interface ThresholdListener {
+        void onThresholdExceeded(ThresholdEvent event);
+    }
+
+    private final MemoryMXBean memoryMXBean;
+    private final List<MemoryPoolMXBean> pools;
+    private final List<ThresholdListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final NotificationListener notificationListener = this::handleNotification;
+    private final NotificationFilter filter = notification ->
+            MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(notification.getType())
+                    || MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType());
+    private boolean subscribed = false;
+
+    public MemoryPoolMonitor() {
+        this.memoryMXBean = ManagementFactory.getMemoryMXBean();
+        this.pools = ManagementFactory.getMemoryPoolMXBeans();
+    }
+
+    /**
+     * 所有有效的内存池
+     */
+    public List<MemoryPoolMXBean> getPools() {
+        return pools;
+    }
+
+    /**
+     * 布置阈值
+     *
+     * @param usageFraction 当前使用量阈值（占最大容量的比例），小于等于 0 时不设置
+     * @param collectionFraction GC 后使用量阈值（占最大容量的比例），小于等于 0 时不设置
+     * @return 成功布置阈值的池数量
+     */
+    public int armThresholds(double usageFraction, double collectionFraction) {
+        int armed = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            if (!pool.isValid()) {
+                continue;
+            }
+            long max = pool.getUsage().getMax();
+            if (max <= 0) {
+                continue;
+            }
+            boolean poolArmed = false;
+            if (usageFraction > 0 && pool.isUsageThresholdSupported()) {
+                pool.setUsageThreshold((long) (max * usageFraction));
+                poolArmed = true;
+            }
+            if (collectionFraction > 0 && pool.isCollectionUsageThresholdSupported()) {
+                pool.setCollectionUsageThreshold((long) (max * collectionFraction));
+                poolArmed = true;
+            }
+            if (poolArmed) {
+                armed++;
+            }
+        }
+        return armed;
+    }
+
+    /**
+     * 添加阈值监听器，首次添加时订阅 MemoryMXBean 通知
+     */
+    public synchronized void addListener(ThresholdListener listener) {
+        listeners.add(listener);
+        if (!subscribed && memoryMXBean instanceof NotificationEmitter) {
+            ((NotificationEmitter) memoryMXBean).addNotificationListener(notificationListener, filter, null);
+            subscribed = true;
+        }
+    }
+
+    /**
+     * 当前已越过阈值的池
+     */
+    public boolean isThresholdExceeded(MemoryPoolMXBean pool) {
+        return (pool.isUsageThresholdSupported() && pool.getUsageThreshold() > 0 && pool.isUsageThresholdExceeded())
+                || (pool.isCollectionUsageThresholdSupported() && pool.getCollectionUsageThreshold() > 0
+                        && pool.isCollectionUsageThresholdExceeded());
+    }
+
+    /**
+     * 取消通知订阅
+     */
+    @Override
+    public synchronized void close() {
+        listeners.clear();
+        if (subscribed) {
+            try {
+                ((NotificationEmitter) memoryMXBean).removeNotificationListener(notificationListener, filter, null);
+            } catch (Exception ignored) {
+                // 已被移除
+            }
+            subscribed = false;
+        }
+    }
+
+    private void handleNotification(Notification notification, Object handback) {
+        MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) notification.getUserData());
+        ThresholdType type = MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(notification.getType())
+                ? ThresholdType.USAGE : ThresholdType.COLLECTION;
+        MemoryUsage usage = info.getUsage();
+        long threshold = -1;
+        for (MemoryPoolMXBean pool : pools) {
+            if (pool.getName().equals(info.getPoolName())) {
+                threshold = type == ThresholdType.USAGE ? pool.getUsageThreshold() : pool.getCollectionUsageThreshold();
+                break;
+            }
+        }
+        ThresholdEvent event = new ThresholdEvent(info.getPoolName(), type, usage.getUsed(), usage.getMax(),
+                threshold, info.getCount(), System.currentTimeMillis());
+        for (ThresholdListener listener : listeners) {
+            try {
+                listener.onThresholdExceeded(event);
+            } catch (RuntimeException ignored) {
+                // 监听器异常不影响其他监听器
+            }
+        }
+    }
+
+    /**
+     * 转换为指标名片段（只保留字母、数字、点和连字符）
+     * 如 "CodeHeap 'non-nmethods'" → "CodeHeap_non-nmethods"
+     */
+    public static String metricName(String poolName) {
+        String name = poolName.replaceAll("[^A-Za-z0-9.\\-]+", "_");
+        int start = 0;
+        int end = name.length();
+        while (start < end && name.charAt(start) == '_') {
+            start++;
+        }
+        while (end > start && name.charAt(end - 1) == '_') {
+            end--;
+        }
+        return name.substring(start, end);
+    }
+}
@@ -0,0 +1,261 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 指标上报的二进制帧格式（Agent 编码，Server 解码）
+ *
+ * 指标名只在字典条目中出现一次，之后按整数 ID 引用；数值按 varint 写出，并相对同一 ID 在上一帧中的值做差分：
+ * <pre>
+ * 'J' 'D' 版本(1) 标志(1)
+ * varint appId, varint seq, [varint baseSeq（非关键帧）], varint timestamp
+ * varint dictBase, varint dictCount, dictCount × (类型(1), 名称)
+ * varint valueCount, valueCount × (varint ID 间隔, 值)
+ * varint extraCount, extraCount × (名称, 类型(1), 值)
+ * </pre>
+ * <ul>
+ *   <li>关键帧（{@link #FLAG_KEYFRAME}）：字典从 0 开始全量发送，差分基准清零；Agent 首帧和 Server 要求重新同步后发送</li>
+ *   <li>非关键帧：baseSeq 为差分所基于的上一帧，字典只含 dictBase 之后新注册的指标；
+ *       与解码端状态不一致时解码端拒绝（{@link ResyncException}），Agent 改发关键帧</li>
+ *   <li>值按 ID 升序，ID 写为与前一个 ID 的间隔减一；long 写相对上一值之差的 zigzag varint，
+ *       double 写 IEEE 754 位模式与上一值位模式的异或（不变时为 1 字节）</li>
+ *   <li>附加指标（自定义采集器）不进字典、不做差分：long 为 zigzag varint，double 为 8 字节小端位模式</li>
+ * </ul>
+ * 名称为 varint 长度 + UTF-8 字节。
+ */
+public final class MetricsFrame {
+
+    public static final int MAGIC_0 = 'J';
+    public static final int MAGIC_1 = 'D';
+    /** 当前版本 */
+    public static final int VERSION = 1;
+    public static final int FLAG_KEYFRAME = 1;
+    public static final int TYPE_LONG = 0;
+    public static final int TYPE_DOUBLE = 1;
+    /** HTTP Content-Type */
+    public static final String CONTENT_TYPE = "application/octet-stream";
+
+    private MetricsFrame() {
+    }
+
+    /**
+     * 解码端状态与帧不一致（Server 重启、漏帧或字典不同步），需要 Agent 发送关键帧
+     */
+    public static class ResyncException extends IllegalStateException {
+        public ResyncException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 帧头
+     */
+    public static final class Header {
+
+        private final long appId;
+        private final long seq;
+        private final long baseSeq;
+        private final long timestamp;
+        private final boolean keyframe;
+
+        Header(long appId, long seq, long baseSeq, long timestamp, boolean keyframe) {
+            this.appId = appId;
+            this.seq = seq;
+            this.baseSeq = baseSeq;
+            this.timestamp = timestamp;
+            this.keyframe = keyframe;
+        }
+
+        public long getAppId() {
+            return appId;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        /**
+         * 差分所基于的帧序号，关键帧为 -1
+         */
+        public long getBaseSeq() {
+            return baseSeq;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public boolean isKeyframe() {
+            return keyframe;
+        }
+    }
+
+    /**
+     * 读取帧头，读取位置停在字典之前
+     *
+     * @throws IllegalArgumentException 不是本格式或版本不支持
+     */
+    public static Header readHeader(Reader in) {
+        if (in.readByte() != MAGIC_0 || in.readByte() != MAGIC_1) {
+            throw new IllegalArgumentException("Not a metrics frame");
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported frame version " + version);
+        }
+        boolean keyframe = (in.readByte() & FLAG_KEYFRAME) != 0;
+        long appId = in.readVarint();
+        long seq = in.readVarint();
+        long baseSeq = keyframe ? -1 : in.readVarint();
+        long timestamp = in.readVarint();
+        return new Header(appId, seq, baseSeq, timestamp, keyframe);
+    }
+
+    /**
+     * 可复用的帧写出缓冲区，稳态下不分配对象
+     */
+    public static final class Writer {
+
+        private byte[] buffer;
+        private int length;
+
+        public Writer(int initialCapacity) {
+            this.buffer = new byte[initialCapacity];
+        }
+
+        public void reset() {
+            length = 0;
+        }
+
+        public byte[] buffer() {
+            return buffer;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public void writeByte(int b) {
+            ensure(1);
+            buffer[length++] = (byte) b;
+        }
+
+        /**
+         * 无符号 varint（每字节 7 位，低位在前）
+         */
+        public void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        /**
+         * 有符号数的 zigzag varint（绝对值小的负数也只占少量字节）
+         */
+        public void writeZigZag(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        public void writeFixed64(long value) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                buffer[length++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        public void writeBytes(byte[] bytes) {
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+
+        public void writeString(String s) {
+            writeBytes(s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            }
+        }
+    }
+
+    /**
+     * 帧读取，越界或格式错误时抛出 IllegalArgumentException
+     */
+    public static final class Reader {
+
+        private final byte[] data;
+        private final int end;
+        private int position;
+
+        public Reader(byte[] data) {
+            this(data, 0, data.length);
+        }
+
+        public Reader(byte[] data, int offset, int length) {
+            this.data = data;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        public int readByte() {
+            if (position >= end) {
+                throw new IllegalArgumentException("Truncated frame");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        public long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        public long readZigZag() {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        public long readFixed64() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value |= (long) readByte() << (i * 8);
+            }
+            return value;
+        }
+
+        /**
+         * 读取集合长度（varint），不超过剩余字节数以防恶意帧导致大数组分配
+         */
+        public int readCount() {
+            long count = readVarint();
+            if (count < 0 || count > end - position) {
+                throw new IllegalArgumentException("Invalid count " + count);
+            }
+            return (int) count;
+        }
+
+        public String readString() {
+            int length = readCount();
+            String s = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return s;
+        }
+
+        public int remaining() {
+            return end - position;
+        }
+    }
+}
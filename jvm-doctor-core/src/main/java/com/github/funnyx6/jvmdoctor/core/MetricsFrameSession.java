@@ -0,0 +1,151 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * 单个应用的 {@link MetricsFrame} 解码状态：字典（ID → 名称、类型、目标槽位）和上一帧的差分基准
+ *
+ * 指标名在字典条目到达时解析一次为调用方的槽位（如实体字段的序号，不关心的返回 -1），
+ * 之后每帧只按 ID 取槽位回调 {@link Sink}，不构造中间 Map。线程安全（按会话串行解码）。
+ */
+public class MetricsFrameSession {
+
+    /**
+     * 解码出的值按槽位回调
+     */
+    public interface Sink {
+
+        void onLong(int slot, long value);
+
+        void onDouble(int slot, double value);
+    }
+
+    private String[] names = new String[64];
+    private int[] types = new int[64];
+    private int[] slots = new int[64];
+    private long[] bits = new long[64];
+    private int size;
+    private long lastSeq = -1;
+
+    /**
+     * 最近一次成功解码的帧序号，尚未同步时为 -1
+     */
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * 已知的字典条目数
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 字典中 ID 对应的指标名
+     */
+    public synchronized String name(int id) {
+        return id < size ? names[id] : null;
+    }
+
+    /**
+     * 解码帧头之后的内容
+     *
+     * 解码中途失败时会话失去同步（下一帧必须是关键帧），避免在只应用了一半的基准上继续差分。
+     *
+     * @param in 已读过帧头的读取器
+     * @param header 帧头
+     * @param resolver 指标名 → 槽位，-1 表示忽略
+     * @param sink 值回调
+     * @throws MetricsFrame.ResyncException 非关键帧与当前状态不衔接
+     * @throws IllegalArgumentException 帧格式错误
+     */
+    public synchronized void apply(MetricsFrame.Reader in, MetricsFrame.Header header,
+                                   ToIntFunction<String> resolver, Sink sink) {
+        if (header.isKeyframe()) {
+            size = 0;
+        } else if (lastSeq < 0 || lastSeq != header.getBaseSeq()) {
+            String message = "Frame " + header.getSeq() + " based on " + header.getBaseSeq()
+                    + ", session at " + lastSeq;
+            lastSeq = -1;
+            throw new MetricsFrame.ResyncException(message);
+        }
+        lastSeq = -1;
+
+        // 字典
+        long dictBase = in.readVarint();
+        if (dictBase != size) {
+            throw new MetricsFrame.ResyncException("Dictionary base " + dictBase + ", session has " + size);
+        }
+        int dictCount = in.readCount();
+        for (int i = 0; i < dictCount; i++) {
+            int type = in.readByte();
+            if (type != MetricsFrame.TYPE_LONG && type != MetricsFrame.TYPE_DOUBLE) {
+                throw new IllegalArgumentException("Unknown metric type " + type);
+            }
+            String name = in.readString();
+            ensureCapacity(size + 1);
+            names[size] = name;
+            types[size] = type;
+            slots[size] = resolver.applyAsInt(name);
+            bits[size] = 0;
+            size++;
+        }
+
+        // 字典中的值（相对上一帧差分）
+        int valueCount = in.readCount();
+        long id = -1;
+        for (int i = 0; i < valueCount; i++) {
+            id += in.readVarint() + 1;
+            if (id < 0 || id >= size) {
+                throw new IllegalArgumentException("Unknown metric id " + id);
+            }
+            int index = (int) id;
+            if (types[index] == MetricsFrame.TYPE_DOUBLE) {
+                bits[index] ^= in.readVarint();
+                if (slots[index] >= 0) {
+                    sink.onDouble(slots[index], Double.longBitsToDouble(bits[index]));
+                }
+            } else {
+                bits[index] += in.readZigZag();
+                if (slots[index] >= 0) {
+                    sink.onLong(slots[index], bits[index]);
+                }
+            }
+        }
+
+        // 附加指标（按名称，不差分）
+        int extraCount = in.readCount();
+        for (int i = 0; i < extraCount; i++) {
+            String name = in.readString();
+            int type = in.readByte();
+            int slot = resolver.applyAsInt(name);
+            if (type == MetricsFrame.TYPE_DOUBLE) {
+                double value = Double.longBitsToDouble(in.readFixed64());
+                if (slot >= 0) {
+                    sink.onDouble(slot, value);
+                }
+            } else if (type == MetricsFrame.TYPE_LONG) {
+                long value = in.readZigZag();
+                if (slot >= 0) {
+                    sink.onLong(slot, value);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown metric type " + type);
+            }
+        }
+
+        lastSeq = header.getSeq();
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > names.length) {
+            int capacity = Math.max(required, names.length * 2);
+            names = Arrays.copyOf(names, capacity);
+            types = Arrays.copyOf(types, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+            bits = Arrays.copyOf(bits, capacity);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 堆外基本类型数组
+ *
+ * 以临时文件做内存映射，容量不受 Java 堆和 MaxDirectMemorySize 限制，由操作系统按需换页。
+ * 下标为 long，按 1GB 分段映射（元素大小是 2 的幂，不会跨段）。新数组内容全为 0。
+ * 只使用绝对位置的读写，多个线程可以并发读写互不重叠的下标，由任务的提交与完成建立可见性。
+ * 临时文件在映射后立即删除，close 时解除映射。
+ */
+final class OffHeapArray implements Closeable {
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final long length;
+    private final ByteBuffer[] segments;
+
+    static OffHeapArray ofInts(File dir, long length) throws IOException {
+        return new OffHeapArray(dir, length, 2);
+    }
+
+    static OffHeapArray ofLongs(File dir, long length) throws IOException {
+        return new OffHeapArray(dir, length, 3);
+    }
+
+    private OffHeapArray(File dir, long length, int shift) throws IOException {
+        this.length = length;
+        long bytes = Math.max(length << shift, 8);
+        File file = File.createTempFile("jvm-doctor-", ".idx", dir);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(bytes);
+            FileChannel channel = raf.getChannel();
+            segments = new ByteBuffer[(int) ((bytes + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start,
+                        Math.min(1L << SEGMENT_SHIFT, bytes - start)).order(ByteOrder.nativeOrder());
+            }
+        } finally {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    long length() {
+        return length;
+    }
+
+    int getInt(long index) {
+        long offset = index << 2;
+        return segments[(int) (offset >>> SEGMENT_SHIFT)].getInt((int) (offset & SEGMENT_MASK));
+    }
+
+    void putInt(long index, int value) {
+        long offset = index << 2;
+        segments[(int) (offset >>> SEGMENT_SHIFT)].putInt((int) (offset & SEGMENT_MASK), value);
+    }
+
+    long getLong(long index) {
+        long offset = index << 3;
+        return segments[(int) (offset >>> SEGMENT_SHIFT)].getLong((int) (offset & SEGMENT_MASK));
+    }
+
+    void putLong(long index, long value) {
+        long offset = index << 3;
+        segments[(int) (offset >>> SEGMENT_SHIFT)].putLong((int) (offset & SEGMENT_MASK), value);
+    }
+
+    /**
+     * 解除映射，之后不能再访问
+     */
+    @Override
+    public void close() {
+        for (int i = 0; i < segments.length; i++) {
+            unmap(segments[i]);
+            segments[i] = null;
+        }
+    }
+
+    /**
+     * 立即解除内存映射（失败时由 GC 回收映射）
+     */
+    static void unmap(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            // JDK 9+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (NoSuchMethodException e) {
+            // JDK 8
+            try {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (Exception ignored) {
+                // 由 GC 解除映射
+            }
+        } catch (Exception ignored) {
+            // 由 GC 解除映射
+        }
+    }
+}
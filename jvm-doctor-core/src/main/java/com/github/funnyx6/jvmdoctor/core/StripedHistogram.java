@@ -0,0 +1,85 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+/**
+ * 分片的对数线性直方图
+ *
+ * 高频并发记录时（如方法计时），所有线程对同一个 {@link LogLinearHistogram} 的计数、总和、最大值做 CAS 会互相争用。
+ * 这里按线程 ID 把记录分散到多个分片，读取时再合并；记录路径不分配对象、不加锁。
+ *
+ * 与 {@link LogLinearHistogram} 相同，区间统计只允许单个读取方使用。
+ */
+public class StripedHistogram {
+
+    private static final int MAX_STRIPES = 4;
+
+    private final LogLinearHistogram[] stripes;
+    private final int mask;
+    private final LogLinearHistogram.Snapshot stripeScratch = new LogLinearHistogram.Snapshot();
+
+    public StripedHistogram() {
+        this(defaultStripes());
+    }
+
+    /**
+     * @param stripes 分片数，向上取整为 2 的幂
+     */
+    public StripedHistogram(int stripes) {
+        int n = 1;
+        while (n < stripes) {
+            n <<= 1;
+        }
+        this.stripes = new LogLinearHistogram[n];
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new LogLinearHistogram();
+        }
+        this.mask = n - 1;
+    }
+
+    private static int defaultStripes() {
+        return Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPES);
+    }
+
+    /**
+     * 记录一个非负值（负值按 0 记录）
+     */
+    public void record(long value) {
+        stripes[(int) Thread.currentThread().getId() & mask].record(value);
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LogLinearHistogram stripe : stripes) {
+            count += stripe.getCount();
+        }
+        return count;
+    }
+
+    /**
+     * 累计快照（合并所有分片）
+     */
+    public LogLinearHistogram.Snapshot snapshot() {
+        LogLinearHistogram.Snapshot merged = new LogLinearHistogram.Snapshot();
+        for (LogLinearHistogram stripe : stripes) {
+            merged.add(stripe.snapshot());
+        }
+        return merged;
+    }
+
+    /**
+     * 自上次调用以来的区间快照（合并所有分片），写入复用的 Snapshot 对象
+     *
+     * @param into 目标快照
+     * @return into
+     */
+    public synchronized LogLinearHistogram.Snapshot intervalSnapshot(LogLinearHistogram.Snapshot into) {
+        into.clear();
+        for (LogLinearHistogram stripe : stripes) {
+            into.add(stripe.intervalSnapshot(stripeScratch));
+        }
+        return into;
+    }
+}
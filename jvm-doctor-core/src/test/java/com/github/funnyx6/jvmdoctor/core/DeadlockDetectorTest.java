@@ -0,0 +1,97 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DeadlockDetector 单元测试
+ */
+class DeadlockDetectorTest {
+
+    @Test
+    void testNoFullCheckWithoutBlockedThreads() {
+        DeadlockDetector detector = new DeadlockDetector(ManagementFactory.getThreadMXBean(), 0);
+
+        DeadlockDetector.Result result = detector.check();
+        assertFalse(result.hasDeadlock());
+        assertEquals(1, detector.getCensusCount());
+        if (result.getBlockedThreads() < 2) {
+            // 死锁至少需要 2 个阻塞线程，无需完整检测
+            assertEquals(0, detector.getCheckCount());
+        }
+
+        // 普查间隔内直接返回缓存
+        assertSame(result, detector.check());
+        assertEquals(1, detector.getCensusCount());
+    }
+
+    @Test
+    void testDetectsAndCachesDeadlock() throws Exception {
+        DeadlockDetector detector = new DeadlockDetector(ManagementFactory.getThreadMXBean(), 60_000);
+        ReentrantLock first = new ReentrantLock();
+        ReentrantLock second = new ReentrantLock();
+        CountDownLatch bothHeld = new CountDownLatch(2);
+        // 可中断的 j.u.c 锁，测试结束后能解开死锁
+        Thread a = deadlockThread("deadlock-test-a", first, second, bothHeld);
+        Thread b = deadlockThread("deadlock-test-b", second, first, bothHeld);
+        a.start();
+        b.start();
+        try {
+            bothHeld.await();
+            // 等到两个线程都停在对方持有的锁上（而不是 CountDownLatch）
+            while (!waitingOnOwnedLock(a) || !waitingOnOwnedLock(b)) {
+                Thread.sleep(5);
+            }
+
+            // 阻塞线程数从 0 突增到 2，立即触发完整检测
+            DeadlockDetector.Result result = detector.check(true);
+            assertTrue(result.hasDeadlock());
+            assertEquals(2, result.getDeadlockedCount());
+            assertTrue(result.getBlockedThreads() >= 2);
+            assertEquals(1, detector.getCheckCount());
+            for (ThreadInfo info : result.getThreadInfos()) {
+                assertTrue(info.getThreadName().startsWith("deadlock-test-"));
+            }
+
+            // 死锁线程仍在阻塞，复用缓存结果，不再做完整检测
+            result = detector.check(true);
+            assertTrue(result.hasDeadlock());
+            assertEquals(1, detector.getCheckCount());
+            assertEquals(2, detector.getCensusCount());
+        } finally {
+            a.interrupt();
+            b.interrupt();
+            a.join(1000);
+            b.join(1000);
+        }
+    }
+
+    private static boolean waitingOnOwnedLock(Thread thread) {
+        ThreadInfo info = ManagementFactory.getThreadMXBean().getThreadInfo(thread.getId());
+        return info != null && info.getThreadState() == Thread.State.WAITING && info.getLockOwnerId() >= 0;
+    }
+
+    private static Thread deadlockThread(String name, ReentrantLock own, ReentrantLock wanted, CountDownLatch bothHeld) {
+        Thread thread = new Thread(() -> {
+            own.lock();
+            try {
+                bothHeld.countDown();
+                bothHeld.await();
+                wanted.lockInterruptibly();
+                wanted.unlock();
+            } catch (InterruptedException ignored) {
+                // 解开死锁
+            } finally {
+                own.unlock();
+            }
+        }, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * GcTelemetry 单元测试
+ */
+class GcTelemetryTest {
+
+    @Test
+    void testGcTelemetryRecordsSystemGc() throws Exception {
+        GcTelemetry telemetry = new GcTelemetry();
+        try {
+            assertTrue(telemetry.start());
+            System.gc();
+
+            // GC 通知异步投递
+            long deadline = System.currentTimeMillis() + 5000;
+            while (telemetry.getEventCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertTrue(telemetry.getEventCount() > 0);
+            assertTrue(telemetry.getPauseHistogram().getCount() > 0);
+            assertTrue(telemetry.getCauseHistograms().containsKey("System.gc()"));
+        } finally {
+            telemetry.close();
+        }
+    }
+
+    @Test
+    void testConcurrentCyclesAreNotPauses() {
+        assertFalse(GcTelemetry.isConcurrentCycle("G1 Young Generation", "end of minor GC"));
+        assertFalse(GcTelemetry.isConcurrentCycle("G1 Old Generation", "end of major GC"));
+        assertFalse(GcTelemetry.isConcurrentCycle("ZGC Pauses", "end of GC pause"));
+        assertTrue(GcTelemetry.isConcurrentCycle("G1 Concurrent GC", null));
+        assertTrue(GcTelemetry.isConcurrentCycle("ConcurrentMarkSweep", "end of major GC"));
+        assertTrue(GcTelemetry.isConcurrentCycle("ZGC Major Cycles", null));
+        assertTrue(GcTelemetry.isConcurrentCycle("Shenandoah Cycles", "end of GC cycle"));
+        assertTrue(GcTelemetry.isConcurrentCycle("Unknown", "end of GC cycle"));
+    }
+
+    @Test
+    void testAllocationCountedOncePerGc() {
+        assertTrue(GcTelemetry.tracksAllocation("G1 Young Generation"));
+        assertTrue(GcTelemetry.tracksAllocation("PS MarkSweep"));
+        assertTrue(GcTelemetry.tracksAllocation("ZGC Cycles"));
+        assertTrue(GcTelemetry.tracksAllocation("Shenandoah Cycles"));
+        assertFalse(GcTelemetry.tracksAllocation("ZGC Pauses"));
+        assertFalse(GcTelemetry.tracksAllocation("Shenandoah Pauses"));
+        assertFalse(GcTelemetry.tracksAllocation("G1 Concurrent GC"));
+        assertFalse(GcTelemetry.tracksAllocation("ConcurrentMarkSweep"));
+    }
+}
@@ -0,0 +1,267 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Comparator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * HeapAnalyzer 单元测试
+ */
+class HeapAnalyzerTest {
+
+    /**
+     * 生成 HPROF（8 字节标识符）
+     */
+    private static final class HprofWriter {
+        private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream heap = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(records);
+        private final DataOutputStream sub = new DataOutputStream(heap);
+        private long nextStringId = 1;
+        private int classSerial = 1;
+
+        long string(String value) throws IOException {
+            long id = nextStringId++;
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeByte(HeapIndex.TAG_UTF8);
+            out.writeInt(0);
+            out.writeInt(8 + bytes.length);
+            out.writeLong(id);
+            out.write(bytes);
+            return id;
+        }
+
+        /**
+         * LOAD CLASS + CLASS DUMP；fieldNames 都是对象引用字段，staticRef 为 0 时没有静态字段
+         */
+        void defineClass(long id, String name, long superId, long staticRef, String... fieldNames) throws IOException {
+            long nameId = string(name);
+            out.writeByte(HeapIndex.TAG_LOAD_CLASS);
+            out.writeInt(0);
+            out.writeInt(4 + 8 + 4 + 8);
+            out.writeInt(classSerial++);
+            out.writeLong(id);
+            out.writeInt(0);
+            out.writeLong(nameId);
+
+            sub.writeByte(HeapIndex.CLASS_DUMP);
+            sub.writeLong(id);
+            sub.writeInt(0);
+            sub.writeLong(superId);
+            for (int i = 0; i < 5; i++) {
+                sub.writeLong(0);
+            }
+            sub.writeInt(fieldNames.length * 8);
+            sub.writeShort(0);
+            if (staticRef != 0) {
+                sub.writeShort(1);
+                sub.writeLong(string("INSTANCE"));
+                sub.writeByte(HeapIndex.TYPE_OBJECT);
+                sub.writeLong(staticRef);
+            } else {
+                sub.writeShort(0);
+            }
+            sub.writeShort(fieldNames.length);
+            for (String field : fieldNames) {
+                sub.writeLong(string(field));
+                sub.writeByte(HeapIndex.TYPE_OBJECT);
+            }
+        }
+
+        void instance(long id, long classId, long... refs) throws IOException {
+            sub.writeByte(HeapIndex.INSTANCE_DUMP);
+            sub.writeLong(id);
+            sub.writeInt(0);
+            sub.writeLong(classId);
+            sub.writeInt(refs.length * 8);
+            for (long ref : refs) {
+                sub.writeLong(ref);
+            }
+        }
+
+        void byteArray(long id, int length) throws IOException {
+            sub.writeByte(HeapIndex.PRIM_ARRAY_DUMP);
+            sub.writeLong(id);
+            sub.writeInt(0);
+            sub.writeInt(length);
+            sub.writeByte(8);
+            sub.write(new byte[length]);
+        }
+
+        void root(int tag, long id) throws IOException {
+            sub.writeByte(tag);
+            sub.writeLong(id);
+            if (tag == HeapIndex.ROOT_JAVA_FRAME) {
+                sub.writeInt(1);
+                sub.writeInt(0);
+            }
+        }
+
+        File write() throws IOException {
+            out.writeByte(HeapIndex.TAG_HEAP_DUMP_SEGMENT);
+            out.writeInt(0);
+            out.writeInt(heap.size());
+            out.write(heap.toByteArray());
+            out.writeByte(0x2C);
+            out.writeInt(0);
+            out.writeInt(0);
+
+            ByteArrayOutputStream file = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream(file);
+            header.write("JAVA PROFILE 1.0.2".getBytes(StandardCharsets.US_ASCII));
+            header.writeByte(0);
+            header.writeInt(8);
+            header.writeLong(System.currentTimeMillis());
+            header.write(records.toByteArray());
+
+            File dump = File.createTempFile("heap-analyzer-test", ".hprof");
+            dump.deleteOnExit();
+            Files.write(dump.toPath(), file.toByteArray());
+            return dump;
+        }
+    }
+
+    @Test
+    void testPrettyName() {
+        assertEquals("java.lang.String", HeapIndex.prettyName("java/lang/String"));
+        assertEquals("int[][]", HeapIndex.prettyName("[[I"));
+        assertEquals("java.lang.Object[]", HeapIndex.prettyName("[Ljava/lang/Object;"));
+    }
+
+    @Test
+    void testRetainedSizesAndSuspects() throws Exception {
+        HprofWriter writer = new HprofWriter();
+        long objectClass = 0x100;
+        long classClass = 0x108;
+        long byteArrayClass = 0x110;
+        long nodeClass = 0x118;
+        long holderClass = 0x120;
+        writer.defineClass(objectClass, "java/lang/Object", 0, 0);
+        writer.defineClass(classClass, "java/lang/Class", objectClass, 0);
+        writer.defineClass(byteArrayClass, "[B", objectClass, 0);
+        writer.defineClass(nodeClass, "com/example/Node", objectClass, 0, "next", "data");
+        // Holder.INSTANCE → a → b → c 的链表，每个节点持有 1000 字节的 byte[]
+        writer.defineClass(holderClass, "com/example/Holder", objectClass, 0x9000);
+        for (long id : new long[]{objectClass, classClass, byteArrayClass, nodeClass, holderClass}) {
+            writer.root(HeapIndex.ROOT_STICKY_CLASS, id);
+        }
+        // 按 ID 逆序写入，并用很小的块，覆盖块内排序和多路归并
+        writer.instance(0x9030, nodeClass, 0, 0);          // d：栈上引用，同时被 c 引用
+        writer.instance(0x9020, nodeClass, 0x9030, 0xA020); // c
+        writer.instance(0x9010, nodeClass, 0x9020, 0xA010); // b
+        writer.instance(0x9000, nodeClass, 0x9010, 0xA000); // a
+        writer.byteArray(0xA020, 1000);
+        writer.byteArray(0xA010, 1000);
+        writer.byteArray(0xA000, 1000);
+        writer.instance(0x8000, nodeClass, 0, 0);          // 不可达
+        writer.root(HeapIndex.ROOT_JAVA_FRAME, 0x9030);
+        File dump = writer.write();
+
+        HeapAnalyzer analyzer = new HeapAnalyzer(dump, 3, null);
+        analyzer.setChunkBytes(64);
+        HeapAnalysis analysis = analyzer.analyze(10, 0.5);
+
+        assertEquals(13, analysis.getObjects());
+        assertEquals(5, analysis.getClasses());
+        assertEquals(12, analysis.getReachableObjects());
+        // 类对象 16 × 4 + Holder 24 + 节点 32 × 4 + byte[] 1024 × 3
+        assertEquals(16 * 4 + 24 + 32 * 4 + 1024 * 3, analysis.getReachableBytes());
+        assertEquals(analysis.getReachableBytes() + 32, analysis.getTotalBytes());
+
+        HeapAnalysis.ClassEntry bytes = analysis.getHistogram().get(0);
+        assertEquals("byte[]", bytes.getClassName());
+        assertEquals(3, bytes.getInstances());
+        assertEquals(3072, bytes.getShallowBytes());
+        assertEquals(5, analysis.getHistogram().stream()
+                .filter(e -> e.getClassName().equals("com.example.Node")).findFirst().get().getInstances());
+
+        // Holder 类对象支配整条链表，d 因为也被栈直接引用而不在其中
+        HeapAnalysis.ObjectEntry top = analysis.getDominators().get(0);
+        assertEquals("class com.example.Holder", top.getClassName());
+        assertEquals(24 + 3 * (32 + 1024), top.getRetainedBytes());
+        assertTrue(analysis.getDominators().stream().anyMatch(e -> e.getObjectId() == 0x9030 && e.getRetainedBytes() == 32));
+
+        assertEquals(1, analysis.getSuspects().size());
+        HeapAnalysis.Suspect suspect = analysis.getSuspects().get(0);
+        assertEquals(top.getObjectId(), suspect.getObject().getObjectId());
+        // a 保留了 Holder 的 99%，而 a 最大的子节点 b 只保留了 a 的 2/3
+        assertEquals(0x9000, suspect.getAccumulationPoint().getObjectId());
+        assertEquals(3 * (32 + 1024), suspect.getAccumulationPoint().getRetainedBytes());
+    }
+
+    @Test
+    void testRejectsNonHprofFile() throws Exception {
+        File file = File.createTempFile("heap-analyzer-test", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "hello".getBytes(StandardCharsets.US_ASCII));
+        assertThrows(IOException.class, () -> new HeapAnalyzer(file).analyze(10, 0.1));
+    }
+
+    /**
+     * 持有大量小对象的静态容器，应该成为泄漏嫌疑
+     */
+    static final class Retainer {
+        static Object[] retained;
+
+        // 不在测试方法的栈帧上保留引用，否则数组会被栈根直接支配
+        static void fill(int count) {
+            Object[] array = new Object[count];
+            for (int i = 0; i < count; i++) {
+                array[i] = new byte[1024];
+            }
+            retained = array;
+        }
+    }
+
+    @Test
+    void testAnalyzesRealHeapDump() throws Exception {
+        HotSpotDiagnosticMXBean diagnostic;
+        try {
+            diagnostic = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        } catch (Exception e) {
+            diagnostic = null;
+        }
+        assumeTrue(diagnostic != null);
+
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        int count = (int) Math.max(1000, heapUsed / 2 / 1040);
+        Retainer.fill(count);
+
+        File dump = new File(Files.createTempDirectory("heap-analyzer-test").toFile(), "test.hprof");
+        try {
+            diagnostic.dumpHeap(dump.getAbsolutePath(), true);
+            HeapAnalysis analysis = new HeapAnalyzer(dump).analyze(20, 0.3);
+
+            assertTrue(analysis.getObjects() > count);
+            assertTrue(analysis.getReachableObjects() > count);
+            HeapAnalysis.ClassEntry bytes = analysis.getHistogram().stream()
+                    .filter(e -> e.getClassName().equals("byte[]")).findFirst().orElse(null);
+            assertNotNull(bytes);
+            assertTrue(bytes.getInstances() >= count);
+
+            HeapAnalysis.Suspect suspect = analysis.getSuspects().stream()
+                    .max(Comparator.comparingLong(HeapAnalysis.Suspect::getRetainedBytes)).orElse(null);
+            assertNotNull(suspect);
+            // 应用类由类加载器支配，嫌疑可能是 Retainer 类本身或它的类加载器，积累点都是 Object[]
+            assertTrue(suspect.getRetainedBytes() >= (long) count * 1024);
+            assertNotNull(suspect.getAccumulationPoint(), suspect.getDescription());
+            assertEquals("java.lang.Object[]", suspect.getAccumulationPoint().getClassName());
+            assertTrue(suspect.getAccumulationPoint().getRetainedBytes() >= (long) count * 1024);
+        } finally {
+            Retainer.retained = null;
+            dump.delete();
+            dump.getParentFile().delete();
+        }
+    }
+}
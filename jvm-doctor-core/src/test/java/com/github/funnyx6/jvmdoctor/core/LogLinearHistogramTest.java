@@ -0,0 +1,110 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LogLinearHistogram 单元测试
+ */
+class LogLinearHistogramTest {
+
+    @Test
+    void testBucketBoundsCoverValue() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 100, 1000, 123_456_789L, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LogLinearHistogram.bucketIndex(value);
+            long upper = LogLinearHistogram.bucketUpperBound(index);
+            assertTrue(upper >= value, "upper bound below value " + value);
+            assertTrue(upper - value <= value / 16, "bucket too wide for " + value);
+        }
+    }
+
+    @Test
+    void testQuantiles() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        LogLinearHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(500, snapshot.getValueAtQuantile(0.5), 500 / 16.0);
+        assertEquals(990, snapshot.getValueAtQuantile(0.99), 990 / 16.0);
+        assertEquals(1000, snapshot.getValueAtQuantile(1.0));
+    }
+
+    @Test
+    void testIntervalSnapshot() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        LogLinearHistogram.Snapshot interval = new LogLinearHistogram.Snapshot();
+
+        histogram.record(5);
+        histogram.record(500);
+        histogram.intervalSnapshot(interval);
+        assertEquals(2, interval.getCount());
+        assertEquals(500, interval.getMax());
+
+        histogram.record(7);
+        histogram.intervalSnapshot(interval);
+        assertEquals(1, interval.getCount());
+        assertEquals(7, interval.getMax());
+        assertEquals(7, interval.getValueAtQuantile(0.99));
+
+        histogram.intervalSnapshot(interval);
+        assertEquals(0, interval.getCount());
+        assertEquals(3, histogram.getCount());
+    }
+
+    @Test
+    void testConcurrentRecord() throws Exception {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, histogram.getCount());
+        assertEquals(40_000, histogram.snapshot().getCount());
+        assertEquals(9_999, histogram.getMax());
+    }
+
+    @Test
+    void testStripedHistogramMergesStripes() throws Exception {
+        StripedHistogram histogram = new StripedHistogram(4);
+        assertEquals(4, histogram.getStripeCount());
+        LogLinearHistogram.Snapshot interval = new LogLinearHistogram.Snapshot();
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 1; i <= 1000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        histogram.intervalSnapshot(interval);
+        assertEquals(4000, interval.getCount());
+        assertEquals(1000, interval.getMax());
+        assertEquals(500, interval.getValueAtQuantile(0.5), 500 / 16.0);
+        assertEquals(4000, histogram.snapshot().getCount());
+
+        histogram.record(3);
+        histogram.intervalSnapshot(interval);
+        assertEquals(1, interval.getCount());
+        assertEquals(3, interval.getMax());
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.funnyx6.jvmdoctor.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.MemoryPoolMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * MemoryPoolMonitor 单元测试
+ */
+class MemoryPoolMonitorTest {
+
+    @Test
+    void testMetricName() {
+        assertEquals("G1_Old_Gen", MemoryPoolMonitor.metricName("G1 Old Gen"));
+        assertEquals("CodeHeap_non-nmethods", MemoryPoolMonitor.metricName("CodeHeap 'non-nmethods'"));
+        assertEquals("Metaspace", MemoryPoolMonitor.metricName("Metaspace"));
+    }
+
+    @Test
+    void testCollectionThresholdNotification() throws Exception {
+        MemoryPoolMonitor monitor = new MemoryPoolMonitor();
+        List<MemoryPoolMonitor.ThresholdEvent> events = new CopyOnWriteArrayList<>();
+        try {
+            // 极低的阈值，GC 后老年代使用量必然越过
+            assumeTrue(monitor.armThresholds(0, 0.000001) > 0);
+            monitor.addListener(events::add);
+
+            System.gc();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (events.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+
+            assertFalse(events.isEmpty());
+            MemoryPoolMonitor.ThresholdEvent event = events.get(0);
+            assertEquals(MemoryPoolMonitor.ThresholdType.COLLECTION, event.getType());
+            assertTrue(event.getUsed() >= event.getThreshold());
+            assertNotNull(event.getPoolName());
+        } finally {
+            monitor.close();
+            for (MemoryPoolMXBean pool : monitor.getPools()) {
+                if (pool.isCollectionUsageThresholdSupported()) {
+                    pool.setCollectionUsageThreshold(0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.github.funnyx6.jvmdoctor.web.config;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 解压 Content-Encoding: gzip 的请求体（Agent 压缩上报的指标）
+ *
+ * 解压后的请求体超过 {@link #MAX_INFLATED_BYTES} 时中止读取，防止压缩炸弹。
+ * 其他编码（如堆转储分块的 deflate）原样交给接口自行处理。
+ * 非阻塞读取（setReadListener）时先异步收齐压缩后的请求体，再一次性通知解压后的内容可读。
+ */
+@Component
+public class GzipRequestFilter extends OncePerRequestFilter {
+
+    static final long MAX_INFLATED_BYTES = 64L * 1024 * 1024;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String encoding = request.getHeader("Content-Encoding");
+        if (encoding == null || !"gzip".equalsIgnoreCase(encoding.trim())) {
+            chain.doFilter(request, response);
+            return;
+        }
+        chain.doFilter(new GzipRequest(request), response);
+    }
+
+    /**
+     * 以解压后的内容替换请求体
+     *
+     * Content-Encoding 和 Content-Length 描述的是压缩后的请求体，getHeader / getHeaders / getHeaderNames 均不再返回。
+     */
+    private static final class GzipRequest extends HttpServletRequestWrapper {
+
+        private ServletInputStream stream;
+
+        GzipRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (stream == null) {
+                stream = new InflatingStream(super.getInputStream());
+            }
+            return stream;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String charset = getCharacterEncoding();
+            Charset cs = charset != null ? Charset.forName(charset) : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(getInputStream(), cs));
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return isHidden(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return isHidden(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            List<String> names = new ArrayList<>();
+            Enumeration<String> all = super.getHeaderNames();
+            while (all != null && all.hasMoreElements()) {
+                String name = all.nextElement();
+                if (!isHidden(name)) {
+                    names.add(name);
+                }
+            }
+            return Collections.enumeration(names);
+        }
+
+        @Override
+        public int getIntHeader(String name) {
+            return isHidden(name) ? -1 : super.getIntHeader(name);
+        }
+
+        private static boolean isHidden(String name) {
+            return "Content-Encoding".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name);
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+    }
+
+    private static final class InflatingStream extends ServletInputStream {
+
+        private final ServletInputStream raw;
+        // 阻塞读取时首次读取才创建（构造 GZIPInputStream 会读取 gzip 头）；非阻塞读取时收齐请求体后创建
+        private InputStream in;
+        private boolean async;
+        private long inflated;
+        private boolean finished;
+
+        InflatingStream(ServletInputStream raw) {
+            this.raw = raw;
+        }
+
+        private InputStream in() throws IOException {
+            if (in == null) {
+                if (async) {
+                    throw new IllegalStateException("Request body is not ready");
+                }
+                in = new GZIPInputStream(raw, 8192);
+            }
+            return in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in().read();
+            count(b < 0 ? -1 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in().read(b, off, len);
+            count(n);
+            return n;
+        }
+
+        private void count(int n) throws IOException {
+            if (n < 0) {
+                finished = true;
+                return;
+            }
+            inflated += n;
+            if (inflated > MAX_INFLATED_BYTES) {
+                throw new IOException("Inflated request body exceeds " + MAX_INFLATED_BYTES + " bytes");
+            }
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return !async || in != null;
+        }
+
+        @Override
+        public void setReadListener(ReadListener listener) {
+            if (async || in != null) {
+                throw new IllegalStateException("Request body is already being read");
+            }
+            async = true;
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(8192);
+            raw.setReadListener(new ReadListener() {
+                private final byte[] buffer = new byte[8192];
+
+                @Override
+                public void onDataAvailable() throws IOException {
+                    int n;
+                    while (raw.isReady() && (n = raw.read(buffer)) >= 0) {
+                        compressed.write(buffer, 0, n);
+                        if (compressed.size() > MAX_INFLATED_BYTES) {
+                            throw new IOException("Request body exceeds " + MAX_INFLATED_BYTES + " bytes");
+                        }
+                    }
+                }
+
+                @Override
+                public void onAllDataRead() throws IOException {
+                    in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()), 8192);
+                    listener.onDataAvailable();
+                    listener.onAllDataRead();
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    listener.onError(t);
+                }
+            });
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            } else {
+                raw.close();
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.funnyx6.jvmdoctor.web.controller;
 
+import com.github.funnyx6.jvmdoctor.web.dto.AlertRequest;
 import com.github.funnyx6.jvmdoctor.web.entity.AppAlert;
 import com.github.funnyx6.jvmdoctor.web.service.AlertService;
 import org.springframework.http.ResponseEntity;
@@ -28,6 +29,31 @@ public class AlertController {
         return ResponseEntity.ok(alertService.getAllAlerts());
     }
     
+    /**
+     * 接收 Agent 推送的告警（如内存池阈值越过），立即入库并推送 WebSocket
+     * POST /api/alerts
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> receiveAlert(@RequestBody AlertRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        if (request.getAppId() == null || request.getAlertType() == null) {
+            response.put("status", "error");
+            response.put("message", "appId and alertType are required");
+            return ResponseEntity.badRequest().body(response);
+        }
+        
+        String level = request.getAlertLevel() != null ? request.getAlertLevel() : "warning";
+        AppAlert alert = alertService.createAlert(request.getAppId(), request.getAlertType(),
+                request.getSource(), request.getAlertMsg(), level);
+        
+        response.put("status", "ok");
+        response.put("message", alert != null ? "Alert created" : "Duplicate alert suppressed");
+        if (alert != null) {
+            response.put("alertId", alert.getId());
+        }
+        return ResponseEntity.ok(response);
+    }
+    
     /**
      * 获取未处理告警
      * GET /api/alerts/unacknowledged
@@ -0,0 +1,151 @@
+package com.github.funnyx6.jvmdoctor.web.controller;
+
+import com.github.funnyx6.jvmdoctor.web.service.HeapDumpService;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 堆转储 Controller
+ * 接收 Agent 分块上传的堆转储，并提供下载
+ * （转储由 POST /api/apps/{appId}/heapdump 触发）
+ */
+@RestController
+@RequestMapping("/api/heapdumps")
+public class HeapDumpController {
+
+    private final HeapDumpService heapDumpService;
+
+    public HeapDumpController(HeapDumpService heapDumpService) {
+        this.heapDumpService = heapDumpService;
+    }
+
+    /**
+     * 获取所有转储（含上传中的）
+     * GET /api/heapdumps
+     */
+    @GetMapping
+    public ResponseEntity<List<Map<String, Object>>> listDumps() throws IOException {
+        return ResponseEntity.ok(heapDumpService.listDumps());
+    }
+
+    /**
+     * 获取转储的接收进度（Agent 续传时以 receivedBytes 为起点）
+     * GET /api/heapdumps/{id}
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> getStatus(@PathVariable String id) throws IOException {
+        if (!HeapDumpService.isValidId(id)) {
+            return ResponseEntity.badRequest().build();
+        }
+        Map<String, Object> status = heapDumpService.getStatus(id);
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    /**
+     * 接收一块（请求体为 zlib 压缩的原始数据，边解压边写盘）
+     * POST /api/heapdumps/{id}/chunks?offset=0&length=4194304&crc=123&total=0
+     * 偏移与已接收的字节数不一致时返回 409 和当前的 receivedBytes
+     */
+    @PostMapping("/{id}/chunks")
+    public ResponseEntity<Map<String, Object>> uploadChunk(
+            @PathVariable String id,
+            @RequestParam long offset,
+            @RequestParam long length,
+            @RequestParam long crc,
+            @RequestParam(required = false, defaultValue = "0") long total,
+            InputStream body) {
+        Map<String, Object> response = new HashMap<>();
+        if (!HeapDumpService.isValidId(id) || offset < 0 || length <= 0) {
+            response.put("status", "error");
+            response.put("message", "Invalid dump id or chunk range");
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        try {
+            long received = heapDumpService.appendChunk(id, offset, length, crc, total, body);
+            response.put("receivedBytes", received);
+            if (received != offset + length) {
+                response.put("status", "error");
+                response.put("message", "Offset mismatch");
+                return ResponseEntity.status(409).body(response);
+            }
+            response.put("status", "ok");
+            return ResponseEntity.ok(response);
+        } catch (IOException e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * 结束上传
+     * POST /api/heapdumps/{id}/complete?size=N
+     */
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<Map<String, Object>> complete(
+            @PathVariable String id,
+            @RequestParam long size) throws IOException {
+        Map<String, Object> response = new HashMap<>();
+        if (!HeapDumpService.isValidId(id)) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (!heapDumpService.complete(id, size)) {
+            response.put("status", "error");
+            response.put("message", "Received size does not match");
+            return ResponseEntity.status(409).body(response);
+        }
+        response.put("status", "ok");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 下载已完成的转储
+     * GET /api/heapdumps/{id}/download
+     */
+    @GetMapping("/{id}/download")
+    public ResponseEntity<Resource> download(@PathVariable String id) {
+        if (!HeapDumpService.isValidId(id)) {
+            return ResponseEntity.badRequest().build();
+        }
+        Path file = heapDumpService.getDumpFile(id);
+        if (file == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getFileName() + "\"")
+                .body(new FileSystemResource(file));
+    }
+
+    /**
+     * 删除转储
+     * DELETE /api/heapdumps/{id}
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> delete(@PathVariable String id) throws IOException {
+        if (!HeapDumpService.isValidId(id)) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (!heapDumpService.delete(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "ok");
+        return ResponseEntity.ok(response);
+    }
+}
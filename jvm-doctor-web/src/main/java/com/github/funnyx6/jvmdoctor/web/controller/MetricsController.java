@@ -1,10 +1,14 @@
 package com.github.funnyx6.jvmdoctor.web.controller;
 
+import com.github.funnyx6.jvmdoctor.core.MetricsFrame;
 import com.github.funnyx6.jvmdoctor.web.dto.MetricsRequest;
 import com.github.funnyx6.jvmdoctor.web.entity.AppMetrics;
 import com.github.funnyx6.jvmdoctor.web.entity.AppRegistry;
 import com.github.funnyx6.jvmdoctor.web.service.AppRegistryService;
+import com.github.funnyx6.jvmdoctor.web.service.MetricField;
 import com.github.funnyx6.jvmdoctor.web.service.MetricsService;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -16,6 +20,9 @@ import java.util.Map;
 @RequestMapping("/api/metrics")
 public class MetricsController {
     
+    // Agent 发送请求时的本地时钟（epoch 毫秒），用于校正样本采集时间的时钟偏差
+    private static final String AGENT_TIME_HEADER = "X-Agent-Time";
+    
     private final MetricsService metricsService;
     private final AppRegistryService appRegistryService;
     
@@ -27,18 +34,77 @@ public class MetricsController {
     /**
      * 接收指标数据
      * POST /api/metrics
+     * 
+     * 按 (appId, seq) 幂等：重复的上报返回 200（status=duplicate），不再入库。
      */
     @PostMapping
-    public ResponseEntity<Map<String, Object>> receiveMetrics(@RequestBody MetricsRequest request) {
-        AppMetrics metrics = convertToEntity(request.getMetrics());
-        metricsService.saveMetrics(request.getAppId(), metrics);
+    public ResponseEntity<Map<String, Object>> receiveMetrics(
+            @RequestBody MetricsRequest request,
+            @RequestHeader(value = AGENT_TIME_HEADER, required = false) Long agentTime) {
+        boolean saved = save(request, agentTime, System.currentTimeMillis());
         
         // 更新心跳
         appRegistryService.heartbeat(request.getAppId());
         
         Map<String, Object> response = new HashMap<>();
+        response.put("status", saved ? "ok" : "duplicate");
+        response.put("message", saved ? "Metrics received" : "Metrics already received");
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * 接收二进制指标帧（格式见 {@link MetricsFrame}，Agent 默认使用）
+     * POST /api/metrics/bin
+     * 
+     * 请求体为一帧或连续的多帧（Agent 成批发送本地缓冲的样本），直接解码到实体，不经过 Map。
+     * 与 JSON 接口一样按 (appId, seq) 幂等：重复的帧仍参与解码以保持差分基准，但不再入库。
+     * 差分帧无法衔接（Server 重启或漏帧）时返回 409，之前的帧已入库，Agent 随后从关键帧开始重发。
+     */
+    @PostMapping(value = "/bin", consumes = MetricsFrame.CONTENT_TYPE)
+    public ResponseEntity<Map<String, Object>> receiveFrames(
+            @RequestBody byte[] body,
+            @RequestHeader(value = AGENT_TIME_HEADER, required = false) Long agentTime) {
+        long receivedAt = System.currentTimeMillis();
+        Map<String, Object> response = new HashMap<>();
+        MetricsFrame.Reader in = new MetricsFrame.Reader(body);
+        int count = 0;
+        int duplicates = 0;
+        Long lastAppId = null;
+        try {
+            while (in.remaining() > 0) {
+                MetricsFrame.Header header = MetricsFrame.readHeader(in);
+                AppMetrics metrics = metricsService.decodeFrame(in, header);
+                Long appId = header.getAppId();
+                if (!appId.equals(lastAppId)) {
+                    appRegistryService.heartbeat(appId);
+                    lastAppId = appId;
+                }
+                if (metricsService.isDuplicate(appId, header.getSeq())) {
+                    duplicates++;
+                    continue;
+                }
+                metrics.setTimestamp(metrics.getTimestamp() + metricsService.clockOffset(appId, agentTime, receivedAt));
+                if (insert(appId, metrics)) {
+                    count++;
+                } else {
+                    duplicates++;
+                }
+            }
+        } catch (MetricsFrame.ResyncException e) {
+            response.put("status", "resync");
+            response.put("message", e.getMessage());
+            response.put("processed", count);
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        } catch (IllegalArgumentException e) {
+            response.put("status", "error");
+            response.put("message", "Malformed metrics frame: " + e.getMessage());
+            response.put("processed", count);
+            return ResponseEntity.badRequest().body(response);
+        }
+        
         response.put("status", "ok");
-        response.put("message", "Metrics received");
+        response.put("processed", count);
+        response.put("duplicates", duplicates);
         return ResponseEntity.ok(response);
     }
     
@@ -76,86 +142,83 @@ public class MetricsController {
     }
     
     /**
-     * 批量接收指标（支持上报多应用）
+     * 批量接收指标（支持上报多应用，Agent 也用它成批发送本地缓冲的样本和回放暂存的样本）
      * POST /api/metrics/batch
      */
     @PostMapping("/batch")
-    public ResponseEntity<Map<String, Object>> receiveBatchMetrics(@RequestBody List<MetricsRequest> requests) {
+    public ResponseEntity<Map<String, Object>> receiveBatchMetrics(
+            @RequestBody List<MetricsRequest> requests,
+            @RequestHeader(value = AGENT_TIME_HEADER, required = false) Long agentTime) {
+        long receivedAt = System.currentTimeMillis();
         int count = 0;
+        int duplicates = 0;
         for (MetricsRequest request : requests) {
-            AppMetrics metrics = convertToEntity(request.getMetrics());
-            metricsService.saveMetrics(request.getAppId(), metrics);
-            appRegistryService.heartbeat(request.getAppId());
-            count++;
+            if (save(request, agentTime, receivedAt)) {
+                count++;
+            } else {
+                duplicates++;
+            }
         }
+        requests.stream().map(MetricsRequest::getAppId).distinct().forEach(appRegistryService::heartbeat);
         
         Map<String, Object> response = new HashMap<>();
         response.put("status", "ok");
         response.put("processed", count);
+        response.put("duplicates", duplicates);
         return ResponseEntity.ok(response);
     }
     
     /**
-     * 将 Map 转换为 AppMetrics 实体
+     * 保存一条上报，已收到过的 (appId, seq) 跳过
+     * 
+     * @param agentTime 请求发送时的 Agent 时钟，用于校正采集时间，可为 null
+     * @param receivedAt 收到请求的 Server 时间
+     * @return 是否入库
      */
-    private AppMetrics convertToEntity(java.util.Map<String, Object> map) {
-        AppMetrics metrics = new AppMetrics();
-        
-        if (map.containsKey("heap.used")) {
-            metrics.setHeapUsed(getLong(map, "heap.used"));
-        }
-        if (map.containsKey("heap.max")) {
-            metrics.setHeapMax(getLong(map, "heap.max"));
-        }
-        if (map.containsKey("nonheap.used")) {
-            metrics.setNonheapUsed(getLong(map, "nonheap.used"));
-        }
-        if (map.containsKey("gc.count")) {
-            metrics.setGcCount(getLong(map, "gc.count"));
+    private boolean save(MetricsRequest request, Long agentTime, long receivedAt) {
+        if (metricsService.isDuplicate(request.getAppId(), request.getSeq())) {
+            return false;
         }
-        if (map.containsKey("gc.time")) {
-            metrics.setGcTime(getLong(map, "gc.time"));
-        }
-        if (map.containsKey("thread.count")) {
-            metrics.setThreadCount(getInt(map, "thread.count"));
-        }
-        if (map.containsKey("thread.daemon")) {
-            metrics.setDaemonThreadCount(getInt(map, "thread.daemon"));
-        }
-        if (map.containsKey("cpu.cores")) {
-            // CPU 核数不存，只存使用率
-        }
-        if (map.containsKey("system.load")) {
-            metrics.setSystemLoad(getDouble(map, "system.load"));
-        }
-        if (map.containsKey("uptime")) {
-            metrics.setUptime(getLong(map, "uptime"));
-        }
-        
-        return metrics;
-    }
-    
-    private Long getLong(java.util.Map<String, Object> map, String key) {
-        Object value = map.get(key);
-        if (value instanceof Number) {
-            return ((Number) value).longValue();
+        AppMetrics metrics = convertToEntity(request.getMetrics());
+        metrics.setSeq(request.getSeq());
+        if (request.getTimestamp() != null) {
+            metrics.setTimestamp(request.getTimestamp() + metricsService.clockOffset(request.getAppId(), agentTime, receivedAt));
         }
-        return null;
+        return insert(request.getAppId(), metrics);
     }
     
-    private Integer getInt(java.util.Map<String, Object> map, String key) {
-        Object value = map.get(key);
-        if (value instanceof Number) {
-            return ((Number) value).intValue();
+    /**
+     * 入库一条样本
+     * 
+     * 入库前的查重只是快速路径：同一样本的并发上报（如响应丢失后 Agent 重发）可能同时通过检查，
+     * 由 (app_id, seq) 唯一索引拒绝后者，按重复处理。
+     * 
+     * @return 是否入库
+     */
+    private boolean insert(Long appId, AppMetrics metrics) {
+        try {
+            metricsService.saveMetrics(appId, metrics);
+            return true;
+        } catch (DataAccessException e) {
+            // SQLite 的约束冲突不一定被翻译为 DataIntegrityViolationException，以查重结果为准
+            if (metrics.getSeq() != null && metricsService.isDuplicate(appId, metrics.getSeq())) {
+                return false;
+            }
+            throw e;
         }
-        return null;
     }
     
-    private Double getDouble(java.util.Map<String, Object> map, String key) {
-        Object value = map.get(key);
-        if (value instanceof Number) {
-            return ((Number) value).doubleValue();
+    /**
+     * 将 Map 转换为 AppMetrics 实体
+     */
+    private AppMetrics convertToEntity(Map<String, Object> map) {
+        AppMetrics metrics = new AppMetrics();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            MetricField field = MetricField.forName(entry.getKey());
+            if (field != null && entry.getValue() instanceof Number) {
+                field.set(metrics, (Number) entry.getValue());
+            }
         }
-        return null;
+        return metrics;
     }
 }
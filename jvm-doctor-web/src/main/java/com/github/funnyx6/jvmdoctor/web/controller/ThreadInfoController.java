@@ -2,11 +2,15 @@ package com.github.funnyx6.jvmdoctor.web.controller;
 
 import com.github.funnyx6.jvmdoctor.web.entity.AppRegistry;
 import com.github.funnyx6.jvmdoctor.web.service.AppRegistryService;
+import com.github.funnyx6.jvmdoctor.web.service.HeapDumpService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -18,36 +22,208 @@ import java.util.*;
 public class ThreadInfoController {
     
     private final AppRegistryService appRegistryService;
+    private final HeapDumpService heapDumpService;
     
-    public ThreadInfoController(AppRegistryService appRegistryService) {
+    public ThreadInfoController(AppRegistryService appRegistryService, HeapDumpService heapDumpService) {
         this.appRegistryService = appRegistryService;
+        this.heapDumpService = heapDumpService;
     }
     
     /**
      * 获取应用的线程列表
-     * GET /api/apps/{appId}/threads
+     * GET /api/apps/{appId}/threads?depth=N（depth 大于 0 时附带堆栈）
      */
     @GetMapping("/{appId}/threads")
-    public ResponseEntity<Map<String, Object>> getThreads(@PathVariable Long appId) {
-        return getThreadInfo(appId, "/api/threads");
+    public ResponseEntity<Map<String, Object>> getThreads(
+            @PathVariable Long appId,
+            @RequestParam(required = false, defaultValue = "0") Integer depth) {
+        String path = depth > 0 ? "/api/threads?depth=" + depth : "/api/threads";
+        return getThreadInfo(appId, path);
+    }
+    
+    /**
+     * 获取应用按堆栈聚合的线程转储（状态和堆栈相同的线程合并为一组）
+     * GET /api/apps/{appId}/threads/groups?depth=50
+     */
+    @GetMapping("/{appId}/threads/groups")
+    public ResponseEntity<Map<String, Object>> getThreadGroups(
+            @PathVariable Long appId,
+            @RequestParam(required = false, defaultValue = "50") Integer depth) {
+        return getThreadInfo(appId, "/api/threads/groups?depth=" + depth);
     }
     
     /**
      * 获取应用的 CPU Top 线程
-     * GET /api/apps/{appId}/threads/top
+     * GET /api/apps/{appId}/threads/top?window=30s&n=10
      */
     @GetMapping("/{appId}/threads/top")
-    public ResponseEntity<Map<String, Object>> getTopThreads(@PathVariable Long appId) {
-        return getThreadInfo(appId, "/api/threads/top");
+    public ResponseEntity<Map<String, Object>> getTopThreads(
+            @PathVariable Long appId,
+            @RequestParam(required = false, defaultValue = "30s") String window,
+            @RequestParam(required = false, defaultValue = "10") Integer n) {
+        if (!window.matches("\\d+(ms|s|m|h)?")) {
+            window = "30s";
+        }
+        return getThreadInfo(appId, "/api/threads/top?window=" + window + "&n=" + n);
+    }
+    
+    /**
+     * 获取应用的 OS 线程调度统计（CPU、运行队列等待、上下文切换，含 JVM 内部线程）
+     * GET /api/apps/{appId}/threads/tasks?interval=1s&n=20
+     */
+    @GetMapping("/{appId}/threads/tasks")
+    public ResponseEntity<Map<String, Object>> getThreadTasks(
+            @PathVariable Long appId,
+            @RequestParam(required = false, defaultValue = "1s") String interval,
+            @RequestParam(required = false, defaultValue = "20") Integer n) {
+        if (!interval.matches("\\d+(ms|s)?")) {
+            interval = "1s";
+        }
+        return getThreadInfo(appId, "/api/threads/tasks?interval=" + interval + "&n=" + n);
+    }
+    
+    /**
+     * 获取应用的内存分配 Top 线程
+     * GET /api/apps/{appId}/threads/top-alloc?window=30s&n=10
+     */
+    @GetMapping("/{appId}/threads/top-alloc")
+    public ResponseEntity<Map<String, Object>> getTopAllocatingThreads(
+            @PathVariable Long appId,
+            @RequestParam(required = false, defaultValue = "30s") String window,
+            @RequestParam(required = false, defaultValue = "10") Integer n) {
+        if (!window.matches("\\d+(ms|s|m|h)?")) {
+            window = "30s";
+        }
+        return getThreadInfo(appId, "/api/threads/top-alloc?window=" + window + "&n=" + n);
     }
     
     /**
      * 获取应用的死锁线程
-     * GET /api/apps/{appId}/deadlock
+     * GET /api/apps/{appId}/deadlock[?force=true]
      */
     @GetMapping("/{appId}/deadlock")
-    public ResponseEntity<Map<String, Object>> getDeadlock(@PathVariable Long appId) {
-        return getThreadInfo(appId, "/api/deadlock");
+    public ResponseEntity<Map<String, Object>> getDeadlock(
+            @PathVariable Long appId,
+            @RequestParam(required = false, defaultValue = "false") Boolean force) {
+        return getThreadInfo(appId, force ? "/api/deadlock?force=true" : "/api/deadlock");
+    }
+    
+    /**
+     * 获取应用的热点锁（锁竞争监控开启时）
+     * GET /api/apps/{appId}/contention?n=10
+     */
+    @GetMapping("/{appId}/contention")
+    public ResponseEntity<Map<String, Object>> getContention(
+            @PathVariable Long appId,
+            @RequestParam(required = false, defaultValue = "10") Integer n) {
+        return getThreadInfo(appId, "/api/contention?n=" + n);
+    }
+    
+    /**
+     * 开启、关闭锁竞争监控或清空热点锁表
+     * POST /api/apps/{appId}/contention/{action}，action 为 start / stop / reset
+     */
+    @PostMapping("/{appId}/contention/{action}")
+    public ResponseEntity<Map<String, Object>> controlContention(
+            @PathVariable Long appId,
+            @PathVariable String action) {
+        if (!action.equals("start") && !action.equals("stop") && !action.equals("reset")) {
+            return ResponseEntity.badRequest().build();
+        }
+        return postThreadInfo(appId, "/api/contention/" + action);
+    }
+    
+    /**
+     * 获取应用的泄漏嫌疑类（类直方图跟踪开启时）
+     * GET /api/apps/{appId}/histogram?n=20&sort=bytes，sort 为 bytes / instances
+     */
+    @GetMapping("/{appId}/histogram")
+    public ResponseEntity<Map<String, Object>> getHistogram(
+            @PathVariable Long appId,
+            @RequestParam(required = false, defaultValue = "20") Integer n,
+            @RequestParam(required = false, defaultValue = "bytes") String sort) {
+        if (!sort.equals("bytes") && !sort.equals("instances")) {
+            return ResponseEntity.badRequest().build();
+        }
+        return getThreadInfo(appId, "/api/histogram?n=" + n + "&sort=" + sort);
+    }
+    
+    /**
+     * 开启、关闭类直方图跟踪，清空历史或立即采集一次
+     * POST /api/apps/{appId}/histogram/{action}，action 为 start / stop / reset / collect
+     */
+    @PostMapping("/{appId}/histogram/{action}")
+    public ResponseEntity<Map<String, Object>> controlHistogram(
+            @PathVariable Long appId,
+            @PathVariable String action) {
+        if (!action.equals("start") && !action.equals("stop") && !action.equals("reset")
+                && !action.equals("collect")) {
+            return ResponseEntity.badRequest().build();
+        }
+        return postThreadInfo(appId, "/api/histogram/" + action);
+    }
+    
+    /**
+     * 获取应用的 Native Memory Tracking 汇总（设置了基线时附带各类别的增量）
+     * GET /api/apps/{appId}/nmt
+     */
+    @GetMapping("/{appId}/nmt")
+    public ResponseEntity<Map<String, Object>> getNativeMemory(@PathVariable Long appId) {
+        return getThreadInfo(appId, "/api/nmt");
+    }
+    
+    /**
+     * 开启、关闭 NMT 采集，立即采集、设置或清除基线
+     * POST /api/apps/{appId}/nmt/{action}，action 为 start / stop / collect / baseline / reset
+     */
+    @PostMapping("/{appId}/nmt/{action}")
+    public ResponseEntity<Map<String, Object>> controlNativeMemory(
+            @PathVariable Long appId,
+            @PathVariable String action) {
+        if (!action.equals("start") && !action.equals("stop") && !action.equals("collect")
+                && !action.equals("baseline") && !action.equals("reset")) {
+            return ResponseEntity.badRequest().build();
+        }
+        return postThreadInfo(appId, "/api/nmt/" + action);
+    }
+    
+    /**
+     * 请求应用转储堆，Agent 在后台转储并分块上传到 /api/heapdumps/{id}
+     * POST /api/apps/{appId}/heapdump?live=true（live 为 true 时只转储存活对象，会先触发 Full GC）
+     */
+    @PostMapping("/{appId}/heapdump")
+    public ResponseEntity<Map<String, Object>> requestHeapDump(
+            @PathVariable Long appId,
+            @RequestParam(required = false, defaultValue = "true") Boolean live) {
+        String id = heapDumpService.newDumpId(appId);
+        return postThreadInfo(appId, "/api/heapdump/start?id=" + id + "&live=" + live);
+    }
+    
+    /**
+     * 获取应用的堆转储进度
+     * GET /api/apps/{appId}/heapdump
+     */
+    @GetMapping("/{appId}/heapdump")
+    public ResponseEntity<Map<String, Object>> getHeapDumpStatus(@PathVariable Long appId) {
+        return getThreadInfo(appId, "/api/heapdump");
+    }
+    
+    /**
+     * 取消应用正在进行的堆转储上传
+     * POST /api/apps/{appId}/heapdump/cancel
+     */
+    @PostMapping("/{appId}/heapdump/cancel")
+    public ResponseEntity<Map<String, Object>> cancelHeapDump(@PathVariable Long appId) {
+        return postThreadInfo(appId, "/api/heapdump/cancel");
+    }
+    
+    /**
+     * 获取 Agent 自身的开销（上报统计、Agent 线程的 CPU 和分配、各组件耗时分布）
+     * GET /api/apps/{appId}/agent
+     */
+    @GetMapping("/{appId}/agent")
+    public ResponseEntity<Map<String, Object>> getAgentTelemetry(@PathVariable Long appId) {
+        return getThreadInfo(appId, "/api/agent");
     }
     
     /**
@@ -62,9 +238,87 @@ public class ThreadInfoController {
     }
     
     /**
-     * 代理请求到目标应用的线程服务器
+     * 对目标应用做采样剖析，返回折叠堆栈（flame graph 输入）
+     * GET /api/apps/{appId}/profiler?mode=cpu&seconds=10
+     */
+    @GetMapping(value = "/{appId}/profiler", produces = "text/plain;charset=UTF-8")
+    public ResponseEntity<String> profile(
+            @PathVariable Long appId,
+            @RequestParam(required = false, defaultValue = "cpu") String mode,
+            @RequestParam(required = false, defaultValue = "10") Integer seconds) {
+        if (!"cpu".equals(mode) && !"wall".equals(mode)) {
+            return ResponseEntity.badRequest().body("mode must be cpu or wall");
+        }
+        if (seconds <= 0) {
+            return ResponseEntity.badRequest().body("seconds must be positive");
+        }
+        // 剖析期间 Agent 阻塞返回，读超时需覆盖剖析时长
+        return proxyText(appId, "/api/profiler?mode=" + mode + "&seconds=" + seconds,
+                seconds * 1000 + 10000);
+    }
+    
+    /**
+     * 代理纯文本请求到目标应用的线程服务器
+     */
+    private ResponseEntity<String> proxyText(Long appId, String path, int readTimeoutMillis) {
+        Optional<AppRegistry> appOpt = appRegistryService.getAppById(appId);
+        if (!appOpt.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        AppRegistry app = appOpt.get();
+        Integer threadPort = app.getThreadServerPort();
+        if (threadPort == null || threadPort <= 0) {
+            return ResponseEntity.status(503).body("Thread server not available");
+        }
+        
+        try {
+            String targetUrl = "http://" + app.getHost() + ":" + threadPort + path;
+            
+            HttpURLConnection conn = (HttpURLConnection) new URL(targetUrl).openConnection();
+            conn.setRequestMethod("GET");
+            conn.setConnectTimeout(3000);
+            conn.setReadTimeout(readTimeoutMillis);
+            
+            int responseCode = conn.getResponseCode();
+            InputStream is = responseCode < 400 ? conn.getInputStream() : conn.getErrorStream();
+            String body = "";
+            if (is != null) {
+                try (InputStream in = is) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                    }
+                    body = new String(out.toByteArray(), StandardCharsets.UTF_8);
+                }
+            }
+            return ResponseEntity.status(responseCode).body(body);
+            
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Failed to reach thread server: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 代理查询请求到目标应用的线程服务器
      */
     private ResponseEntity<Map<String, Object>> getThreadInfo(Long appId, String path) {
+        return proxy(appId, "GET", path);
+    }
+    
+    /**
+     * 代理有副作用的操作到目标应用的线程服务器（Agent 端只接受 POST）
+     */
+    private ResponseEntity<Map<String, Object>> postThreadInfo(Long appId, String path) {
+        return proxy(appId, "POST", path);
+    }
+    
+    /**
+     * 代理请求到目标应用的线程服务器
+     */
+    private ResponseEntity<Map<String, Object>> proxy(Long appId, String method, String path) {
         Optional<AppRegistry> appOpt = appRegistryService.getAppById(appId);
         if (!appOpt.isPresent()) {
             return ResponseEntity.notFound().build();
@@ -84,9 +338,14 @@ public class ThreadInfoController {
             String targetUrl = "http://" + app.getHost() + ":" + threadPort + path;
             
             HttpURLConnection conn = (HttpURLConnection) new URL(targetUrl).openConnection();
-            conn.setRequestMethod("GET");
+            conn.setRequestMethod(method);
             conn.setConnectTimeout(3000);
             conn.setReadTimeout(10000);
+            if ("POST".equals(method)) {
+                // 空请求体，带上 Content-Length: 0
+                conn.setDoOutput(true);
+                conn.getOutputStream().close();
+            }
             
             int responseCode = conn.getResponseCode();
             
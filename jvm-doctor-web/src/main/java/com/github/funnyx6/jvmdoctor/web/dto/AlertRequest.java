@@ -0,0 +1,33 @@
+package com.github.funnyx6.jvmdoctor.web.dto;
+
+/**
+ * 告警推送请求 DTO（Agent 在事件发生时立即推送，不等待上报周期）
+ */
+public class AlertRequest {
+    
+    private Long appId;
+    private String alertType;
+    private String alertMsg;
+    private String alertLevel;
+    private String source;
+    private Long timestamp;
+    
+    // Getters and Setters
+    public Long getAppId() { return appId; }
+    public void setAppId(Long appId) { this.appId = appId; }
+    
+    public String getAlertType() { return alertType; }
+    public void setAlertType(String alertType) { this.alertType = alertType; }
+    
+    public String getAlertMsg() { return alertMsg; }
+    public void setAlertMsg(String alertMsg) { this.alertMsg = alertMsg; }
+    
+    public String getAlertLevel() { return alertLevel; }
+    public void setAlertLevel(String alertLevel) { this.alertLevel = alertLevel; }
+    
+    public String getSource() { return source; }
+    public void setSource(String source) { this.source = source; }
+    
+    public Long getTimestamp() { return timestamp; }
+    public void setTimestamp(Long timestamp) { this.timestamp = timestamp; }
+}
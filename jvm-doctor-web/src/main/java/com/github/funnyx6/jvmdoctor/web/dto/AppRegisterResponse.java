@@ -1,5 +1,7 @@
 package com.github.funnyx6.jvmdoctor.web.dto;
 
+import com.github.funnyx6.jvmdoctor.core.MetricsFrame;
+
 import java.time.Instant;
 
 /**
@@ -11,12 +13,14 @@ public class AppRegisterResponse {
     private String status;
     private String message;
     private Long serverTime;
+    private Integer binaryProtocol;    // 支持的二进制指标帧版本（/api/metrics/bin），旧版 Agent 忽略
     
     public AppRegisterResponse(Long appId, String status, String message) {
         this.appId = appId;
         this.status = status;
         this.message = message;
         this.serverTime = Instant.now().toEpochMilli();
+        this.binaryProtocol = MetricsFrame.VERSION;
     }
     
     // Getters and Setters
@@ -31,4 +35,7 @@ public class AppRegisterResponse {
     
     public Long getServerTime() { return serverTime; }
     public void setServerTime(Long serverTime) { this.serverTime = serverTime; }
+    
+    public Integer getBinaryProtocol() { return binaryProtocol; }
+    public void setBinaryProtocol(Integer binaryProtocol) { this.binaryProtocol = binaryProtocol; }
 }
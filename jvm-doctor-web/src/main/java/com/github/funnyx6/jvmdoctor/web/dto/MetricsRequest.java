@@ -8,12 +8,20 @@ import java.util.Map;
 public class MetricsRequest {
     
     private Long appId;
+    private Long seq;          // 上报序号，同一应用内单调递增，用于去重
+    private Long timestamp;    // 采集时间（毫秒），暂存后回放的样本按它入库
     private Map<String, Object> metrics;
     
     // Getters and Setters
     public Long getAppId() { return appId; }
     public void setAppId(Long appId) { this.appId = appId; }
     
+    public Long getSeq() { return seq; }
+    public void setSeq(Long seq) { this.seq = seq; }
+    
+    public Long getTimestamp() { return timestamp; }
+    public void setTimestamp(Long timestamp) { this.timestamp = timestamp; }
+    
     public Map<String, Object> getMetrics() { return metrics; }
     public void setMetrics(Map<String, Object> metrics) { this.metrics = metrics; }
 }
@@ -26,6 +26,9 @@ public class AppAlert {
     @Column(name = "alert_level", nullable = false, length = 16)
     private String alertLevel = "warning"; // info, warning, critical
     
+    @Column(name = "alert_source", length = 128)
+    private String alertSource; // 告警对象，如内存池名称
+    
     @Column(name = "created_at", nullable = false)
     private Long createdAt;
     
@@ -54,6 +57,9 @@ public class AppAlert {
     public String getAlertLevel() { return alertLevel; }
     public void setAlertLevel(String alertLevel) { this.alertLevel = alertLevel; }
     
+    public String getAlertSource() { return alertSource; }
+    public void setAlertSource(String alertSource) { this.alertSource = alertSource; }
+    
     public Long getCreatedAt() { return createdAt; }
     public void setCreatedAt(Long createdAt) { this.createdAt = createdAt; }
     
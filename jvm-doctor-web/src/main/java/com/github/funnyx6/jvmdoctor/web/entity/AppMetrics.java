@@ -8,7 +8,9 @@ import java.time.Instant;
  */
 @Entity
 @Table(name = "app_metrics", indexes = {
-    @Index(name = "idx_app_timestamp", columnList = "app_id, timestamp")
+    @Index(name = "idx_app_timestamp", columnList = "app_id, timestamp"),
+    // 按 (app_id, seq) 去重重放的上报（seq 为空的旧版上报不受约束）
+    @Index(name = "uk_app_seq", columnList = "app_id, seq", unique = true)
 })
 public class AppMetrics {
     
@@ -22,6 +24,10 @@ public class AppMetrics {
     @Column(nullable = false)
     private Long timestamp;
     
+    // Agent 分配的上报序号（旧版本 Agent 为空）
+    @Column(name = "seq")
+    private Long seq;
+    
     @Column(name = "heap_used")
     private Long heapUsed;
     
@@ -55,6 +61,12 @@ public class AppMetrics {
     @Column(name = "uptime")
     private Long uptime;
     
+    @Column(name = "cpu_throttled")
+    private Double cpuThrottled;
+    
+    @Column(name = "container_memory_usage")
+    private Double containerMemoryUsage;
+    
     // Getters and Setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -65,6 +77,9 @@ public class AppMetrics {
     public Long getTimestamp() { return timestamp; }
     public void setTimestamp(Long timestamp) { this.timestamp = timestamp; }
     
+    public Long getSeq() { return seq; }
+    public void setSeq(Long seq) { this.seq = seq; }
+    
     public Long getHeapUsed() { return heapUsed; }
     public void setHeapUsed(Long heapUsed) { this.heapUsed = heapUsed; }
     
@@ -97,4 +112,10 @@ public class AppMetrics {
     
     public Long getUptime() { return uptime; }
     public void setUptime(Long uptime) { this.uptime = uptime; }
+    
+    public Double getCpuThrottled() { return cpuThrottled; }
+    public void setCpuThrottled(Double cpuThrottled) { this.cpuThrottled = cpuThrottled; }
+    
+    public Double getContainerMemoryUsage() { return containerMemoryUsage; }
+    public void setContainerMemoryUsage(Double containerMemoryUsage) { this.containerMemoryUsage = containerMemoryUsage; }
 }
@@ -14,6 +14,8 @@ public interface AppMetricsRepository extends JpaRepository<AppMetrics, Long> {
     
     List<AppMetrics> findByAppIdOrderByTimestampDesc(Long appId);
     
+    boolean existsByAppIdAndSeq(Long appId, Long seq);
+    
     @Query("SELECT m FROM AppMetrics m WHERE m.appId = :appId AND m.timestamp >= :startTime ORDER BY m.timestamp ASC")
     List<AppMetrics> findByAppIdAndTimestampAfter(
             @Param("appId") Long appId, 
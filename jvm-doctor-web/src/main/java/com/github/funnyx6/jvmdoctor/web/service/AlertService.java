@@ -1,20 +1,104 @@
 package com.github.funnyx6.jvmdoctor.web.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.funnyx6.jvmdoctor.web.entity.AppAlert;
 import com.github.funnyx6.jvmdoctor.web.repository.AppAlertRepository;
+import com.github.funnyx6.jvmdoctor.web.websocket.MetricsWebSocketHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Objects;
 
 @Service
 public class AlertService {
     
+    private static final Logger logger = LoggerFactory.getLogger(AlertService.class);
+    
+    // 相同类型（和对象）的未处理告警在该时间内不重复创建
+    private static final long DEDUP_WINDOW_MS = 300_000; // 5分钟
+    
     private final AppAlertRepository alertRepository;
+    private final MetricsWebSocketHandler webSocketHandler;
+    private final ObjectMapper objectMapper;
     
-    public AlertService(AppAlertRepository alertRepository) {
+    public AlertService(
+            AppAlertRepository alertRepository,
+            MetricsWebSocketHandler webSocketHandler,
+            ObjectMapper objectMapper) {
         this.alertRepository = alertRepository;
+        this.webSocketHandler = webSocketHandler;
+        this.objectMapper = objectMapper;
+    }
+    
+    /**
+     * 创建告警
+     */
+    @Transactional
+    public AppAlert createAlert(Long appId, String type, String msg, String level) {
+        return createAlert(appId, type, null, msg, level);
+    }
+    
+    /**
+     * 创建告警
+     * 
+     * @param source 告警对象（如内存池名称），为空时只按类型去重
+     * @return 新建的告警，最近已有相同未处理告警时返回 null
+     */
+    @Transactional
+    public AppAlert createAlert(Long appId, String type, String source, String msg, String level) {
+        // 检查最近是否有相同类型的未处理告警（避免重复）
+        List<AppAlert> recentAlerts = alertRepository.findByAppIdOrderByCreatedAtDesc(appId);
+        boolean hasRecent = recentAlerts.stream()
+                .filter(a -> !a.getAcknowledged())
+                .anyMatch(a -> a.getAlertType().equals(type) && 
+                        Objects.equals(a.getAlertSource(), source) &&
+                        System.currentTimeMillis() - a.getCreatedAt() < DEDUP_WINDOW_MS);
+        
+        if (hasRecent) {
+            return null;
+        }
+        
+        AppAlert alert = new AppAlert();
+        alert.setAppId(appId);
+        alert.setAlertType(type);
+        alert.setAlertSource(source);
+        alert.setAlertMsg(msg);
+        alert.setAlertLevel(level);
+        alert.setCreatedAt(Instant.now().toEpochMilli());
+        alert.setAcknowledged(false);
+        alertRepository.save(alert);
+        
+        // 通过 WebSocket 推送告警
+        pushAlertToWebSocket(appId, alert);
+        
+        logger.warn("Alert created for appId {}: {} - {}", appId, type, msg);
+        return alert;
+    }
+    
+    /**
+     * 通过 WebSocket 推送告警
+     */
+    private void pushAlertToWebSocket(Long appId, AppAlert alert) {
+        try {
+            ObjectNode data = objectMapper.createObjectNode();
+            data.put("type", "alert");
+            data.put("alertId", alert.getId());
+            data.put("appId", appId);
+            data.put("alertType", alert.getAlertType());
+            data.put("alertSource", alert.getAlertSource());
+            data.put("alertMsg", alert.getAlertMsg());
+            data.put("alertLevel", alert.getAlertLevel());
+            data.put("createdAt", alert.getCreatedAt());
+            
+            webSocketHandler.broadcastAlert(data);
+        } catch (Exception e) {
+            logger.error("Failed to push alert via WebSocket", e);
+        }
     }
     
     /**
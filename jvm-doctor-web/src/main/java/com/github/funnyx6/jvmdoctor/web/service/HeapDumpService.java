@@ -0,0 +1,228 @@
+package com.github.funnyx6.jvmdoctor.web.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 堆转储接收
+ *
+ * Agent 把堆转储按块压缩上传，每块带原始偏移、长度和 CRC32。块边解压边追加写入 {id}.hprof.part，
+ * 不在内存中缓存整个转储；偏移必须等于已接收的字节数，否则不写入并返回当前偏移，由 Agent 从该偏移续传。
+ * 已接收的字节数即 .part 文件的长度，Server 重启后仍可续传。全部接收后改名为 {id}.hprof。
+ */
+@Service
+public class HeapDumpService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeapDumpService.class);
+
+    private static final String DUMP_SUFFIX = ".hprof";
+    private static final String PART_SUFFIX = ".hprof.part";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path dumpDir;
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+    // 上传中的转储的总大小（来自 Agent，仅用于显示进度）
+    private final ConcurrentMap<String, Long> totalSizes = new ConcurrentHashMap<>();
+
+    public HeapDumpService(@Value("${jvm-doctor.heapdump.dir:/tmp/data/heapdumps}") String dumpDir) throws IOException {
+        this.dumpDir = Paths.get(dumpDir);
+        Files.createDirectories(this.dumpDir);
+    }
+
+    /**
+     * 转储 ID 只允许字母、数字、点、下划线和连字符（作为文件名使用）
+     */
+    public static boolean isValidId(String id) {
+        return id != null && !id.startsWith(".") && id.matches("[A-Za-z0-9._-]{1,64}");
+    }
+
+    /**
+     * 为应用分配新的转储 ID（时间只精确到秒，附带随机后缀，同一秒内的两次请求不会续传到同一个 .part）
+     */
+    public String newDumpId(Long appId) {
+        return "app" + appId + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())
+                + "-" + String.format("%08x", ThreadLocalRandom.current().nextInt());
+    }
+
+    /**
+     * 追加一块
+     *
+     * @param id 转储 ID
+     * @param offset 该块在原始文件中的偏移
+     * @param length 该块的原始长度
+     * @param crc 原始数据的 CRC32
+     * @param totalSize 转储总大小（未知时为 0）
+     * @param compressed zlib 压缩的块数据
+     * @return 写入后已接收的字节数；偏移不一致时不写入，返回当前已接收的字节数
+     * @throws IOException 解压失败、长度或校验和不一致（已写入的部分会被截掉）
+     */
+    public long appendChunk(String id, long offset, long length, long crc, long totalSize, InputStream compressed)
+            throws IOException {
+        synchronized (lockFor(id)) {
+            if (Files.exists(dumpFile(id))) {
+                return Files.size(dumpFile(id));
+            }
+            if (totalSize > 0) {
+                totalSizes.put(id, totalSize);
+            }
+            try (FileChannel channel = FileChannel.open(partFile(id),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                long received = channel.size();
+                if (received != offset) {
+                    return received;
+                }
+                channel.position(offset);
+
+                CRC32 checksum = new CRC32();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long written = 0;
+                try (InputStream in = new InflaterInputStream(compressed)) {
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        written += n;
+                        if (written > length) {
+                            break;
+                        }
+                        checksum.update(buffer, 0, n);
+                        ByteBuffer wrapped = ByteBuffer.wrap(buffer, 0, n);
+                        while (wrapped.hasRemaining()) {
+                            channel.write(wrapped);
+                        }
+                    }
+                } catch (IOException e) {
+                    channel.truncate(offset);
+                    throw e;
+                }
+                if (written != length || checksum.getValue() != crc) {
+                    channel.truncate(offset);
+                    throw new IOException("Corrupt chunk at offset " + offset + " of " + id);
+                }
+                return offset + length;
+            }
+        }
+    }
+
+    /**
+     * 结束上传
+     *
+     * @param size 转储总大小
+     * @return 已接收的字节数与总大小一致（或已完成）时返回 true
+     */
+    public boolean complete(String id, long size) throws IOException {
+        synchronized (lockFor(id)) {
+            Path dump = dumpFile(id);
+            if (Files.exists(dump)) {
+                return Files.size(dump) == size;
+            }
+            Path part = partFile(id);
+            if (!Files.exists(part) || Files.size(part) != size) {
+                return false;
+            }
+            Files.move(part, dump, StandardCopyOption.ATOMIC_MOVE);
+            totalSizes.remove(id);
+            logger.info("Heap dump {} received: {} bytes", id, size);
+            return true;
+        }
+    }
+
+    /**
+     * 转储状态，不存在时返回 null
+     */
+    public Map<String, Object> getStatus(String id) throws IOException {
+        Path dump = dumpFile(id);
+        Path part = partFile(id);
+        boolean complete = Files.exists(dump);
+        if (!complete && !Files.exists(part)) {
+            return null;
+        }
+        Path file = complete ? dump : part;
+        Map<String, Object> status = new HashMap<>();
+        status.put("id", id);
+        status.put("complete", complete);
+        status.put("receivedBytes", Files.size(file));
+        status.put("totalBytes", complete ? Files.size(file) : totalSizes.getOrDefault(id, 0L));
+        status.put("lastModified", Files.getLastModifiedTime(file).toMillis());
+        return status;
+    }
+
+    /**
+     * 所有转储（含上传中的）
+     */
+    public List<Map<String, Object>> listDumps() throws IOException {
+        List<Map<String, Object>> result = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dumpDir, "*" + DUMP_SUFFIX + "*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String id;
+                if (name.endsWith(PART_SUFFIX)) {
+                    id = name.substring(0, name.length() - PART_SUFFIX.length());
+                } else if (name.endsWith(DUMP_SUFFIX)) {
+                    id = name.substring(0, name.length() - DUMP_SUFFIX.length());
+                } else {
+                    continue;
+                }
+                Map<String, Object> status = getStatus(id);
+                if (status != null) {
+                    result.add(status);
+                }
+            }
+        }
+        result.sort((a, b) -> Long.compare((Long) b.get("lastModified"), (Long) a.get("lastModified")));
+        return result;
+    }
+
+    /**
+     * 已完成的转储文件，不存在时返回 null
+     */
+    public Path getDumpFile(String id) {
+        Path dump = dumpFile(id);
+        return Files.exists(dump) ? dump : null;
+    }
+
+    /**
+     * 删除转储（含上传中的部分）
+     */
+    public boolean delete(String id) throws IOException {
+        synchronized (lockFor(id)) {
+            totalSizes.remove(id);
+            boolean deleted = Files.deleteIfExists(dumpFile(id));
+            return Files.deleteIfExists(partFile(id)) || deleted;
+        }
+    }
+
+    private Object lockFor(String id) {
+        return locks.computeIfAbsent(id, k -> new Object());
+    }
+
+    private Path dumpFile(String id) {
+        return dumpDir.resolve(id + DUMP_SUFFIX);
+    }
+
+    private Path partFile(String id) {
+        return dumpDir.resolve(id + PART_SUFFIX);
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.funnyx6.jvmdoctor.web.service;
+
+import com.github.funnyx6.jvmdoctor.web.entity.AppMetrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Agent 上报的指标名与 {@link AppMetrics} 字段的对应关系（JSON 和二进制上报共用）
+ *
+ * 未列出的指标（如 cpu.cores、各内存池明细）不入库。
+ */
+public enum MetricField {
+
+    HEAP_USED("heap.used", (m, v) -> m.setHeapUsed(v.longValue())),
+    HEAP_MAX("heap.max", (m, v) -> m.setHeapMax(v.longValue())),
+    NONHEAP_USED("nonheap.used", (m, v) -> m.setNonheapUsed(v.longValue())),
+    GC_COUNT("gc.count", (m, v) -> m.setGcCount(v.longValue())),
+    GC_TIME("gc.time", (m, v) -> m.setGcTime(v.longValue())),
+    THREAD_COUNT("thread.count", (m, v) -> m.setThreadCount(v.intValue())),
+    THREAD_DAEMON("thread.daemon", (m, v) -> m.setDaemonThreadCount(v.intValue())),
+    // 已按有效 CPU 数（含容器配额）归一化
+    CPU_LOAD("cpu.load", (m, v) -> m.setCpuUsage(v.doubleValue())),
+    CPU_THROTTLED("container.cpu.throttled.ratio", (m, v) -> m.setCpuThrottled(v.doubleValue())),
+    CONTAINER_MEMORY("container.memory.usage.ratio", (m, v) -> m.setContainerMemoryUsage(v.doubleValue())),
+    SYSTEM_LOAD("system.load", (m, v) -> m.setSystemLoad(v.doubleValue())),
+    UPTIME("uptime", (m, v) -> m.setUptime(v.longValue()));
+
+    private static final MetricField[] VALUES = values();
+    private static final Map<String, MetricField> BY_NAME = new HashMap<>();
+
+    static {
+        for (MetricField field : VALUES) {
+            BY_NAME.put(field.metricName, field);
+        }
+    }
+
+    private final String metricName;
+    private final BiConsumer<AppMetrics, Number> setter;
+
+    MetricField(String metricName, BiConsumer<AppMetrics, Number> setter) {
+        this.metricName = metricName;
+        this.setter = setter;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+
+    public void set(AppMetrics metrics, Number value) {
+        setter.accept(metrics, value);
+    }
+
+    /**
+     * 按指标名查找字段，不入库的指标返回 null
+     */
+    public static MetricField forName(String metricName) {
+        return BY_NAME.get(metricName);
+    }
+
+    /**
+     * 指标名对应的槽位（字段序号），不入库的指标返回 -1
+     */
+    public static int slotOf(String metricName) {
+        MetricField field = BY_NAME.get(metricName);
+        return field != null ? field.ordinal() : -1;
+    }
+
+    public static MetricField ofSlot(int slot) {
+        return VALUES[slot];
+    }
+}
@@ -2,10 +2,10 @@ package com.github.funnyx6.jvmdoctor.web.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.github.funnyx6.jvmdoctor.web.entity.AppAlert;
+import com.github.funnyx6.jvmdoctor.core.MetricsFrame;
+import com.github.funnyx6.jvmdoctor.core.MetricsFrameSession;
 import com.github.funnyx6.jvmdoctor.web.entity.AppMetrics;
 import com.github.funnyx6.jvmdoctor.web.entity.AppRegistry;
-import com.github.funnyx6.jvmdoctor.web.repository.AppAlertRepository;
 import com.github.funnyx6.jvmdoctor.web.repository.AppMetricsRepository;
 import com.github.funnyx6.jvmdoctor.web.websocket.MetricsWebSocketHandler;
 import org.slf4j.Logger;
@@ -16,6 +16,8 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,36 +26,109 @@ public class MetricsService {
     private static final Logger logger = LoggerFactory.getLogger(MetricsService.class);
     
     private final AppMetricsRepository metricsRepository;
-    private final AppAlertRepository alertRepository;
+    private final AlertService alertService;
     private final AppRegistryService appRegistryService;
     private final MetricsWebSocketHandler webSocketHandler;
     private final ObjectMapper objectMapper;
+    // 各应用二进制上报的解码状态（字典和差分基准），Server 重启后由 Agent 的关键帧重建
+    private final ConcurrentMap<Long, MetricsFrameSession> frameSessions = new ConcurrentHashMap<>();
+    // 各应用最近一次记录日志的时钟偏差，变化超过容忍范围时再记录
+    private final ConcurrentMap<Long, Long> clockOffsets = new ConcurrentHashMap<>();
     
     // 告警阈值
     private static final double HEAP_USAGE_THRESHOLD = 0.9;
     private static final double CPU_USAGE_THRESHOLD = 0.8;
+    private static final double CPU_THROTTLED_THRESHOLD = 0.25;
+    private static final double CONTAINER_MEMORY_THRESHOLD = 0.9;
     private static final long HEARTBEAT_TIMEOUT_MS = 120_000; // 2分钟
+    // 采集时间早于此窗口的样本（Agent 暂存后回放）只入库，不推送也不触发告警
+    private static final long LIVE_WINDOW_MS = 60_000;
+    // Agent 与 Server 的时钟相差不超过该值时不校正（估算值含请求的传输时间）
+    private static final long CLOCK_SKEW_TOLERANCE_MS = 1_000;
     
     public MetricsService(
             AppMetricsRepository metricsRepository,
-            AppAlertRepository alertRepository,
+            AlertService alertService,
             AppRegistryService appRegistryService,
             MetricsWebSocketHandler webSocketHandler,
             ObjectMapper objectMapper) {
         this.metricsRepository = metricsRepository;
-        this.alertRepository = alertRepository;
+        this.alertService = alertService;
         this.appRegistryService = appRegistryService;
         this.webSocketHandler = webSocketHandler;
         this.objectMapper = objectMapper;
     }
     
+    /**
+     * 是否已收到过该上报（Agent 暂存回放时可能重发已入库的样本）
+     */
+    public boolean isDuplicate(Long appId, Long seq) {
+        return seq != null && metricsRepository.existsByAppIdAndSeq(appId, seq);
+    }
+    
+    /**
+     * 估算 Agent 的时钟偏差（Server 收到请求的时间减去 Agent 发送请求的时间，毫秒），
+     * 加到样本的采集时间上即为 Server 时钟下的时间
+     * 
+     * 偏差在容忍范围内时返回 0；请求未带发送时间（旧版 Agent 或自定义传输）时无法估算，返回 0。
+     * 
+     * @param agentTime 请求头中的 Agent 发送时间，可为 null
+     * @param receivedAt Server 开始处理请求的时间（同一请求中的样本使用同一个值）
+     */
+    public long clockOffset(Long appId, Long agentTime, long receivedAt) {
+        if (agentTime == null) {
+            return 0;
+        }
+        long offset = receivedAt - agentTime;
+        if (Math.abs(offset) <= CLOCK_SKEW_TOLERANCE_MS) {
+            offset = 0;
+        }
+        Long previous = appId != null ? clockOffsets.put(appId, offset) : null;
+        if (appId != null && (previous == null ? offset != 0 : Math.abs(previous - offset) > CLOCK_SKEW_TOLERANCE_MS)) {
+            logger.info("Clock offset of appId {} is {}ms, correcting sample timestamps", appId, offset);
+        }
+        return offset;
+    }
+    
+    /**
+     * 把二进制指标帧解码为实体（未保存）
+     * 
+     * @param in 已读过帧头的读取器
+     * @param header 帧头
+     * @throws MetricsFrame.ResyncException 差分帧与该应用的解码状态不衔接
+     * @throws IllegalArgumentException 帧格式错误
+     */
+    public AppMetrics decodeFrame(MetricsFrame.Reader in, MetricsFrame.Header header) {
+        MetricsFrameSession session = frameSessions.computeIfAbsent(header.getAppId(), id -> new MetricsFrameSession());
+        AppMetrics metrics = new AppMetrics();
+        session.apply(in, header, MetricField::slotOf, new MetricsFrameSession.Sink() {
+            @Override
+            public void onLong(int slot, long value) {
+                MetricField.ofSlot(slot).set(metrics, value);
+            }
+            
+            @Override
+            public void onDouble(int slot, double value) {
+                MetricField.ofSlot(slot).set(metrics, value);
+            }
+        });
+        metrics.setSeq(header.getSeq());
+        metrics.setTimestamp(header.getTimestamp());
+        return metrics;
+    }
+    
     /**
      * 接收并保存指标数据
+     * 
+     * 带采集时间的样本按采集时间（已由调用方校正时钟偏差）入库，不晚于当前时间；回放的历史样本不推送、不告警。
      */
     @Transactional
     public AppMetrics saveMetrics(Long appId, AppMetrics metrics) {
+        long now = Instant.now().toEpochMilli();
         metrics.setAppId(appId);
-        metrics.setTimestamp(Instant.now().toEpochMilli());
+        if (metrics.getTimestamp() == null || metrics.getTimestamp() > now) {
+            metrics.setTimestamp(now);
+        }
         
         // 计算堆使用率
         if (metrics.getHeapUsed() != null && metrics.getHeapMax() != null && metrics.getHeapMax() > 0) {
@@ -61,6 +136,10 @@ public class MetricsService {
         }
         
         AppMetrics saved = metricsRepository.save(metrics);
+        if (now - saved.getTimestamp() > LIVE_WINDOW_MS) {
+            logger.debug("Saved replayed metrics for appId: {}, seq: {}", appId, saved.getSeq());
+            return saved;
+        }
         
         // 通过 WebSocket 推送指标
         pushMetricsToWebSocket(appId, saved);
@@ -90,6 +169,12 @@ public class MetricsService {
             data.put("cpuUsage", metrics.getCpuUsage() != null ? metrics.getCpuUsage() : 0);
             data.put("systemLoad", metrics.getSystemLoad() != null ? metrics.getSystemLoad() : 0);
             data.put("uptime", metrics.getUptime() != null ? metrics.getUptime() : 0);
+            if (metrics.getCpuThrottled() != null) {
+                data.put("cpuThrottled", metrics.getCpuThrottled());
+            }
+            if (metrics.getContainerMemoryUsage() != null) {
+                data.put("containerMemoryUsage", metrics.getContainerMemoryUsage());
+            }
             
             webSocketHandler.broadcastMetrics(data);
         } catch (Exception e) {
@@ -131,75 +216,41 @@ public class MetricsService {
     private void checkAndCreateAlerts(Long appId, AppMetrics metrics) {
         // 堆内存告警
         if (metrics.getHeapUsage() != null && metrics.getHeapUsage() > HEAP_USAGE_THRESHOLD) {
-            createAlert(appId, "high_heap_usage", 
+            alertService.createAlert(appId, "high_heap_usage", 
                     String.format("Heap usage: %.1f%%", metrics.getHeapUsage() * 100), 
                     "warning");
         }
         
         // CPU 告警
         if (metrics.getCpuUsage() != null && metrics.getCpuUsage() > CPU_USAGE_THRESHOLD) {
-            createAlert(appId, "high_cpu_usage",
+            alertService.createAlert(appId, "high_cpu_usage",
                     String.format("CPU usage: %.1f%%", metrics.getCpuUsage() * 100),
                     "warning");
         }
         
+        // 容器 CPU 限流告警（被限流的调度周期占比）
+        if (metrics.getCpuThrottled() != null && metrics.getCpuThrottled() > CPU_THROTTLED_THRESHOLD) {
+            alertService.createAlert(appId, "cpu_throttled",
+                    String.format("CPU throttled periods: %.1f%%", metrics.getCpuThrottled() * 100),
+                    "warning");
+        }
+        
+        // 容器内存接近上限告警（超过上限会被 OOM killer 杀掉）
+        if (metrics.getContainerMemoryUsage() != null && metrics.getContainerMemoryUsage() > CONTAINER_MEMORY_THRESHOLD) {
+            alertService.createAlert(appId, "high_container_memory",
+                    String.format("Container memory usage: %.1f%%", metrics.getContainerMemoryUsage() * 100),
+                    "warning");
+        }
+        
         // GC 频繁告警（简单判断：GC 时间占比超过 10%）
         if (metrics.getUptime() != null && metrics.getUptime() > 0 && 
                 metrics.getGcTime() != null && metrics.getGcTime() > metrics.getUptime() * 0.1) {
-            createAlert(appId, "high_gc_time",
+            alertService.createAlert(appId, "high_gc_time",
                     String.format("GC time ratio: %.1f%%", (double) metrics.getGcTime() / metrics.getUptime() * 100),
                     "warning");
         }
     }
     
-    /**
-     * 创建告警
-     */
-    private void createAlert(Long appId, String type, String msg, String level) {
-        // 检查最近是否有相同类型的未处理告警（避免重复）
-        List<AppAlert> recentAlerts = alertRepository.findByAppIdOrderByCreatedAtDesc(appId);
-        boolean hasRecent = recentAlerts.stream()
-                .filter(a -> !a.getAcknowledged())
-                .anyMatch(a -> a.getAlertType().equals(type) && 
-                        System.currentTimeMillis() - a.getCreatedAt() < 300_000); // 5分钟内
-        
-        if (!hasRecent) {
-            AppAlert alert = new AppAlert();
-            alert.setAppId(appId);
-            alert.setAlertType(type);
-            alert.setAlertMsg(msg);
-            alert.setAlertLevel(level);
-            alert.setCreatedAt(Instant.now().toEpochMilli());
-            alert.setAcknowledged(false);
-            alertRepository.save(alert);
-            
-            // 通过 WebSocket 推送告警
-            pushAlertToWebSocket(appId, alert);
-            
-            logger.warn("Alert created for appId {}: {} - {}", appId, type, msg);
-        }
-    }
-    
-    /**
-     * 通过 WebSocket 推送告警
-     */
-    private void pushAlertToWebSocket(Long appId, AppAlert alert) {
-        try {
-            ObjectNode data = objectMapper.createObjectNode();
-            data.put("type", "alert");
-            data.put("alertId", alert.getId());
-            data.put("appId", appId);
-            data.put("alertType", alert.getAlertType());
-            data.put("alertMsg", alert.getAlertMsg());
-            data.put("alertLevel", alert.getAlertLevel());
-            data.put("createdAt", alert.getCreatedAt());
-            
-            webSocketHandler.broadcastAlert(data);
-        } catch (Exception e) {
-            logger.error("Failed to push alert via WebSocket", e);
-        }
-    }
-    
     /**
      * 定时检查心跳超时（每分钟执行）
      */
@@ -0,0 +1,243 @@
+package com.github.funnyx6.jvmdoctor.web.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * GzipRequestFilter 单元测试
+ */
+class GzipRequestFilterTest {
+
+    private static final String BODY = "{\"appId\":1,\"metrics\":{\"heap.used\":1024,\"thread.count\":42}}";
+
+    @RestController
+    static class EchoController {
+        @PostMapping("/echo")
+        String echo(@RequestBody String body) {
+            return body;
+        }
+    }
+
+    @Test
+    void testInflatesGzipBody() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new EchoController())
+                .addFilters(new GzipRequestFilter())
+                .build();
+
+        mockMvc.perform(post("/echo")
+                        .header("Content-Encoding", "gzip")
+                        .contentType("application/json")
+                        .content(gzip(BODY.getBytes(StandardCharsets.UTF_8))))
+                .andExpect(status().isOk())
+                .andExpect(content().string(BODY));
+
+        // 未压缩的请求体原样传递
+        mockMvc.perform(post("/echo").contentType("application/json").content(BODY))
+                .andExpect(status().isOk())
+                .andExpect(content().string(BODY));
+    }
+
+    @Test
+    void testHidesCompressedHeaders() throws Exception {
+        byte[] compressed = gzip(BODY.getBytes(StandardCharsets.UTF_8));
+        HttpServletRequest request = filter(gzipRequest(compressed));
+
+        assertNull(request.getHeader("Content-Encoding"));
+        assertNull(request.getHeader("content-length"));
+        assertFalse(request.getHeaders("Content-Encoding").hasMoreElements());
+        assertFalse(request.getHeaders("Content-Length").hasMoreElements());
+        assertEquals(-1, request.getIntHeader("Content-Length"));
+        assertEquals(-1, request.getContentLength());
+        assertEquals(-1, request.getContentLengthLong());
+        for (String name : Collections.list(request.getHeaderNames())) {
+            assertFalse("Content-Encoding".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name), name);
+        }
+        assertEquals("application/json", request.getHeader("Content-Type"));
+        assertEquals(BODY, new String(readAll(request.getInputStream()), StandardCharsets.UTF_8));
+        assertTrue(request.getInputStream().isFinished());
+    }
+
+    @Test
+    void testOtherEncodingsPassThrough() throws Exception {
+        MockHttpServletRequest original = new MockHttpServletRequest("POST", "/api/heapdump/chunk");
+        original.addHeader("Content-Encoding", "deflate");
+        original.setContent(new byte[]{1, 2, 3});
+
+        assertSame(original, filter(original));
+    }
+
+    @Test
+    void testRejectsBodyOverInflatedLimit() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            byte[] zeros = new byte[1024 * 1024];
+            for (long written = 0; written <= GzipRequestFilter.MAX_INFLATED_BYTES; written += zeros.length) {
+                gzip.write(zeros);
+            }
+        }
+        ServletInputStream in = filter(gzipRequest(out.toByteArray())).getInputStream();
+
+        byte[] buffer = new byte[64 * 1024];
+        IOException e = assertThrows(IOException.class, () -> {
+            while (in.read(buffer) >= 0) {
+                // 读到超出上限为止
+            }
+        });
+        assertTrue(e.getMessage().contains("exceeds"));
+    }
+
+    @Test
+    void testNonBlockingRead() throws Exception {
+        byte[] compressed = gzip(BODY.getBytes(StandardCharsets.UTF_8));
+        HttpServletRequest async = new HttpServletRequestWrapper(gzipRequest(compressed)) {
+            private final ServletInputStream stream = new AsyncStream(compressed);
+
+            @Override
+            public ServletInputStream getInputStream() {
+                return stream;
+            }
+        };
+        ServletInputStream in = filter(async).getInputStream();
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        boolean[] allRead = new boolean[1];
+        in.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                byte[] buffer = new byte[16];
+                int n;
+                while (in.isReady() && (n = in.read(buffer)) >= 0) {
+                    received.write(buffer, 0, n);
+                }
+            }
+
+            @Override
+            public void onAllDataRead() {
+                allRead[0] = true;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                fail(t);
+            }
+        });
+
+        assertTrue(allRead[0]);
+        assertTrue(in.isFinished());
+        assertEquals(BODY, new String(received.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static MockHttpServletRequest gzipRequest(byte[] compressed) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/metrics");
+        request.addHeader("Content-Encoding", "gzip");
+        request.addHeader("Content-Length", compressed.length);
+        request.addHeader("Content-Type", "application/json");
+        request.setContent(compressed);
+        return request;
+    }
+
+    private static HttpServletRequest filter(HttpServletRequest request) throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        new GzipRequestFilter().doFilter(request, new MockHttpServletResponse(), chain);
+        return (HttpServletRequest) chain.getRequest();
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 模拟容器的非阻塞请求体：注册监听器后分两段通知可读，再通知读完
+     */
+    private static final class AsyncStream extends ServletInputStream {
+
+        private final ByteArrayInputStream in;
+        private final int firstChunk;
+        private int readable;
+
+        AsyncStream(byte[] body) {
+            this.in = new ByteArrayInputStream(body);
+            this.firstChunk = body.length / 2;
+        }
+
+        @Override
+        public int read() {
+            if (readable == 0) {
+                throw new IllegalStateException("Not ready");
+            }
+            readable--;
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (readable == 0) {
+                throw new IllegalStateException("Not ready");
+            }
+            int n = in.read(b, off, Math.min(len, readable));
+            readable -= n;
+            return n;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return in.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return readable > 0;
+        }
+
+        @Override
+        public void setReadListener(ReadListener listener) {
+            try {
+                readable = firstChunk;
+                listener.onDataAvailable();
+                readable = in.available();
+                listener.onDataAvailable();
+                listener.onAllDataRead();
+            } catch (IOException e) {
+                listener.onError(e);
+            }
+        }
+    }
+}